@@ -0,0 +1,65 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * getApplicableCoupons over catalog sizes and coupon type mixes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplicableCouponsBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"100", "1000", "10000"})
+        int catalogSize;
+
+        @Param({"BALANCED", "CART_HEAVY", "PRODUCT_HEAVY", "BXGY_HEAVY"})
+        SyntheticCatalog.Mix mix;
+
+        SyntheticCatalog generator;
+        CouponService service;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            generator = new SyntheticCatalog(42L, 20_000, 4);
+            service = generator.build(catalogSize, mix);
+        }
+    }
+
+    // Evaluation sorts and annotates the cart, so each thread owns its own
+    @State(Scope.Thread)
+    public static class ThreadCart {
+
+        @Param({"20"})
+        int cartLines;
+
+        Cart cart;
+
+        @Setup(Level.Trial)
+        public void setup(Catalog catalog) {
+            cart = catalog.generator.cart(cartLines, Thread.currentThread().getId());
+        }
+    }
+
+    @Benchmark
+    public ApplicableCouponsResponse singleThreaded(Catalog catalog, ThreadCart cart) {
+        return catalog.service.getApplicableCoupons(cart.cart);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ApplicableCouponsResponse multiThreaded(Catalog catalog, ThreadCart cart) {
+        return catalog.service.getApplicableCoupons(cart.cart);
+    }
+}
@@ -0,0 +1,76 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * applyCouponToCart for each coupon type. RULE uses a compiled condition equivalent to the
+ * PRODUCT_WISE coupon, so the two compare a compiled rule with the hand-written handler.
+ * CATEGORY applies to the root of a synthetic taxonomy covering every product.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ApplyCouponBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Catalog {
+
+        @Param({"CART_WISE", "PRODUCT_WISE", "BXGY", "RULE", "CATEGORY"})
+        CouponType type;
+
+        SyntheticCatalog generator;
+        CouponService service;
+        long couponId;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            generator = new SyntheticCatalog(42L, 1_000, 4);
+            service = new CouponService();
+            CategoryTaxonomy taxonomy = generator.taxonomy();
+            service.setTaxonomy(() -> taxonomy);
+            couponId = switch (type) {
+                case CART_WISE -> service.createCoupon(generator.cartWise(100, 10)).getId();
+                case PRODUCT_WISE -> service.createCoupon(generator.productWise(1, 15)).getId();
+                case BXGY -> service.createCoupon(generator.bxgy(new SplittableRandom(42L))).getId();
+                case RULE -> service.createCoupon(generator.rule("containsAny(1) || total > 0", 1, 15)).getId();
+                case CATEGORY -> service.createCoupon(generator.category("Catalog", 15)).getId();
+            };
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadCart {
+
+        @Param({"20", "200"})
+        int cartLines;
+
+        Cart cart;
+
+        @Setup(Level.Trial)
+        public void setup(Catalog catalog) {
+            cart = catalog.generator.cart(cartLines, Thread.currentThread().getId());
+        }
+    }
+
+    @Benchmark
+    public ApplyCouponResponse singleThreaded(Catalog catalog, ThreadCart cart) {
+        return catalog.service.applyCouponToCart(catalog.couponId, cart.cart);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ApplyCouponResponse multiThreaded(Catalog catalog, ThreadCart cart) {
+        return catalog.service.applyCouponToCart(catalog.couponId, cart.cart);
+    }
+}
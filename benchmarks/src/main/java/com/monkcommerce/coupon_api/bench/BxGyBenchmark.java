@@ -0,0 +1,52 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.coupon.BxGyCoupon;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * BxGyCoupon.getApplyCouponOnCart over cart sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BxGyBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int cartLines;
+
+    @Param({"4", "32"})
+    int listLength;
+
+    Coupon coupon;
+    BxGyCoupon handler;
+    Cart cart;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SyntheticCatalog generator = new SyntheticCatalog(7L, Math.max(cartLines, listLength * 2), listLength);
+        coupon = generator.bxgy(new SplittableRandom(7L));
+        handler = new BxGyCoupon(coupon, null, null, null);
+        cart = generator.cart(cartLines, Thread.currentThread().getId());
+    }
+
+    @Benchmark
+    public ApplyCouponResponse singleThreaded() {
+        return handler.getApplyCouponOnCart(coupon, cart);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public ApplyCouponResponse multiThreaded() {
+        return handler.getApplyCouponOnCart(coupon, cart);
+    }
+}
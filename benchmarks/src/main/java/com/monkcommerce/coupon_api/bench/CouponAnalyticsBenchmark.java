@@ -0,0 +1,47 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.metrics.CouponAnalytics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * CouponAnalytics recording cost: every thread hitting one hot coupon, and threads spread
+ * over a 4096-coupon catalog.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CouponAnalyticsBenchmark {
+
+    CouponAnalytics analytics;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        analytics = new CouponAnalytics();
+        for (long id = 1; id <= 4096; id++) {
+            analytics.recordEvaluation(id, false, System.nanoTime());
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void hotCoupon() {
+        analytics.recordEvaluation(1, true, System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void manyCoupons(Cursor cursor) {
+        analytics.recordApply(1 + (cursor.next++ & 4095), 12.5, System.nanoTime());
+    }
+}
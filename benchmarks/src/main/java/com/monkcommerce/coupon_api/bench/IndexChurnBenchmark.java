@@ -0,0 +1,82 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.service.CouponService;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Create / update / delete churn on CouponIndexes through CouponService.
+ *
+ * CouponService is not safe for concurrent writers, so in the multi-threaded run every
+ * thread churns its own catalog; this measures per-thread mutation cost under shared
+ * CPU and allocator pressure rather than lock contention.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IndexChurnBenchmark {
+
+    @Param({"1000", "10000"})
+    int catalogSize;
+
+    SyntheticCatalog generator;
+    CouponService service;
+    SplittableRandom random;
+    int nextProduct;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        generator = new SyntheticCatalog(42L, 50_000, 4);
+        service = generator.build(catalogSize, SyntheticCatalog.Mix.BALANCED);
+        random = new SplittableRandom(Thread.currentThread().getId());
+        nextProduct = 50_000;
+    }
+
+    // One create, one update and one delete per invocation, keeping the catalog size stable
+    private Coupon churn() {
+        int productId = ++nextProduct;
+        Coupon created = service.createCoupon(generator.productWise(productId, 10));
+
+        Coupon update = new Coupon();
+        update.setType(created.getType());
+        update.setDetails(new CouponDetails());
+        update.getDetails().isActive = true;
+        update.getDetails().discount = 5.0 + random.nextInt(40);
+        service.updateCouponById(created.getId(), update);
+
+        // Product ids beyond the catalog range keep the BXGY configuration unique
+        CouponDetails details = new CouponDetails();
+        details.buyProducts = List.of(productId, productId + 1);
+        details.getProducts = List.of(productId);
+        details.buyQuantity = 1 + random.nextInt(3);
+        details.getQuantity = 1;
+        details.repetitionLimit = 2;
+        Coupon bxgy = new Coupon();
+        bxgy.setType(CouponType.BXGY);
+        bxgy.setDetails(details);
+        service.createCoupon(bxgy);
+        service.deleteCoupon(bxgy.getId());
+        return service.deleteCoupon(created.getId());
+    }
+
+    @Benchmark
+    public Coupon singleThreaded() {
+        return churn();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Coupon multiThreaded() {
+        return churn();
+    }
+}
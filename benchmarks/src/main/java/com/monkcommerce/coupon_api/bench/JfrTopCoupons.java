@@ -0,0 +1,91 @@
+package com.monkcommerce.coupon_api.bench;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * Prints the most expensive coupons found in a JFR recording made with coupon-engine.jfc.
+ *
+ * Usage: JfrTopCoupons recording.jfr [topN]
+ */
+public class JfrTopCoupons {
+
+    private static final String BXGY_EVENT = "com.monkcommerce.coupon.BxGyEvaluation";
+    private static final String EVALUATION_EVENT = "com.monkcommerce.coupon.Evaluation";
+
+    static final class CouponCost {
+        final long couponId;
+        long count;
+        long totalNanos;
+        long maxNanos;
+        long repetitions;
+
+        CouponCost(long couponId) {
+            this.couponId = couponId;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: JfrTopCoupons <recording.jfr> [topN]");
+            System.exit(1);
+        }
+        int topN = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        Map<Long, CouponCost> costs = new HashMap<>();
+        List<RecordedEvent> evaluations = new ArrayList<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(Path.of(args[0]))) {
+            String name = event.getEventType().getName();
+            if (BXGY_EVENT.equals(name)) {
+                long nanos = event.getDuration().toNanos();
+                CouponCost cost = costs.computeIfAbsent(event.getLong("couponId"), CouponCost::new);
+                cost.count++;
+                cost.totalNanos += nanos;
+                cost.maxNanos = Math.max(cost.maxNanos, nanos);
+                cost.repetitions += event.getInt("repetitionsConsumed");
+            } else if (EVALUATION_EVENT.equals(name)) {
+                evaluations.add(event);
+            }
+        }
+
+        List<CouponCost> ranked = new ArrayList<>(costs.values());
+        ranked.sort(Comparator.comparingLong((CouponCost c) -> c.totalNanos).reversed());
+
+        System.out.printf("Top %d BXGY coupons by total evaluation time%n", topN);
+        System.out.printf("%12s %10s %14s %12s %12s %12s%n",
+                "couponId", "evals", "total(us)", "avg(us)", "max(us)", "avgReps");
+        for (CouponCost cost : ranked.subList(0, Math.min(topN, ranked.size()))) {
+            System.out.printf("%12d %10d %14.1f %12.2f %12.2f %12.2f%n",
+                    cost.couponId, cost.count,
+                    cost.totalNanos / 1_000.0,
+                    cost.totalNanos / 1_000.0 / cost.count,
+                    cost.maxNanos / 1_000.0,
+                    (double) cost.repetitions / cost.count);
+        }
+
+        evaluations.sort(Comparator.comparing((RecordedEvent e) -> e.getDuration()).reversed());
+        System.out.printf("%nTop %d slowest cart evaluations%n", topN);
+        System.out.printf("%12s %8s %8s %8s %8s %14s %14s%n",
+                "duration(us)", "lines", "product", "cart", "bxgy", "winner", "winnerType");
+        for (RecordedEvent event : evaluations.subList(0, Math.min(topN, evaluations.size()))) {
+            Duration duration = event.getDuration();
+            System.out.printf("%12.1f %8d %8d %8d %8d %14d %14s%n",
+                    duration.toNanos() / 1_000.0,
+                    event.getInt("cartSize"),
+                    event.getInt("productCandidates"),
+                    event.getInt("cartCandidates"),
+                    event.getInt("bxgyCandidates"),
+                    event.getLong("winningCouponId"),
+                    event.getString("winningCouponType"));
+        }
+    }
+}
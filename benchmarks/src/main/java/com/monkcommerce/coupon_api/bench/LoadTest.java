@@ -0,0 +1,322 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.service.CouponService;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.SerializationFeature;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Open-model load generator for the coupon engine.
+ *
+ * Requests are issued on a fixed schedule (rate per second) regardless of how fast earlier
+ * requests complete, and latency is measured from each request's intended start time, so
+ * a stalled engine shows up as latency instead of a lower send rate (no coordinated
+ * omission). The engine is driven either in-process through CouponService or over HTTP.
+ *
+ * Options (all --key=value):
+ *   mode           inprocess | http                    (inprocess)
+ *   url            base URL for http mode              (http://localhost:8080)
+ *   endpoint       applicable | apply                  (applicable)
+ *   rate           requests per second                 (1000)
+ *   warmup         seconds excluded from the report    (5)
+ *   duration       measured seconds                    (30)
+ *   threads        in-process worker threads           (4)
+ *   seed           catalog / cart seed                 (42)
+ *   catalog-size   coupons to create                   (1000)
+ *   mix            cart:product:bxgy weights           (34:33:33)
+ *   products       product id cardinality              (20000)
+ *   bxgy-list      buy products per BXGY coupon        (4)
+ *   carts          NDJSON file of carts to replay      (generated when absent)
+ *   cart-lines     lines per generated cart            (20)
+ *   cart-pool      distinct generated carts            (1000)
+ *   label          free text stored in the report      (empty)
+ *   report         JSON report path                    (load-report.json)
+ */
+public class LoadTest {
+
+    private static final ObjectMapper MAPPER = JsonMapper.builder()
+            .enable(SerializationFeature.INDENT_OUTPUT)
+            .build();
+
+    // One request: completes with true on a successful engine response
+    interface Target {
+        CompletableFuture<Boolean> send(long index);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opts = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --key=value, got " + arg);
+            }
+            int eq = arg.indexOf('=');
+            opts.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        String mode = opts.getOrDefault("mode", "inprocess");
+        String endpoint = opts.getOrDefault("endpoint", "applicable");
+        int rate = Integer.parseInt(opts.getOrDefault("rate", "1000"));
+        int warmup = Integer.parseInt(opts.getOrDefault("warmup", "5"));
+        int duration = Integer.parseInt(opts.getOrDefault("duration", "30"));
+        long seed = Long.parseLong(opts.getOrDefault("seed", "42"));
+        int catalogSize = Integer.parseInt(opts.getOrDefault("catalog-size", "1000"));
+        String[] mix = opts.getOrDefault("mix", "34:33:33").split(":");
+        int products = Integer.parseInt(opts.getOrDefault("products", "20000"));
+        int bxgyList = Integer.parseInt(opts.getOrDefault("bxgy-list", "4"));
+
+        SyntheticCatalog generator = new SyntheticCatalog(seed, products, bxgyList);
+        List<Coupon> coupons = generator.coupons(catalogSize,
+                Integer.parseInt(mix[0]), Integer.parseInt(mix[1]), Integer.parseInt(mix[2]));
+        List<Cart> carts = new ArrayList<>();
+        List<String> cartBodies = new ArrayList<>();
+        loadCarts(opts, generator, carts, cartBodies);
+
+        ExecutorService workers = null;
+        Target target;
+        if ("http".equals(mode)) {
+            target = httpTarget(opts.getOrDefault("url", "http://localhost:8080"), endpoint, coupons, cartBodies);
+        } else {
+            workers = daemonPool(Integer.parseInt(opts.getOrDefault("threads", "4")));
+            target = inProcessTarget(endpoint, coupons, carts, workers);
+        }
+
+        Map<String, Object> report = run(target, rate, warmup, duration);
+
+        Map<String, Object> config = new LinkedHashMap<>();
+        config.put("mode", mode);
+        config.put("endpoint", endpoint);
+        config.put("rate", rate);
+        config.put("warmupSeconds", warmup);
+        config.put("durationSeconds", duration);
+        config.put("seed", seed);
+        config.put("catalogSize", catalogSize);
+        config.put("mix", opts.getOrDefault("mix", "34:33:33"));
+        config.put("products", products);
+        config.put("bxgyList", bxgyList);
+        config.put("carts", opts.getOrDefault("carts", "generated"));
+        config.put("distinctCarts", carts.size());
+
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("label", opts.getOrDefault("label", ""));
+        document.put("timestamp", Instant.now().toString());
+        document.put("config", config);
+        document.putAll(report);
+
+        String json = MAPPER.writeValueAsString(document);
+        Files.writeString(Path.of(opts.getOrDefault("report", "load-report.json")), json);
+        System.out.println(json);
+
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    // Daemon threads so a finished run exits even with requests still stuck in flight
+    private static ExecutorService daemonPool(int threads) {
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "load-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /* -------- SCHEDULE -------- */
+
+    private static Map<String, Object> run(Target target, int rate, int warmupSeconds, int durationSeconds)
+            throws InterruptedException {
+        Recorder recorder = new Recorder(TimeUnit.SECONDS.toNanos(60), 3);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        AtomicLong outstanding = new AtomicLong();
+
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        double periodNanos = 1_000_000_000.0 / rate;
+
+        long sent = 0;
+        for (long i = 0; ; i++) {
+            long intended = start + (long) (i * periodNanos);
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            boolean measured = intended >= measureFrom;
+            if (measured) {
+                sent++;
+            }
+            outstanding.incrementAndGet();
+            CompletableFuture<Boolean> response;
+            try {
+                response = target.send(i);
+            } catch (RuntimeException ex) {
+                response = CompletableFuture.failedFuture(ex);
+            }
+            response.whenComplete((ok, ex) -> {
+                // Measured from the intended start, not from when the request actually went out
+                long latency = System.nanoTime() - intended;
+                if (measured) {
+                    if (ex == null && Boolean.TRUE.equals(ok)) {
+                        recorder.recordValue(Math.min(latency, TimeUnit.SECONDS.toNanos(60)));
+                        completed.incrementAndGet();
+                    } else {
+                        errors.incrementAndGet();
+                    }
+                }
+                outstanding.decrementAndGet();
+            });
+        }
+
+        // Let in-flight requests finish, bounded so a hung target still produces a report
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (outstanding.get() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(10);
+        }
+        long elapsed = System.nanoTime() - measureFrom;
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", micros(histogram.getValueAtPercentile(50)));
+        latency.put("p90", micros(histogram.getValueAtPercentile(90)));
+        latency.put("p99", micros(histogram.getValueAtPercentile(99)));
+        latency.put("p999", micros(histogram.getValueAtPercentile(99.9)));
+        latency.put("max", micros(histogram.getMaxValue()));
+        latency.put("mean", micros((long) histogram.getMean()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("sent", sent);
+        result.put("completed", completed.get());
+        result.put("errors", errors.get());
+        result.put("timedOut", outstanding.get());
+        result.put("throughputPerSecond", completed.get() * 1_000_000_000.0 / elapsed);
+        result.put("latencyMicros", latency);
+        return result;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0;
+    }
+
+    /* -------- TARGETS -------- */
+
+    private static Target inProcessTarget(String endpoint, List<Coupon> coupons, List<Cart> carts,
+                                          ExecutorService workers) {
+        CouponService service = new CouponService();
+        for (Coupon coupon : coupons) {
+            service.createCoupon(coupon);
+        }
+        int couponCount = coupons.size();
+        boolean apply = "apply".equals(endpoint);
+
+        return index -> CompletableFuture.supplyAsync(() -> {
+            // Evaluation sorts and annotates the cart, so every request gets its own copy
+            Cart cart = SyntheticCatalog.copy(carts.get((int) (index % carts.size())));
+            if (apply) {
+                service.applyCouponToCart(1 + index % couponCount, cart);
+            } else {
+                service.getApplicableCoupons(cart);
+            }
+            return true;
+        }, workers);
+    }
+
+    private static Target httpTarget(String baseUrl, String endpoint, List<Coupon> coupons,
+                                     List<String> cartBodies) throws IOException, InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .executor(daemonPool(8))
+                .build();
+
+        // Load the catalog through the public API and keep the ids the server assigned
+        List<Long> couponIds = new ArrayList<>(coupons.size());
+        for (Coupon coupon : coupons) {
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("type", coupon.getType());
+            body.put("details", coupon.getDetails());
+            HttpResponse<String> response = client.send(post(baseUrl + "/coupons", MAPPER.writeValueAsString(body)),
+                    HttpResponse.BodyHandlers.ofString());
+            JsonNode json = MAPPER.readTree(response.body());
+            if (!json.path("success").asBoolean()) {
+                throw new IllegalStateException("Catalog load failed: " + response.body());
+            }
+            couponIds.add(json.path("data").path("id").asLong());
+        }
+
+        boolean apply = "apply".equals(endpoint);
+        return index -> {
+            String body = cartBodies.get((int) (index % cartBodies.size()));
+            String path = apply
+                    ? "/apply-coupon/" + couponIds.get((int) (index % couponIds.size()))
+                    : "/applicable-coupons";
+            return client.sendAsync(post(baseUrl + path, body), HttpResponse.BodyHandlers.ofString())
+                    .thenApply(r -> r.statusCode() == 200 && r.body().contains("\"success\":true"));
+        };
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url))
+                .timeout(Duration.ofSeconds(30))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json))
+                .build();
+    }
+
+    /* -------- CARTS -------- */
+
+    // Replay carts from an NDJSON file (one cart per line) or generate a seeded pool
+    private static void loadCarts(Map<String, String> opts, SyntheticCatalog generator,
+                                  List<Cart> carts, List<String> bodies) throws IOException {
+        String file = opts.get("carts");
+        if (file != null) {
+            for (String line : Files.readAllLines(Path.of(file))) {
+                if (!line.isBlank()) {
+                    carts.add(MAPPER.readValue(line, Cart.class));
+                    bodies.add(line);
+                }
+            }
+            if (carts.isEmpty()) {
+                throw new IllegalArgumentException("No carts in " + file);
+            }
+            return;
+        }
+
+        int lines = Integer.parseInt(opts.getOrDefault("cart-lines", "20"));
+        int pool = Integer.parseInt(opts.getOrDefault("cart-pool", "1000"));
+        for (int i = 0; i < pool; i++) {
+            Cart cart = generator.cart(lines, i);
+            carts.add(cart);
+            bodies.add(MAPPER.writeValueAsString(cart));
+        }
+    }
+}
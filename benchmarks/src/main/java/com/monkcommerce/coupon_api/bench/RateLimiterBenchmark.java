@@ -0,0 +1,50 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.ratelimit.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * RateLimiter.tryAcquire cost: one hot client per thread, and many clients cycling through
+ * a table that is smaller than the client population.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+    RateLimiter limiter;
+    String[] clients;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        limiter = new RateLimiter(1_000_000, 1_000, 4096);
+        clients = new String[16_384];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = "10.0." + (i >> 8) + "." + (i & 255);
+        }
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long sameClient() {
+        return limiter.tryAcquire(clients[0], System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public long manyClients(Cursor cursor) {
+        String client = clients[cursor.next++ & (clients.length - 1)];
+        return limiter.tryAcquire(client, System.nanoTime());
+    }
+}
@@ -0,0 +1,225 @@
+package com.monkcommerce.coupon_api.bench;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator for synthetic catalogs and carts.
+ *
+ * The same seed and parameters always produce the same coupons and carts, so results
+ * can be compared between builds.
+ */
+public class SyntheticCatalog {
+
+    /**
+     * Share of each coupon type in a generated catalog.
+     */
+    public enum Mix {
+        BALANCED(34, 33, 33),
+        CART_HEAVY(80, 10, 10),
+        PRODUCT_HEAVY(10, 80, 10),
+        BXGY_HEAVY(10, 10, 80);
+
+        final int cartWise;
+        final int productWise;
+        final int bxgy;
+
+        Mix(int cartWise, int productWise, int bxgy) {
+            this.cartWise = cartWise;
+            this.productWise = productWise;
+            this.bxgy = bxgy;
+        }
+    }
+
+    private final long seed;
+    private final int productCardinality;
+    private final int bxgyListLength;
+
+    public SyntheticCatalog(long seed, int productCardinality, int bxgyListLength) {
+        this.seed = seed;
+        this.productCardinality = productCardinality;
+        this.bxgyListLength = bxgyListLength;
+    }
+
+    // Build a service holding `size` active coupons split according to the mix
+    public CouponService build(int size, Mix mix) {
+        return build(size, mix.cartWise, mix.productWise, mix.bxgy);
+    }
+
+    public CouponService build(int size, int cartWeight, int productWeight, int bxgyWeight) {
+        CouponService service = new CouponService();
+        for (Coupon coupon : coupons(size, cartWeight, productWeight, bxgyWeight)) {
+            service.createCoupon(coupon);
+        }
+        return service;
+    }
+
+    // The coupons of a catalog, in creation order, valid to create one after another
+    public List<Coupon> coupons(int size, int cartWeight, int productWeight, int bxgyWeight) {
+        int weights = cartWeight + productWeight + bxgyWeight;
+        int cartCount = size * cartWeight / weights;
+        int productCount = Math.min(size * productWeight / weights, productCardinality);
+        int bxgyCount = size - cartCount - productCount;
+
+        List<Coupon> coupons = new ArrayList<>(size);
+        SplittableRandom random = new SplittableRandom(seed);
+
+        // Strictly increasing threshold -> discount keeps the cart-wise monotonic rules satisfied
+        for (int i = 0; i < cartCount; i++) {
+            coupons.add(cartWise(100 + i * 10, 99.0 * (i + 1) / cartCount));
+        }
+
+        // At most one active coupon per product
+        int[] products = shuffledProducts(random);
+        for (int i = 0; i < productCount; i++) {
+            coupons.add(productWise(products[i], 1 + random.nextInt(50)));
+        }
+
+        // Duplicate buy/get configurations are rejected by the engine, draw another one
+        Set<String> bxgyKeys = new HashSet<>();
+        while (bxgyKeys.size() < bxgyCount) {
+            Coupon coupon = bxgy(random);
+            if (bxgyKeys.add(bxgyKey(coupon.getDetails()))) {
+                coupons.add(coupon);
+            }
+        }
+        return coupons;
+    }
+
+    public Coupon cartWise(int threshold, double discount) {
+        CouponDetails details = new CouponDetails();
+        details.threshold = threshold;
+        details.discount = discount;
+        return coupon(CouponType.CART_WISE, details);
+    }
+
+    public Coupon productWise(int productId, double discount) {
+        CouponDetails details = new CouponDetails();
+        details.productId = productId;
+        details.discount = discount;
+        return coupon(CouponType.PRODUCT_WISE, details);
+    }
+
+    public Coupon rule(String condition, Integer productId, double discount) {
+        CouponDetails details = new CouponDetails();
+        details.condition = condition;
+        details.productId = productId;
+        details.discount = discount;
+        return coupon(CouponType.RULE, details);
+    }
+
+    public Coupon category(String path, double discount) {
+        CouponDetails details = new CouponDetails();
+        details.category = path;
+        details.discount = discount;
+        return coupon(CouponType.CATEGORY, details);
+    }
+
+    // Two-level taxonomy over the product range: Catalog/Low and Catalog/High split it in half
+    public CategoryTaxonomy taxonomy() {
+        int half = Math.max(1, productCardinality / 2);
+        String lines = "Catalog/Low: 1-" + half + "\n"
+                + "Catalog/High: " + (half + 1) + "-" + Math.max(half + 1, productCardinality) + "\n";
+        try {
+            return CategoryTaxonomy.parse(new BufferedReader(new StringReader(lines)), "synthetic");
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public Coupon bxgy(SplittableRandom random) {
+        CouponDetails details = new CouponDetails();
+        details.buyProducts = randomProducts(random, bxgyListLength);
+        details.getProducts = randomProducts(random, Math.max(1, bxgyListLength / 2));
+        details.buyQuantity = 1 + random.nextInt(3);
+        details.getQuantity = 1 + random.nextInt(2);
+        details.repetitionLimit = 1 + random.nextInt(3);
+        return coupon(CouponType.BXGY, details);
+    }
+
+    // Cart of `lines` distinct products drawn from the catalog's product range
+    public Cart cart(int lines, long cartSeed) {
+        SplittableRandom random = new SplittableRandom(seed ^ cartSeed);
+        int[] products = shuffledProducts(random);
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            CartItem item = new CartItem();
+            item.productId = products[i % products.length];
+            item.quantity = 1 + random.nextInt(10);
+            item.price = 1 + random.nextInt(50_000) / 100.0;
+            cart.items.add(item);
+        }
+        return cart;
+    }
+
+    // Deep copy, evaluation sorts and annotates the cart it is given
+    public static Cart copy(Cart cart) {
+        Cart copy = new Cart();
+        copy.items = new ArrayList<>(cart.items.size());
+        for (CartItem item : cart.items) {
+            CartItem line = new CartItem();
+            line.productId = item.productId;
+            line.quantity = item.quantity;
+            line.price = item.price;
+            copy.items.add(line);
+        }
+        return copy;
+    }
+
+    private static String bxgyKey(CouponDetails details) {
+        List<Integer> buy = new ArrayList<>(details.buyProducts);
+        List<Integer> get = new ArrayList<>(details.getProducts);
+        Collections.sort(buy);
+        Collections.sort(get);
+        return buy + "|" + details.buyQuantity + "->" + get + "|" + details.getQuantity;
+    }
+
+    private List<Integer> randomProducts(SplittableRandom random, int length) {
+        List<Integer> ids = new ArrayList<>(length);
+        while (ids.size() < length) {
+            int id = 1 + random.nextInt(productCardinality);
+            if (!ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    private int[] shuffledProducts(SplittableRandom random) {
+        int[] products = new int[productCardinality];
+        for (int i = 0; i < products.length; i++) {
+            products[i] = i + 1;
+        }
+        for (int i = products.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = products[i];
+            products[i] = products[j];
+            products[j] = tmp;
+        }
+        return products;
+    }
+
+    private static Coupon coupon(CouponType type, CouponDetails details) {
+        Coupon coupon = new Coupon();
+        coupon.setType(type);
+        coupon.setDetails(details);
+        return coupon;
+    }
+}
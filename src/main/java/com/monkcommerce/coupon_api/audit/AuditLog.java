@@ -0,0 +1,247 @@
+package com.monkcommerce.coupon_api.audit;
+
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.util.CartFingerprint;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Durable NDJSON log of every successful coupon application, for finance reconciliation.
+ *
+ * Request threads publish into a lock-free AuditRing; a single "audit-writer" thread drains
+ * it in batches into audit-&lt;start millis&gt;.ndjson files, fsyncs every fsync-interval and
+ * rotates once a file reaches max-file-bytes. When the ring is full the overflow policy
+ * decides between waiting, dropping (counted) and appending to audit-spill.ndjson on the
+ * request thread. Line format:
+ *   {"ts":epochMillis,"tenant":"...","coupon_id":1,"cart":"16 hex digits","discount":10.0,"final_price":90.0}
+ */
+@Component
+public class AuditLog {
+
+    private static final Logger log = LoggerFactory.getLogger(AuditLog.class);
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final long IDLE_PARK_NANOS = 1_000_000;
+
+    private final boolean enabled;
+    private final Path dir;
+    private final AuditRing ring;
+    private final OverflowPolicy overflow;
+    private final long maxFileBytes;
+    private final long fsyncNanos;
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Writer thread state
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private final StringBuilder line = new StringBuilder(256);
+    private FileChannel file;
+    private long fileBytes;
+    private long lastSyncNanos;
+    private int fileSeq;
+
+    // Spill file, opened on first use and guarded by its own lock
+    private final Object spillLock = new Object();
+    private FileChannel spill;
+
+    public AuditLog(MeterRegistry registry,
+                    @Value("${coupon.audit.enabled:true}") boolean enabled,
+                    @Value("${coupon.audit.dir:${java.io.tmpdir}/coupon-audit}") Path dir,
+                    @Value("${coupon.audit.capacity:65536}") int capacity,
+                    @Value("${coupon.audit.overflow:drop}") String overflow,
+                    @Value("${coupon.audit.max-file-bytes:67108864}") long maxFileBytes,
+                    @Value("${coupon.audit.fsync-interval:1s}") Duration fsyncInterval) throws IOException {
+        this.enabled = enabled;
+        this.dir = dir;
+        this.ring = new AuditRing(capacity);
+        this.overflow = OverflowPolicy.valueOf(overflow.toUpperCase(Locale.ROOT));
+        this.maxFileBytes = maxFileBytes;
+        this.fsyncNanos = fsyncInterval.toNanos();
+
+        Gauge.builder("coupon.audit.backlog", ring, AuditRing::backlog).register(registry);
+        FunctionCounter.builder("coupon.audit.written", written, AtomicLong::get).register(registry);
+        FunctionCounter.builder("coupon.audit.dropped", dropped, AtomicLong::get).register(registry);
+        FunctionCounter.builder("coupon.audit.spilled", spilled, AtomicLong::get).register(registry);
+
+        if (enabled) {
+            Files.createDirectories(dir);
+            openNextFile();
+            writer = new Thread(this::drainLoop, "audit-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            writer = null;
+        }
+    }
+
+    // Sink that tags records with the tenant; one per catalog
+    public AuditSink sinkFor(String tenant) {
+        return enabled ? (couponId, cart, response) -> publish(tenant, couponId, cart, response) : AuditSink.NONE;
+    }
+
+    public void publish(String tenant, long couponId, Cart cart, ApplyCouponResponse response) {
+        long fingerprint = CartFingerprint.of(cart);
+        long now = System.currentTimeMillis();
+        double discount = response.getTotalDiscount();
+        double finalPrice = response.getFinalPrice();
+        if (ring.offer(tenant, couponId, fingerprint, discount, finalPrice, now)) {
+            return;
+        }
+        switch (overflow) {
+            case BLOCK -> {
+                while (running && !ring.offer(tenant, couponId, fingerprint, discount, finalPrice, now)) {
+                    LockSupport.parkNanos(10_000);
+                }
+            }
+            case DROP -> dropped.incrementAndGet();
+            case SPILL -> spill(tenant, couponId, fingerprint, discount, finalPrice, now);
+        }
+    }
+
+    private void spill(String tenant, long couponId, long fingerprint, double discount, double finalPrice, long now) {
+        AuditRecord record = new AuditRecord();
+        record.tenant = tenant;
+        record.couponId = couponId;
+        record.cartFingerprint = fingerprint;
+        record.discount = discount;
+        record.finalPrice = finalPrice;
+        record.epochMillis = now;
+        StringBuilder json = new StringBuilder(128);
+        record.appendJson(json);
+        ByteBuffer bytes = ByteBuffer.wrap(json.toString().getBytes(StandardCharsets.US_ASCII));
+        synchronized (spillLock) {
+            try {
+                if (spill == null) {
+                    spill = FileChannel.open(dir.resolve("audit-spill.ndjson"),
+                            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                }
+                while (bytes.hasRemaining()) {
+                    spill.write(bytes);
+                }
+                spilled.incrementAndGet();
+            } catch (IOException ex) {
+                dropped.incrementAndGet();
+                log.warn("Could not spill audit record", ex);
+            }
+        }
+    }
+
+    private void drainLoop() {
+        AuditRecord record = new AuditRecord();
+        lastSyncNanos = System.nanoTime();
+        while (running || ring.backlog() > 0) {
+            int batch = 0;
+            try {
+                while (ring.poll(record)) {
+                    append(record);
+                    batch++;
+                }
+                if (buffer.position() > 0) {
+                    flush();
+                }
+                if (System.nanoTime() - lastSyncNanos >= fsyncNanos) {
+                    sync();
+                }
+            } catch (IOException ex) {
+                // The batch in the buffer is lost; keep draining rather than stall the ring
+                log.error("Could not write audit log", ex);
+                buffer.clear();
+            }
+            if (batch == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private void append(AuditRecord record) throws IOException {
+        line.setLength(0);
+        record.appendJson(line);
+        if (buffer.remaining() < line.length()) {
+            flush();
+        }
+        for (int i = 0; i < line.length(); i++) {
+            buffer.put((byte) line.charAt(i));
+        }
+        written.incrementAndGet();
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            fileBytes += file.write(buffer);
+        }
+        buffer.clear();
+        if (fileBytes >= maxFileBytes) {
+            sync();
+            file.close();
+            openNextFile();
+        }
+    }
+
+    private void sync() throws IOException {
+        file.force(false);
+        lastSyncNanos = System.nanoTime();
+    }
+
+    private void openNextFile() throws IOException {
+        String name = "audit-" + System.currentTimeMillis() + "-" + (fileSeq++) + ".ndjson";
+        file = FileChannel.open(dir.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        fileBytes = 0;
+    }
+
+    public long written() {
+        return written.get();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public long spilled() {
+        return spilled.get();
+    }
+
+    // Drains what is already published, then syncs and closes the files
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        writer.join();
+        if (buffer.position() > 0) {
+            flush();
+        }
+        sync();
+        file.close();
+        synchronized (spillLock) {
+            if (spill != null) {
+                spill.force(false);
+                spill.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.monkcommerce.coupon_api.audit;
+
+// Reusable holder for one audit record, filled by AuditRing.poll
+public class AuditRecord {
+    public String tenant;
+    public long couponId;
+    public long cartFingerprint;
+    public double discount;
+    public double finalPrice;
+    public long epochMillis;
+
+    // One NDJSON line, including the trailing newline
+    void appendJson(StringBuilder out) {
+        out.append("{\"ts\":").append(epochMillis)
+                .append(",\"tenant\":\"").append(tenant)
+                .append("\",\"coupon_id\":").append(couponId)
+                .append(",\"cart\":\"");
+        String hex = Long.toHexString(cartFingerprint);
+        for (int i = hex.length(); i < 16; i++) {
+            out.append('0');
+        }
+        out.append(hex)
+                .append("\",\"discount\":").append(discount)
+                .append(",\"final_price\":").append(finalPrice)
+                .append("}\n");
+    }
+}
@@ -0,0 +1,94 @@
+package com.monkcommerce.coupon_api.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer, single-consumer ring of audit records.
+ *
+ * Records are stored in preallocated primitive columns, so publishing allocates nothing.
+ * Each slot carries a sequence number (Vyukov's bounded queue): a producer claims the slot
+ * for position p with a CAS on the tail once the slot's sequence equals p, fills the columns
+ * and releases it by setting the sequence to p + 1; the consumer reads it and hands it back
+ * for the next lap by setting p + capacity. No locks on either side.
+ */
+public class AuditRing {
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    // Only written by the consumer; volatile so backlog() can be read from any thread
+    private volatile long head;
+
+    private final String[] tenants;
+    private final long[] couponIds;
+    private final long[] cartFingerprints;
+    private final double[] discounts;
+    private final double[] finalPrices;
+    private final long[] timestamps;
+
+    public AuditRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        mask = size - 1;
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        tenants = new String[size];
+        couponIds = new long[size];
+        cartFingerprints = new long[size];
+        discounts = new double[size];
+        finalPrices = new double[size];
+        timestamps = new long[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // False when the ring is full
+    public boolean offer(String tenant, long couponId, long cartFingerprint, double discount, double finalPrice,
+                         long epochMillis) {
+        for (;;) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long lag = sequences.get(slot) - position;
+            if (lag < 0) {
+                return false;
+            }
+            if (lag == 0 && tail.compareAndSet(position, position + 1)) {
+                tenants[slot] = tenant;
+                couponIds[slot] = couponId;
+                cartFingerprints[slot] = cartFingerprint;
+                discounts[slot] = discount;
+                finalPrices[slot] = finalPrice;
+                timestamps[slot] = epochMillis;
+                sequences.lazySet(slot, position + 1);
+                return true;
+            }
+        }
+    }
+
+    // Moves the oldest record into the holder; false when none is published yet. Consumer only.
+    public boolean poll(AuditRecord into) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+        into.tenant = tenants[slot];
+        into.couponId = couponIds[slot];
+        into.cartFingerprint = cartFingerprints[slot];
+        into.discount = discounts[slot];
+        into.finalPrice = finalPrices[slot];
+        into.epochMillis = timestamps[slot];
+        tenants[slot] = null;
+        sequences.lazySet(slot, head + capacity());
+        head++;
+        return true;
+    }
+
+    // Records published or being published and not yet polled
+    public long backlog() {
+        return tail.get() - head;
+    }
+}
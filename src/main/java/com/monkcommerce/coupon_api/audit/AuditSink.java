@@ -0,0 +1,13 @@
+package com.monkcommerce.coupon_api.audit;
+
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+
+// Receives every successful coupon application of a catalog; must not block the caller
+@FunctionalInterface
+public interface AuditSink {
+
+    AuditSink NONE = (couponId, cart, response) -> { };
+
+    void applied(long couponId, Cart cart, ApplyCouponResponse response);
+}
@@ -0,0 +1,11 @@
+package com.monkcommerce.coupon_api.audit;
+
+// What a request thread does when the audit ring is full
+public enum OverflowPolicy {
+    // Wait for the writer to free a slot
+    BLOCK,
+    // Discard the record and count it
+    DROP,
+    // Append the record to a spill file on the request thread
+    SPILL
+}
@@ -0,0 +1,67 @@
+package com.monkcommerce.coupon_api.config;
+
+import com.monkcommerce.coupon_api.ratelimit.RateLimitInterceptor;
+import com.monkcommerce.coupon_api.ratelimit.RateLimiter;
+import com.monkcommerce.coupon_api.util.CouponBinaryMessageConverter;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverters;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    private final String clientHeader;
+    private final Set<String> apiKeys;
+    private final int maxClients;
+    private final double applicablePerSecond;
+    private final int applicableBurst;
+    private final double applyPerSecond;
+    private final int applyBurst;
+
+    public WebConfig(@Value("${coupon.ratelimit.client-header:X-Api-Key}") String clientHeader,
+                     @Value("${coupon.ratelimit.api-keys:}") String[] apiKeys,
+                     @Value("${coupon.ratelimit.max-clients:65536}") int maxClients,
+                     @Value("${coupon.ratelimit.applicable-coupons.per-second:0}") double applicablePerSecond,
+                     @Value("${coupon.ratelimit.applicable-coupons.burst:1}") int applicableBurst,
+                     @Value("${coupon.ratelimit.apply-coupon.per-second:0}") double applyPerSecond,
+                     @Value("${coupon.ratelimit.apply-coupon.burst:1}") int applyBurst) {
+        this.clientHeader = clientHeader;
+        this.apiKeys = new HashSet<>();
+        for (String key : apiKeys) {
+            if (!key.isBlank()) {
+                this.apiKeys.add(key.trim());
+            }
+        }
+        this.maxClients = maxClients;
+        this.applicablePerSecond = applicablePerSecond;
+        this.applicableBurst = applicableBurst;
+        this.applyPerSecond = applyPerSecond;
+        this.applyBurst = applyBurst;
+    }
+
+    @Override
+    public void configureMessageConverters(HttpMessageConverters.ServerBuilder builder) {
+        builder.addCustomConverter(new CouponBinaryMessageConverter());
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        // One limiter per endpoint; a rate of 0 leaves the endpoint unlimited
+        if (applicablePerSecond > 0) {
+            registry.addInterceptor(new RateLimitInterceptor(
+                    new RateLimiter(applicablePerSecond, applicableBurst, maxClients), clientHeader, apiKeys))
+                    .addPathPatterns("/applicable-coupons");
+        }
+        if (applyPerSecond > 0) {
+            registry.addInterceptor(new RateLimitInterceptor(
+                    new RateLimiter(applyPerSecond, applyBurst, maxClients), clientHeader, apiKeys))
+                    .addPathPatterns("/apply-coupon/**", "/apply-coupons");
+        }
+    }
+}
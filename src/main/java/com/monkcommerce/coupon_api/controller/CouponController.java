@@ -1,28 +1,50 @@
 package com.monkcommerce.coupon_api.controller;
 
 import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.idempotency.IdempotencyCache;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
 import com.monkcommerce.coupon_api.model.ApiResponse;
 import com.monkcommerce.coupon_api.model.Coupon;
-import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.taxonomy.Taxonomy;
+import com.monkcommerce.coupon_api.tenant.TenantCatalogs;
+import com.monkcommerce.coupon_api.util.CouponBinaryCodec;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
 import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.response.CatalogStagingResponse;
+import com.monkcommerce.coupon_api.model.response.CouponStatsResponse;
+import com.monkcommerce.coupon_api.model.response.CustomerListResponse;
+import com.monkcommerce.coupon_api.model.response.GeneratedCodesResponse;
+import com.monkcommerce.coupon_api.model.response.RedemptionsResponse;
+import com.monkcommerce.coupon_api.model.response.TaxonomyResponse;
 
 import java.util.List;
 
 @RestController
 public class CouponController {
 
-    private final CouponService service = new CouponService();
+    private final TenantCatalogs catalogs;
+    private final IdempotencyCache idempotency;
+    private final Taxonomy taxonomy;
+
+    public CouponController(TenantCatalogs catalogs, IdempotencyCache idempotency, Taxonomy taxonomy) {
+        this.catalogs = catalogs;
+        this.idempotency = idempotency;
+        this.taxonomy = taxonomy;
+    }
 
     /* ---------------- COUPON CRUD ---------------- */
 
     @PostMapping("/coupons")
-    public ApiResponse<Coupon> create(@RequestBody Coupon coupon) {
+    public ApiResponse<Coupon> create(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
+            @RequestBody Coupon coupon) {
         try {
-            return new ApiResponse<>(service.createCoupon(coupon));
+            Coupon created = catalogs.call(tenant, s -> s.createCoupon(coupon));
+            return new ApiResponse<>(created);
         } catch (CouponException ex) {
             return new ApiResponse<>(ex.getMessage());
         } catch (Exception ex) {
@@ -32,18 +54,23 @@ public class CouponController {
 
     @GetMapping("/coupons")
     public ApiResponse<List<Coupon>> getCoupon(
-            @RequestParam(value = "active", defaultValue = "true") boolean active) {
+            @RequestParam(value = "active", defaultValue = "true") boolean active,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
         try {
-            return new ApiResponse<>(service.getCoupon(active));
+            List<Coupon> coupons = catalogs.call(tenant, s -> s.getCoupon(active));
+            return new ApiResponse<>(coupons);
         } catch (Exception ex) {
             return new ApiResponse<>("Internal server error: " + ex.getMessage());
         }
     }
 
     @GetMapping("/coupons/{id}")
-    public ApiResponse<Coupon> getCouponById(@PathVariable long id) {
+    public ApiResponse<Coupon> getCouponById(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
         try {
-            return new ApiResponse<>(service.getCouponById(id));
+            Coupon coupon = catalogs.call(tenant, s -> s.getCouponById(id));
+            return new ApiResponse<>(coupon);
         } catch (CouponException ex) {
             return new ApiResponse<>(ex.getMessage());
         } catch (Exception ex) {
@@ -54,9 +81,11 @@ public class CouponController {
     @PutMapping("/coupons/{id}")
     public ApiResponse<Coupon> updateCouponById(
             @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
             @RequestBody Coupon coupon) {
         try {
-            return new ApiResponse<>(service.updateCouponById(id, coupon));
+            Coupon updated = catalogs.call(tenant, s -> s.updateCouponById(id, coupon));
+            return new ApiResponse<>(updated);
         } catch (CouponException ex) {
             return new ApiResponse<>(ex.getMessage());
         } catch (Exception ex) {
@@ -65,9 +94,341 @@ public class CouponController {
     }
 
     @DeleteMapping("/coupons/{id}")
-    public ApiResponse<Coupon> deleteCoupon(@PathVariable long id) {
+    public ApiResponse<Coupon> deleteCoupon(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            Coupon deleted = catalogs.call(tenant, s -> s.deleteCoupon(id));
+            return new ApiResponse<>(deleted);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /* ---------------- COUPON CODES ---------------- */
+
+    @GetMapping("/coupons/code/{code}")
+    public ApiResponse<Coupon> getCouponByCode(
+            @PathVariable String code,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            Coupon coupon = catalogs.call(tenant, s -> s.getCouponByCode(code));
+            return new ApiResponse<>(coupon);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /coupons/{id}/codes?count=N&prefix=P
+     * Generate N unique single-use codes for a coupon
+     */
+    @PostMapping("/coupons/{id}/codes")
+    public ApiResponse<GeneratedCodesResponse> generateCodes(
+            @PathVariable long id,
+            @RequestParam("count") int count,
+            @RequestParam(value = "prefix", required = false) String prefix,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            List<String> codes = catalogs.call(tenant, s -> s.generateCodes(id, count, prefix));
+            return new ApiResponse<>(new GeneratedCodesResponse(id, codes));
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /coupons/code/{code}/redeem?customerId=
+     * Record a use of a code; single-use codes are then spent
+     */
+    @PostMapping("/coupons/code/{code}/redeem")
+    public ApiResponse<Coupon> redeemCode(
+            @PathVariable String code,
+            @RequestParam(required = false) Long customerId,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            Coupon coupon = catalogs.call(tenant, s -> s.redeemCode(code, customerId));
+            return new ApiResponse<>(coupon);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /* ---------------- CUSTOMER LISTS ---------------- */
+
+    /**
+     * PUT /coupons/{id}/customers
+     * Restrict a coupon to a JSON array of numeric customer ids
+     */
+    @PutMapping("/coupons/{id}/customers")
+    public ApiResponse<CustomerListResponse> setEligibleCustomers(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
+            @RequestBody long[] customerIds) {
+        try {
+            CustomerListResponse customers = catalogs.call(tenant, s -> s.setEligibleCustomers(id, customerIds));
+            return new ApiResponse<>(customers);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * GET /coupons/{id}/customers
+     * Size of a coupon's customer list; 0 when it is open to everyone
+     */
+    @GetMapping("/coupons/{id}/customers")
+    public ApiResponse<CustomerListResponse> getEligibleCustomers(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            CustomerListResponse customers = catalogs.call(tenant, s -> s.getEligibleCustomers(id));
+            return new ApiResponse<>(customers);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * DELETE /coupons/{id}/customers
+     * Open a coupon to every customer again
+     */
+    @DeleteMapping("/coupons/{id}/customers")
+    public ApiResponse<CustomerListResponse> clearEligibleCustomers(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            CustomerListResponse customers = catalogs.call(tenant, s -> s.clearEligibleCustomers(id));
+            return new ApiResponse<>(customers);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /* ---------------- REDEMPTIONS ---------------- */
+
+    /**
+     * GET /coupons/{id}/redemptions
+     * Committed and reserved redemptions of a coupon
+     */
+    @GetMapping("/coupons/{id}/redemptions")
+    public ApiResponse<RedemptionsResponse> getRedemptions(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            RedemptionsResponse redemptions = catalogs.call(tenant, s -> s.getRedemptions(id));
+            return new ApiResponse<>(redemptions);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /reservations/{id}/commit
+     * Turn a reservation made by /apply-coupon/{id}?reserve=true into a redemption
+     */
+    @PostMapping("/reservations/{id}/commit")
+    public ApiResponse<RedemptionsResponse> commitReservation(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            RedemptionsResponse redemptions = catalogs.call(tenant, s -> s.commitReservation(id));
+            return new ApiResponse<>(redemptions);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /reservations/{id}/release
+     * Give a reserved redemption back, e.g. when checkout is abandoned
+     */
+    @PostMapping("/reservations/{id}/release")
+    public ApiResponse<RedemptionsResponse> releaseReservation(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            RedemptionsResponse redemptions = catalogs.call(tenant, s -> s.releaseReservation(id));
+            return new ApiResponse<>(redemptions);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /* ---------------- ANALYTICS ---------------- */
+
+    /**
+     * GET /coupons/{id}/stats
+     * Evaluations, wins, applies and discount of a coupon per window (minute, hour, day, all)
+     */
+    @GetMapping("/coupons/{id}/stats")
+    public ApiResponse<List<CouponStatsResponse>> getCouponStats(
+            @PathVariable long id,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
         try {
-            return new ApiResponse<>(service.deleteCoupon(id));
+            List<CouponStatsResponse> stats = catalogs.call(tenant, s -> s.getCouponStats(id));
+            return new ApiResponse<>(stats);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * GET /analytics/top-coupons?metric=wins&window=hour&limit=10
+     * Top coupons by evaluations, wins, applies or discount over a window
+     */
+    @GetMapping("/analytics/top-coupons")
+    public ApiResponse<List<CouponStatsResponse>> topCoupons(
+            @RequestParam(defaultValue = "applies") String metric,
+            @RequestParam(defaultValue = "hour") String window,
+            @RequestParam(defaultValue = "10") int limit,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            List<CouponStatsResponse> top = catalogs.call(tenant, s -> s.topCoupons(metric, window, limit));
+            return new ApiResponse<>(top);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /* ---------------- TAXONOMY ---------------- */
+
+    /**
+     * GET /taxonomy
+     * Source, size and footprint of the product taxonomy used by CATEGORY coupons
+     */
+    @GetMapping("/taxonomy")
+    public ApiResponse<TaxonomyResponse> getTaxonomy() {
+        try {
+            TaxonomyResponse current = new TaxonomyResponse(taxonomy.get());
+            return new ApiResponse<>(current);
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /taxonomy/reload
+     * Load the taxonomy file again and swap it in for every tenant; the old one stays on failure
+     */
+    @PostMapping("/taxonomy/reload")
+    public ApiResponse<TaxonomyResponse> reloadTaxonomy() {
+        try {
+            TaxonomyResponse reloaded = new TaxonomyResponse(taxonomy.reload());
+            return new ApiResponse<>(reloaded);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /* ---------------- CATALOG STAGING ---------------- */
+
+    /**
+     * POST /catalog/staging
+     * Stage a whole replacement catalog; it is validated and indexed in the background
+     * while the live catalog keeps serving
+     */
+    @PostMapping("/catalog/staging")
+    public ApiResponse<CatalogStagingResponse> stageCatalog(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
+            @RequestBody List<Coupon> coupons) {
+        try {
+            CatalogStagingResponse staging = catalogs.stage(tenant, "api", () -> coupons);
+            return new ApiResponse<>(staging);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * GET /catalog/staging
+     * State of the staged catalog: building, ready to swap in, or failed with the reason
+     */
+    @GetMapping("/catalog/staging")
+    public ApiResponse<CatalogStagingResponse> getStagedCatalog(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            CatalogStagingResponse staging = catalogs.staging(tenant);
+            return new ApiResponse<>(staging);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * DELETE /catalog/staging
+     * Discard the staged catalog
+     */
+    @DeleteMapping("/catalog/staging")
+    public ApiResponse<CatalogStagingResponse> discardStagedCatalog(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            CatalogStagingResponse staging = catalogs.discardStaged(tenant);
+            return new ApiResponse<>(staging);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /catalog/swap
+     * Make the staged catalog live in one step, keeping the replaced one for rollback
+     */
+    @PostMapping("/catalog/swap")
+    public ApiResponse<CatalogStagingResponse> swapCatalog(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            CatalogStagingResponse staging = catalogs.swap(tenant);
+            return new ApiResponse<>(staging);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /catalog/rollback
+     * Swap the previously live catalog back in
+     */
+    @PostMapping("/catalog/rollback")
+    public ApiResponse<CatalogStagingResponse> rollbackCatalog(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant) {
+        try {
+            CatalogStagingResponse staging = catalogs.rollback(tenant);
+            return new ApiResponse<>(staging);
         } catch (CouponException ex) {
             return new ApiResponse<>(ex.getMessage());
         } catch (Exception ex) {
@@ -77,12 +438,15 @@ public class CouponController {
 
     /* ---------------- APPLICABLE COUPONS ---------------- */
 
-    @PostMapping("/applicable-coupons")
+    // Endpoints with a binary form list JSON first, so JSON stays the default for Accept: */*
+
+    @PostMapping(value = "/applicable-coupons", produces = {MediaType.APPLICATION_JSON_VALUE, CouponBinaryCodec.MEDIA_TYPE})
     public ApiResponse<ApplicableCouponsResponse> getApplicableCoupons(
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
             @RequestBody Cart cart) {
         try {
             ApplicableCouponsResponse response =
-                    service.getApplicableCoupons(cart);
+                    catalogs.call(tenant, s -> s.getApplicableCoupons(cart));
             return new ApiResponse<>(response);
         } catch (CouponException ex) {
             return new ApiResponse<>(ex.getMessage());
@@ -92,16 +456,70 @@ public class CouponController {
     }
 
     /**
-     * POST /apply-coupon/{id}
-     * Apply a specific coupon to the cart
+     * POST /apply-coupon/{id}?reserve=true
+     * Apply a specific coupon to the cart, optionally reserving one of its redemptions.
+     * Retries carrying the same Idempotency-Key get the first response back without
+     * re-evaluating or reserving again.
      */
-    @PostMapping("/apply-coupon/{id}")
+    @PostMapping(value = "/apply-coupon/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, CouponBinaryCodec.MEDIA_TYPE})
     public ApiResponse<ApplyCouponResponse> applyCoupon(
             @PathVariable long id,
+            @RequestParam(defaultValue = "false") boolean reserve,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
+            @RequestHeader(value = IdempotencyCache.HEADER, required = false) String idempotencyKey,
+            @RequestBody Cart cart) {
+
+        try {
+            ApplyCouponResponse updatedCart;
+            if (idempotencyKey == null) {
+                updatedCart = catalogs.call(tenant,
+                        s -> reserve ? s.reserveCoupon(id, cart) : s.applyCouponToCart(id, cart));
+            } else {
+                String scope = tenant == null || tenant.isBlank() ? CouponMetrics.DEFAULT_TENANT : tenant;
+                updatedCart = idempotency.execute(scope, idempotencyKey, IdempotencyCache.fingerprint(id, reserve, cart),
+                        () -> catalogs.call(tenant, s -> reserve ? s.reserveCoupon(id, cart) : s.applyCouponToCart(id, cart)));
+            }
+            return new ApiResponse<>(updatedCart);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /apply-coupons?ids=12,7,3
+     * Apply several coupons to the cart in the given order, each seeing the cart
+     * after the ones before it, as one consolidated result
+     */
+    @PostMapping(value = "/apply-coupons", produces = {MediaType.APPLICATION_JSON_VALUE, CouponBinaryCodec.MEDIA_TYPE})
+    public ApiResponse<ApplyCouponResponse> applyCoupons(
+            @RequestParam List<Long> ids,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
+            @RequestBody Cart cart) {
+
+        try {
+            ApplyCouponResponse updatedCart = catalogs.call(tenant, s -> s.applyCouponsToCart(ids, cart));
+            return new ApiResponse<>(updatedCart);
+        } catch (CouponException ex) {
+            return new ApiResponse<>(ex.getMessage());
+        } catch (Exception ex) {
+            return new ApiResponse<>("Internal server error: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * POST /apply-coupon/code/{code}
+     * Apply the coupon behind a code to the cart
+     */
+    @PostMapping(value = "/apply-coupon/code/{code}", produces = {MediaType.APPLICATION_JSON_VALUE, CouponBinaryCodec.MEDIA_TYPE})
+    public ApiResponse<ApplyCouponResponse> applyCouponByCode(
+            @PathVariable String code,
+            @RequestHeader(value = TenantCatalogs.HEADER, required = false) String tenant,
             @RequestBody Cart cart) {
 
         try {
-            ApplyCouponResponse updatedCart = service.applyCouponToCart(id, cart);
+            ApplyCouponResponse updatedCart = catalogs.call(tenant, s -> s.applyCouponByCode(code, cart));
             return new ApiResponse<>(updatedCart);
         } catch (CouponException ex) {
             return new ApiResponse<>(ex.getMessage());
@@ -110,4 +528,13 @@ public class CouponController {
         }
     }
 
+    /**
+     * Cart payloads are validated while they are parsed, before the handler runs,
+     * so parse-time rejections are reported here in the usual response shape.
+     */
+    @ExceptionHandler(CouponException.class)
+    public ApiResponse<Object> handleCouponException(CouponException ex) {
+        return new ApiResponse<>(ex.getMessage());
+    }
+
 }
@@ -1,31 +1,39 @@
 package com.monkcommerce.coupon_api.coupon;
 
 import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.metrics.BxGyEvaluationEvent;
 import com.monkcommerce.coupon_api.model.Coupon;
 import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.rule.BxGyRule;
+import com.monkcommerce.coupon_api.store.CouponStore;
+import com.monkcommerce.coupon_api.store.ProductSetPool;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Collections;
+import java.util.List;
 
 public class BxGyCoupon implements CouponHandler {
 
+    private static final long NONE = -1L;
+
     private final Coupon coupon;
-    private final String uniquenessKey;
 
     /**
      * Index used to ensure uniqueness of BXGY coupons
-     * Format: buyProductIds|buyQty -> getProductIds|getQty
+     * Key   : BxGyRule.uniquenessKey (hash of buyProductIds|buyQty -> getProductIds|getQty)
+     * Value : couponId
      */
-    private final Set<String> bxgyIndex;
-    private final Map<String, Coupon> couponMap;
+    private final LongLongHashMap bxgyIndex;
+    private final ProductSetPool productSets;
+    private final CouponStore store;
 
-    public BxGyCoupon(Coupon coupon, Set<String> bxgyIndex, Map<String, Coupon> couponMap) {
-        this.uniquenessKey = generateUniqueKey(coupon);
+    public BxGyCoupon(Coupon coupon, LongLongHashMap bxgyIndex, ProductSetPool productSets, CouponStore store) {
         this.coupon = coupon;
         this.bxgyIndex = bxgyIndex;
-        this.couponMap = couponMap;
+        this.productSets = productSets;
+        this.store = store;
     }
 
     @Override
@@ -38,34 +46,11 @@ public class BxGyCoupon implements CouponHandler {
         }
 
         // Index the active coupon after successful validation
-        if(coupon.getDetails().isActive()) {
-            bxgyIndex.add(uniquenessKey);
-            couponMap.put(uniquenessKey, coupon);
+        if(coupon.isActive()) {
+            index(coupon);
         }
     }
 
-    // Generate unique key for BxGy coupon || uniqueness key format: buyProductIds|buyQty -> getProductIds|getQty
-    private String generateUniqueKey(Coupon temCoupon) {
-        // Extract BXGY configuration
-        List<Integer> buyProductIds = temCoupon.getDetails().buyProducts;
-        List<Integer> getProductIds = temCoupon.getDetails().getProducts;
-        Integer buyQuantity = temCoupon.getDetails().buyQuantity;
-        Integer getQuantity = temCoupon.getDetails().getQuantity;
-
-        // Generate deterministic key for uniqueness check
-        String buyProductKey = buyProductIds.stream()
-                .sorted()
-                .map(String::valueOf)
-                .collect(Collectors.joining(","));
-
-        String getProductKey = getProductIds.stream()
-                .sorted()
-                .map(String::valueOf)
-                .collect(Collectors.joining(","));
-
-        return buyProductKey + "|" + buyQuantity + "->" + getProductKey + "|" + getQuantity;
-    }
-
     // Validate the coupon before create and update
     private String validation(Coupon temCoupon) {
         // Extract BXGY configuration
@@ -100,10 +85,16 @@ public class BxGyCoupon implements CouponHandler {
             return "BXGY coupon must have a valid repetitionLimit (> 0)";
         }
 
-        String newKey = generateUniqueKey(temCoupon);
         // Validation: Ensure no duplicate BXGY coupon exists
-        if (bxgyIndex.contains(newKey)) {
-            return "BXGY coupon already exists with the same buy/get products and quantities";
+        BxGyRule rule = (BxGyRule) temCoupon.getRule();
+        long existingId = bxgyIndex.get(rule.uniquenessKey(), NONE);
+        if (existingId != NONE) {
+            BxGyRule existing = (BxGyRule) store.get(existingId).getRule();
+            if (existing.sameOffer(rule)) {
+                return "BXGY coupon already exists with the same buy/get products and quantities";
+            }
+            // Different offers with the same 64-bit key: never expected in practice, refuse rather than overwrite
+            return "BXGY coupon key collides with coupon " + existingId + "; change its products or quantities";
         }
 
         return null;
@@ -112,77 +103,151 @@ public class BxGyCoupon implements CouponHandler {
     @Override
     public void validateAndUpdate(Coupon updateCoupon) {
 
-        if(bxgyIndex.contains(uniquenessKey)) {
-            bxgyIndex.remove(uniquenessKey);
+        // Take the current coupon out of the index so it does not count as its own duplicate
+        boolean indexed = isIndexed(coupon);
+        if(indexed) {
+            unindex(coupon);
         }
 
         String exString = validation(updateCoupon);
         if(exString != null) {
-            if(coupon.getDetails().isActive()) {
-                bxgyIndex.add(uniquenessKey);
+            if(indexed) {
+                index(coupon);
             }
             throw new CouponException(exString);
         } 
 
-        // unique key for update BxGy coupon 
-        String newKey = generateUniqueKey(updateCoupon);
-
         // Index the active coupon after successful validation
-        if(updateCoupon.getDetails().isActive()) {
-            bxgyIndex.add(newKey);
-            couponMap.put(newKey, updateCoupon);
+        if(updateCoupon.isActive()) {
+            index(updateCoupon);
         }
     }
 
     @Override
     public void removeFromIndex() {
-        // unique key for update BxGy coupon 
-        String newKey = generateUniqueKey(coupon);
-        if(bxgyIndex.contains(newKey)) {
-            bxgyIndex.remove(newKey);
-            couponMap.remove(newKey);
+        if(isIndexed(coupon)) {
+            unindex(coupon);
         }
     }
 
-    // Get Discount after applyting coupon on cart.
-    public ApplyCouponResponse getApplyCouponOnCart(Coupon coupon, Cart cart) {
+    private boolean isIndexed(Coupon temCoupon) {
+        if (!temCoupon.isActive()) {
+            return false;
+        }
+        long key = ((BxGyRule) temCoupon.getRule()).uniquenessKey();
+        return bxgyIndex.get(key, NONE) == temCoupon.getId();
+    }
 
-        Set<Integer> buyIds = new HashSet<>(coupon.getDetails().buyProducts);
-        Set<Integer> getIds = new HashSet<>(coupon.getDetails().getProducts);
+    // Index under the precomputed key, sharing product arrays with other coupons. The request's
+    // boxed lists go once the coupon is bound; its details are then rebuilt over the interned arrays.
+    private void index(Coupon temCoupon) {
+        BxGyRule rule = (BxGyRule) temCoupon.getRule();
+        BxGyRule pooled = rule.withProductSets(
+                productSets.intern(rule.buyProducts()),
+                productSets.intern(rule.getProducts()));
+        temCoupon.setRule(pooled);
+        bxgyIndex.put(pooled.uniquenessKey(), temCoupon.getId(), NONE);
+    }
 
-        int totalBuyQty = cart.items.stream()
-            .filter(item -> buyIds.contains(item.productId))
-            .mapToInt(item -> item.quantity)
-            .sum();
+    private void unindex(Coupon temCoupon) {
+        BxGyRule rule = (BxGyRule) temCoupon.getRule();
+        bxgyIndex.remove(rule.uniquenessKey(), NONE);
+        productSets.release(rule.buyProducts());
+        productSets.release(rule.getProducts());
+    }
 
-        double totalPrice = 0.0, totalDiscount = 0.0;
+    // Get Discount after applyting coupon on cart, with each line's share in its totalDiscount
+    public ApplyCouponResponse getApplyCouponOnCart(Coupon coupon, Cart cart) {
+        return apply(coupon.getId(), (BxGyRule) coupon.getRule(), cart);
+    }
 
+    // Same, from the rule alone (see CouponView); the id only labels the JFR event
+    public static ApplyCouponResponse apply(long couponId, BxGyRule rule, Cart cart) {
+        for (int i = 0, n = cart.items.size(); i < n; i++) {
+            CartItem item = cart.items.get(i);
+            if (item != null) {
+                item.totalDiscount = 0.0;
+            }
+        }
         Collections.sort(cart.items, (a, b) -> Double.compare(b.price, a.price));
+        double totalDiscount = evaluate(couponId, rule, cart.items, null, true);
+        double totalPrice = 0.0;
+        for (CartItem item : cart.items) {
+            totalPrice += item.quantity * item.price;
+        }
+        return new ApplyCouponResponse(
+                cart.items,
+                totalPrice,
+                totalDiscount,
+                totalPrice-totalDiscount
+        );
+    }
+
+    /**
+     * Discount-only evaluation for ranking: the same total getApplyCouponOnCart gives, without
+     * reordering the cart or writing line discounts, and without allocating. byPrice is the
+     * cart's line order from priceOrder, computed once and shared by every BXGY coupon.
+     */
+    public static double discountOf(long couponId, BxGyRule rule, List<CartItem> items, int[] byPrice) {
+        return evaluate(couponId, rule, items, byPrice, false);
+    }
+
+    // Line indexes by descending price, ties in cart order (the order getApplyCouponOnCart sorts to)
+    public static int[] priceOrder(List<CartItem> items) {
+        int size = items.size();
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            double price = items.get(i).price;
+            int at = i;
+            while (at > 0 && items.get(order[at - 1]).price < price) {
+                order[at] = order[at - 1];
+                at--;
+            }
+            order[at] = i;
+        }
+        return order;
+    }
+
+    // Walks the lines from the most expensive, the i-th being items[byPrice[i]] (items[i] when
+    // byPrice is null), and sets each line's totalDiscount when attribute is set.
+    private static double evaluate(long couponId, BxGyRule rule, List<CartItem> items, int[] byPrice, boolean attribute) {
+
+        BxGyEvaluationEvent event = new BxGyEvaluationEvent();
+        event.begin();
+
+        int totalBuyQty = 0;
+        for (CartItem item : items) {
+            if (item != null && rule.isBuyProduct(item.productId)) {
+                totalBuyQty += item.quantity;
+            }
+        }
 
-        int repetitionLimit = coupon.getDetails().repetitionLimit;
-        int buyQuantity = coupon.getDetails().buyQuantity, getQuantity = coupon.getDetails().getQuantity;
+        double totalDiscount = 0.0;
 
-        int i=0, size = cart.items.size(), maxIdx = -1;
-        double maxPartialDiscout = 0.00;
+        int repetitionLimit = rule.repetitionLimit();
+        int buyQuantity = rule.buyQuantity(), getQuantity = rule.getQuantity();
+
+        int i=0, size = items.size(), maxIdx = -1;
+        double maxPartialDiscout = 0.00, maxIdxDiscount = 0.00;
 
         l:
         while(i < size) {
-            CartItem item = cart.items.get(i);
+            CartItem item = items.get(byPrice == null ? i : byPrice[i]);
             if (item == null || item.price<=0 || item.quantity <= 0) throw new CouponException("Invalid cart item data");
-            totalPrice += item.quantity * item.price;
             int currQty = item.quantity;
             int otherBuyQty = totalBuyQty - currQty;
             if(totalBuyQty < buyQuantity || repetitionLimit <= 0) {
                 i++;
                 continue;
             }
+            double lineDiscount = 0.0;
             int factor, freeItem; 
-            if(getIds.contains(item.productId) && buyIds.contains(item.productId)) {
+            if(rule.isGetProduct(item.productId) && rule.isBuyProduct(item.productId)) {
                 factor = Math.max(Math.min(otherBuyQty / buyQuantity, repetitionLimit), 0);
                 repetitionLimit -= factor;
                 freeItem = factor * getQuantity;
                 if(freeItem >= currQty) {
-                    item.totalDiscount = currQty * item.price;
+                    lineDiscount = currQty * item.price;
                     totalBuyQty -= factor * buyQuantity;
                     totalBuyQty -= currQty;
                 } else {
@@ -192,59 +257,72 @@ public class BxGyCoupon implements CouponHandler {
                     repetitionLimit -= factor;
                     currDiscount += (factor * getQuantity) * item.price;
                     totalBuyQty = totalBuyQty - factor * (buyQuantity + getQuantity);
-                    item.totalDiscount = currDiscount;
+                    lineDiscount = currDiscount;
                     if(totalBuyQty > buyQuantity && repetitionLimit > 0) {
                         maxIdx = i;
+                        maxIdxDiscount = lineDiscount;
                         maxPartialDiscout = (totalBuyQty - buyQuantity) * item.price;
-                        totalDiscount += item.totalDiscount;
+                        if (attribute) {
+                            item.totalDiscount = lineDiscount;
+                        }
+                        totalDiscount += lineDiscount;
                         i++;
                         break l;
                     }
                 }
-            } else if(getIds.contains(item.productId)) {
+            } else if(rule.isGetProduct(item.productId)) {
                 factor = Math.max(Math.min(totalBuyQty / buyQuantity, repetitionLimit), 0);
                 repetitionLimit -= factor;
                 freeItem = factor * getQuantity;
                 if(freeItem >= currQty) {
-                    item.totalDiscount = currQty * item.price;
+                    lineDiscount = currQty * item.price;
                     totalBuyQty -= factor * buyQuantity;
                     totalBuyQty -= currQty;
                 } else {
-                    item.totalDiscount = freeItem * item.price;
+                    lineDiscount = freeItem * item.price;
                     totalBuyQty -= factor * buyQuantity;
                 }
             }
-            totalDiscount += item.totalDiscount;
+            if (attribute) {
+                item.totalDiscount = lineDiscount;
+            }
+            totalDiscount += lineDiscount;
             i++;
         }
 
         while(i < size) {
-            CartItem item = cart.items.get(i);
+            CartItem item = items.get(byPrice == null ? i : byPrice[i]);
             if (item == null || item.price<=0 || item.quantity <= 0) throw new CouponException("Invalid cart item data");
-            totalPrice += item.quantity * item.price;
-            if(getIds.contains(item.productId)) {
+            if(rule.isGetProduct(item.productId)) {
                 int freeItem = Math.min(item.quantity, getQuantity);
                 if(freeItem * item.price > maxPartialDiscout) {
                     maxPartialDiscout = freeItem * item.price;
                     maxIdx = i;
+                    maxIdxDiscount = 0.0;
                 }
             }
             i++;
         }
 
         if(maxIdx != -1) {
-            CartItem item = cart.items.get(maxIdx);
-            item.totalDiscount += maxPartialDiscout;
-            totalDiscount += item.totalDiscount;
+            double lineDiscount = maxIdxDiscount + maxPartialDiscout;
+            if (attribute) {
+                items.get(byPrice == null ? maxIdx : byPrice[maxIdx]).totalDiscount = lineDiscount;
+            }
+            totalDiscount += lineDiscount;
         }
 
-        return new ApplyCouponResponse(
-                cart.items,
-                totalPrice,
-                totalDiscount,
-                totalPrice-totalDiscount
-        );
+        event.end();
+        if (event.shouldCommit()) {
+            int limit = rule.repetitionLimit();
+            event.couponId = couponId;
+            event.cartSize = size;
+            event.repetitionsConsumed = Math.min(limit, limit - repetitionLimit + (maxIdx != -1 ? 1 : 0));
+            event.commit();
+        }
+
+        return totalDiscount;
     }
 
     
-}
\ No newline at end of file
+}
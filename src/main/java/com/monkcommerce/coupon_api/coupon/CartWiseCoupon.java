@@ -5,28 +5,23 @@ import com.monkcommerce.coupon_api.model.Coupon;
 import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
-
-import java.util.Map;
-import java.util.TreeMap;
+import com.monkcommerce.coupon_api.model.rule.CartWiseRule;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.store.CartThresholdIndex;
 
 public class CartWiseCoupon implements CouponHandler {
 
     private final Coupon coupon;
-    private final TreeMap<Integer, Double> cartDiscountIndex;
-    private final Map<String, Coupon> couponMap;
+    private final CartThresholdIndex cartDiscountIndex;
 
-    public CartWiseCoupon(Coupon coupon, TreeMap<Integer, Double> cartDiscountIndex, Map<String, Coupon> couponMap) {
+    public CartWiseCoupon(Coupon coupon, CartThresholdIndex cartDiscountIndex) {
         this.coupon = coupon;
         this.cartDiscountIndex = cartDiscountIndex;
-        this.couponMap = couponMap;
     }
 
     @Override
     public void validateAndIndex() {
 
-        int cartThreshold = coupon.getDetails().threshold;
-        double discountPercentage = coupon.getDetails().discount;
-
         // Validate First
         String exString = validation(coupon);
         if(exString != null) {
@@ -34,9 +29,9 @@ public class CartWiseCoupon implements CouponHandler {
         }
         
         // Index the valid cart-wise active coupon
-        if(coupon.getDetails().isActive()) {
-            cartDiscountIndex.put(cartThreshold, discountPercentage);
-            couponMap.put(cartThreshold+"", coupon);
+        if(coupon.isActive()) {
+            CartWiseRule rule = (CartWiseRule) coupon.getRule();
+            cartDiscountIndex.put(rule.threshold(), rule.discountBps(), coupon.getId());
         }
     }
 
@@ -47,7 +42,7 @@ public class CartWiseCoupon implements CouponHandler {
         double discountPercentage = temCoupon.getDetails().discount;
 
         // Only one coupon is allowed per cart threshold.
-        if (cartDiscountIndex.containsKey(cartThreshold)) {
+        if (cartDiscountIndex.contains(cartThreshold)) {
             return String.format("Cart-wise coupon already exists for cart threshold %d",cartThreshold);
         }
 
@@ -55,25 +50,27 @@ public class CartWiseCoupon implements CouponHandler {
             return String.format("Invalid cart-wise coupon: cart threshold must be greater than 0 and discount percentage must be between 1 and 100.");
         }
 
+        int discountBps = CouponRule.toBps(discountPercentage);
+
         // Fetch nearest lower and higher thresholds (O(log n))
-        Map.Entry<Integer, Double> lowerThresholdEntry = cartDiscountIndex.lowerEntry(cartThreshold);
+        int lowerThreshold = cartDiscountIndex.lower(cartThreshold);
 
-        Map.Entry<Integer, Double> higherThresholdEntry = cartDiscountIndex.higherEntry(cartThreshold);
+        int higherThreshold = cartDiscountIndex.higher(cartThreshold);
 
         // A lower cart threshold must NOT provide a higher or equal discount percentage.
         // Otherwise, customers would get better discounts for spending less.
-        if (lowerThresholdEntry != null &&
-                lowerThresholdEntry.getValue() >= discountPercentage) {
-                return String.format("Invalid cart-wise coupon: lower cart threshold %d has higher or equal discount %.2f%% than new coupon discount %.2f%%",lowerThresholdEntry.getKey(),lowerThresholdEntry.getValue(),discountPercentage);
+        if (lowerThreshold != CartThresholdIndex.NONE &&
+                cartDiscountIndex.discountBpsAt(lowerThreshold) >= discountBps) {
+                return String.format("Invalid cart-wise coupon: lower cart threshold %d has higher or equal discount %.2f%% than new coupon discount %.2f%%",cartDiscountIndex.thresholdAt(lowerThreshold),cartDiscountIndex.discountBpsAt(lowerThreshold) / (double) CouponRule.BPS_PER_PERCENT,discountPercentage);
         }
 
         // A higher cart threshold must NOT provide a lower or equal discount percentage.
         // Otherwise, customers spending more would get worse discounts.
-        if (higherThresholdEntry != null &&
-                higherThresholdEntry.getValue() <= discountPercentage) {
+        if (higherThreshold != CartThresholdIndex.NONE &&
+                cartDiscountIndex.discountBpsAt(higherThreshold) <= discountBps) {
                 return String.format("Invalid cart-wise coupon: higher cart threshold %d has lower or equal discount %.2f%% than new coupon discount %.2f%%",
-                                higherThresholdEntry.getKey(),
-                                higherThresholdEntry.getValue(),
+                                cartDiscountIndex.thresholdAt(higherThreshold),
+                                cartDiscountIndex.discountBpsAt(higherThreshold) / (double) CouponRule.BPS_PER_PERCENT,
                                 discountPercentage
                             );
         }
@@ -82,44 +79,43 @@ public class CartWiseCoupon implements CouponHandler {
 
     @Override
     public void validateAndUpdate(Coupon updateCoupon) {
-        if(cartDiscountIndex.containsKey(coupon.getDetails().threshold)) {
-            cartDiscountIndex.remove(coupon.getDetails().threshold);
-        }
+        cartDiscountIndex.remove(((CartWiseRule) coupon.getRule()).threshold(), coupon.getId());
 
         // Validate First
         String exString = validation(updateCoupon);
         if(exString != null) {
-            if(coupon.getDetails().isActive()) {
-                cartDiscountIndex.put(coupon.getDetails().threshold, coupon.getDetails().discount);
-                couponMap.put(coupon.getDetails().threshold+"", coupon);
+            if(coupon.isActive()) {
+                CartWiseRule rule = (CartWiseRule) coupon.getRule();
+                cartDiscountIndex.put(rule.threshold(), rule.discountBps(), coupon.getId());
             }
             throw new CouponException(exString);
         } 
 
-        if(updateCoupon.getDetails().isActive()) {
-            cartDiscountIndex.put(updateCoupon.getDetails().threshold, updateCoupon.getDetails().discount);
-            couponMap.put(updateCoupon.getDetails().threshold+"", updateCoupon);
+        if(updateCoupon.isActive()) {
+            CartWiseRule rule = (CartWiseRule) updateCoupon.getRule();
+            cartDiscountIndex.put(rule.threshold(), rule.discountBps(), updateCoupon.getId());
         }
     }
 
     @Override
     public void removeFromIndex() {
-        Integer threshold = coupon.getDetails().threshold;
-        if(cartDiscountIndex.containsKey(threshold)) {
-            cartDiscountIndex.remove(threshold);
-            couponMap.remove(threshold+"");
-        }
+        cartDiscountIndex.remove(((CartWiseRule) coupon.getRule()).threshold(), coupon.getId());
     }
 
     // Get Discount after applyting coupon on cart.
     public ApplyCouponResponse getApplyCouponOnCart(Coupon coupon, Cart cart) {
+        return apply((CartWiseRule) coupon.getRule(), cart);
+    }
+
+    // Same, from the rule alone (see CouponView)
+    public static ApplyCouponResponse apply(CartWiseRule rule, Cart cart) {
         double totalPrice = 0.00, totalDiscount = 0.00;
         for (CartItem item : cart.items) {
             if (item == null || item.price<=0 || item.quantity <= 0) throw new CouponException("Invalid cart item data");
             totalPrice += item.price * item.quantity;
             item.totalDiscount = 0.0;
         }
-        totalDiscount = (totalPrice * coupon.getDetails().discount) / 100.0;
+        totalDiscount = CouponRule.discountOf(totalPrice, rule.discountBps());
         return new ApplyCouponResponse(
                 cart.items,
                 totalPrice,
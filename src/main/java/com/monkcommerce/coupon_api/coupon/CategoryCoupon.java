@@ -0,0 +1,114 @@
+package com.monkcommerce.coupon_api.coupon;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.rule.CategoryRule;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.store.CategoryIndex;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+
+public class CategoryCoupon implements CouponHandler {
+
+    private final Coupon coupon;
+
+    // Active CATEGORY coupons and the taxonomy they are resolved against
+    private final CategoryIndex categoryIndex;
+
+    public CategoryCoupon(Coupon coupon, CategoryIndex categoryIndex) {
+        this.coupon = coupon;
+        this.categoryIndex = categoryIndex;
+    }
+
+    @Override
+    public void validateAndIndex() {
+
+        // Validate First
+        validation(coupon);
+
+        if (coupon.isActive()) {
+            categoryIndex.put(coupon.getId(), (CategoryRule) coupon.getRule());
+        }
+    }
+
+    // Validate the coupon before create and update. A category the taxonomy does not have
+    // yet is allowed; it matches no products until a taxonomy defining it is loaded.
+    private void validation(Coupon temCoupon) {
+        CouponDetails details = temCoupon.getDetails();
+
+        // Validation: Category must be a taxonomy path
+        if (!CategoryTaxonomy.isValidPath(details.category)) {
+            throw new CouponException("Category coupon must have a valid category path, e.g. \"Electronics/Phones\"");
+        }
+
+        // Validation: Discount must be present and positive
+        if (details.discount == null || details.discount <= 0 || details.discount > 100) {
+            throw new CouponException("Category coupon must have a valid discount (> 0) OR discount (<= 100)");
+        }
+    }
+
+    @Override
+    public void validateAndUpdate(Coupon updateCoupon) {
+
+        // Validate first; a failed update leaves the old entry in place
+        validation(updateCoupon);
+
+        categoryIndex.remove(coupon.getId());
+        if (updateCoupon.isActive()) {
+            categoryIndex.put(updateCoupon.getId(), (CategoryRule) updateCoupon.getRule());
+        }
+    }
+
+    @Override
+    public void removeFromIndex() {
+        categoryIndex.remove(coupon.getId());
+    }
+
+    // Get Discount after applying coupon on cart; lines outside the category get none
+    public ApplyCouponResponse getApplyCouponOnCart(Coupon coupon, Cart cart) {
+        return apply((CategoryRule) coupon.getRule(), categoryIndex.taxonomy(), cart);
+    }
+
+    // Same, from the rule alone (see CouponView)
+    public static ApplyCouponResponse apply(CategoryRule rule, CategoryTaxonomy taxonomy, Cart cart) {
+        int category = taxonomy.categoryOf(rule.category());
+
+        double totalPrice = 0.00, totalDiscount = 0.00;
+        for (CartItem item : cart.items) {
+            if (item == null || item.price<=0 || item.quantity <= 0) throw new CouponException("Invalid cart item data");
+            totalPrice += item.price * item.quantity;
+            if (category != CategoryTaxonomy.NOT_FOUND && taxonomy.contains(category, item.productId)) {
+                item.totalDiscount = CouponRule.discountOf(item.price * item.quantity, rule.discountBps());
+                totalDiscount += item.totalDiscount;
+            } else {
+                item.totalDiscount = 0.0;
+            }
+        }
+
+        return new ApplyCouponResponse(
+                cart.items,
+                totalPrice,
+                totalDiscount,
+                totalPrice - totalDiscount
+        );
+    }
+
+    // Discount for an already validated cart: one bitmap probe per line
+    public static double discountOf(CategoryTaxonomy taxonomy, String category, int discountBps, Cart cart) {
+        int id = taxonomy.categoryOf(category);
+        if (id == CategoryTaxonomy.NOT_FOUND) {
+            return 0.0;
+        }
+        double amount = 0.0;
+        for (int i = 0, n = cart.items.size(); i < n; i++) {
+            CartItem item = cart.items.get(i);
+            if (taxonomy.contains(id, item.productId)) {
+                amount += item.price * item.quantity;
+            }
+        }
+        return CouponRule.discountOf(amount, discountBps);
+    }
+}
@@ -2,45 +2,67 @@ package com.monkcommerce.coupon_api.coupon;
 
 import com.monkcommerce.coupon_api.exception.CouponException;
 import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.QuantityTier;
 import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.model.rule.ProductWiseRule;
+import com.monkcommerce.coupon_api.model.rule.TieredProductRule;
+import com.monkcommerce.coupon_api.store.ProductTierIndex;
+import com.monkcommerce.coupon_api.util.EpochDays;
 
-import java.util.Map;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 public class ProductWiseCoupon implements CouponHandler {
 
+    public static final int MAX_TIERS = 64;
+    public static final int MAX_PRIORITY = 1000;
+
     private final Coupon coupon;
 
     /**
      * Index to track active product-wise coupons
      * Key   : productId
-     * Value : discount percentage
+     * Value : the product's coupons, ranked, each with its tier table (one tier for a flat discount)
      */
-    private final Map<Integer, Double> productCouponIndex;
-    private final Map<String, Coupon> couponMap;
+    private final ProductTierIndex productCouponIndex;
 
-    public ProductWiseCoupon(Coupon coupon, Map<Integer, Double> productCouponIndex, Map<String, Coupon> couponMap) {
+    public ProductWiseCoupon(Coupon coupon, ProductTierIndex productCouponIndex) {
         this.coupon = coupon;
         this.productCouponIndex = productCouponIndex;
-        this.couponMap = couponMap;
     }
 
     @Override
     public void validateAndIndex() {
 
-        Integer productId = coupon.getDetails().productId;
-        Double discount = coupon.getDetails().discount;
-
         // Validate First
         String exString = validation(coupon);
         if(exString != null) {
             throw new CouponException(exString);
         }
 
-        if(coupon.getDetails().isActive()) {
-            productCouponIndex.put(productId, discount);
-            couponMap.put(productId+"", coupon);
+        if(coupon.isActive()) {
+            index(coupon);
+        }
+    }
+
+    private void index(Coupon indexed) {
+        CouponRule rule = indexed.getRule();
+        int priority = indexed.getPriority();
+        boolean exclusive = indexed.isExclusive();
+        int startDay = indexed.getStartDay();
+        int endDay = indexed.getExpiryDay();
+        if (rule instanceof TieredProductRule tiered) {
+            productCouponIndex.put(tiered.productId(), indexed.getId(), tiered.minQuantities(), tiered.discountBps(),
+                    priority, exclusive, startDay, endDay);
+        } else {
+            ProductWiseRule flat = (ProductWiseRule) rule;
+            productCouponIndex.put(flat.productId(), indexed.getId(), ProductTierIndex.FLAT, new int[] {flat.discountBps()},
+                    priority, exclusive, startDay, endDay);
         }
     }
 
@@ -49,66 +71,126 @@ public class ProductWiseCoupon implements CouponHandler {
 
         Integer productId = temCoupon.getDetails().productId;
         Double discount = temCoupon.getDetails().discount;
+        List<QuantityTier> tiers = temCoupon.getDetails().tiers;
 
         // Validation: Product ID must be present
         if (productId == null) {
             return "Product-wise coupon must have a valid productId";
         }
 
+        if (tiers != null) {
+            if (discount != null) {
+                return "Product-wise coupon must have either a discount or tiers, not both";
+            }
+            String tierError = tierValidation(tiers);
+            if (tierError != null) {
+                return tierError;
+            }
+        }
         // Validation: Discount must be present and positive
-        if (discount == null || discount <= 0 || discount > 100) {
+        else if (discount == null || discount <= 0 || discount > 100) {
             return "Product-wise coupon must have a valid discount (> 0) OR discount (<= 100)";
         }
 
-        // Validation: Only one active coupon allowed per product
-        if (productCouponIndex.containsKey(productId)) {
-            return "Active product-wise coupon already exists for productId " + productId;
+        // Validation: Priority orders coupons on the same product
+        Integer priority = temCoupon.getDetails().priority;
+        if (priority != null && (priority < 0 || priority > MAX_PRIORITY)) {
+            return "Product-wise coupon priority must be between 0 and " + MAX_PRIORITY;
+        }
+
+        // Validation: The date window must not be empty
+        LocalDate startDate = temCoupon.getDetails().startDate;
+        LocalDate expiryDate = temCoupon.getDetails().expiryDate;
+        if (startDate != null && expiryDate != null && startDate.isAfter(expiryDate)) {
+            return "Product-wise coupon startDate must not be after expiryDate";
         }
 
         return null;
     }
 
+    // Tiers need distinct quantities, and a larger quantity must give a larger discount
+    private String tierValidation(List<QuantityTier> tiers) {
+        if (tiers.isEmpty() || tiers.size() > MAX_TIERS) {
+            return "Product-wise coupon must have between 1 and " + MAX_TIERS + " tiers";
+        }
+        for (QuantityTier tier : tiers) {
+            if (tier == null || tier.minQuantity == null || tier.minQuantity <= 0
+                    || tier.discount == null || tier.discount <= 0 || tier.discount > 100) {
+                return "Invalid product-wise tier: minQuantity must be greater than 0 and discount percentage must be between 1 and 100.";
+            }
+        }
+
+        List<QuantityTier> sorted = new ArrayList<>(tiers);
+        sorted.sort(Comparator.comparingInt(t -> t.minQuantity));
+        for (int i = 1; i < sorted.size(); i++) {
+            QuantityTier lower = sorted.get(i - 1), higher = sorted.get(i);
+            if (lower.minQuantity.equals(higher.minQuantity)) {
+                return String.format("Product-wise tier already exists for quantity %d", higher.minQuantity);
+            }
+
+            // A larger quantity must NOT provide a lower or equal discount percentage.
+            if (CouponRule.toBps(higher.discount) <= CouponRule.toBps(lower.discount)) {
+                return String.format("Invalid product-wise tiers: quantity %d has lower or equal discount %.2f%% than quantity %d discount %.2f%%",
+                        higher.minQuantity, higher.discount, lower.minQuantity, lower.discount);
+            }
+        }
+        return null;
+    }
+
     @Override
     public void validateAndUpdate(Coupon updateCoupon) {
 
-        if(productCouponIndex.containsKey(coupon.getDetails().productId)) {
-            productCouponIndex.remove(coupon.getDetails().productId);
+        // Take the coupon out of the index; a failed update puts it back
+        boolean wasIndexed = isIndexed();
+        if (wasIndexed) {
+            productCouponIndex.remove(coupon.getId());
         }
 
         // Validate First
         String exString = validation(updateCoupon);
 
         if(exString != null) {
-            if(coupon.getDetails().isActive()) {
-                productCouponIndex.put(coupon.getDetails().productId, coupon.getDetails().discount);
+            if(wasIndexed) {
+                index(coupon);
             }
             throw new CouponException(exString);
         } 
 
-        if(updateCoupon.getDetails().isActive) {
-            productCouponIndex.put(updateCoupon.getDetails().productId, updateCoupon.getDetails().discount);
-            couponMap.put(updateCoupon.getDetails().productId+"", updateCoupon);
+        if(updateCoupon.isActive()) {
+            index(updateCoupon);
         }
 
     }
 
     @Override
     public void removeFromIndex() {
-        Integer threshold = coupon.getDetails().threshold;
-        if(productCouponIndex.containsKey(threshold)) {
-            productCouponIndex.remove(threshold);
-            couponMap.remove(threshold+"");
-        }
+        productCouponIndex.remove(coupon.getId());
+    }
+
+    private boolean isIndexed() {
+        return productCouponIndex.contains(coupon.getId());
     }
 
-    // Get Discount after applyting coupon on cart.
+    // Get Discount after applyting coupon on cart; only within the coupon's date window
     public ApplyCouponResponse getApplyCouponOnCart(Coupon coupon, Cart cart) {
+        return apply(coupon.getRule(), coupon.getStartDay(), coupon.getExpiryDay(), cart);
+    }
+
+    // Same, from the rule and the date window in epoch days (see CouponView)
+    public static ApplyCouponResponse apply(CouponRule rule, int startDay, int expiryDay, Cart cart) {
+        int today = EpochDays.today();
+        if (today < startDay || today > expiryDay) {
+            throw new CouponException("Coupon is not valid today");
+        }
+        TieredProductRule tiered = rule instanceof TieredProductRule t ? t : null;
+        int productId = tiered != null ? tiered.productId() : ((ProductWiseRule) rule).productId();
         double totalPrice = 0.00, totalDiscount = 0.00;
         for (CartItem item : cart.items) {
             if (item == null || item.price<=0 || item.quantity <= 0) throw new CouponException("Invalid cart item data");
             totalPrice += item.price * item.quantity;
-            if (item.productId == coupon.getDetails().productId) {
-                item.totalDiscount = (item.price * item.quantity * coupon.getDetails().discount) / 100.0;
+            if (item.productId == productId) {
+                int bps = tiered != null ? tiered.discountBpsFor(item.quantity) : ((ProductWiseRule) rule).discountBps();
+                item.totalDiscount = CouponRule.discountOf(item.price * item.quantity, bps);
                 totalDiscount += item.totalDiscount;
             } else {
                 item.totalDiscount = 0.0;
@@ -0,0 +1,125 @@
+package com.monkcommerce.coupon_api.coupon;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.model.rule.ExpressionRule;
+import com.monkcommerce.coupon_api.store.RuleIndex;
+
+public class RuleCoupon implements CouponHandler {
+
+    private final Coupon coupon;
+
+    // Compiled rules of active RULE coupons; may be null when only applying
+    private final RuleIndex ruleIndex;
+
+    public RuleCoupon(Coupon coupon, RuleIndex ruleIndex) {
+        this.coupon = coupon;
+        this.ruleIndex = ruleIndex;
+    }
+
+    @Override
+    public void validateAndIndex() {
+
+        // Validate first; this compiles the condition
+        ExpressionRule rule = validation(coupon);
+
+        if (coupon.isActive()) {
+            ruleIndex.put(coupon.getId(), rule);
+        }
+    }
+
+    // Validate the coupon before create and update, returning its compiled rule
+    private ExpressionRule validation(Coupon temCoupon) {
+        CouponDetails details = temCoupon.getDetails();
+
+        // Validation: Discount must be present and positive
+        if (details.discount == null || details.discount <= 0 || details.discount > 100) {
+            throw new CouponException("Rule coupon must have a valid discount (> 0) OR discount (<= 100)");
+        }
+
+        // Validation: The condition must compile
+        return (ExpressionRule) temCoupon.getRule();
+    }
+
+    @Override
+    public void validateAndUpdate(Coupon updateCoupon) {
+
+        // Validate first; a failed update leaves the old compiled rule in place
+        ExpressionRule rule = validation(updateCoupon);
+
+        ruleIndex.remove(coupon.getId());
+        if (updateCoupon.isActive()) {
+            ruleIndex.put(updateCoupon.getId(), rule);
+        }
+    }
+
+    @Override
+    public void removeFromIndex() {
+        ruleIndex.remove(coupon.getId());
+    }
+
+    // Get Discount after applying coupon on cart; the cart must satisfy the condition
+    public ApplyCouponResponse getApplyCouponOnCart(Coupon coupon, Cart cart) {
+        ExpressionRule rule = ruleIndex == null ? null : ruleIndex.get(coupon.getId());
+        if (rule == null) {
+            rule = (ExpressionRule) coupon.getRule();
+        }
+        return apply(rule, cart);
+    }
+
+    // Same, from the compiled rule alone (see CouponView)
+    public static ApplyCouponResponse apply(ExpressionRule rule, Cart cart) {
+        double totalPrice = 0.00;
+        for (CartItem item : cart.items) {
+            if (item == null || item.price<=0 || item.quantity <= 0) throw new CouponException("Invalid cart item data");
+            totalPrice += item.price * item.quantity;
+            item.totalDiscount = 0.0;
+        }
+        if (!rule.matches(cart)) {
+            throw new CouponException("Cart does not meet the coupon's condition");
+        }
+
+        double totalDiscount;
+        if (rule.targetsProduct()) {
+            totalDiscount = 0.0;
+            for (CartItem item : cart.items) {
+                if (item.productId == rule.productId()) {
+                    item.totalDiscount = CouponRule.discountOf(item.price * item.quantity, rule.discountBps());
+                    totalDiscount += item.totalDiscount;
+                }
+            }
+        } else {
+            totalDiscount = CouponRule.discountOf(totalPrice, rule.discountBps());
+        }
+
+        return new ApplyCouponResponse(
+                cart.items,
+                totalPrice,
+                totalDiscount,
+                totalPrice - totalDiscount
+        );
+    }
+
+    // Discount for an already validated cart with the given total, or 0 when the condition fails
+    public static double discountOf(ExpressionRule rule, Cart cart, double totalPrice) {
+        if (!rule.matches(cart)) {
+            return 0.0;
+        }
+        if (!rule.targetsProduct()) {
+            return CouponRule.discountOf(totalPrice, rule.discountBps());
+        }
+        double amount = 0.0;
+        for (int i = 0, n = cart.items.size(); i < n; i++) {
+            CartItem item = cart.items.get(i);
+            if (item.productId == rule.productId()) {
+                amount += item.price * item.quantity;
+            }
+        }
+        return CouponRule.discountOf(amount, rule.discountBps());
+    }
+}
@@ -0,0 +1,442 @@
+package com.monkcommerce.coupon_api.expression;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+
+/**
+ * Compiles a rule coupon's condition into a {@code (Cart)boolean} MethodHandle tree.
+ *
+ * <pre>
+ * condition  := or
+ * or         := and (("||" | "or") and)*
+ * and        := not (("&&" | "and") not)*
+ * not        := ("!" | "not") not | comparison
+ * comparison := sum (("<" | "<=" | ">" | ">=" | "==" | "!=") sum)?
+ * sum        := product (("+" | "-") product)*
+ * product    := unary (("*" | "/") unary)*
+ * unary      := "-" unary | number | "true" | "false" | "(" or ")" | name | name "(" args ")"
+ * </pre>
+ *
+ * Cart names: {@code total}, {@code quantity}, {@code lines}, {@code containsAny(ids)},
+ * {@code containsAll(ids)}, {@code quantityOf(ids)}, {@code amountOf(ids)}, and
+ * {@code any(line)}, {@code all(line)}, {@code count(line)} over a line condition.
+ * Line names: {@code price}, {@code quantity}, {@code amount}, {@code productId}, {@code in(ids)}.
+ * ids are product ids, optionally in braces: {@code containsAny({7, 8})}.
+ *
+ * Example: {@code containsAny({7, 8}) && total >= 500}.
+ *
+ * Every node is checked to be a condition or a number as it is parsed, so a rule that
+ * compiles cannot fail on a cart. The tree is built once per coupon; evaluating it
+ * allocates nothing.
+ */
+public final class RuleCompiler {
+
+    public static final int MAX_LENGTH = 1024;
+
+    // Deepest nesting of parentheses and unary operators
+    private static final int MAX_DEPTH = 64;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private static final MethodHandle TOTAL = find("total", double.class, Cart.class);
+    private static final MethodHandle UNITS = find("units", double.class, Cart.class);
+    private static final MethodHandle LINES = find("lines", double.class, Cart.class);
+    private static final MethodHandle CONTAINS_ANY = find("containsAny", boolean.class, Cart.class, int[].class);
+    private static final MethodHandle CONTAINS_ALL = find("containsAll", boolean.class, Cart.class, int[].class);
+    private static final MethodHandle QUANTITY_OF = find("quantityOf", double.class, Cart.class, int[].class);
+    private static final MethodHandle AMOUNT_OF = find("amountOf", double.class, Cart.class, int[].class);
+    private static final MethodHandle ANY = find("any", boolean.class, Cart.class, MethodHandle.class);
+    private static final MethodHandle ALL = find("all", boolean.class, Cart.class, MethodHandle.class);
+    private static final MethodHandle COUNT = find("count", double.class, Cart.class, MethodHandle.class);
+
+    private static final MethodHandle PRICE = find("price", double.class, CartItem.class);
+    private static final MethodHandle QUANTITY = find("quantity", double.class, CartItem.class);
+    private static final MethodHandle AMOUNT = find("amount", double.class, CartItem.class);
+    private static final MethodHandle PRODUCT_ID = find("productId", double.class, CartItem.class);
+    private static final MethodHandle IN = find("in", boolean.class, CartItem.class, int[].class);
+
+    private static final MethodHandle NOT = find("not", boolean.class, boolean.class);
+    private static final MethodHandle NEGATE = find("negate", double.class, double.class);
+    private static final MethodHandle LT = find("lt", boolean.class, double.class, double.class);
+    private static final MethodHandle LE = find("le", boolean.class, double.class, double.class);
+    private static final MethodHandle GT = find("gt", boolean.class, double.class, double.class);
+    private static final MethodHandle GE = find("ge", boolean.class, double.class, double.class);
+    private static final MethodHandle EQ = find("eq", boolean.class, double.class, double.class);
+    private static final MethodHandle NE = find("ne", boolean.class, double.class, double.class);
+    private static final MethodHandle ADD = find("add", double.class, double.class, double.class);
+    private static final MethodHandle SUBTRACT = find("subtract", double.class, double.class, double.class);
+    private static final MethodHandle MULTIPLY = find("multiply", double.class, double.class, double.class);
+    private static final MethodHandle DIVIDE = find("divide", double.class, double.class, double.class);
+
+    private static MethodHandle find(String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            return LOOKUP.findStatic(RuleFunctions.class, name, MethodType.methodType(returnType, parameters));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Missing rule function " + name, e);
+        }
+    }
+
+    private final String source;
+    private int pos;
+    private int depth;
+
+    private RuleCompiler(String source) {
+        this.source = source;
+    }
+
+    /**
+     * Compile a condition to a {@code (Cart)boolean} handle.
+     *
+     * @throws CouponException if the condition is empty, too long or not valid
+     */
+    public static MethodHandle compile(String condition) {
+        if (condition == null || condition.isBlank()) {
+            throw new CouponException("Rule coupon must have a condition");
+        }
+        if (condition.length() > MAX_LENGTH) {
+            throw new CouponException("Rule condition must be at most " + MAX_LENGTH + " characters");
+        }
+        RuleCompiler compiler = new RuleCompiler(condition);
+        MethodHandle compiled = compiler.condition(Cart.class);
+        compiler.skipSpace();
+        if (compiler.pos < condition.length()) {
+            throw compiler.error("unexpected '" + condition.charAt(compiler.pos) + "'");
+        }
+        return compiled;
+    }
+
+    /* -------- GRAMMAR -------- */
+
+    private MethodHandle condition(Class<?> scope) {
+        int at = mark();
+        return requireCondition(or(scope), at);
+    }
+
+    private MethodHandle or(Class<?> scope) {
+        int at = mark();
+        MethodHandle left = and(scope);
+        while (match("||") || keyword("or")) {
+            int rightAt = mark();
+            MethodHandle right = requireCondition(and(scope), rightAt);
+            left = MethodHandles.guardWithTest(requireCondition(left, at), constant(scope, true), right);
+        }
+        return left;
+    }
+
+    private MethodHandle and(Class<?> scope) {
+        int at = mark();
+        MethodHandle left = not(scope);
+        while (match("&&") || keyword("and")) {
+            int rightAt = mark();
+            MethodHandle right = requireCondition(not(scope), rightAt);
+            left = MethodHandles.guardWithTest(requireCondition(left, at), right, constant(scope, false));
+        }
+        return left;
+    }
+
+    private MethodHandle not(Class<?> scope) {
+        skipSpace();
+        boolean bang = pos < source.length() && source.charAt(pos) == '!'
+                && (pos + 1 == source.length() || source.charAt(pos + 1) != '=');
+        if (bang || keyword("not")) {
+            if (bang) {
+                pos++;
+            }
+            enter();
+            int at = mark();
+            MethodHandle operand = requireCondition(not(scope), at);
+            depth--;
+            return MethodHandles.filterReturnValue(operand, NOT);
+        }
+        return comparison(scope);
+    }
+
+    private MethodHandle comparison(Class<?> scope) {
+        int at = mark();
+        MethodHandle left = sum(scope);
+        MethodHandle op;
+        if (match("<=") || match("≤")) {
+            op = LE;
+        } else if (match(">=") || match("≥")) {
+            op = GE;
+        } else if (match("==")) {
+            op = EQ;
+        } else if (match("!=") || match("≠")) {
+            op = NE;
+        } else if (match("<")) {
+            op = LT;
+        } else if (match(">")) {
+            op = GT;
+        } else {
+            return left;
+        }
+        int rightAt = mark();
+        MethodHandle right = requireNumber(sum(scope), rightAt);
+        return binary(op, requireNumber(left, at), right, scope);
+    }
+
+    private MethodHandle sum(Class<?> scope) {
+        int at = mark();
+        MethodHandle left = product(scope);
+        while (true) {
+            MethodHandle op;
+            if (match("+")) {
+                op = ADD;
+            } else if (match("-")) {
+                op = SUBTRACT;
+            } else {
+                return left;
+            }
+            int rightAt = mark();
+            MethodHandle right = requireNumber(product(scope), rightAt);
+            left = binary(op, requireNumber(left, at), right, scope);
+        }
+    }
+
+    private MethodHandle product(Class<?> scope) {
+        int at = mark();
+        MethodHandle left = unary(scope);
+        while (true) {
+            MethodHandle op;
+            if (match("*")) {
+                op = MULTIPLY;
+            } else if (match("/")) {
+                op = DIVIDE;
+            } else {
+                return left;
+            }
+            int rightAt = mark();
+            MethodHandle right = requireNumber(unary(scope), rightAt);
+            left = binary(op, requireNumber(left, at), right, scope);
+        }
+    }
+
+    private MethodHandle unary(Class<?> scope) {
+        skipSpace();
+        if (match("-")) {
+            enter();
+            int at = mark();
+            MethodHandle operand = requireNumber(unary(scope), at);
+            depth--;
+            return MethodHandles.filterReturnValue(operand, NEGATE);
+        }
+        if (match("(")) {
+            enter();
+            MethodHandle inner = or(scope);
+            expect(")");
+            depth--;
+            return inner;
+        }
+        if (pos < source.length() && isDigit(source.charAt(pos))) {
+            return MethodHandles.dropArguments(MethodHandles.constant(double.class, number()), 0, scope);
+        }
+        int at = mark();
+        String name = identifier();
+        if (name.equals("true") || name.equals("false")) {
+            return constant(scope, name.equals("true"));
+        }
+        return scope == Cart.class ? cartName(name, at) : lineName(name, at);
+    }
+
+    private MethodHandle cartName(String name, int at) {
+        switch (name) {
+            case "total":
+                return TOTAL;
+            case "quantity":
+                return UNITS;
+            case "lines":
+                return LINES;
+            case "containsAny":
+                return MethodHandles.insertArguments(CONTAINS_ANY, 1, (Object) products());
+            case "containsAll":
+                return MethodHandles.insertArguments(CONTAINS_ALL, 1, (Object) products());
+            case "quantityOf":
+                return MethodHandles.insertArguments(QUANTITY_OF, 1, (Object) products());
+            case "amountOf":
+                return MethodHandles.insertArguments(AMOUNT_OF, 1, (Object) products());
+            case "any":
+                return MethodHandles.insertArguments(ANY, 1, lineCondition());
+            case "all":
+                return MethodHandles.insertArguments(ALL, 1, lineCondition());
+            case "count":
+                return MethodHandles.insertArguments(COUNT, 1, lineCondition());
+            case "price", "amount", "productId", "in":
+                throw error(at, "'" + name + "' is only available inside any(), all() or count()");
+            default:
+                throw error(at, "unknown name '" + name + "'");
+        }
+    }
+
+    private MethodHandle lineName(String name, int at) {
+        switch (name) {
+            case "price":
+                return PRICE;
+            case "quantity":
+                return QUANTITY;
+            case "amount":
+                return AMOUNT;
+            case "productId":
+                return PRODUCT_ID;
+            case "in":
+                return MethodHandles.insertArguments(IN, 1, (Object) products());
+            case "any", "all", "count":
+                throw error(at, "'" + name + "' cannot be nested");
+            default:
+                throw error(at, "unknown name '" + name + "' inside a line condition");
+        }
+    }
+
+    // "(" condition over one CartItem ")"
+    private MethodHandle lineCondition() {
+        expect("(");
+        MethodHandle predicate = condition(CartItem.class);
+        expect(")");
+        return predicate;
+    }
+
+    // "(" ["{"] id ("," id)* ["}"] ")" as a sorted, de-duplicated array
+    private int[] products() {
+        expect("(");
+        boolean braces = match("{");
+        int[] ids = new int[4];
+        int count = 0;
+        do {
+            int at = mark();
+            double id = pos < source.length() && isDigit(source.charAt(pos)) ? number() : -1;
+            if (id < 0 || id != Math.rint(id) || id > Integer.MAX_VALUE) {
+                throw error(at, "expected a product id");
+            }
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count << 1);
+            }
+            ids[count++] = (int) id;
+        } while (match(","));
+        if (braces) {
+            expect("}");
+        }
+        expect(")");
+        return Arrays.stream(ids, 0, count).sorted().distinct().toArray();
+    }
+
+    /* -------- HANDLES -------- */
+
+    private static MethodHandle constant(Class<?> scope, boolean value) {
+        return MethodHandles.dropArguments(MethodHandles.constant(boolean.class, value), 0, scope);
+    }
+
+    // op(left(x), right(x)) as a handle of x
+    private static MethodHandle binary(MethodHandle op, MethodHandle left, MethodHandle right, Class<?> scope) {
+        MethodHandle both = MethodHandles.filterArguments(op, 0, left, right);
+        return MethodHandles.permuteArguments(both, MethodType.methodType(op.type().returnType(), scope), 0, 0);
+    }
+
+    private MethodHandle requireCondition(MethodHandle handle, int at) {
+        if (handle.type().returnType() != boolean.class) {
+            throw error(at, "expected a condition, found a number");
+        }
+        return handle;
+    }
+
+    private MethodHandle requireNumber(MethodHandle handle, int at) {
+        if (handle.type().returnType() != double.class) {
+            throw error(at, "expected a number, found a condition");
+        }
+        return handle;
+    }
+
+    /* -------- TOKENS -------- */
+
+    private void skipSpace() {
+        while (pos < source.length() && Character.isWhitespace(source.charAt(pos))) {
+            pos++;
+        }
+    }
+
+    // Position of the next token, for error messages
+    private int mark() {
+        skipSpace();
+        return pos;
+    }
+
+    private boolean match(String token) {
+        skipSpace();
+        if (source.startsWith(token, pos)) {
+            pos += token.length();
+            return true;
+        }
+        return false;
+    }
+
+    // A whole word, so "order" does not match "or"
+    private boolean keyword(String word) {
+        skipSpace();
+        int end = pos + word.length();
+        if (source.startsWith(word, pos) && (end == source.length() || !isNamePart(source.charAt(end)))) {
+            pos = end;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!match(token)) {
+            throw error(pos < source.length() ? "expected '" + token + "'" : "expected '" + token + "' at end");
+        }
+    }
+
+    private String identifier() {
+        skipSpace();
+        int start = pos;
+        if (pos < source.length() && Character.isLetter(source.charAt(pos))) {
+            while (pos < source.length() && isNamePart(source.charAt(pos))) {
+                pos++;
+            }
+        }
+        if (pos == start) {
+            throw error(pos < source.length() ? "unexpected '" + source.charAt(pos) + "'" : "unexpected end");
+        }
+        return source.substring(start, pos);
+    }
+
+    private double number() {
+        int start = pos;
+        while (pos < source.length() && isDigit(source.charAt(pos))) {
+            pos++;
+        }
+        if (pos + 1 < source.length() && source.charAt(pos) == '.' && isDigit(source.charAt(pos + 1))) {
+            pos++;
+            while (pos < source.length() && isDigit(source.charAt(pos))) {
+                pos++;
+            }
+        }
+        return Double.parseDouble(source.substring(start, pos));
+    }
+
+    private void enter() {
+        if (++depth > MAX_DEPTH) {
+            throw error("nested too deeply");
+        }
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isNamePart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    private CouponException error(String message) {
+        return error(pos, message);
+    }
+
+    private CouponException error(int at, String message) {
+        return new CouponException("Invalid rule condition at position " + (at + 1) + ": " + message);
+    }
+}
@@ -0,0 +1,199 @@
+package com.monkcommerce.coupon_api.expression;
+
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+
+import java.lang.invoke.MethodHandle;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Leaves and operators of compiled rule conditions. Loops index the item list instead of
+ * iterating it, so evaluating a rule allocates nothing. Product sets are sorted int arrays.
+ */
+final class RuleFunctions {
+
+    private RuleFunctions() {
+    }
+
+    /* -------- CART AGGREGATES -------- */
+
+    static double total(Cart cart) {
+        List<CartItem> items = cart.items;
+        double total = 0;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            CartItem item = items.get(i);
+            total += item.price * item.quantity;
+        }
+        return total;
+    }
+
+    static double units(Cart cart) {
+        List<CartItem> items = cart.items;
+        double units = 0;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            units += items.get(i).quantity;
+        }
+        return units;
+    }
+
+    static double lines(Cart cart) {
+        return cart.items.size();
+    }
+
+    /* -------- PRODUCT SETS -------- */
+
+    static boolean containsAny(Cart cart, int[] products) {
+        List<CartItem> items = cart.items;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            if (Arrays.binarySearch(products, items.get(i).productId) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean containsAll(Cart cart, int[] products) {
+        List<CartItem> items = cart.items;
+        for (int product : products) {
+            boolean found = false;
+            for (int i = 0, n = items.size(); i < n && !found; i++) {
+                found = items.get(i).productId == product;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static double quantityOf(Cart cart, int[] products) {
+        List<CartItem> items = cart.items;
+        double units = 0;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            CartItem item = items.get(i);
+            if (Arrays.binarySearch(products, item.productId) >= 0) {
+                units += item.quantity;
+            }
+        }
+        return units;
+    }
+
+    static double amountOf(Cart cart, int[] products) {
+        List<CartItem> items = cart.items;
+        double amount = 0;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            CartItem item = items.get(i);
+            if (Arrays.binarySearch(products, item.productId) >= 0) {
+                amount += item.price * item.quantity;
+            }
+        }
+        return amount;
+    }
+
+    /* -------- LINE ATTRIBUTES -------- */
+
+    static double price(CartItem item) {
+        return item.price;
+    }
+
+    static double quantity(CartItem item) {
+        return item.quantity;
+    }
+
+    static double amount(CartItem item) {
+        return item.price * item.quantity;
+    }
+
+    static double productId(CartItem item) {
+        return item.productId;
+    }
+
+    static boolean in(CartItem item, int[] products) {
+        return Arrays.binarySearch(products, item.productId) >= 0;
+    }
+
+    /* -------- LINE QUANTIFIERS (predicate is (CartItem)boolean) -------- */
+
+    static boolean any(Cart cart, MethodHandle predicate) throws Throwable {
+        List<CartItem> items = cart.items;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            if ((boolean) predicate.invokeExact(items.get(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean all(Cart cart, MethodHandle predicate) throws Throwable {
+        List<CartItem> items = cart.items;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            if (!(boolean) predicate.invokeExact(items.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static double count(Cart cart, MethodHandle predicate) throws Throwable {
+        List<CartItem> items = cart.items;
+        double count = 0;
+        for (int i = 0, n = items.size(); i < n; i++) {
+            if ((boolean) predicate.invokeExact(items.get(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /* -------- OPERATORS -------- */
+
+    static boolean not(boolean value) {
+        return !value;
+    }
+
+    static boolean lt(double a, double b) {
+        return a < b;
+    }
+
+    static boolean le(double a, double b) {
+        return a <= b;
+    }
+
+    static boolean gt(double a, double b) {
+        return a > b;
+    }
+
+    static boolean ge(double a, double b) {
+        return a >= b;
+    }
+
+    // Exact comparison; amounts in rules are whole units or simple decimals
+    static boolean eq(double a, double b) {
+        return a == b;
+    }
+
+    static boolean ne(double a, double b) {
+        return a != b;
+    }
+
+    static double add(double a, double b) {
+        return a + b;
+    }
+
+    static double subtract(double a, double b) {
+        return a - b;
+    }
+
+    static double multiply(double a, double b) {
+        return a * b;
+    }
+
+    static double divide(double a, double b) {
+        return a / b;
+    }
+
+    static double negate(double a) {
+        return -a;
+    }
+}
@@ -3,21 +3,28 @@ package com.monkcommerce.coupon_api.factory;
 import com.monkcommerce.coupon_api.coupon.*;
 import com.monkcommerce.coupon_api.model.Coupon;
 import com.monkcommerce.coupon_api.store.CouponIndexes;
+import com.monkcommerce.coupon_api.store.CouponStore;
 
 public class CouponFactory {
 
-    public static CouponHandler create(Coupon coupon, CouponIndexes indexes) {
+    public static CouponHandler create(Coupon coupon, CouponIndexes indexes, CouponStore store) {
 
         return switch (coupon.getType()) {
 
             case CART_WISE ->
-                    new CartWiseCoupon(coupon, indexes.cartIndex, indexes.couponMap);
+                    new CartWiseCoupon(coupon, indexes.cartIndex);
 
             case PRODUCT_WISE ->
-                    new ProductWiseCoupon(coupon, indexes.productIndex, indexes.couponMap);
+                    new ProductWiseCoupon(coupon, indexes.productIndex);
 
             case BXGY ->
-                    new BxGyCoupon(coupon, indexes.bxgyIndex, indexes.couponMap);
+                    new BxGyCoupon(coupon, indexes.bxgyIndex, indexes.productSets, store);
+
+            case RULE ->
+                    new RuleCoupon(coupon, indexes.rules);
+
+            case CATEGORY ->
+                    new CategoryCoupon(coupon, indexes.categories);
         };
     }
 }
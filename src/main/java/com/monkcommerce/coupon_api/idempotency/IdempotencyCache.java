@@ -0,0 +1,177 @@
+package com.monkcommerce.coupon_api.idempotency;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.util.CartFingerprint;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Bounded, time-expiring cache of apply-coupon results keyed by the client's Idempotency-Key.
+ *
+ * Keys are spread over SEGMENTS lock-striped segments, each an insertion-ordered LinkedHashMap.
+ * Every entry lives for the same TTL, so the oldest entry is always the first to expire: puts
+ * drop expired entries from the head and the eldest entry once the segment is full, both O(1).
+ *
+ * The first request for a key runs the evaluation; a duplicate that arrives while it runs
+ * waits for the same result instead of evaluating again. Failures are not cached, so a client
+ * can retry a request that was rejected.
+ */
+@Component
+public class IdempotencyCache {
+
+    public static final String HEADER = "Idempotency-Key";
+    public static final int MAX_KEY_LENGTH = 255;
+
+    private static final int SEGMENTS = 16;
+
+    private static final class Entry {
+        final CompletableFuture<ApplyCouponResponse> result = new CompletableFuture<>();
+        final long fingerprint;
+        final long expiresAtNanos;
+
+        Entry(long fingerprint, long expiresAtNanos) {
+            this.fingerprint = fingerprint;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private static final class Segment {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    }
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final int segmentCapacity;
+    private final long ttlNanos;
+
+    public IdempotencyCache(@Value("${coupon.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${coupon.idempotency.ttl:10m}") Duration ttl) {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+        this.segmentCapacity = Math.max(1, maxEntries / SEGMENTS);
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    /**
+     * Result for the tenant's key: the stored one, the one being computed by a concurrent duplicate,
+     * or a fresh evaluation. The fingerprint identifies the request (see {@link #fingerprint});
+     * reusing a key for a different request is rejected.
+     */
+    public ApplyCouponResponse execute(String tenant, String idempotencyKey, long fingerprint,
+                                       Supplier<ApplyCouponResponse> evaluation) {
+        if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new CouponException("Invalid " + HEADER + ": must be 1-" + MAX_KEY_LENGTH + " characters");
+        }
+        String key = tenant + ':' + idempotencyKey;
+
+        Segment segment = segments[spread(key.hashCode()) & (SEGMENTS - 1)];
+        long now = System.nanoTime();
+        Entry entry;
+        boolean owner = false;
+        segment.lock.lock();
+        try {
+            entry = segment.entries.get(key);
+            if (entry != null && now - entry.expiresAtNanos > 0) {
+                segment.entries.remove(key);
+                entry = null;
+            }
+            if (entry == null) {
+                entry = new Entry(fingerprint, now + ttlNanos);
+                segment.entries.put(key, entry);
+                owner = true;
+                evict(segment, now);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+
+        if (entry.fingerprint != fingerprint) {
+            throw new CouponException(HEADER + " already used for a different request");
+        }
+        if (owner) {
+            return evaluate(segment, key, entry, evaluation);
+        }
+        return await(entry);
+    }
+
+    private ApplyCouponResponse evaluate(Segment segment, String key, Entry entry,
+                                         Supplier<ApplyCouponResponse> evaluation) {
+        try {
+            ApplyCouponResponse response = evaluation.get();
+            entry.result.complete(response);
+            return response;
+        } catch (RuntimeException ex) {
+            segment.lock.lock();
+            try {
+                segment.entries.remove(key, entry);
+            } finally {
+                segment.lock.unlock();
+            }
+            entry.result.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private static ApplyCouponResponse await(Entry entry) {
+        try {
+            return entry.result.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new CouponException("Interrupted while waiting for the original request");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(ex.getCause());
+        }
+    }
+
+    // Drops expired entries from the head, then the eldest ones while over capacity
+    private void evict(Segment segment, long now) {
+        Iterator<Map.Entry<String, Entry>> it = segment.entries.entrySet().iterator();
+        int excess = segment.entries.size() - segmentCapacity;
+        while (it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            if (excess <= 0 && now - eldest.expiresAtNanos <= 0) {
+                break;
+            }
+            it.remove();
+            excess--;
+        }
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    // Cached keys across all segments
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    // Identifies an apply-coupon request by coupon, reserve flag and cart contents
+    public static long fingerprint(long couponId, boolean reserve, Cart cart) {
+        return CartFingerprint.mix(CartFingerprint.of(cart) ^ (couponId * 31 + (reserve ? 1 : 0)));
+    }
+}
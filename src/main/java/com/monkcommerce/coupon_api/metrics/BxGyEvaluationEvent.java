@@ -0,0 +1,30 @@
+package com.monkcommerce.coupon_api.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One BXGY coupon evaluated against one cart.
+ */
+@Name("com.monkcommerce.coupon.BxGyEvaluation")
+@Label("BXGY Evaluation")
+@Category({"Coupon Engine"})
+@Description("Evaluation of a single BXGY coupon against a cart")
+@StackTrace(false)
+@Threshold("0 ms")
+public class BxGyEvaluationEvent extends Event {
+
+    @Label("Coupon Id")
+    public long couponId;
+
+    @Label("Cart Size")
+    public int cartSize;
+
+    @Label("Repetitions Consumed")
+    public int repetitionsConsumed;
+}
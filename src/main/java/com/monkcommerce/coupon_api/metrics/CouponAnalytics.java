@@ -0,0 +1,210 @@
+package com.monkcommerce.coupon_api.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live per-coupon counters for one catalog: how often a coupon was applicable to a cart
+ * (evaluations), ranked first in /applicable-coupons (wins), was applied (applies) and how
+ * much discount it gave. Each is kept all-time in striped LongAdders and over the last
+ * minute, hour and day in RollingWindows, so recording is a few uncontended atomic adds.
+ *
+ * Coupon ids are dense per catalog, so stats are found through a two-level array indexed by
+ * id: no hashing, no boxing and no allocation once a coupon has stats. Stats are created on
+ * a coupon's first event and dropped when it is deleted, so memory follows the catalog.
+ */
+public class CouponAnalytics {
+
+    public static final int EVALUATIONS = 0;
+    public static final int WINS = 1;
+    public static final int APPLIES = 2;
+    // Discount is counted in cents
+    public static final int DISCOUNT_CENTS = 3;
+    private static final int METRICS = 4;
+
+    public enum Window {
+        MINUTE(TimeUnit.SECONDS.toNanos(10), 6),
+        HOUR(TimeUnit.MINUTES.toNanos(5), 12),
+        DAY(TimeUnit.HOURS.toNanos(1), 24),
+        ALL(0, 0);
+
+        final long bucketNanos;
+        final int buckets;
+
+        Window(long bucketNanos, int buckets) {
+            this.bucketNanos = bucketNanos;
+            this.buckets = buckets;
+        }
+    }
+
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+    // Coupons above this id are not tracked, which bounds the chunk table
+    private static final long MAX_COUPON_ID = (long) Integer.MAX_VALUE << CHUNK_BITS;
+
+    public static final class CouponStats {
+        final long couponId;
+        final LongAdder[] totals = new LongAdder[METRICS];
+        final RollingWindow[] windows = new RollingWindow[3];
+
+        CouponStats(long couponId) {
+            this.couponId = couponId;
+            for (int m = 0; m < METRICS; m++) {
+                totals[m] = new LongAdder();
+            }
+            for (Window window : new Window[] {Window.MINUTE, Window.HOUR, Window.DAY}) {
+                windows[window.ordinal()] = new RollingWindow(window.bucketNanos, window.buckets, METRICS);
+            }
+        }
+
+        void add(int metric, long delta, int otherMetric, long otherDelta, long nowNanos) {
+            totals[metric].add(delta);
+            totals[otherMetric].add(otherDelta);
+            for (RollingWindow window : windows) {
+                window.add(metric, delta, otherMetric, otherDelta, nowNanos);
+            }
+        }
+
+        void add(int metric, long nowNanos) {
+            totals[metric].increment();
+            for (RollingWindow window : windows) {
+                window.add(metric, nowNanos, 1);
+            }
+        }
+
+        public long couponId() {
+            return couponId;
+        }
+
+        public long get(int metric, Window window, long nowNanos) {
+            return window == Window.ALL ? totals[metric].sum() : windows[window.ordinal()].sum(metric, nowNanos);
+        }
+    }
+
+    // chunks[id >> CHUNK_BITS][id & CHUNK_MASK]; grown and filled under the monitor
+    private volatile CouponStats[][] chunks = new CouponStats[16][];
+    private int tracked;
+
+    public void recordEvaluation(long couponId, boolean ranFirst, long nowNanos) {
+        CouponStats stats = stats(couponId);
+        if (stats == null) {
+            return;
+        }
+        if (ranFirst) {
+            stats.add(EVALUATIONS, 1, WINS, 1, nowNanos);
+        } else {
+            stats.add(EVALUATIONS, nowNanos);
+        }
+    }
+
+    public void recordApply(long couponId, double discount, long nowNanos) {
+        CouponStats stats = stats(couponId);
+        if (stats == null) {
+            return;
+        }
+        stats.add(APPLIES, 1, DISCOUNT_CENTS, Math.round(discount * 100), nowNanos);
+    }
+
+    private CouponStats stats(long couponId) {
+        CouponStats[][] table = chunks;
+        long chunk = couponId >>> CHUNK_BITS;
+        if (chunk < table.length) {
+            CouponStats[] stats = table[(int) chunk];
+            if (stats != null) {
+                CouponStats found = stats[(int) couponId & CHUNK_MASK];
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        return create(couponId);
+    }
+
+    private synchronized CouponStats create(long couponId) {
+        if (couponId <= 0 || couponId > MAX_COUPON_ID) {
+            return null;
+        }
+        int chunk = (int) (couponId >>> CHUNK_BITS);
+        CouponStats[][] table = chunks;
+        if (chunk >= table.length) {
+            table = Arrays.copyOf(table, Math.max(table.length << 1, chunk + 1));
+        }
+        if (table[chunk] == null) {
+            table[chunk] = new CouponStats[1 << CHUNK_BITS];
+        }
+        CouponStats[] stats = table[chunk];
+        int slot = (int) couponId & CHUNK_MASK;
+        if (stats[slot] == null) {
+            stats[slot] = new CouponStats(couponId);
+            tracked++;
+        }
+        chunks = table;
+        return stats[slot];
+    }
+
+    // Drop a deleted coupon's stats, and its chunk once empty
+    public synchronized void forget(long couponId) {
+        long chunk = couponId >>> CHUNK_BITS;
+        CouponStats[][] table = chunks;
+        if (couponId <= 0 || chunk >= table.length || table[(int) chunk] == null) {
+            return;
+        }
+        CouponStats[] stats = table[(int) chunk];
+        int slot = (int) couponId & CHUNK_MASK;
+        if (stats[slot] == null) {
+            return;
+        }
+        stats[slot] = null;
+        tracked--;
+        for (CouponStats other : stats) {
+            if (other != null) {
+                return;
+            }
+        }
+        table[(int) chunk] = null;
+    }
+
+    // Stats of one coupon, or null when it has no events yet
+    public CouponStats get(long couponId) {
+        CouponStats[][] table = chunks;
+        long chunk = couponId >>> CHUNK_BITS;
+        if (couponId <= 0 || chunk >= table.length || table[(int) chunk] == null) {
+            return null;
+        }
+        return table[(int) chunk][(int) couponId & CHUNK_MASK];
+    }
+
+    // Coupons with the highest value of a metric over a window, highest first
+    public List<CouponStats> top(int metric, Window window, int limit, long nowNanos) {
+        Comparator<CouponStats> byMetric = Comparator.comparingLong(s -> s.get(metric, window, nowNanos));
+        PriorityQueue<CouponStats> best = new PriorityQueue<>(limit + 1, byMetric);
+        for (CouponStats[] stats : chunks) {
+            if (stats == null) {
+                continue;
+            }
+            for (CouponStats candidate : stats) {
+                if (candidate == null || candidate.get(metric, window, nowNanos) == 0) {
+                    continue;
+                }
+                best.add(candidate);
+                if (best.size() > limit) {
+                    best.poll();
+                }
+            }
+        }
+        List<CouponStats> result = new ArrayList<>(best);
+        result.sort(byMetric.reversed());
+        return result;
+    }
+
+    // Coupons with stats
+    public synchronized int tracked() {
+        return tracked;
+    }
+}
@@ -0,0 +1,45 @@
+package com.monkcommerce.coupon_api.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One getApplicableCoupons call: cart shape, candidates per type and the winning coupon.
+ */
+@Name("com.monkcommerce.coupon.Evaluation")
+@Label("Coupon Evaluation")
+@Category({"Coupon Engine"})
+@Description("Ranking of applicable coupons for one cart")
+@StackTrace(false)
+@Threshold("0 ms")
+public class CouponEvaluationEvent extends Event {
+
+    @Label("Cart Size")
+    public int cartSize;
+
+    @Label("Product-wise Candidates")
+    public int productCandidates;
+
+    @Label("Cart-wise Candidates")
+    public int cartCandidates;
+
+    @Label("BXGY Candidates")
+    public int bxgyCandidates;
+
+    @Label("Rule Candidates")
+    public int ruleCandidates;
+
+    @Label("Category Candidates")
+    public int categoryCandidates;
+
+    @Label("Winning Coupon Id")
+    public long winningCouponId;
+
+    @Label("Winning Coupon Type")
+    public String winningCouponType;
+}
@@ -0,0 +1,159 @@
+package com.monkcommerce.coupon_api.metrics;
+
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.store.CouponIndexes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+/**
+ * Hot-path meters for the coupon engine.
+ *
+ * Every meter is registered up front and looked up by array index, so recording is a
+ * plain Timer/Counter update with no tag resolution or allocation per call.
+ * Every meter carries a tenant tag; {@link #close()} removes them when a tenant is evicted.
+ */
+public class CouponMetrics {
+
+    public static final String OP_APPLICABLE_COUPONS = "applicable-coupons";
+    public static final String OP_APPLY_COUPON = "apply-coupon";
+    public static final String DEFAULT_TENANT = "default";
+
+    private final MeterRegistry registry;
+    private final Tags tags;
+    private final List<Meter> meters = new ArrayList<>();
+    // Gauges over the currently bound catalog, replaced when another catalog is bound
+    private final List<Meter> catalogMeters = new ArrayList<>();
+
+    // Indexed by CouponType.ordinal()
+    private final Timer[] evaluationTimers;
+    private final Counter[] candidateCounters;
+
+    private final Timer applicableCouponsTimer;
+    private final Timer applyCouponTimer;
+    private final Counter couponsReturned;
+
+    public CouponMetrics(MeterRegistry registry) {
+        this(registry, DEFAULT_TENANT);
+    }
+
+    public CouponMetrics(MeterRegistry registry, String tenant) {
+        this.registry = registry;
+        this.tags = Tags.of("tenant", tenant);
+
+        CouponType[] types = CouponType.values();
+        evaluationTimers = new Timer[types.length];
+        candidateCounters = new Counter[types.length];
+        for (CouponType type : types) {
+            evaluationTimers[type.ordinal()] = Timer.builder("coupon.evaluation")
+                    .description("Time spent evaluating one coupon type for a cart")
+                    .tag("type", type.name())
+                    .tags(tags)
+                    .publishPercentileHistogram()
+                    .register(registry);
+            track(evaluationTimers[type.ordinal()]);
+            candidateCounters[type.ordinal()] = Counter.builder("coupon.candidates.evaluated")
+                    .description("Coupons evaluated against carts")
+                    .tag("type", type.name())
+                    .tags(tags)
+                    .register(registry);
+            track(candidateCounters[type.ordinal()]);
+        }
+
+        applicableCouponsTimer = operationTimer(OP_APPLICABLE_COUPONS);
+        applyCouponTimer = operationTimer(OP_APPLY_COUPON);
+        couponsReturned = track(Counter.builder("coupon.returned")
+                .description("Applicable coupons returned to callers")
+                .tags(tags)
+                .register(registry));
+    }
+
+    // Metrics that are recorded nowhere, used when the service runs outside Spring (tests, benchmarks)
+    public static CouponMetrics noop() {
+        return new CouponMetrics(new CompositeMeterRegistry());
+    }
+
+    private Timer operationTimer(String operation) {
+        return track(Timer.builder("coupon.operation")
+                .description("End-to-end service time per endpoint")
+                .tag("operation", operation)
+                .tags(tags)
+                .publishPercentileHistogram()
+                .register(registry));
+    }
+
+    /**
+     * Gauges over the live index and catalog sizes. They are sampled on scrape,
+     * never on the request path. Binding another catalog (a swapped-in staged one)
+     * moves the gauges over to it.
+     */
+    public <T> void bindCatalog(CouponIndexes indexes, T catalog,
+                                ToDoubleFunction<T> catalogSize, ToDoubleFunction<T> catalogVersion) {
+        for (Meter meter : catalogMeters) {
+            registry.remove(meter);
+            meters.remove(meter);
+        }
+        catalogMeters.clear();
+
+        indexGauge(indexes, "cartIndex", i -> i.cartIndex.size());
+        indexGauge(indexes, "productIndex", i -> i.productIndex.size());
+        indexGauge(indexes, "bxgyIndex", i -> i.bxgyIndex.size());
+
+        catalogMeters.add(track(Gauge.builder("coupon.catalog.size", catalog, catalogSize)
+                .description("Coupons stored, active or not")
+                .tags(tags)
+                .register(registry)));
+        catalogMeters.add(track(Gauge.builder("coupon.catalog.version", catalog, catalogVersion)
+                .description("Incremented on every successful create, update or delete")
+                .tags(tags)
+                .register(registry)));
+    }
+
+    private void indexGauge(CouponIndexes indexes, String name, ToDoubleFunction<CouponIndexes> size) {
+        catalogMeters.add(track(Gauge.builder("coupon.index.size", indexes, size)
+                .description("Entries in an in-memory coupon index")
+                .tag("index", name)
+                .tags(tags)
+                .register(registry)));
+    }
+
+    private <M extends Meter> M track(M meter) {
+        meters.add(meter);
+        return meter;
+    }
+
+    // Unregister this catalog's meters so the registry no longer references it
+    public void close() {
+        for (Meter meter : meters) {
+            registry.remove(meter);
+        }
+        meters.clear();
+        catalogMeters.clear();
+    }
+
+    public void recordEvaluation(CouponType type, long nanos, int candidates) {
+        evaluationTimers[type.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+        if (candidates > 0) {
+            candidateCounters[type.ordinal()].increment(candidates);
+        }
+    }
+
+    public void recordApplicableCoupons(long nanos, int returned) {
+        applicableCouponsTimer.record(nanos, TimeUnit.NANOSECONDS);
+        couponsReturned.increment(returned);
+    }
+
+    public void recordApplyCoupon(long nanos) {
+        applyCouponTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,40 @@
+package com.monkcommerce.coupon_api.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * One create / update / delete against the coupon indexes, including rejected ones.
+ */
+@Name("com.monkcommerce.coupon.IndexMutation")
+@Label("Coupon Index Mutation")
+@Category({"Coupon Engine"})
+@Description("Validation and indexing of a coupon change")
+@StackTrace(false)
+@Threshold("0 ms")
+public class IndexMutationEvent extends Event {
+
+    public static final String CREATE = "CREATE";
+    public static final String UPDATE = "UPDATE";
+    public static final String DELETE = "DELETE";
+
+    @Label("Coupon Id")
+    public long couponId;
+
+    @Label("Coupon Type")
+    public String couponType;
+
+    @Label("Operation")
+    public String operation;
+
+    @Label("Accepted")
+    public boolean accepted;
+
+    @Label("Validation Error")
+    public String validationError;
+}
@@ -0,0 +1,119 @@
+package com.monkcommerce.coupon_api.metrics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Sliding-window counters over a ring of time buckets, for a fixed number of metrics.
+ *
+ * A bucket covers bucketNanos; the window is the current bucket plus the previous
+ * buckets - 1. Each bucket remembers which period it holds, and the first writer of a new
+ * period claims it with a CAS and clears it, so stale buckets are recycled in place and the
+ * window never allocates. Adds racing with that reset may be lost, so counts are exact
+ * except right at bucket boundaries.
+ *
+ * Cells are striped like a LongAdder: a window starts with one row of cells, and when an add
+ * loses a CAS to another thread the rows double, up to the number of CPUs. A thread adds to
+ * the row its id hashes to, and reads sum all rows, so a popular coupon's counters are not
+ * one contended cache line while quiet coupons keep the single row.
+ */
+public class RollingWindow {
+
+    private static final int MAX_STRIPES =
+            Integer.highestOneBit(Math.max(1, Math.min(16, Runtime.getRuntime().availableProcessors())));
+
+    private final long bucketNanos;
+    private final int buckets;
+    private final int metrics;
+    private final AtomicLongArray periods;
+    // buckets * metrics cells per row; the row count is a power of two
+    private volatile AtomicLongArray[] stripes;
+
+    public RollingWindow(long bucketNanos, int buckets, int metrics) {
+        this.bucketNanos = bucketNanos;
+        this.buckets = buckets;
+        this.metrics = metrics;
+        this.periods = new AtomicLongArray(buckets);
+        this.stripes = new AtomicLongArray[] {new AtomicLongArray(buckets * metrics)};
+        for (int i = 0; i < buckets; i++) {
+            periods.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    public void add(int metric, long nowNanos, long delta) {
+        add(stripes, bucket(nowNanos) + metric, delta);
+    }
+
+    // Adds to two metrics of the same bucket, checking the bucket's period once
+    public void add(int metric, long delta, int otherMetric, long otherDelta, long nowNanos) {
+        int bucket = bucket(nowNanos);
+        AtomicLongArray[] rows = stripes;
+        add(rows, bucket + metric, delta);
+        add(rows, bucket + otherMetric, otherDelta);
+    }
+
+    private void add(AtomicLongArray[] rows, int cell, long delta) {
+        AtomicLongArray row = rows[stripe() & (rows.length - 1)];
+        long current = row.get(cell);
+        if (!row.compareAndSet(cell, current, current + delta)) {
+            row.getAndAdd(cell, delta);
+            grow(rows);
+        }
+    }
+
+    // Row of the calling thread: a mix of its id, stable for the thread's lifetime
+    private static int stripe() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 40);
+    }
+
+    private synchronized void grow(AtomicLongArray[] seen) {
+        if (stripes != seen || seen.length >= MAX_STRIPES) {
+            return;
+        }
+        AtomicLongArray[] grown = Arrays.copyOf(seen, seen.length << 1);
+        for (int i = seen.length; i < grown.length; i++) {
+            grown[i] = new AtomicLongArray(buckets * metrics);
+        }
+        stripes = grown;
+    }
+
+    // First cell of the bucket for this time, recycled first if it holds an older period
+    private int bucket(long nowNanos) {
+        long period = Math.floorDiv(nowNanos, bucketNanos);
+        int bucket = (int) Math.floorMod(period, (long) buckets);
+        long held = periods.get(bucket);
+        if (held < period && periods.compareAndSet(bucket, held, period)) {
+            for (AtomicLongArray row : stripes) {
+                for (int m = 0; m < metrics; m++) {
+                    row.set(bucket * metrics + m, 0);
+                }
+            }
+        }
+        return bucket * metrics;
+    }
+
+    public long sum(int metric, long nowNanos) {
+        long current = Math.floorDiv(nowNanos, bucketNanos);
+        AtomicLongArray[] rows = stripes;
+        long sum = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            long period = periods.get(bucket);
+            if (period <= current && current - period < buckets) {
+                for (AtomicLongArray row : rows) {
+                    sum += row.get(bucket * metrics + metric);
+                }
+            }
+        }
+        return sum;
+    }
+
+    // Rows the cells are currently striped over
+    public int stripes() {
+        return stripes.length;
+    }
+
+    public long memoryBytes() {
+        return (long) buckets * (metrics * stripes.length + 1) * 8;
+    }
+}
@@ -1,14 +1,51 @@
 package com.monkcommerce.coupon_api.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.store.ProductTierIndex;
+import com.monkcommerce.coupon_api.util.EpochDays;
 
+import java.time.LocalDate;
+
+/**
+ * A coupon arrives with its {@link CouponDetails} (the JSON shape) and, once validated, is bound:
+ * the details are mapped to the type's {@link CouponRule} plus the common fields in primitive
+ * form, and dropped. A stored coupon holds only that compact form; getDetails() rebuilds the
+ * JSON shape from it for responses and snapshots.
+ */
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Coupon {
 
+    // Tri-state flags, as in the CouponRecordCodec layout
+    private static final byte UNSET = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+
     private long coupon_id;
     private CouponType type;
+
+    // Optional customer-facing code, matched case-insensitively
+    private String code;
+
+    // The request's details until bind(); null for a bound coupon
     private CouponDetails details;
 
+    // Derived from type + details on first use; reset when the details are replaced
+    private CouponRule rule;
+
+    /* -------- COMMON, once bound -------- */
+    private byte active;
+    private byte exclusive;
+    // -1 when unset
+    private int priority = -1;
+    // Epoch days; ProductTierIndex.ALWAYS_STARTED / NEVER_EXPIRES when unset
+    private int startDay = ProductTierIndex.ALWAYS_STARTED;
+    private int expiryDay = ProductTierIndex.NEVER_EXPIRES;
+    // 0 when unlimited
+    private int redemptionLimit;
+    private int usesPerCustomer;
+
     public long getId() {
         return coupon_id;
     }
@@ -17,19 +54,125 @@ public class Coupon {
         return type;
     }
 
+    public String getCode() {
+        return code;
+    }
+
+    // The request's details, or for a bound coupon a fresh copy rebuilt from its rule
     public CouponDetails getDetails() {
-        return details;
+        if (details != null || rule == null) {
+            return details;
+        }
+        CouponDetails d = new CouponDetails();
+        d.isActive = active == UNSET ? null : active == TRUE;
+        d.startDate = startDay == ProductTierIndex.ALWAYS_STARTED ? null : LocalDate.ofEpochDay(startDay);
+        d.expiryDate = expiryDay == ProductTierIndex.NEVER_EXPIRES ? null : LocalDate.ofEpochDay(expiryDay);
+        d.redemptionLimit = redemptionLimit == 0 ? null : redemptionLimit;
+        d.usesPerCustomer = usesPerCustomer == 0 ? null : usesPerCustomer;
+        d.priority = priority < 0 ? null : priority;
+        d.exclusive = exclusive == UNSET ? null : exclusive == TRUE;
+        CouponRule.describe(rule, d);
+        return d;
+    }
+
+    /**
+     * Compact per-type form of the details used for evaluation.
+     * Only valid once the details have passed validation.
+     */
+    @JsonIgnore
+    public CouponRule getRule() {
+        if (rule == null) {
+            rule = CouponRule.of(type, details);
+        }
+        return rule;
+    }
+
+    // Replace the derived rule with an equivalent one, e.g. backed by interned arrays
+    @JsonIgnore
+    public void setRule(CouponRule rule) {
+        this.rule = rule;
+    }
+
+    /**
+     * Map the validated details to the rule and the primitive common fields, and drop them.
+     * Called before the coupon is stored; a no-op for a coupon that is already bound.
+     */
+    public void bind() {
+        if (details == null) {
+            return;
+        }
+        getRule();
+        active = flag(details.isActive);
+        exclusive = flag(details.exclusive);
+        priority = details.priority == null ? -1 : details.priority;
+        startDay = EpochDays.of(details.startDate, ProductTierIndex.ALWAYS_STARTED);
+        expiryDay = EpochDays.of(details.expiryDate, ProductTierIndex.NEVER_EXPIRES);
+        redemptionLimit = details.redemptionLimit == null ? 0 : details.redemptionLimit;
+        usesPerCustomer = details.usesPerCustomer == null ? 0 : details.usesPerCustomer;
+        details = null;
+    }
+
+    private static byte flag(Boolean value) {
+        return value == null ? UNSET : value ? TRUE : FALSE;
+    }
+
+    /* -------- COMMON FIELDS, from the details until bound -------- */
+
+    @JsonIgnore
+    public boolean isActive() {
+        return details != null ? details.isActive() : active != FALSE;
+    }
+
+    @JsonIgnore
+    public boolean isExclusive() {
+        return details != null ? details.exclusive != null && details.exclusive : exclusive == TRUE;
+    }
+
+    // 0 when unset
+    @JsonIgnore
+    public int getPriority() {
+        return details != null ? (details.priority == null ? 0 : details.priority) : Math.max(priority, 0);
+    }
+
+    @JsonIgnore
+    public int getStartDay() {
+        return details != null ? EpochDays.of(details.startDate, ProductTierIndex.ALWAYS_STARTED) : startDay;
+    }
+
+    @JsonIgnore
+    public int getExpiryDay() {
+        return details != null ? EpochDays.of(details.expiryDate, ProductTierIndex.NEVER_EXPIRES) : expiryDay;
+    }
+
+    // 0 when unlimited
+    @JsonIgnore
+    public int getRedemptionLimit() {
+        return details != null ? (details.redemptionLimit == null ? 0 : details.redemptionLimit) : redemptionLimit;
+    }
+
+    // 0 when unlimited
+    @JsonIgnore
+    public int getUsesPerCustomer() {
+        return details != null ? (details.usesPerCustomer == null ? 0 : details.usesPerCustomer) : usesPerCustomer;
     }
 
     public void setId(long coupon_id) {
         this.coupon_id = coupon_id;
     }
 
+    public void setCode(String code) {
+        this.code = code;
+    }
+
     public void setDetails(CouponDetails details) {
         this.details = details;
+        this.rule = null;
     }
 
     public void setType(CouponType type) {
         this.type = type;
+        if (details != null) {
+            this.rule = null;
+        }
     }
 }
@@ -11,6 +11,10 @@ public class CouponDetails {
     public Boolean isActive;
     public LocalDate startDate;
     public LocalDate expiryDate;
+    // Maximum committed redemptions; unlimited when unset
+    public Integer redemptionLimit;
+    // Maximum redemptions per customer (see Cart.customerId); unlimited when unset
+    public Integer usesPerCustomer;
 
     /* -------- CART-WISE -------- */
     public Integer threshold;
@@ -18,6 +22,11 @@ public class CouponDetails {
 
     /* -------- PRODUCT-WISE -------- */
     public Integer productId;
+    // Quantity breaks instead of one flat discount, e.g. 5+ units 10%, 20+ units 15%
+    public List<QuantityTier> tiers;
+    // Ranking among coupons on the same product: exclusive ones first, then higher priority (0-1000)
+    public Integer priority;
+    public Boolean exclusive;
 
     /* -------- BXGY -------- */
     public List<Integer> buyProducts;
@@ -26,6 +35,14 @@ public class CouponDetails {
     public Integer getQuantity;
     public Integer repetitionLimit;
 
+    /* -------- RULE (uses discount, and productId to discount one product only) -------- */
+    // Condition in the rule language, e.g. "containsAny({7, 8}) && total >= 500" (see RuleCompiler)
+    public String condition;
+
+    /* -------- CATEGORY (uses discount) -------- */
+    // Taxonomy category path, e.g. "Electronics/Phones"; includes its subcategories
+    public String category;
+
     /* -------- DEFAULTING LOGIC -------- */
     public boolean isActive() {
         return isActive == null ? true : isActive;
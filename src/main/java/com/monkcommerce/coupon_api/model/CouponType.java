@@ -7,5 +7,7 @@ package com.monkcommerce.coupon_api.model;
 public enum CouponType {
     CART_WISE,
     PRODUCT_WISE,
-    BXGY
+    BXGY,
+    RULE,
+    CATEGORY
 }
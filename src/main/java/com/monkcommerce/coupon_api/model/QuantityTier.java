@@ -0,0 +1,19 @@
+package com.monkcommerce.coupon_api.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// One quantity break of a tiered product-wise coupon: discount% once a line has minQuantity units
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class QuantityTier {
+
+    public Integer minQuantity;
+    public Double discount;
+
+    public QuantityTier() {
+    }
+
+    public QuantityTier(int minQuantity, double discount) {
+        this.minQuantity = minQuantity;
+        this.discount = discount;
+    }
+}
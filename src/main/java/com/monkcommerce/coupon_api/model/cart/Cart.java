@@ -1,13 +1,18 @@
 package com.monkcommerce.coupon_api.model.cart;
 
 import java.util.List;
+import com.monkcommerce.coupon_api.util.CartDeserializer;
 import lombok.Data; // Requires Lombok dependency
 import lombok.AllArgsConstructor;
 import lombok.NoArgsConstructor;
+import tools.jackson.databind.annotation.JsonDeserialize;
 
 @Data // Generates getters, setters, toString, etc. automatically
 @AllArgsConstructor
 @NoArgsConstructor
+@JsonDeserialize(using = CartDeserializer.class) // Streaming parse + validation of request carts
 public class Cart {
     public List<CartItem> items;
-}
\ No newline at end of file
+    // Optional; required by coupons limited to listed customers or uses per customer
+    public Long customerId;
+}
@@ -1,6 +1,8 @@
 package com.monkcommerce.coupon_api.model.response;
 
+import java.time.Instant;
 import java.util.List;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
 
 public class ApplyCouponResponse {
@@ -10,6 +12,12 @@ public class ApplyCouponResponse {
     private double totalDiscount;
     private double finalPrice;
 
+    // Set when the redemption was reserved; commit or release it before it expires
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long reservationId;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Instant reservationExpiresAt;
+
     public ApplyCouponResponse(List<CartItem> items,
                         double totalPrice,
                         double totalDiscount,
@@ -35,4 +43,17 @@ public class ApplyCouponResponse {
     public double getFinalPrice() {
         return finalPrice;
     }
+
+    public Long getReservationId() {
+        return reservationId;
+    }
+
+    public Instant getReservationExpiresAt() {
+        return reservationExpiresAt;
+    }
+
+    public void setReservation(long reservationId, Instant expiresAt) {
+        this.reservationId = reservationId;
+        this.reservationExpiresAt = expiresAt;
+    }
 }
@@ -0,0 +1,24 @@
+package com.monkcommerce.coupon_api.model.response;
+
+public class CatalogStagingResponse {
+
+    // NONE, BUILDING, READY or FAILED
+    public String state;
+    public String source;
+    public int staged_coupons;
+    public long build_millis;
+    public String error;
+    public int live_coupons;
+    public boolean rollback_available;
+
+    public CatalogStagingResponse(String state, String source, int stagedCoupons, long buildMillis,
+                                  String error, int liveCoupons, boolean rollbackAvailable) {
+        this.state = state;
+        this.source = source;
+        this.staged_coupons = stagedCoupons;
+        this.build_millis = buildMillis;
+        this.error = error;
+        this.live_coupons = liveCoupons;
+        this.rollback_available = rollbackAvailable;
+    }
+}
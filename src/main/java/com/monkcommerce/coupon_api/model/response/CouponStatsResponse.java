@@ -0,0 +1,29 @@
+package com.monkcommerce.coupon_api.model.response;
+
+import com.monkcommerce.coupon_api.metrics.CouponAnalytics;
+
+import java.util.Locale;
+
+public class CouponStatsResponse {
+
+    public long coupon_id;
+    public String window;
+    public long evaluations;
+    public long wins;
+    public long applies;
+    public double discount;
+
+    // A coupon with no recorded events
+    public CouponStatsResponse(long couponId, CouponAnalytics.Window window) {
+        this.coupon_id = couponId;
+        this.window = window.name().toLowerCase(Locale.ROOT);
+    }
+
+    public CouponStatsResponse(CouponAnalytics.CouponStats stats, CouponAnalytics.Window window, long nowNanos) {
+        this(stats.couponId(), window);
+        this.evaluations = stats.get(CouponAnalytics.EVALUATIONS, window, nowNanos);
+        this.wins = stats.get(CouponAnalytics.WINS, window, nowNanos);
+        this.applies = stats.get(CouponAnalytics.APPLIES, window, nowNanos);
+        this.discount = stats.get(CouponAnalytics.DISCOUNT_CENTS, window, nowNanos) / 100.0;
+    }
+}
@@ -0,0 +1,15 @@
+package com.monkcommerce.coupon_api.model.response;
+
+public class CustomerListResponse {
+
+    public long coupon_id;
+    // 0 when the coupon is open to every customer
+    public int customers;
+    public long memory_bytes;
+
+    public CustomerListResponse(long couponId, int customers, long memoryBytes) {
+        this.coupon_id = couponId;
+        this.customers = customers;
+        this.memory_bytes = memoryBytes;
+    }
+}
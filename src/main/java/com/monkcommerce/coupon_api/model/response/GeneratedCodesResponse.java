@@ -0,0 +1,14 @@
+package com.monkcommerce.coupon_api.model.response;
+
+import java.util.List;
+
+public class GeneratedCodesResponse {
+
+    public long coupon_id;
+    public List<String> codes;
+
+    public GeneratedCodesResponse(long couponId, List<String> codes) {
+        this.coupon_id = couponId;
+        this.codes = codes;
+    }
+}
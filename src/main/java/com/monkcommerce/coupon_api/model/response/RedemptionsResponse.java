@@ -0,0 +1,20 @@
+package com.monkcommerce.coupon_api.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+public class RedemptionsResponse {
+
+    public long coupon_id;
+    // Null when the coupon has no limit
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Integer redemption_limit;
+    public long committed;
+    public long reserved;
+
+    public RedemptionsResponse(long couponId, Integer redemptionLimit, long committed, long reserved) {
+        this.coupon_id = couponId;
+        this.redemption_limit = redemptionLimit;
+        this.committed = committed;
+        this.reserved = reserved;
+    }
+}
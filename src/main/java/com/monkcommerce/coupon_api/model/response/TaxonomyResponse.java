@@ -0,0 +1,20 @@
+package com.monkcommerce.coupon_api.model.response;
+
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+
+public class TaxonomyResponse {
+
+    public String source;
+    public int categories;
+    public int products;
+    public long memory_bytes;
+    public long load_millis;
+
+    public TaxonomyResponse(CategoryTaxonomy taxonomy) {
+        this.source = taxonomy.source();
+        this.categories = taxonomy.categories();
+        this.products = taxonomy.products();
+        this.memory_bytes = taxonomy.memoryBytes();
+        this.load_millis = taxonomy.loadNanos() / 1_000_000;
+    }
+}
@@ -0,0 +1,72 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+import java.util.Arrays;
+
+/**
+ * Buy buyQuantity of buyProducts, get getQuantity of getProducts free, up to repetitionLimit times.
+ * Product id arrays are sorted so membership is a binary search.
+ *
+ * uniquenessKey is a 64-bit hash of the offer (buy set, buy quantity, get set, get quantity),
+ * computed once when the rule is built. Equal offers always share a key; a shared key is
+ * confirmed with {@link #sameOffer(BxGyRule)}.
+ */
+public record BxGyRule(int[] buyProducts, int buyQuantity, int[] getProducts, int getQuantity,
+                       int repetitionLimit, long uniquenessKey) implements CouponRule {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Product arrays must already be sorted
+    public static BxGyRule of(int[] buyProducts, int buyQuantity, int[] getProducts, int getQuantity,
+                              int repetitionLimit) {
+        return new BxGyRule(buyProducts, buyQuantity, getProducts, getQuantity, repetitionLimit,
+                uniquenessKey(buyProducts, buyQuantity, getProducts, getQuantity));
+    }
+
+    // Same rule backed by (equal) interned product arrays
+    public BxGyRule withProductSets(int[] buyProducts, int[] getProducts) {
+        return new BxGyRule(buyProducts, buyQuantity, getProducts, getQuantity, repetitionLimit, uniquenessKey);
+    }
+
+    public boolean isBuyProduct(int productId) {
+        return Arrays.binarySearch(buyProducts, productId) >= 0;
+    }
+
+    public boolean isGetProduct(int productId) {
+        return Arrays.binarySearch(getProducts, productId) >= 0;
+    }
+
+    // Same buy/get products and quantities; repetitionLimit does not make an offer distinct
+    public boolean sameOffer(BxGyRule other) {
+        return buyQuantity == other.buyQuantity
+                && getQuantity == other.getQuantity
+                && Arrays.equals(buyProducts, other.buyProducts)
+                && Arrays.equals(getProducts, other.getProducts);
+    }
+
+    // FNV-1a over the lengths, ids and quantities, then a murmur3 finalizer for avalanche
+    private static long uniquenessKey(int[] buyProducts, int buyQuantity, int[] getProducts, int getQuantity) {
+        long h = FNV_OFFSET;
+        h = mix(h, buyProducts.length);
+        for (int id : buyProducts) {
+            h = mix(h, id);
+        }
+        h = mix(h, buyQuantity);
+        h = mix(h, getProducts.length);
+        for (int id : getProducts) {
+            h = mix(h, id);
+        }
+        h = mix(h, getQuantity);
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long mix(long h, int value) {
+        return (h ^ (value & 0xffffffffL)) * FNV_PRIME;
+    }
+}
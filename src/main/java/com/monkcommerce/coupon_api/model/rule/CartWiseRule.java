@@ -0,0 +1,5 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+// Discount on the whole cart once its total reaches the threshold
+public record CartWiseRule(int threshold, int discountBps) implements CouponRule {
+}
@@ -0,0 +1,8 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+/**
+ * Discount on every cart line whose product is in a taxonomy category, or one of its
+ * subcategories. category is the category's path, resolved against the current taxonomy.
+ */
+public record CategoryRule(String category, int discountBps) implements CouponRule {
+}
@@ -0,0 +1,108 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.QuantityTier;
+import com.monkcommerce.coupon_api.util.IntListView;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Internal, immutable per-type view of a coupon used by the evaluation code.
+ *
+ * {@link CouponDetails} stays the JSON shape (every field of every type, boxed and nullable);
+ * a rule holds only the primitive fields its type needs. A stored coupon keeps just its rule,
+ * and the JSON shape is rebuilt from it with {@link #describe}. Percentages are kept as
+ * basis points (1% = 100 bps).
+ */
+public sealed interface CouponRule permits CartWiseRule, ProductWiseRule, TieredProductRule, BxGyRule, ExpressionRule, CategoryRule {
+
+    int BPS_PER_PERCENT = 100;
+    double BPS_DIVISOR = 10_000.0;
+
+    // Map a validated coupon's details to its rule
+    static CouponRule of(CouponType type, CouponDetails details) {
+        return switch (type) {
+            case CART_WISE -> new CartWiseRule(details.threshold, toBps(details.discount));
+            case PRODUCT_WISE -> details.tiers != null
+                    ? TieredProductRule.of(details.productId, details.tiers)
+                    : new ProductWiseRule(details.productId, toBps(details.discount));
+            case BXGY -> BxGyRule.of(
+                    sortedIds(details.buyProducts),
+                    details.buyQuantity,
+                    sortedIds(details.getProducts),
+                    details.getQuantity,
+                    details.repetitionLimit);
+            case RULE -> ExpressionRule.of(details);
+            case CATEGORY -> new CategoryRule(details.category, toBps(details.discount));
+        };
+    }
+
+    // The inverse of of(): set the rule's fields of the JSON shape. Discounts come back as whole basis points.
+    static void describe(CouponRule rule, CouponDetails details) {
+        if (rule instanceof CartWiseRule cart) {
+            details.threshold = cart.threshold();
+            details.discount = toPercent(cart.discountBps());
+        } else if (rule instanceof ProductWiseRule product) {
+            details.productId = product.productId();
+            details.discount = toPercent(product.discountBps());
+        } else if (rule instanceof TieredProductRule tiered) {
+            details.productId = tiered.productId();
+            details.tiers = new ArrayList<>(tiered.minQuantities().length);
+            for (int i = 0; i < tiered.minQuantities().length; i++) {
+                details.tiers.add(new QuantityTier(tiered.minQuantities()[i], toPercent(tiered.discountBps()[i])));
+            }
+        } else if (rule instanceof BxGyRule bxgy) {
+            details.buyProducts = new IntListView(bxgy.buyProducts());
+            details.buyQuantity = bxgy.buyQuantity();
+            details.getProducts = new IntListView(bxgy.getProducts());
+            details.getQuantity = bxgy.getQuantity();
+            details.repetitionLimit = bxgy.repetitionLimit();
+        } else if (rule instanceof ExpressionRule expression) {
+            details.condition = expression.source();
+            details.productId = expression.targetsProduct() ? expression.productId() : null;
+            details.discount = toPercent(expression.discountBps());
+        } else if (rule instanceof CategoryRule category) {
+            details.category = category.category();
+            details.discount = toPercent(category.discountBps());
+        }
+    }
+
+    // Percentage -> basis points, rounded to the nearest basis point
+    static int toBps(double percent) {
+        return (int) Math.round(percent * BPS_PER_PERCENT);
+    }
+
+    static double toPercent(int bps) {
+        return bps / (double) BPS_PER_PERCENT;
+    }
+
+    // Discount on an amount for a basis-point rate
+    static double discountOf(double amount, int bps) {
+        return amount * bps / BPS_DIVISOR;
+    }
+
+    private static int[] sortedIds(List<Integer> ids) {
+        // Details of an indexed or decoded coupon already view a sorted (interned) array
+        if (ids instanceof IntListView view && isSorted(view.array())) {
+            return view.array();
+        }
+        int[] sorted = new int[ids.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = ids.get(i);
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private static boolean isSorted(int[] ids) {
+        for (int i = 1; i < ids.length; i++) {
+            if (ids[i - 1] > ids[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,36 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+import com.monkcommerce.coupon_api.expression.RuleCompiler;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Discount on the whole cart, or on one product's lines when targetsProduct, for carts that
+ * satisfy a condition. condition is the compiled {@code (Cart)boolean} handle (see RuleCompiler)
+ * and source the text it was compiled from, kept to describe the coupon.
+ */
+public record ExpressionRule(MethodHandle condition, String source, boolean targetsProduct, int productId,
+                             int discountBps) implements CouponRule {
+
+    // Compiles the condition; throws CouponException when it is not valid
+    static ExpressionRule of(CouponDetails details) {
+        return new ExpressionRule(
+                RuleCompiler.compile(details.condition),
+                details.condition,
+                details.productId != null,
+                details.productId == null ? 0 : details.productId,
+                CouponRule.toBps(details.discount));
+    }
+
+    public boolean matches(Cart cart) {
+        try {
+            return (boolean) condition.invokeExact(cart);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
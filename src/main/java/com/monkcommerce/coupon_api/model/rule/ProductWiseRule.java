@@ -0,0 +1,5 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+// Discount on every unit of a single product
+public record ProductWiseRule(int productId, int discountBps) implements CouponRule {
+}
@@ -0,0 +1,35 @@
+package com.monkcommerce.coupon_api.model.rule;
+
+import com.monkcommerce.coupon_api.model.QuantityTier;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Quantity-break discount on a single product: the tier with the highest minQuantity not above
+ * a line's quantity applies. minQuantities is sorted ascending, with discounts in the same order.
+ */
+public record TieredProductRule(int productId, int[] minQuantities, int[] discountBps) implements CouponRule {
+
+    // Tiers must already be validated; they are sorted here
+    static TieredProductRule of(int productId, List<QuantityTier> tiers) {
+        QuantityTier[] sorted = tiers.toArray(new QuantityTier[0]);
+        Arrays.sort(sorted, (a, b) -> Integer.compare(a.minQuantity, b.minQuantity));
+        int[] minQuantities = new int[sorted.length];
+        int[] discountBps = new int[sorted.length];
+        for (int i = 0; i < sorted.length; i++) {
+            minQuantities[i] = sorted[i].minQuantity;
+            discountBps[i] = CouponRule.toBps(sorted[i].discount);
+        }
+        return new TieredProductRule(productId, minQuantities, discountBps);
+    }
+
+    // Discount for a line of this many units, 0 below the first tier
+    public int discountBpsFor(int quantity) {
+        int tier = Arrays.binarySearch(minQuantities, quantity);
+        if (tier < 0) {
+            tier = -tier - 2;
+        }
+        return tier < 0 ? 0 : discountBps[tier];
+    }
+}
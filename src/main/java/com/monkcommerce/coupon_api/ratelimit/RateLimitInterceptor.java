@@ -0,0 +1,53 @@
+package com.monkcommerce.coupon_api.ratelimit;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+/**
+ * Rate limits one endpoint per client. The client is the API key header when it carries one of
+ * the configured keys, otherwise the remote address, so rotating made-up header values does not
+ * buy a fresh bucket. Rejections write a fixed 429 body and a Retry-After header without
+ * reaching the controller.
+ */
+public class RateLimitInterceptor implements HandlerInterceptor {
+
+    // Same shape as ApiResponse, without the timestamp
+    private static final byte[] REJECTED_BODY =
+            "{\"success\":false,\"error\":\"Rate limit exceeded\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final RateLimiter limiter;
+    private final String clientHeader;
+    private final Set<String> apiKeys;
+
+    public RateLimitInterceptor(RateLimiter limiter, String clientHeader, Set<String> apiKeys) {
+        this.limiter = limiter;
+        this.clientHeader = clientHeader;
+        this.apiKeys = apiKeys;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws IOException {
+        String client = request.getHeader(clientHeader);
+        if (client == null || !apiKeys.contains(client)) {
+            client = request.getRemoteAddr();
+        }
+        long waitNanos = limiter.tryAcquire(client, System.nanoTime());
+        if (waitNanos == 0) {
+            return true;
+        }
+
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader("Retry-After", Long.toString((waitNanos + 999_999_999L) / 1_000_000_000L));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(REJECTED_BODY.length);
+        response.getOutputStream().write(REJECTED_BODY);
+        return false;
+    }
+}
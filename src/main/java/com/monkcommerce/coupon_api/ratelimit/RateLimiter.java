@@ -0,0 +1,94 @@
+package com.monkcommerce.coupon_api.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Per-client token bucket, implemented as GCRA (generic cell rate algorithm) so a bucket is a
+ * single long: the theoretical arrival time (TAT) of the next request. A request is allowed
+ * when TAT - now stays within the burst tolerance and is charged by moving TAT one emission
+ * interval forward with a CAS, so there are no locks and no per-request allocation.
+ *
+ * Buckets live in a fixed-size open-addressing table of client keys. A key probes
+ * MAX_PROBES slots; when they are all taken it takes over one whose bucket has refilled
+ * completely (TAT in the past), which is exactly the state a new client starts in, so idle
+ * clients are evicted without changing anyone's limit. If every probed client is active the
+ * key shares the bucket of its home slot, which can only make limiting stricter.
+ */
+public class RateLimiter {
+
+    private static final int MAX_PROBES = 8;
+
+    private final long emissionNanos;
+    // How far TAT may run ahead of now: burst - 1 requests beyond the steady rate
+    private final long toleranceNanos;
+
+    private final AtomicReferenceArray<String> keys;
+    private final AtomicLongArray tats;
+    private final int mask;
+
+    public RateLimiter(double perSecond, int burst, int maxClients) {
+        if (perSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.emissionNanos = (long) (1_000_000_000L / perSecond);
+        this.toleranceNanos = emissionNanos * (burst - 1);
+        int capacity = Integer.highestOneBit(Math.max(MAX_PROBES, maxClients) - 1) << 1;
+        this.keys = new AtomicReferenceArray<>(capacity);
+        this.tats = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        // A new bucket is full whatever the sign of System.nanoTime()
+        for (int i = 0; i < capacity; i++) {
+            tats.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    /**
+     * Charge one request to the client at nowNanos (System.nanoTime()).
+     *
+     * @return 0 when allowed, otherwise the nanoseconds until the request would be allowed
+     */
+    public long tryAcquire(String client, long nowNanos) {
+        int slot = slotOf(client, nowNanos);
+        for (;;) {
+            long tat = tats.get(slot);
+            long next = Math.max(tat, nowNanos) + emissionNanos;
+            long ahead = next - nowNanos - emissionNanos;
+            if (ahead > toleranceNanos) {
+                return ahead - toleranceNanos;
+            }
+            if (tats.compareAndSet(slot, tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private int slotOf(String client, long nowNanos) {
+        int h = client.hashCode();
+        int home = (h ^ (h >>> 16)) & mask;
+        int idle = -1;
+        for (int probe = 0; probe < MAX_PROBES; probe++) {
+            int slot = (home + probe) & mask;
+            String key = keys.get(slot);
+            if (key == null) {
+                if (keys.compareAndSet(slot, null, client)) {
+                    return slot;
+                }
+                key = keys.get(slot);
+            }
+            if (key.equals(client)) {
+                return slot;
+            }
+            if (idle < 0 && tats.get(slot) - nowNanos <= 0) {
+                idle = slot;
+            }
+        }
+        if (idle >= 0) {
+            String previous = keys.get(idle);
+            if (keys.compareAndSet(idle, previous, client)) {
+                return idle;
+            }
+        }
+        return home;
+    }
+}
@@ -0,0 +1,291 @@
+package com.monkcommerce.coupon_api.redemption;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+/**
+ * Per-coupon and catalog-wide redemption counters with a reserve -> commit / release protocol.
+ *
+ * A counter's held value is committed + open reservations and is only raised by a CAS that
+ * checks the limit, so a limit is never exceeded however many threads race for the last
+ * redemption. Each coupon has its own counter, so a hot coupon only contends with itself;
+ * the catalog-wide counter is only touched when a global limit is set.
+ *
+ * A reservation ends exactly once: commit, release and expiry all remove it from the open
+ * map first, and only the caller whose remove succeeds adjusts the counters.
+ *
+ * Coupons with a per-customer limit also count uses per customer id in a primitive
+ * LongLongHashMap (no boxing, no per-entry objects), guarded by the coupon's counter.
+ */
+public class RedemptionLedger {
+
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    public static final long NO_CUSTOMER = Long.MIN_VALUE;
+
+    private static final class Counter {
+        // Committed redemptions plus open reservations
+        final AtomicLong held = new AtomicLong();
+        final AtomicLong committed = new AtomicLong();
+        // customerId -> uses (committed + reserved); created on first per-customer use
+        LongLongHashMap customerUses;
+
+        boolean tryAcquire(long limit) {
+            for (;;) {
+                long current = held.get();
+                if (current >= limit) {
+                    return false;
+                }
+                if (held.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+    }
+
+    private final Map<Long, Counter> counters = new ConcurrentHashMap<>();
+    private final Counter global = new Counter();
+    private final Map<Long, Reservation> open = new ConcurrentHashMap<>();
+    private final AtomicLong reservationSeq = new AtomicLong();
+
+    private volatile long globalLimit = UNLIMITED;
+    // Set once any coupon tracks uses per customer, so lookups can skip the counters otherwise
+    private volatile boolean tracksCustomers;
+
+    public void setGlobalLimit(long globalLimit) {
+        this.globalLimit = globalLimit;
+    }
+
+    private Counter counter(long couponId) {
+        return counters.computeIfAbsent(couponId, id -> new Counter());
+    }
+
+    /**
+     * Hold one redemption of a coupon for ttlNanos. With a customerLimit, the customer's uses
+     * of the coupon are limited too; pass UNLIMITED and NO_CUSTOMER otherwise.
+     *
+     * @throws CouponException when the coupon, the catalog or the customer has no redemptions left
+     */
+    public Reservation reserve(long couponId, long couponLimit, long customerId, long customerLimit, long ttlNanos) {
+        long tracked = acquire(couponId, couponLimit, customerId, customerLimit);
+        long now = System.nanoTime();
+        Reservation reservation = new Reservation(reservationSeq.incrementAndGet(), couponId, tracked,
+                now + ttlNanos, Instant.now().plusNanos(ttlNanos).truncatedTo(ChronoUnit.MILLIS));
+        open.put(reservation.id(), reservation);
+        return reservation;
+    }
+
+    // Reserve and commit in one step
+    public void redeem(long couponId, long couponLimit, long customerId, long customerLimit) {
+        acquire(couponId, couponLimit, customerId, customerLimit);
+        counter(couponId).committed.incrementAndGet();
+        global.committed.incrementAndGet();
+    }
+
+    // Returns the customer id the use was counted for, or NO_CUSTOMER
+    private long acquire(long couponId, long couponLimit, long customerId, long customerLimit) {
+        Counter counter = counter(couponId);
+        long tracked = NO_CUSTOMER;
+        if (customerLimit != UNLIMITED) {
+            if (customerId == NO_CUSTOMER) {
+                throw new CouponException("Customer id required for this coupon");
+            }
+            synchronized (counter) {
+                if (counter.customerUses == null) {
+                    counter.customerUses = new LongLongHashMap();
+                    tracksCustomers = true;
+                }
+                long uses = counter.customerUses.get(customerId, 0);
+                if (uses >= customerLimit) {
+                    throw new CouponException("Coupon usage limit reached for this customer");
+                }
+                counter.customerUses.put(customerId, uses + 1, 0);
+            }
+            tracked = customerId;
+        }
+
+        boolean globallyLimited = globalLimit != UNLIMITED;
+        if (globallyLimited && !global.tryAcquire(globalLimit)) {
+            releaseCustomer(counter, tracked);
+            throw new CouponException("Global redemption limit reached");
+        }
+        if (!counter.tryAcquire(couponLimit)) {
+            if (globallyLimited) {
+                global.held.decrementAndGet();
+            }
+            releaseCustomer(counter, tracked);
+            throw new CouponException("Coupon redemption limit reached");
+        }
+        if (!globallyLimited) {
+            global.held.incrementAndGet();
+        }
+        return tracked;
+    }
+
+    private static void releaseCustomer(Counter counter, long customerId) {
+        if (customerId == NO_CUSTOMER) {
+            return;
+        }
+        synchronized (counter) {
+            if (counter.customerUses == null) {
+                return;
+            }
+            long uses = counter.customerUses.get(customerId, 0);
+            if (uses <= 1) {
+                counter.customerUses.remove(customerId, 0);
+            } else {
+                counter.customerUses.put(customerId, uses - 1, 0);
+            }
+        }
+    }
+
+    /**
+     * Make a reservation permanent.
+     *
+     * @throws CouponException when it was already committed, released or has expired
+     */
+    public Reservation commit(long reservationId) {
+        Reservation reservation = take(reservationId);
+        if (System.nanoTime() - reservation.expiresAtNanos() > 0) {
+            giveBack(reservation);
+            throw new CouponException("Reservation not found or expired: " + reservationId);
+        }
+        counter(reservation.couponId()).committed.incrementAndGet();
+        global.committed.incrementAndGet();
+        return reservation;
+    }
+
+    // Return a reservation's redemption to the pool
+    public Reservation release(long reservationId) {
+        Reservation reservation = take(reservationId);
+        giveBack(reservation);
+        return reservation;
+    }
+
+    // Release every reservation past its TTL, returning how many expired
+    public int expire(long nowNanos) {
+        int expired = 0;
+        for (Reservation reservation : open.values()) {
+            if (nowNanos - reservation.expiresAtNanos() > 0 && open.remove(reservation.id(), reservation)) {
+                giveBack(reservation);
+                expired++;
+            }
+        }
+        return expired;
+    }
+
+    private Reservation take(long reservationId) {
+        Reservation reservation = open.remove(reservationId);
+        if (reservation == null) {
+            throw new CouponException("Reservation not found or expired: " + reservationId);
+        }
+        return reservation;
+    }
+
+    private void giveBack(Reservation reservation) {
+        Counter counter = counters.get(reservation.couponId());
+        if (counter != null) {
+            counter.held.decrementAndGet();
+            releaseCustomer(counter, reservation.customerId());
+        }
+        global.held.decrementAndGet();
+    }
+
+    // Drop a deleted coupon's counter; its open reservations can still be released
+    public void forget(long couponId) {
+        counters.remove(couponId);
+    }
+
+    // Drop the counters of every coupon the filter rejects, e.g. once no catalog holds it
+    public void retain(LongPredicate coupons) {
+        counters.keySet().removeIf(couponId -> !coupons.test(couponId));
+    }
+
+    public long committed(long couponId) {
+        Counter counter = counters.get(couponId);
+        return counter == null ? 0 : counter.committed.get();
+    }
+
+    public long reserved(long couponId) {
+        Counter counter = counters.get(couponId);
+        return counter == null ? 0 : counter.held.get() - counter.committed.get();
+    }
+
+    // Uses of a coupon by a customer, committed or reserved; 0 when not tracked
+    public long customerUses(long couponId, long customerId) {
+        if (!tracksCustomers) {
+            return 0;
+        }
+        Counter counter = counters.get(couponId);
+        if (counter == null) {
+            return 0;
+        }
+        synchronized (counter) {
+            return counter.customerUses == null ? 0 : counter.customerUses.get(customerId, 0);
+        }
+    }
+
+    public long globalCommitted() {
+        return global.committed.get();
+    }
+
+    public int openReservations() {
+        return open.size();
+    }
+
+    /* -------- SNAPSHOT -------- */
+
+    // Committed counts only; a catalog is never snapshotted with open reservations
+    public int encodedBytes() {
+        int bytes = 8 + 4;
+        for (Counter counter : counters.values()) {
+            bytes += 8 + 8 + 4 + (counter.customerUses == null ? 0 : counter.customerUses.size() * 16);
+        }
+        return bytes;
+    }
+
+    // long globalCommitted, int count,
+    // count x [long couponId, long committed, int customers, customers x [long customerId, long uses]]
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(global.committed.get());
+        buffer.putInt(counters.size());
+        counters.forEach((id, counter) -> {
+            buffer.putLong(id).putLong(counter.committed.get());
+            LongLongHashMap uses = counter.customerUses;
+            buffer.putInt(uses == null ? 0 : uses.size());
+            if (uses != null) {
+                for (int slot = uses.nextSlot(0); slot >= 0; slot = uses.nextSlot(slot + 1)) {
+                    buffer.putLong(uses.keyAt(slot)).putLong(uses.valueAt(slot));
+                }
+            }
+        });
+    }
+
+    public void readFrom(ByteBuffer buffer) {
+        long globalCommitted = buffer.getLong();
+        global.held.set(globalCommitted);
+        global.committed.set(globalCommitted);
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            Counter counter = counter(buffer.getLong());
+            long committed = buffer.getLong();
+            counter.held.set(committed);
+            counter.committed.set(committed);
+            int customers = buffer.getInt();
+            if (customers > 0) {
+                counter.customerUses = new LongLongHashMap(customers);
+                tracksCustomers = true;
+                for (int c = 0; c < customers; c++) {
+                    counter.customerUses.put(buffer.getLong(), buffer.getLong(), 0);
+                }
+            }
+        }
+    }
+}
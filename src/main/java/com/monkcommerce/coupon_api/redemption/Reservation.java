@@ -0,0 +1,8 @@
+package com.monkcommerce.coupon_api.redemption;
+
+import java.time.Instant;
+
+// One held redemption, counted against the limits until it is committed, released or expires.
+// customerId is RedemptionLedger.NO_CUSTOMER unless the coupon limits uses per customer.
+public record Reservation(long id, long couponId, long customerId, long expiresAtNanos, Instant expiresAt) {
+}
@@ -1,21 +1,57 @@
 package com.monkcommerce.coupon_api.service;
 
+import com.monkcommerce.coupon_api.audit.AuditSink;
+import com.monkcommerce.coupon_api.coupon.CategoryCoupon;
 import com.monkcommerce.coupon_api.coupon.CouponHandler;
 import com.monkcommerce.coupon_api.coupon.ProductWiseCoupon;
+import com.monkcommerce.coupon_api.coupon.RuleCoupon;
 import com.monkcommerce.coupon_api.exception.CouponException;
 import com.monkcommerce.coupon_api.factory.CouponFactory;
+import com.monkcommerce.coupon_api.metrics.CouponAnalytics;
+import com.monkcommerce.coupon_api.metrics.CouponEvaluationEvent;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.metrics.IndexMutationEvent;
 import com.monkcommerce.coupon_api.model.Coupon;
-import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
 import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
 import com.monkcommerce.coupon_api.model.response.ApplicableCouponItem;
 import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.response.CouponStatsResponse;
+import com.monkcommerce.coupon_api.model.response.CustomerListResponse;
+import com.monkcommerce.coupon_api.model.response.RedemptionsResponse;
+import com.monkcommerce.coupon_api.model.rule.BxGyRule;
+import com.monkcommerce.coupon_api.model.rule.CartWiseRule;
+import com.monkcommerce.coupon_api.model.rule.CategoryRule;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.model.rule.ExpressionRule;
+import com.monkcommerce.coupon_api.redemption.RedemptionLedger;
+import com.monkcommerce.coupon_api.redemption.Reservation;
+import com.monkcommerce.coupon_api.store.CategoryIndex;
 import com.monkcommerce.coupon_api.store.CouponIndexes;
+import com.monkcommerce.coupon_api.store.CouponRecordCodec;
+import com.monkcommerce.coupon_api.store.CartThresholdIndex;
+import com.monkcommerce.coupon_api.store.CouponStore;
+import com.monkcommerce.coupon_api.store.CouponView;
+import com.monkcommerce.coupon_api.store.CustomerEligibility;
+import com.monkcommerce.coupon_api.store.HeapCouponStore;
+import com.monkcommerce.coupon_api.store.ProductTierIndex;
+import com.monkcommerce.coupon_api.store.RuleIndex;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+import com.monkcommerce.coupon_api.util.CodeDictionary;
+import com.monkcommerce.coupon_api.util.CouponDetailsMerger;
+import com.monkcommerce.coupon_api.util.CustomerSet;
+import com.monkcommerce.coupon_api.util.EpochDays;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
 import com.monkcommerce.coupon_api.coupon.BxGyCoupon;
 import com.monkcommerce.coupon_api.coupon.CartWiseCoupon;
 
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.*;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -25,25 +61,166 @@ import org.springframework.web.bind.annotation.PutMapping;
 
 public class CouponService {
 
-    // In-memory store: couponId -> coupon
-    private final Map<Long, Coupon> store = new HashMap<>();
+    // Primary store: couponId -> coupon (heap or off-heap)
+    private final CouponStore store;
     private final CouponIndexes indexes = new CouponIndexes();
     private long idSeq = 1;
 
+    // Bumped on every successful catalog mutation
+    private volatile long catalogVersion;
+
+    private final CouponMetrics metrics;
+
+    public static final int MAX_COMBINED_COUPONS = 10;
+
+    private static final int MAX_GENERATED_CODES = 1_000_000;
+    private static final int MAX_CODE_PREFIX = 20;
+    private static final String CROCKFORD_BASE32 = "0123456789ABCDEFGHJKMNPQRSTVWXYZ";
+    private static final SecureRandom CODE_RANDOM = new SecureRandom();
+
+    // Tenant quotas, unlimited unless set
+    private int maxCoupons = Integer.MAX_VALUE;
+    private long maxBytes = Long.MAX_VALUE;
+
+    // Redemption counters and open reservations; safe to use from concurrent requests
+    private final RedemptionLedger redemptions;
+    // Coupons another catalog sharing the ledger still holds; a delete here keeps their counters
+    private LongPredicate heldElsewhere = couponId -> false;
+    private long reservationTtlNanos = Duration.ofMinutes(5).toNanos();
+
+    // Receives every successful coupon application
+    private AuditSink audit = AuditSink.NONE;
+
+    // Live per-coupon evaluation/apply counters; safe to use from concurrent requests
+    private final CouponAnalytics analytics = new CouponAnalytics();
+
+    public CouponService() {
+        this(CouponMetrics.noop());
+    }
+
+    public CouponService(CouponMetrics metrics) {
+        this(metrics, new HeapCouponStore());
+    }
+
+    public CouponService(CouponMetrics metrics, CouponStore store) {
+        this(metrics, store, true);
+    }
+
+    /**
+     * A catalog staged in the background shares its tenant's metrics but is created unbound,
+     * so the catalog gauges keep reporting the live catalog until it is swapped in.
+     */
+    public CouponService(CouponMetrics metrics, CouponStore store, boolean bound) {
+        this(metrics, store, bound, new RedemptionLedger());
+    }
+
+    /**
+     * Catalogs that replace one another (staging, rollback) share one ledger keyed by coupon id,
+     * so redemption counts, the global limit and open reservations carry across a swap.
+     */
+    public CouponService(CouponMetrics metrics, CouponStore store, boolean bound, RedemptionLedger redemptions) {
+        this.metrics = metrics;
+        this.store = store;
+        this.redemptions = redemptions;
+        store.shareProductSets(indexes.productSets);
+        if (bound) {
+            bindMetrics();
+        }
+    }
+
+    // Point the catalog and index gauges at this catalog
+    public void bindMetrics() {
+        metrics.bindCatalog(indexes, this, s -> s.store.size(), s -> s.catalogVersion);
+    }
+
+    // Limit the number of stored coupons and their encoded size (see CouponRecordCodec)
+    public void setQuota(int maxCoupons, long maxBytes) {
+        this.maxCoupons = maxCoupons;
+        this.maxBytes = maxBytes;
+    }
+
+    // Cap committed redemptions across the whole catalog; 0 or less means unlimited
+    public void setGlobalRedemptionLimit(long limit) {
+        redemptions.setGlobalLimit(limit > 0 ? limit : RedemptionLedger.UNLIMITED);
+    }
+
+    public void setAuditSink(AuditSink audit) {
+        this.audit = audit;
+    }
+
+    // Taxonomy that CATEGORY coupons are resolved against; empty unless set
+    public void setTaxonomy(Supplier<CategoryTaxonomy> taxonomy) {
+        indexes.categories.setTaxonomy(taxonomy);
+    }
+
+    // Which coupons other catalogs sharing this one's ledger hold, checked when a coupon is deleted
+    public void setHeldElsewhere(LongPredicate heldElsewhere) {
+        this.heldElsewhere = heldElsewhere;
+    }
+
+    // How long a reservation holds a redemption before it is released automatically
+    public void setReservationTtl(Duration ttl) {
+        this.reservationTtlNanos = ttl.toNanos();
+    }
+
     //Create a new coupon
     public Coupon createCoupon(Coupon coupon) {
+        return create(coupon, idSeq++);
+    }
+
+    /**
+     * Create a coupon under the id it already carries, as a staged catalog does so its coupons
+     * keep their redemptions, customer lists and codes across a swap. Later creates get higher ids.
+     */
+    public Coupon importCoupon(Coupon coupon) {
+        long id = coupon.getId();
+        if (id <= 0) {
+            throw new CouponException("Coupon id must be positive: " + id);
+        }
+        if (store.contains(id)) {
+            throw new CouponException("Duplicate coupon id: " + id);
+        }
+        idSeq = Math.max(idSeq, id + 1);
+        return create(coupon, id);
+    }
+
+    // Ids below nextId are never handed out by createCoupon
+    public void skipIds(long nextId) {
+        idSeq = Math.max(idSeq, nextId);
+    }
+
+    private Coupon create(Coupon coupon, long id) {
+
+        IndexMutationEvent event = new IndexMutationEvent();
+        event.begin();
 
         // Assign ID
-        coupon.setId(idSeq++);
+        coupon.setId(id);
 
-        // Get the proper handler based on coupon type
-        CouponHandler handler = CouponFactory.create(coupon, indexes);
+        try {
+            checkQuota(coupon, null);
+            coupon.setCode(checkCode(coupon.getCode(), null));
+            checkRedemptionLimit(coupon);
 
-        // Validate and index in-memory
-        handler.validateAndIndex();
+            // Get the proper handler based on coupon type
+            CouponHandler handler = CouponFactory.create(coupon, indexes, store);
+
+            // Validate and index in-memory
+            handler.validateAndIndex();
+        } catch (CouponException ex) {
+            commitMutation(event, IndexMutationEvent.CREATE, coupon, ex);
+            throw ex;
+        }
+        coupon.bind();
 
         // Store in memory
-        store.put(coupon.getId(), coupon);
+        store.put(coupon);
+        indexes.views.put(CouponView.of(coupon));
+        if (coupon.getCode() != null) {
+            indexes.codes.add(coupon.getCode(), coupon.getId(), false);
+        }
+        catalogVersion++;
+        commitMutation(event, IndexMutationEvent.CREATE, coupon, null);
 
         return coupon;
     }
@@ -55,11 +232,7 @@ public class CouponService {
     public List<Coupon> getCoupon(boolean active) {
         return store.values()
             .stream()
-            .filter(c -> c != null && c.getDetails() != null && c.getType() != null)
-            .filter(c -> {
-                Boolean isActive = c.getDetails().isActive == null || c.getDetails().isActive;
-                return Boolean.TRUE.equals(isActive) == active;
-            })
+            .filter(c -> c != null && c.getType() != null && c.isActive() == active)
             .collect(Collectors.toList());
     }
 
@@ -90,19 +263,44 @@ public class CouponService {
 
         // Merge existing coupon that are not changes
         updatedCoupon.setId(couponId);
-        updatedCoupon.setDetails(merge(
+        updatedCoupon.setType(existing.getType());
+        if (updatedCoupon.getCode() == null) {
+            updatedCoupon.setCode(existing.getCode());
+        }
+        updatedCoupon.setDetails(CouponDetailsMerger.merge(
             updatedCoupon.getDetails(),
             existing.getDetails()
         ));
 
-        // Get the proper handler based on coupon type
-        CouponHandler handler = CouponFactory.create(existing, indexes);
+        IndexMutationEvent event = new IndexMutationEvent();
+        event.begin();
+        try {
+            checkQuota(updatedCoupon, existing);
+            updatedCoupon.setCode(checkCode(updatedCoupon.getCode(), existing.getCode()));
+            checkRedemptionLimit(updatedCoupon);
 
-        // Validate and update index in-memory
-        handler.validateAndUpdate(updatedCoupon);
+            // Get the proper handler based on coupon type
+            CouponHandler handler = CouponFactory.create(existing, indexes, store);
+
+            // Validate and update index in-memory
+            handler.validateAndUpdate(updatedCoupon);
+        } catch (CouponException ex) {
+            commitMutation(event, IndexMutationEvent.UPDATE, existing, ex);
+            throw ex;
+        }
+        updatedCoupon.bind();
 
         // Store in memory
-        store.put(couponId, updatedCoupon);
+        store.put(updatedCoupon);
+        indexes.views.put(CouponView.of(updatedCoupon));
+        if (updatedCoupon.getCode() != null && !updatedCoupon.getCode().equals(existing.getCode())) {
+            if (existing.getCode() != null) {
+                indexes.codes.remove(existing.getCode());
+            }
+            indexes.codes.add(updatedCoupon.getCode(), couponId, false);
+        }
+        catalogVersion++;
+        commitMutation(event, IndexMutationEvent.UPDATE, existing, null);
 
         return updatedCoupon;
     }
@@ -116,16 +314,428 @@ public class CouponService {
             throw new CouponException("Coupon not available with id: " + couponId);
         }
 
+        IndexMutationEvent event = new IndexMutationEvent();
+        event.begin();
+
         // Remove from index ONLY if coupon is active
-        if (existing.getDetails().isActive()) {
-            CouponHandler handler = CouponFactory.create(existing, indexes);
+        if (existing.isActive()) {
+            CouponHandler handler = CouponFactory.create(existing, indexes, store);
             handler.removeFromIndex();
         }
 
         store.remove(couponId);
+        indexes.views.remove(couponId);
+        indexes.codes.removeCoupon(couponId);
+        indexes.customers.remove(couponId);
+        if (!heldElsewhere.test(couponId)) {
+            redemptions.forget(couponId);
+        }
+        analytics.forget(couponId);
+        catalogVersion++;
+        commitMutation(event, IndexMutationEvent.DELETE, existing, null);
         return existing;
     }
 
+    // Normalized code, or an error when it is malformed or taken by another coupon
+    private String checkCode(String code, String currentCode) {
+        if (code == null) {
+            return null;
+        }
+        if (!CodeDictionary.isValid(code)) {
+            throw new CouponException("Invalid coupon code: use 1-" + CodeDictionary.MAX_CODE_LENGTH + " letters, digits, '-' or '_'");
+        }
+        String normalized = code.toUpperCase(Locale.ROOT);
+        if (!normalized.equals(currentCode) && indexes.codes.contains(normalized)) {
+            throw new CouponException("Coupon code already exists: " + normalized);
+        }
+        return normalized;
+    }
+
+    private void checkRedemptionLimit(Coupon coupon) {
+        if (coupon.getDetails() == null) {
+            return;
+        }
+        Integer limit = coupon.getDetails().redemptionLimit;
+        if (limit != null && limit <= 0) {
+            throw new CouponException("Redemption limit must be positive");
+        }
+        Integer perCustomer = coupon.getDetails().usesPerCustomer;
+        if (perCustomer != null && perCustomer <= 0) {
+            throw new CouponException("Uses per customer must be positive");
+        }
+    }
+
+    // Reject a create or update that would take the catalog over its quota
+    private void checkQuota(Coupon incoming, Coupon replaced) {
+        if (replaced == null && store.size() >= maxCoupons) {
+            throw new CouponException("Coupon quota exceeded: at most " + maxCoupons + " coupons allowed");
+        }
+        long bytes = store.bytes() + CouponRecordCodec.recordBytes(incoming)
+                - (replaced == null ? 0 : CouponRecordCodec.recordBytes(replaced));
+        if (bytes > maxBytes) {
+            throw new CouponException("Coupon quota exceeded: catalog would use " + bytes + " of " + maxBytes + " bytes");
+        }
+    }
+
+    /* -------- COUPON CODES -------- */
+
+    // Coupon for a code, matched case-insensitively
+    public Coupon getCouponByCode(String code) {
+        return getCouponById(indexes.codes.couponIdAt(codeEntry(code)));
+    }
+
+    // Apply the coupon behind a code; a used single-use code is rejected
+    public ApplyCouponResponse applyCouponByCode(String code, Cart cart) {
+        int entry = codeEntry(code);
+        if (indexes.codes.isRedeemed(entry)) {
+            throw new CouponException("Coupon code already used: " + code);
+        }
+        return applyCouponToCart(indexes.codes.couponIdAt(entry), cart);
+    }
+
+    public Coupon redeemCode(String code) {
+        return redeemCode(code, null);
+    }
+
+    // Record a use of a code; single-use codes can only be redeemed once
+    public Coupon redeemCode(String code, Long customerId) {
+        int entry = codeEntry(code);
+        CouponView coupon = indexes.views.get(indexes.codes.couponIdAt(entry));
+        if (coupon == null || !coupon.active()) {
+            throw new CouponException("Coupon not found or inactive");
+        }
+        checkCustomer(coupon, customerId);
+        // Claim a single-use code first, so of two concurrent redemptions only one reaches the ledger
+        boolean singleUse = indexes.codes.isSingleUse(entry);
+        if (singleUse && !indexes.codes.redeem(code)) {
+            throw new CouponException("Coupon code already used: " + code);
+        }
+        try {
+            redemptions.redeem(coupon.id(), coupon.redemptionLimit(), customerOf(customerId), coupon.usesPerCustomer());
+        } catch (CouponException ex) {
+            if (singleUse) {
+                indexes.codes.unredeem(code);
+            }
+            throw ex;
+        }
+        // Decoded only for the response, once the redemption is recorded
+        return store.get(coupon.id());
+    }
+
+    /* -------- REDEMPTIONS -------- */
+
+    /**
+     * Apply a coupon and reserve one of its redemptions. The reservation counts against the
+     * coupon's and the catalog's limits until it is committed, released or expires.
+     */
+    public ApplyCouponResponse reserveCoupon(long couponId, Cart cart) {
+        CouponView coupon = usableCoupon(couponId, cart);
+        // Reserve before applying, so a rejected reservation is never audited or counted as an apply
+        Reservation reservation = redemptions.reserve(couponId, coupon.redemptionLimit(),
+                customerOf(cart.customerId), coupon.usesPerCustomer(), reservationTtlNanos);
+
+        ApplyCouponResponse response;
+        long start = System.nanoTime();
+        try {
+            response = applyCoupon(coupon, cart);
+        } catch (RuntimeException ex) {
+            redemptions.release(reservation.id());
+            throw ex;
+        } finally {
+            metrics.recordApplyCoupon(System.nanoTime() - start);
+        }
+        recordApply(couponId, cart, response);
+        response.setReservation(reservation.id(), reservation.expiresAt());
+        return response;
+    }
+
+    // Turn a reservation into a redemption
+    public RedemptionsResponse commitReservation(long reservationId) {
+        return getRedemptions(redemptions.commit(reservationId).couponId());
+    }
+
+    // Give a reserved redemption back
+    public RedemptionsResponse releaseReservation(long reservationId) {
+        return getRedemptions(redemptions.release(reservationId).couponId());
+    }
+
+    public RedemptionsResponse getRedemptions(long couponId) {
+        Coupon coupon = store.get(couponId);
+        Integer limit = coupon == null || coupon.getRedemptionLimit() == 0 ? null : coupon.getRedemptionLimit();
+        return new RedemptionsResponse(couponId, limit, redemptions.committed(couponId), redemptions.reserved(couponId));
+    }
+
+    // Release reservations past their TTL
+    public int expireReservations() {
+        return redemptions.expire(System.nanoTime());
+    }
+
+    // Redemption counters, for snapshots
+    public RedemptionLedger redemptions() {
+        return redemptions;
+    }
+
+    private static long customerOf(Long customerId) {
+        return customerId == null ? RedemptionLedger.NO_CUSTOMER : customerId;
+    }
+
+    /* -------- CUSTOMERS -------- */
+
+    /**
+     * Restrict a coupon to the given customer ids, replacing any previous list. The ids are
+     * kept as a sorted long[] (see CustomerSet), about 8 bytes per customer.
+     */
+    public CustomerListResponse setEligibleCustomers(long couponId, long[] customerIds) {
+        getCouponById(couponId);
+        if (customerIds == null || customerIds.length == 0) {
+            throw new CouponException("Customer list cannot be empty");
+        }
+        CustomerSet customers = CustomerSet.of(customerIds);
+        indexes.customers.set(couponId, customers);
+        catalogVersion++;
+        return new CustomerListResponse(couponId, customers.size(), customers.memoryBytes());
+    }
+
+    public CustomerListResponse getEligibleCustomers(long couponId) {
+        getCouponById(couponId);
+        CustomerSet customers = indexes.customers.get(couponId);
+        return customers == null
+                ? new CustomerListResponse(couponId, 0, 0)
+                : new CustomerListResponse(couponId, customers.size(), customers.memoryBytes());
+    }
+
+    // Open a coupon to every customer again
+    public CustomerListResponse clearEligibleCustomers(long couponId) {
+        getCouponById(couponId);
+        indexes.customers.remove(couponId);
+        catalogVersion++;
+        return new CustomerListResponse(couponId, 0, 0);
+    }
+
+    // Customer lists, for snapshots
+    public CustomerEligibility customers() {
+        return indexes.customers;
+    }
+
+    // Whether a customer may use a coupon: on its list, if it has one, and under its per-customer limit
+    private boolean canUse(long couponId, Long customerId) {
+        if (!indexes.customers.allows(couponId, customerId)) {
+            return false;
+        }
+        if (customerId == null) {
+            return true;
+        }
+        long uses = redemptions.customerUses(couponId, customerId);
+        return uses == 0 || uses < indexes.views.get(couponId).usesPerCustomer();
+    }
+
+    private void checkCustomer(CouponView coupon, Long customerId) {
+        if (!indexes.customers.allows(coupon.id(), customerId)) {
+            throw new CouponException(customerId == null
+                    ? "Customer id required for this coupon"
+                    : "Coupon not available for this customer");
+        }
+        if (customerId != null && redemptions.customerUses(coupon.id(), customerId) >= coupon.usesPerCustomer()) {
+            throw new CouponException("Coupon usage limit reached for this customer");
+        }
+    }
+
+    /**
+     * Generate unique single-use codes for a coupon, formatted PREFIX-XXXXXXXXXX where the
+     * suffix is 10 random Crockford base32 characters (50 bits).
+     */
+    public List<String> generateCodes(long couponId, int count, String prefix) {
+        getCouponById(couponId);
+        if (count <= 0 || count > MAX_GENERATED_CODES) {
+            throw new CouponException("Code count must be between 1 and " + MAX_GENERATED_CODES);
+        }
+        if (prefix != null && (prefix.length() > MAX_CODE_PREFIX || !CodeDictionary.isValid(prefix))) {
+            throw new CouponException("Invalid code prefix: use 1-" + MAX_CODE_PREFIX + " letters, digits, '-' or '_'");
+        }
+
+        List<String> codes = new ArrayList<>(count);
+        StringBuilder code = new StringBuilder(CodeDictionary.MAX_CODE_LENGTH);
+        while (codes.size() < count) {
+            code.setLength(0);
+            if (prefix != null) {
+                code.append(prefix.toUpperCase(Locale.ROOT)).append('-');
+            }
+            long bits = CODE_RANDOM.nextLong();
+            for (int i = 0; i < 10; i++, bits >>>= 5) {
+                code.append(CROCKFORD_BASE32.charAt((int) (bits & 31)));
+            }
+            // A collision with an existing code just draws again
+            if (indexes.codes.add(code, couponId, true)) {
+                codes.add(code.toString());
+            }
+        }
+        catalogVersion++;
+        return codes;
+    }
+
+    private int codeEntry(String code) {
+        int entry = indexes.codes.find(code);
+        if (entry == CodeDictionary.NOT_FOUND) {
+            throw new CouponException("Coupon not available with code: " + code);
+        }
+        return entry;
+    }
+
+    /* -------- ANALYTICS -------- */
+
+    // One coupon's counters over the minute, hour and day windows and all time
+    public List<CouponStatsResponse> getCouponStats(long couponId) {
+        if (!store.contains(couponId)) {
+            throw new CouponException("Coupon not available with id: " + couponId);
+        }
+        CouponAnalytics.CouponStats stats = analytics.get(couponId);
+        long now = System.nanoTime();
+        List<CouponStatsResponse> windows = new ArrayList<>();
+        for (CouponAnalytics.Window window : CouponAnalytics.Window.values()) {
+            windows.add(stats == null ? new CouponStatsResponse(couponId, window)
+                    : new CouponStatsResponse(stats, window, now));
+        }
+        return windows;
+    }
+
+    /**
+     * Coupons with the most evaluations, wins, applies or discount over a window,
+     * highest first. Coupons with no events in the window are left out.
+     */
+    public List<CouponStatsResponse> topCoupons(String metric, String window, int limit) {
+        int metricIndex = switch (metric == null ? "" : metric.toLowerCase(Locale.ROOT)) {
+            case "evaluations" -> CouponAnalytics.EVALUATIONS;
+            case "wins" -> CouponAnalytics.WINS;
+            case "applies" -> CouponAnalytics.APPLIES;
+            case "discount" -> CouponAnalytics.DISCOUNT_CENTS;
+            default -> throw new CouponException("Unknown metric: " + metric
+                    + " (expected evaluations, wins, applies or discount)");
+        };
+        CouponAnalytics.Window range;
+        try {
+            range = CouponAnalytics.Window.valueOf(window.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException | NullPointerException e) {
+            throw new CouponException("Unknown window: " + window + " (expected minute, hour, day or all)");
+        }
+        if (limit <= 0 || limit > 1000) {
+            throw new CouponException("Limit must be between 1 and 1000");
+        }
+        long now = System.nanoTime();
+        List<CouponStatsResponse> top = new ArrayList<>();
+        for (CouponAnalytics.CouponStats stats : analytics.top(metricIndex, range, limit, now)) {
+            top.add(new CouponStatsResponse(stats, range, now));
+        }
+        return top;
+    }
+
+    public CouponAnalytics analytics() {
+        return analytics;
+    }
+
+    // Code dictionary, for snapshots
+    public CodeDictionary codes() {
+        return indexes.codes;
+    }
+
+    /* -------- SNAPSHOT -------- */
+
+    // Every stored coupon, active or not
+    public List<Coupon> allCoupons() {
+        return store.values();
+    }
+
+    // Whether a coupon with this id is stored, active or not
+    public boolean holds(long couponId) {
+        return store.contains(couponId);
+    }
+
+    // Stored coupons, active or not
+    public int size() {
+        return store.size();
+    }
+
+    // Id the next created coupon will get
+    public long nextId() {
+        return idSeq;
+    }
+
+    /**
+     * Rebuild the catalog from a snapshot, keeping coupon ids. Active coupons are re-indexed;
+     * inactive ones are only stored, as on create. Call on an empty service.
+     */
+    public void restore(List<Coupon> coupons, long nextId) {
+        for (Coupon coupon : coupons) {
+            if (coupon.isActive()) {
+                CouponFactory.create(coupon, indexes, store).validateAndIndex();
+            }
+            coupon.bind();
+            store.put(coupon);
+            indexes.views.put(CouponView.of(coupon));
+        }
+        idSeq = nextId;
+        catalogVersion++;
+    }
+
+    /**
+     * Take over another catalog's customer lists and generated codes, with their used flags,
+     * for the coupons this catalog also holds (matched by id). Called when this catalog
+     * replaces that one, so restrictions and used codes survive a swap or a rollback.
+     * Redemption counts need no copy, since the two catalogs share one ledger.
+     *
+     * @throws CouponException when a code to carry over belongs to another coupon here;
+     *         nothing is changed then
+     */
+    public void carryOver(CouponService from) {
+        CodeDictionary source = from.indexes.codes;
+        for (int entry = 0; entry < source.entryCount(); entry++) {
+            if (carriesCode(source, entry)) {
+                int here = indexes.codes.find(source.codeAt(entry));
+                if (here != CodeDictionary.NOT_FOUND
+                        && (!indexes.codes.isSingleUse(here) || indexes.codes.couponIdAt(here) != source.couponIdAt(entry))) {
+                    throw new CouponException("Code " + source.codeAt(entry) + " of coupon " + source.couponIdAt(entry)
+                            + " is used by coupon " + indexes.codes.couponIdAt(here) + " in the new catalog");
+                }
+            }
+        }
+
+        for (int entry = 0; entry < source.entryCount(); entry++) {
+            if (carriesCode(source, entry)) {
+                String code = source.codeAt(entry);
+                indexes.codes.add(code, source.couponIdAt(entry), true);
+                if (source.isRedeemed(entry)) {
+                    indexes.codes.redeem(code);
+                } else {
+                    indexes.codes.unredeem(code);
+                }
+            }
+        }
+        indexes.customers.copyFrom(from.indexes.customers, store::contains);
+        catalogVersion++;
+    }
+
+    // Generated codes are carried over; a coupon's own code comes with the coupon
+    private boolean carriesCode(CodeDictionary source, int entry) {
+        return source.isLive(entry) && source.isSingleUse(entry) && store.contains(source.couponIdAt(entry));
+    }
+
+    // Release the catalog's meters
+    public void close() {
+        metrics.close();
+    }
+
+    // Emit the JFR mutation event; fields are only filled when the event is recorded
+    private void commitMutation(IndexMutationEvent event, String operation, Coupon coupon, CouponException failure) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.couponId = coupon.getId();
+            event.couponType = coupon.getType() == null ? null : coupon.getType().name();
+            event.accepted = failure == null;
+            event.validationError = failure == null ? null : failure.getMessage();
+            event.commit();
+        }
+    }
+
    
     // Applicable all product wise coupon, best Cart-wise coupon and all BXGY coupon and get best discount || return the result with highest discount first in order
     @PostMapping
@@ -135,25 +745,33 @@ public class CouponService {
             throw new CouponException("Cart items cannot be empty");
         }
 
+        CouponEvaluationEvent event = new CouponEvaluationEvent();
+        event.begin();
+        long start = System.nanoTime();
         List<CartItem> cartItems = cart.items;
+        Long customerId = cart.customerId;
         double totalPrice = 0.0;
+        int productCandidates = 0;
         ApplicableCouponsResponse response = new ApplicableCouponsResponse(new ArrayList<>());
-        Map<Integer, Double> productCouponIndex = indexes.productIndex;
-        Map<String, Coupon> couponMap = indexes.couponMap;
+        ProductTierIndex productCouponIndex = indexes.productIndex;
+        int today = EpochDays.today();
+        LongPredicate usable = id -> canUse(id, customerId);
 
         for (CartItem item : cartItems) {
             if (item == null || item.price<=0 || item.quantity <= 0) {
                 throw new CouponException("Invalid cart item data");
             }
             totalPrice += item.price * item.quantity;
-            // Apply all product wise coupon
-            if (productCouponIndex.containsKey(item.productId)) {
-                double percent = productCouponIndex.get(item.productId);
-                double discount = (item.price * item.quantity) * percent / 100;
-                Coupon coupon = couponMap.get("" + item.productId);
+            // Apply the best product wise coupon of each line, at the tier for the line's quantity
+            int best = productCouponIndex.best(item.productId, item.quantity, today, usable);
+            if (best != ProductTierIndex.NOT_FOUND) {
+                int bps = productCouponIndex.discountBps(best, item.quantity);
+                long couponId = productCouponIndex.couponIdAt(best);
+                double discount = CouponRule.discountOf(item.price * item.quantity, bps);
+                productCandidates++;
                 response.applicable_coupons.add(
                 new ApplicableCouponItem(
-                        coupon.getId(),
+                        couponId,
                         "PRODUCT_WISE",
                         discount
                     )
@@ -161,120 +779,317 @@ public class CouponService {
             }
         }
 
-        // Apply nearest threshold coupon instead of all
-        TreeMap<Integer, Double> cartIndex = indexes.cartIndex;
-        Map.Entry<Integer, Double> entry = cartIndex.floorEntry((int) totalPrice);
-        if (entry != null) {
-            double percent = entry.getValue();
-            double discount = totalPrice * percent / 100;
-            Coupon coupon = couponMap.get("" + entry.getKey());
+        long productDone = System.nanoTime();
+        metrics.recordEvaluation(CouponType.PRODUCT_WISE, productDone - start, productCandidates);
+
+        // Apply nearest threshold coupon instead of all, falling back to lower thresholds the customer can use
+        CartThresholdIndex cartIndex = indexes.cartIndex;
+        int cartSlot = cartIndex.floor((int) totalPrice);
+        while (cartSlot >= 0 && !canUse(cartIndex.couponIdAt(cartSlot), customerId)) {
+            cartSlot--;
+        }
+        if (cartSlot >= 0) {
+            double discount = CouponRule.discountOf(totalPrice, cartIndex.discountBpsAt(cartSlot));
             response.applicable_coupons.add(
                 new ApplicableCouponItem(
-                    coupon.getId(),
+                    cartIndex.couponIdAt(cartSlot),
                     "CART_WISE",
                     discount
                 )
             );
         }
 
-        // Apply BXGY coupon
-        for (String key : indexes.bxgyIndex) {
-            Coupon coupon = couponMap.get(key);
-            BxGyCoupon handler = new BxGyCoupon(coupon, null, null);
-            ApplyCouponResponse bxgyResponse = handler.getApplyCouponOnCart(coupon, cart);
+        long cartDone = System.nanoTime();
+        metrics.recordEvaluation(CouponType.CART_WISE, cartDone - productDone, cartSlot >= 0 ? 1 : 0);
+
+        // Apply BXGY coupon, discount only: one price ordering shared by every coupon, cart left untouched
+        LongLongHashMap bxgyIndex = indexes.bxgyIndex;
+        int[] byPrice = bxgyIndex.size() > 0 ? BxGyCoupon.priceOrder(cartItems) : null;
+        int bxgyCandidates = 0;
+        for (int slot = bxgyIndex.nextSlot(0); slot >= 0; slot = bxgyIndex.nextSlot(slot + 1)) {
+            long bxgyCouponId = bxgyIndex.valueAt(slot);
+            if (!canUse(bxgyCouponId, customerId)) {
+                continue;
+            }
+            bxgyCandidates++;
+            BxGyRule rule = (BxGyRule) indexes.views.get(bxgyCouponId).rule();
             response.applicable_coupons.add(
                 new ApplicableCouponItem(
-                    coupon.getId(),
+                    bxgyCouponId,
                     "BXGY",
-                    bxgyResponse.getTotalDiscount()
+                    BxGyCoupon.discountOf(bxgyCouponId, rule, cartItems, byPrice)
                 )
             );
         }
+        long bxgyDone = System.nanoTime();
+        metrics.recordEvaluation(CouponType.BXGY, bxgyDone - cartDone, bxgyCandidates);
+
+        // Apply RULE coupons whose condition the cart meets
+        RuleIndex rules = indexes.rules;
+        int ruleCandidates = 0;
+        for (int slot = 0; slot < rules.size(); slot++) {
+            long ruleCouponId = rules.couponIdAt(slot);
+            if (!canUse(ruleCouponId, customerId)) {
+                continue;
+            }
+            double discount = RuleCoupon.discountOf(rules.ruleAt(slot), cart, totalPrice);
+            if (discount > 0) {
+                ruleCandidates++;
+                response.applicable_coupons.add(
+                    new ApplicableCouponItem(
+                        ruleCouponId,
+                        "RULE",
+                        discount
+                    )
+                );
+            }
+        }
+        long ruleDone = System.nanoTime();
+        metrics.recordEvaluation(CouponType.RULE, ruleDone - bxgyDone, rules.size());
+
+        // Apply CATEGORY coupons: one bitmap probe per cart line and coupon
+        CategoryIndex categories = indexes.categories;
+        CategoryTaxonomy taxonomy = categories.taxonomy();
+        int categoryCandidates = 0;
+        for (int slot = 0; slot < categories.size(); slot++) {
+            long categoryCouponId = categories.couponIdAt(slot);
+            if (!canUse(categoryCouponId, customerId)) {
+                continue;
+            }
+            double discount = CategoryCoupon.discountOf(taxonomy, categories.categoryAt(slot),
+                    categories.discountBpsAt(slot), cart);
+            if (discount > 0) {
+                categoryCandidates++;
+                response.applicable_coupons.add(
+                    new ApplicableCouponItem(
+                        categoryCouponId,
+                        "CATEGORY",
+                        discount
+                    )
+                );
+            }
+        }
+        metrics.recordEvaluation(CouponType.CATEGORY, System.nanoTime() - ruleDone, categories.size());
+
         Collections.sort(response.applicable_coupons, (a, b) -> Double.compare(b.discount, a.discount));
+        long sorted = System.nanoTime();
+        metrics.recordApplicableCoupons(sorted - start, response.applicable_coupons.size());
+        for (int i = 0; i < response.applicable_coupons.size(); i++) {
+            analytics.recordEvaluation(response.applicable_coupons.get(i).coupon_id, i == 0, sorted);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.cartSize = cartItems.size();
+            event.productCandidates = productCandidates;
+            event.cartCandidates = cartSlot >= 0 ? 1 : 0;
+            event.bxgyCandidates = bxgyCandidates;
+            event.ruleCandidates = ruleCandidates;
+            event.categoryCandidates = categoryCandidates;
+            if (!response.applicable_coupons.isEmpty()) {
+                ApplicableCouponItem winner = response.applicable_coupons.get(0);
+                event.winningCouponId = winner.coupon_id;
+                event.winningCouponType = winner.type;
+            }
+            event.commit();
+        }
         return response;
     }
 
     // Apply coupons with provided coupon id and get maximum discount
     @PostMapping
     public ApplyCouponResponse applyCouponToCart(long couponId, Cart cart) {
+        CouponView coupon = usableCoupon(couponId, cart);
+
+        long start = System.nanoTime();
+        try {
+            ApplyCouponResponse response = applyCoupon(coupon, cart);
+            recordApply(couponId, cart, response);
+            return response;
+        } finally {
+            metrics.recordApplyCoupon(System.nanoTime() - start);
+        }
+    }
 
+    // The coupon to apply to a cart, once the cart, the coupon and the customer all check out
+    private CouponView usableCoupon(long couponId, Cart cart) {
         if (cart == null || cart.items == null || cart.items.isEmpty()) {
             throw new CouponException("Cart items cannot be empty");
         }
 
-        Coupon coupon = store.get(couponId);
-        if (coupon == null || coupon.getDetails() == null || !coupon.getDetails().isActive()) {
+        CouponView coupon = indexes.views.get(couponId);
+        if (coupon == null || !coupon.active()) {
             throw new CouponException("Coupon not found or inactive");
         }
-
-        String ctype = coupon.getType().name();
-        if (ctype.equals("CART_WISE")) { // For CART WISE
-            CartWiseCoupon handler = new CartWiseCoupon(coupon, null, null);
-            return handler.getApplyCouponOnCart(coupon, cart);
-        } else if (ctype.equals("PRODUCT_WISE")) { // For PRODUCT WISE
-            ProductWiseCoupon handler = new ProductWiseCoupon(coupon, null, null);
-            return handler.getApplyCouponOnCart(coupon, cart);
-        } else if (ctype.equals("BXGY")) { // For BXGY
-            BxGyCoupon handler = new BxGyCoupon(coupon, null, null);
-            return handler.getApplyCouponOnCart(coupon, cart);
-        } else {
-            throw new CouponException("Unsupported coupon type");
-        }
+        checkCustomer(coupon, cart.customerId);
+        return coupon;
     }
 
+    private void recordApply(long couponId, Cart cart, ApplyCouponResponse response) {
+        audit.applied(couponId, cart, response);
+        analytics.recordApply(couponId, response.getTotalDiscount(), System.nanoTime());
+    }
 
+    /**
+     * Apply several coupons to one cart in the given order, as one consolidated response.
+     *
+     * Each coupon sees the cart after the discounts of the coupons before it: lines are priced
+     * at what is left of them, and fully discounted lines drop out. Line discounts add up, and
+     * cart-level discounts (cart-wise, whole-cart rules) are attributed to lines pro rata, so
+     * the lines' totalDiscount always sum to the total. A cart-wise coupon only applies while the
+     * reduced total still meets its threshold. Every coupon is resolved once, from one
+     * catalog version, and validated before any is applied. Exclusive coupons cannot be combined.
+     */
+    public ApplyCouponResponse applyCouponsToCart(List<Long> couponIds, Cart cart) {
 
-    public CouponDetails merge(CouponDetails target, CouponDetails source) {
-        if (source == null) return target;
-
-        /* -------- COMMON -------- */
-        if (source.isActive != null && target.isActive == null) {
-            target.isActive = source.isActive;
+        if (cart == null || cart.items == null || cart.items.isEmpty()) {
+            throw new CouponException("Cart items cannot be empty");
         }
-
-        if (source.startDate != null && target.startDate == null) {
-            target.startDate = source.startDate;
+        if (couponIds == null || couponIds.isEmpty() || couponIds.size() > MAX_COMBINED_COUPONS) {
+            throw new CouponException("Between 1 and " + MAX_COMBINED_COUPONS + " coupon ids are required");
         }
 
-        if (source.expiryDate != null && target.expiryDate == null) {
-            target.expiryDate = source.expiryDate;
-        }
+        long start = System.nanoTime();
+        try {
+            CouponView[] coupons = resolveCombined(couponIds);
+            for (CouponView coupon : coupons) {
+                checkCustomer(coupon, cart.customerId);
+                if (coupons.length > 1 && coupon.exclusive()) {
+                    throw new CouponException("Coupon " + coupon.id() + " is exclusive and cannot be combined with other coupons");
+                }
+            }
 
-        /* -------- CART-WISE -------- */
-        if (source.threshold != null && target.threshold == null) {
-            target.threshold = source.threshold;
-        }
+            // Normalize once: validate lines, reset their discounts and price what is left of each
+            List<CartItem> items = cart.items;
+            int lines = items.size();
+            double[] remaining = new double[lines];
+            CartItem[] views = new CartItem[lines];
+            double totalPrice = 0.0;
+            for (int i = 0; i < lines; i++) {
+                CartItem item = items.get(i);
+                if (item == null || item.price <= 0 || item.quantity <= 0) {
+                    throw new CouponException("Invalid cart item data");
+                }
+                item.totalDiscount = 0.0;
+                remaining[i] = item.price * item.quantity;
+                totalPrice += remaining[i];
+                CartItem view = new CartItem();
+                view.productId = item.productId;
+                view.quantity = item.quantity;
+                views[i] = view;
+            }
+            Cart view = new Cart(new ArrayList<>(lines), cart.customerId);
 
-        if (source.discount != null && target.discount == null) {
-            target.discount = source.discount;
-        }
+            double[] discounts = new double[coupons.length];
+            double left = totalPrice;
+            for (int c = 0; c < coupons.length && left > 0; c++) {
+                // A cart-wise coupon only applies while what is left of the cart meets its threshold
+                if (coupons[c].type() == CouponType.CART_WISE && left < ((CartWiseRule) coupons[c].rule()).threshold()) {
+                    continue;
+                }
+                view.items.clear();
+                for (int i = 0; i < lines; i++) {
+                    if (remaining[i] > 0) {
+                        views[i].price = remaining[i] / views[i].quantity;
+                        views[i].totalDiscount = 0.0;
+                        view.items.add(views[i]);
+                    }
+                }
 
-        /* -------- PRODUCT-WISE -------- */
-        if (source.productId != null && target.productId == null) {
-            target.productId = source.productId;
-        }
+                double stepTotal = applyCoupon(coupons[c], view).getTotalDiscount();
 
-        /* -------- BXGY -------- */
-        if (source.buyProducts != null && target.buyProducts == null) {
-            target.buyProducts = source.buyProducts;
-        }
+                // Line-level part first, then the rest of the coupon's discount pro rata
+                double attributed = 0.0;
+                for (int i = 0; i < lines; i++) {
+                    if (remaining[i] > 0) {
+                        double d = Math.min(views[i].totalDiscount, remaining[i]);
+                        views[i].totalDiscount = d;
+                        attributed += d;
+                    }
+                }
+                double cartLevel = Math.min(stepTotal - attributed, left - attributed);
+                double base = left - attributed;
+                double step = 0.0;
+                for (int i = 0; i < lines; i++) {
+                    if (remaining[i] <= 0) {
+                        continue;
+                    }
+                    double d = views[i].totalDiscount;
+                    if (cartLevel > 0 && base > 0) {
+                        d += cartLevel * (remaining[i] - d) / base;
+                    }
+                    d = Math.min(d, remaining[i]);
+                    items.get(i).totalDiscount += d;
+                    remaining[i] -= d;
+                    step += d;
+                }
+                discounts[c] = step;
+                left -= step;
+            }
 
-        if (source.buyQuantity != null && target.buyQuantity == null) {
-            target.buyQuantity = source.buyQuantity;
-        }
+            double totalDiscount = totalPrice - Math.max(left, 0.0);
+            ApplyCouponResponse response = new ApplyCouponResponse(items, totalPrice, totalDiscount, totalPrice - totalDiscount);
 
-        if (source.getProducts != null && target.getProducts == null) {
-            target.getProducts = source.getProducts;
+            // Recorded only once every coupon applied
+            double before = totalPrice;
+            long now = System.nanoTime();
+            for (int c = 0; c < coupons.length; c++) {
+                audit.applied(coupons[c].id(), cart,
+                        new ApplyCouponResponse(items, before, discounts[c], before - discounts[c]));
+                analytics.recordApply(coupons[c].id(), discounts[c], now);
+                before -= discounts[c];
+            }
+            return response;
+        } finally {
+            metrics.recordApplyCoupon(System.nanoTime() - start);
         }
+    }
 
-        if (source.getQuantity != null && target.getQuantity == null) {
-            target.getQuantity = source.getQuantity;
+    // The listed coupons, active and distinct, all read while the catalog version stayed the same
+    private CouponView[] resolveCombined(List<Long> couponIds) {
+        CouponView[] coupons = new CouponView[couponIds.size()];
+        for (int attempt = 0; ; attempt++) {
+            long version = catalogVersion;
+            for (int c = 0; c < coupons.length; c++) {
+                Long id = couponIds.get(c);
+                if (id == null) {
+                    throw new CouponException("Coupon ids cannot be null");
+                }
+                for (int p = 0; p < c; p++) {
+                    if (coupons[p].id() == id) {
+                        throw new CouponException("Coupon " + id + " is listed more than once");
+                    }
+                }
+                CouponView coupon = indexes.views.get(id);
+                if (coupon == null || !coupon.active()) {
+                    throw new CouponException("Coupon " + id + " not found or inactive");
+                }
+                coupons[c] = coupon;
+            }
+            if (catalogVersion == version) {
+                return coupons;
+            }
+            if (attempt == 2) {
+                throw new CouponException("Catalog changed while applying coupons, please retry");
+            }
         }
+    }
 
-        if (source.repetitionLimit != null && target.repetitionLimit == null) {
-            target.repetitionLimit = source.repetitionLimit;
+    // Applies the coupon's rule from its view, so the coupon itself is never read from the store
+    private ApplyCouponResponse applyCoupon(CouponView coupon, Cart cart) {
+        CouponType ctype = coupon.type();
+        if (ctype == CouponType.CART_WISE) { // For CART WISE
+            return CartWiseCoupon.apply((CartWiseRule) coupon.rule(), cart);
+        } else if (ctype == CouponType.PRODUCT_WISE) { // For PRODUCT WISE, within its date window
+            return ProductWiseCoupon.apply(coupon.rule(), coupon.startDay(), coupon.expiryDay(), cart);
+        } else if (ctype == CouponType.BXGY) { // For BXGY
+            return BxGyCoupon.apply(coupon.id(), (BxGyRule) coupon.rule(), cart);
+        } else if (ctype == CouponType.RULE) { // For RULE, with the condition compiled once at index time
+            return RuleCoupon.apply((ExpressionRule) coupon.rule(), cart);
+        } else if (ctype == CouponType.CATEGORY) { // For CATEGORY, against the current taxonomy
+            return CategoryCoupon.apply((CategoryRule) coupon.rule(), indexes.categories.taxonomy(), cart);
+        } else {
+            throw new CouponException("Unsupported coupon type");
         }
-
-        return target;
     }
 }
@@ -0,0 +1,91 @@
+package com.monkcommerce.coupon_api.store;
+
+import java.util.Arrays;
+
+/**
+ * Active CART_WISE coupons sorted by threshold: threshold, discount (basis points) and couponId
+ * in parallel primitive arrays. Lookups binary-search the thresholds and return a slot, so
+ * finding the best coupon for a cart total, and falling back to lower thresholds, neither boxes
+ * nor allocates. Inserts and removals shift the arrays; cart-wise ladders are short.
+ */
+public class CartThresholdIndex {
+
+    public static final int NONE = -1;
+
+    private int[] thresholds = new int[16];
+    private int[] discountBps = new int[16];
+    private long[] couponIds = new long[16];
+    private int size;
+
+    // Adds or replaces the coupon at a threshold
+    public void put(int threshold, int bps, long couponId) {
+        int at = Arrays.binarySearch(thresholds, 0, size, threshold);
+        if (at < 0) {
+            at = -at - 1;
+            if (size == thresholds.length) {
+                thresholds = Arrays.copyOf(thresholds, size << 1);
+                discountBps = Arrays.copyOf(discountBps, size << 1);
+                couponIds = Arrays.copyOf(couponIds, size << 1);
+            }
+            System.arraycopy(thresholds, at, thresholds, at + 1, size - at);
+            System.arraycopy(discountBps, at, discountBps, at + 1, size - at);
+            System.arraycopy(couponIds, at, couponIds, at + 1, size - at);
+            size++;
+        }
+        thresholds[at] = threshold;
+        discountBps[at] = bps;
+        couponIds[at] = couponId;
+    }
+
+    // Removes the coupon's entry at a threshold; entries of other coupons are left alone
+    public boolean remove(int threshold, long couponId) {
+        int at = Arrays.binarySearch(thresholds, 0, size, threshold);
+        if (at < 0 || couponIds[at] != couponId) {
+            return false;
+        }
+        size--;
+        System.arraycopy(thresholds, at + 1, thresholds, at, size - at);
+        System.arraycopy(discountBps, at + 1, discountBps, at, size - at);
+        System.arraycopy(couponIds, at + 1, couponIds, at, size - at);
+        return true;
+    }
+
+    public boolean contains(int threshold) {
+        return Arrays.binarySearch(thresholds, 0, size, threshold) >= 0;
+    }
+
+    // Slot of the highest threshold <= the given one, or NONE; slot - 1 is the next lower threshold
+    public int floor(int threshold) {
+        int at = Arrays.binarySearch(thresholds, 0, size, threshold);
+        return at >= 0 ? at : -at - 2;
+    }
+
+    // Slot of the highest threshold < the given one, or NONE
+    public int lower(int threshold) {
+        int at = Arrays.binarySearch(thresholds, 0, size, threshold);
+        return at >= 0 ? at - 1 : -at - 2;
+    }
+
+    // Slot of the lowest threshold > the given one, or NONE
+    public int higher(int threshold) {
+        int at = Arrays.binarySearch(thresholds, 0, size, threshold);
+        int slot = at >= 0 ? at + 1 : -at - 1;
+        return slot < size ? slot : NONE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int thresholdAt(int slot) {
+        return thresholds[slot];
+    }
+
+    public int discountBpsAt(int slot) {
+        return discountBps[slot];
+    }
+
+    public long couponIdAt(int slot) {
+        return couponIds[slot];
+    }
+}
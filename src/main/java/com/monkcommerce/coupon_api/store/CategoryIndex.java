@@ -0,0 +1,81 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.model.rule.CategoryRule;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+/**
+ * Active CATEGORY coupons: couponId → slot in dense parallel arrays of category paths and
+ * discounts, so evaluation walks the arrays without boxing. Removal moves the last slot into
+ * the hole. Categories are kept as paths and resolved against the taxonomy of each request,
+ * so a swapped taxonomy takes effect without re-indexing.
+ */
+public class CategoryIndex {
+
+    private final LongLongHashMap slots = new LongLongHashMap();
+    private long[] couponIds = new long[16];
+    private String[] categories = new String[16];
+    private int[] discountBps = new int[16];
+    private int size;
+
+    private Supplier<CategoryTaxonomy> taxonomy = () -> CategoryTaxonomy.EMPTY;
+
+    public void setTaxonomy(Supplier<CategoryTaxonomy> taxonomy) {
+        this.taxonomy = taxonomy;
+    }
+
+    // The current taxonomy; read it once per evaluation
+    public CategoryTaxonomy taxonomy() {
+        return taxonomy.get();
+    }
+
+    public void put(long couponId, CategoryRule rule) {
+        long slot = slots.get(couponId, -1);
+        if (slot < 0) {
+            if (size == couponIds.length) {
+                couponIds = Arrays.copyOf(couponIds, size << 1);
+                categories = Arrays.copyOf(categories, size << 1);
+                discountBps = Arrays.copyOf(discountBps, size << 1);
+            }
+            slot = size++;
+            slots.put(couponId, slot, -1);
+        }
+        couponIds[(int) slot] = couponId;
+        categories[(int) slot] = rule.category();
+        discountBps[(int) slot] = rule.discountBps();
+    }
+
+    public void remove(long couponId) {
+        long slot = slots.remove(couponId, -1);
+        if (slot < 0) {
+            return;
+        }
+        int last = --size;
+        if (slot != last) {
+            couponIds[(int) slot] = couponIds[last];
+            categories[(int) slot] = categories[last];
+            discountBps[(int) slot] = discountBps[last];
+            slots.put(couponIds[last], slot, -1);
+        }
+        categories[last] = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long couponIdAt(int slot) {
+        return couponIds[slot];
+    }
+
+    public String categoryAt(int slot) {
+        return categories[slot];
+    }
+
+    public int discountBpsAt(int slot) {
+        return discountBps[slot];
+    }
+}
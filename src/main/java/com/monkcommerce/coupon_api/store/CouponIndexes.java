@@ -1,21 +1,36 @@
 package com.monkcommerce.coupon_api.store;
 
-import java.util.*;
-import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.util.CodeDictionary;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
 
 //IN-MEMORY INDEX STORE
 
 public class CouponIndexes {
 
-    // threshold → discount
-    public final TreeMap<Integer, Double> cartIndex = new TreeMap<>();
+    // threshold → discount (basis points) and couponId, sorted by threshold
+    public final CartThresholdIndex cartIndex = new CartThresholdIndex();
 
-    // productId → discount
-    public final Map<Integer, Double> productIndex = new HashMap<>();
+    // productId → couponId and discount tiers (basis points)
+    public final ProductTierIndex productIndex = new ProductTierIndex();
 
-    // compositeKey → true
-    public final Set<String> bxgyIndex = new HashSet<>();
+    // BXGY uniqueness key (see BxGyRule) → couponId
+    public final LongLongHashMap bxgyIndex = new LongLongHashMap();
 
-    // Id vs Coupon
-    public final Map<String, Coupon> couponMap = new HashMap<>();
+    // Shared buy/get product arrays of indexed BXGY coupons
+    public final ProductSetPool productSets = new ProductSetPool();
+
+    // couponId → compiled rule of active RULE coupons
+    public final RuleIndex rules = new RuleIndex();
+
+    // couponId → category path and discount of active CATEGORY coupons
+    public final CategoryIndex categories = new CategoryIndex();
+
+    // couponId → rule, dates and limits of every stored coupon, read instead of decoding from the store
+    public final CouponViews views = new CouponViews();
+
+    // Coupon code (case-insensitive) → couponId
+    public final CodeDictionary codes = new CodeDictionary();
+
+    // couponId → customers allowed to use it, for restricted coupons only
+    public final CustomerEligibility customers = new CustomerEligibility();
 }
@@ -0,0 +1,249 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.QuantityTier;
+import com.monkcommerce.coupon_api.util.IntListView;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/**
+ * Fixed binary layout of one coupon, shared by the off-heap store and tenant snapshots.
+ *
+ * Record layout (96-byte header, then the BXGY product arrays, the code, the rule condition,
+ * the quantity tiers and the category):
+ *   long   couponId
+ *   byte   type ordinal
+ *   byte   isActive (0 = unset, 1 = true, 2 = false)
+ *   short  presence bits for the nullable fields below
+ *   int    threshold
+ *   double discount
+ *   int    productId
+ *   int    buyQuantity
+ *   int    getQuantity
+ *   int    repetitionLimit
+ *   long   startDate (epoch day)
+ *   long   expiryDate (epoch day)
+ *   int    buyProducts count (-1 = null)
+ *   int    getProducts count (-1 = null)
+ *   int    code length (-1 = null)
+ *   int    redemptionLimit
+ *   int    usesPerCustomer
+ *   int    condition length in UTF-8 bytes (0 = null)
+ *   int    tiers count (-1 = null)
+ *   int    category length in UTF-8 bytes (0 = null)
+ *   int    priority
+ *   byte   exclusive (0 = unset, 1 = true, 2 = false)
+ *   byte[3] reserved
+ *   int[]  buyProducts, int[] getProducts
+ *   byte[] code (ASCII)
+ *   byte[] condition (UTF-8)
+ *   tiers count x [int minQuantity, double discount]
+ *   byte[] category (UTF-8)
+ *
+ * Unset fields decode back to null, so a record round-trips the coupon exactly. A record
+ * decodes to an unbound coupon (one holding its details), so a read that is only serialized
+ * never builds a rule or compiles a condition.
+ */
+public final class CouponRecordCodec {
+
+    public static final int HEADER_BYTES = 96;
+
+    private static final int TIER_BYTES = 12;
+
+    private static final int HAS_THRESHOLD = 1;
+    private static final int HAS_DISCOUNT = 1 << 1;
+    private static final int HAS_PRODUCT_ID = 1 << 2;
+    private static final int HAS_BUY_QUANTITY = 1 << 3;
+    private static final int HAS_GET_QUANTITY = 1 << 4;
+    private static final int HAS_REPETITION_LIMIT = 1 << 5;
+    private static final int HAS_START_DATE = 1 << 6;
+    private static final int HAS_EXPIRY_DATE = 1 << 7;
+    private static final int HAS_REDEMPTION_LIMIT = 1 << 8;
+    private static final int HAS_USES_PER_CUSTOMER = 1 << 9;
+    private static final int HAS_PRIORITY = 1 << 10;
+
+    private static final CouponType[] TYPES = CouponType.values();
+
+    private CouponRecordCodec() {
+    }
+
+    public static int recordBytes(Coupon coupon) {
+        CouponDetails d = coupon.getDetails();
+        return recordBytes(d.buyProducts == null ? -1 : d.buyProducts.size(),
+                d.getProducts == null ? -1 : d.getProducts.size(),
+                coupon.getCode() == null ? -1 : coupon.getCode().length(),
+                d.condition == null ? 0 : d.condition.getBytes(StandardCharsets.UTF_8).length,
+                d.tiers == null ? -1 : d.tiers.size(),
+                d.category == null ? 0 : d.category.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    // Length of the record starting at the given absolute position
+    public static int recordBytesAt(ByteBuffer buffer, int at) {
+        return recordBytes(buffer.getInt(at + 56), buffer.getInt(at + 60), buffer.getInt(at + 64),
+                buffer.getInt(at + 76), buffer.getInt(at + 80), buffer.getInt(at + 84));
+    }
+
+    private static int recordBytes(int buyCount, int getCount, int codeLength, int conditionBytes, int tierCount,
+                                   int categoryBytes) {
+        return HEADER_BYTES + 4 * (Math.max(buyCount, 0) + Math.max(getCount, 0)) + Math.max(codeLength, 0)
+                + conditionBytes + TIER_BYTES * Math.max(tierCount, 0) + categoryBytes;
+    }
+
+    // Writes at the buffer's position and advances it by recordBytes(coupon)
+    public static void write(ByteBuffer buffer, Coupon coupon) {
+        CouponDetails d = coupon.getDetails();
+        int buyCount = d.buyProducts == null ? -1 : d.buyProducts.size();
+        int getCount = d.getProducts == null ? -1 : d.getProducts.size();
+        String code = coupon.getCode();
+        int codeLength = code == null ? -1 : code.length();
+        byte[] condition = d.condition == null ? null : d.condition.getBytes(StandardCharsets.UTF_8);
+        int tierCount = d.tiers == null ? -1 : d.tiers.size();
+        byte[] category = d.category == null ? null : d.category.getBytes(StandardCharsets.UTF_8);
+
+        int presence = 0;
+        if (d.threshold != null) presence |= HAS_THRESHOLD;
+        if (d.discount != null) presence |= HAS_DISCOUNT;
+        if (d.productId != null) presence |= HAS_PRODUCT_ID;
+        if (d.buyQuantity != null) presence |= HAS_BUY_QUANTITY;
+        if (d.getQuantity != null) presence |= HAS_GET_QUANTITY;
+        if (d.repetitionLimit != null) presence |= HAS_REPETITION_LIMIT;
+        if (d.startDate != null) presence |= HAS_START_DATE;
+        if (d.expiryDate != null) presence |= HAS_EXPIRY_DATE;
+        if (d.redemptionLimit != null) presence |= HAS_REDEMPTION_LIMIT;
+        if (d.usesPerCustomer != null) presence |= HAS_USES_PER_CUSTOMER;
+        if (d.priority != null) presence |= HAS_PRIORITY;
+
+        buffer.putLong(coupon.getId());
+        buffer.put((byte) coupon.getType().ordinal());
+        buffer.put((byte) (d.isActive == null ? 0 : d.isActive ? 1 : 2));
+        buffer.putShort((short) presence);
+        buffer.putInt(d.threshold == null ? 0 : d.threshold);
+        buffer.putDouble(d.discount == null ? 0.0 : d.discount);
+        buffer.putInt(d.productId == null ? 0 : d.productId);
+        buffer.putInt(d.buyQuantity == null ? 0 : d.buyQuantity);
+        buffer.putInt(d.getQuantity == null ? 0 : d.getQuantity);
+        buffer.putInt(d.repetitionLimit == null ? 0 : d.repetitionLimit);
+        buffer.putLong(d.startDate == null ? 0L : d.startDate.toEpochDay());
+        buffer.putLong(d.expiryDate == null ? 0L : d.expiryDate.toEpochDay());
+        buffer.putInt(buyCount);
+        buffer.putInt(getCount);
+        buffer.putInt(codeLength);
+        buffer.putInt(d.redemptionLimit == null ? 0 : d.redemptionLimit);
+        buffer.putInt(d.usesPerCustomer == null ? 0 : d.usesPerCustomer);
+        buffer.putInt(condition == null ? 0 : condition.length);
+        buffer.putInt(tierCount);
+        buffer.putInt(category == null ? 0 : category.length);
+        buffer.putInt(d.priority == null ? 0 : d.priority);
+        buffer.put((byte) (d.exclusive == null ? 0 : d.exclusive ? 1 : 2));
+        buffer.put((byte) 0);
+        buffer.putShort((short) 0);
+        for (int i = 0; i < buyCount; i++) {
+            buffer.putInt(d.buyProducts.get(i));
+        }
+        for (int i = 0; i < getCount; i++) {
+            buffer.putInt(d.getProducts.get(i));
+        }
+        for (int i = 0; i < codeLength; i++) {
+            buffer.put((byte) code.charAt(i));
+        }
+        if (condition != null) {
+            buffer.put(condition);
+        }
+        for (int i = 0; i < tierCount; i++) {
+            QuantityTier tier = d.tiers.get(i);
+            buffer.putInt(tier.minQuantity);
+            buffer.putDouble(tier.discount);
+        }
+        if (category != null) {
+            buffer.put(category);
+        }
+    }
+
+    // Decodes the record at an absolute position without moving the buffer's position
+    public static Coupon read(ByteBuffer buffer, int at) {
+        return read(buffer, at, null);
+    }
+
+    /**
+     * As {@link #read(ByteBuffer, int)}, with BXGY product ids resolved to the pool's interned
+     * arrays when it holds them, so a decoded coupon shares its products with the index.
+     */
+    public static Coupon read(ByteBuffer buffer, int at, ProductSetPool productSets) {
+        CouponDetails d = new CouponDetails();
+        byte active = buffer.get(at + 9);
+        d.isActive = active == 0 ? null : active == 1;
+        int presence = buffer.getShort(at + 10);
+        if ((presence & HAS_THRESHOLD) != 0) d.threshold = buffer.getInt(at + 12);
+        if ((presence & HAS_DISCOUNT) != 0) d.discount = buffer.getDouble(at + 16);
+        if ((presence & HAS_PRODUCT_ID) != 0) d.productId = buffer.getInt(at + 24);
+        if ((presence & HAS_BUY_QUANTITY) != 0) d.buyQuantity = buffer.getInt(at + 28);
+        if ((presence & HAS_GET_QUANTITY) != 0) d.getQuantity = buffer.getInt(at + 32);
+        if ((presence & HAS_REPETITION_LIMIT) != 0) d.repetitionLimit = buffer.getInt(at + 36);
+        if ((presence & HAS_START_DATE) != 0) d.startDate = LocalDate.ofEpochDay(buffer.getLong(at + 40));
+        if ((presence & HAS_EXPIRY_DATE) != 0) d.expiryDate = LocalDate.ofEpochDay(buffer.getLong(at + 48));
+        if ((presence & HAS_REDEMPTION_LIMIT) != 0) d.redemptionLimit = buffer.getInt(at + 68);
+        if ((presence & HAS_USES_PER_CUSTOMER) != 0) d.usesPerCustomer = buffer.getInt(at + 72);
+        if ((presence & HAS_PRIORITY) != 0) d.priority = buffer.getInt(at + 88);
+        byte exclusive = buffer.get(at + 92);
+        d.exclusive = exclusive == 0 ? null : exclusive == 1;
+
+        int buyCount = buffer.getInt(at + 56);
+        int getCount = buffer.getInt(at + 60);
+        int codeLength = buffer.getInt(at + 64);
+        int cursor = at + HEADER_BYTES;
+        if (buyCount >= 0) {
+            d.buyProducts = readProducts(buffer, cursor, buyCount, productSets);
+            cursor += buyCount * 4;
+        }
+        if (getCount >= 0) {
+            d.getProducts = readProducts(buffer, cursor, getCount, productSets);
+            cursor += getCount * 4;
+        }
+
+        Coupon coupon = new Coupon();
+        if (codeLength >= 0) {
+            char[] code = new char[codeLength];
+            for (int i = 0; i < codeLength; i++, cursor++) {
+                code[i] = (char) buffer.get(cursor);
+            }
+            coupon.setCode(new String(code));
+        }
+        int conditionBytes = buffer.getInt(at + 76);
+        if (conditionBytes > 0) {
+            byte[] condition = new byte[conditionBytes];
+            buffer.get(cursor, condition);
+            d.condition = new String(condition, StandardCharsets.UTF_8);
+            cursor += conditionBytes;
+        }
+        int tierCount = buffer.getInt(at + 80);
+        if (tierCount >= 0) {
+            d.tiers = new ArrayList<>(tierCount);
+            for (int i = 0; i < tierCount; i++, cursor += TIER_BYTES) {
+                d.tiers.add(new QuantityTier(buffer.getInt(cursor), buffer.getDouble(cursor + 4)));
+            }
+        }
+        int categoryBytes = buffer.getInt(at + 84);
+        if (categoryBytes > 0) {
+            byte[] category = new byte[categoryBytes];
+            buffer.get(cursor, category);
+            d.category = new String(category, StandardCharsets.UTF_8);
+        }
+        coupon.setId(buffer.getLong(at));
+        coupon.setType(TYPES[buffer.get(at + 8)]);
+        coupon.setDetails(d);
+        return coupon;
+    }
+
+    private static IntListView readProducts(ByteBuffer buffer, int at, int count, ProductSetPool productSets) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = buffer.getInt(at + i * 4);
+        }
+        return new IntListView(productSets == null ? ids : productSets.canonical(ids));
+    }
+}
@@ -0,0 +1,32 @@
+package com.monkcommerce.coupon_api.store;
+
+import java.util.List;
+import com.monkcommerce.coupon_api.model.Coupon;
+
+/**
+ * Primary coupon storage: couponId -> coupon.
+ */
+public interface CouponStore {
+
+    void put(Coupon coupon);
+
+    // Null when no coupon exists with this id
+    Coupon get(long couponId);
+
+    // Whether a coupon exists with this id, without reading it
+    boolean contains(long couponId);
+
+    // The removed coupon, or null when none existed
+    Coupon remove(long couponId);
+
+    int size();
+
+    // Encoded size of the stored coupons in the CouponRecordCodec layout, used for quotas
+    long bytes();
+
+    List<Coupon> values();
+
+    // Pool decoded BXGY product ids are resolved through; only stores that decode coupons need it
+    default void shareProductSets(ProductSetPool productSets) {
+    }
+}
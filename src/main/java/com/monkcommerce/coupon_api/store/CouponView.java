@@ -0,0 +1,34 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.redemption.RedemptionLedger;
+
+/**
+ * What applying, ranking and limit checks need of a stored coupon, in primitive form: its
+ * rule, date window (epoch days), limits (RedemptionLedger.UNLIMITED when unset) and flags.
+ * Kept on the heap in {@link CouponViews}, so those paths never decode a Coupon from the store.
+ * Inactive coupons carry no rule, since nothing evaluates them.
+ *
+ * One view per coupon stays on the heap whichever store holds the coupon. Its rule is shared
+ * where an index already holds one (the RuleIndex's compiled rule, BXGY's interned product
+ * sets), so the view itself adds one small record per coupon (see the README for the totals).
+ */
+public record CouponView(long id, CouponType type, boolean active, CouponRule rule,
+                         int startDay, int expiryDay, long redemptionLimit, long usesPerCustomer,
+                         boolean exclusive) {
+
+    // View of a validated (and, when active, indexed) coupon
+    public static CouponView of(Coupon coupon) {
+        return new CouponView(coupon.getId(), coupon.getType(), coupon.isActive(),
+                coupon.isActive() ? coupon.getRule() : null,
+                coupon.getStartDay(), coupon.getExpiryDay(),
+                limit(coupon.getRedemptionLimit()), limit(coupon.getUsesPerCustomer()),
+                coupon.isExclusive());
+    }
+
+    private static long limit(int limit) {
+        return limit == 0 ? RedemptionLedger.UNLIMITED : limit;
+    }
+}
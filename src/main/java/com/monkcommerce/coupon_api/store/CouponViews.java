@@ -0,0 +1,53 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * A {@link CouponView} for every stored coupon, active or not: couponId → slot in a dense
+ * array, so lookups by id neither box nor allocate. Removal moves the last slot into the hole.
+ * Kept in step with the CouponStore by every create, update, delete and restore.
+ */
+public class CouponViews {
+
+    private final LongLongHashMap slots = new LongLongHashMap();
+    private CouponView[] views = new CouponView[16];
+    private int size;
+
+    public void put(CouponView view) {
+        long slot = slots.get(view.id(), -1);
+        if (slot >= 0) {
+            views[(int) slot] = view;
+            return;
+        }
+        if (size == views.length) {
+            views = Arrays.copyOf(views, size << 1);
+        }
+        views[size] = view;
+        slots.put(view.id(), size++, -1);
+    }
+
+    public void remove(long couponId) {
+        long slot = slots.remove(couponId, -1);
+        if (slot < 0) {
+            return;
+        }
+        int last = --size;
+        if (slot != last) {
+            views[(int) slot] = views[last];
+            slots.put(views[last].id(), slot, -1);
+        }
+        views[last] = null;
+    }
+
+    // View of a stored coupon, or null
+    public CouponView get(long couponId) {
+        long slot = slots.get(couponId, -1);
+        return slot < 0 ? null : views[(int) slot];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,109 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.util.CustomerSet;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * couponId -> customers allowed to use it. Coupons without an entry are open to everyone.
+ * couponId → slot in dense parallel arrays, so the probe on every ranked coupon neither
+ * boxes nor allocates. Removal moves the last slot into the hole.
+ */
+public class CustomerEligibility {
+
+    private final LongLongHashMap slots = new LongLongHashMap();
+    private long[] couponIds = new long[16];
+    private CustomerSet[] sets = new CustomerSet[16];
+    private int size;
+
+    public void set(long couponId, CustomerSet customers) {
+        long slot = slots.get(couponId, -1);
+        if (slot < 0) {
+            if (size == couponIds.length) {
+                couponIds = Arrays.copyOf(couponIds, size << 1);
+                sets = Arrays.copyOf(sets, size << 1);
+            }
+            slot = size++;
+            slots.put(couponId, slot, -1);
+        }
+        couponIds[(int) slot] = couponId;
+        sets[(int) slot] = customers;
+    }
+
+    public CustomerSet get(long couponId) {
+        if (size == 0) {
+            return null;
+        }
+        long slot = slots.get(couponId, -1);
+        return slot < 0 ? null : sets[(int) slot];
+    }
+
+    public void remove(long couponId) {
+        long slot = slots.remove(couponId, -1);
+        if (slot < 0) {
+            return;
+        }
+        int last = --size;
+        if (slot != last) {
+            couponIds[(int) slot] = couponIds[last];
+            sets[(int) slot] = sets[last];
+            slots.put(couponIds[last], slot, -1);
+        }
+        sets[last] = null;
+    }
+
+    // Replace the lists of the coupons the filter accepts with source's; CustomerSets are immutable, so they are shared
+    public void copyFrom(CustomerEligibility source, LongPredicate coupons) {
+        for (int slot = size - 1; slot >= 0; slot--) {
+            if (coupons.test(couponIds[slot])) {
+                remove(couponIds[slot]);
+            }
+        }
+        for (int slot = 0; slot < source.size; slot++) {
+            if (coupons.test(source.couponIds[slot])) {
+                set(source.couponIds[slot], source.sets[slot]);
+            }
+        }
+    }
+
+    // True when the coupon has no list or the customer is on it
+    public boolean allows(long couponId, Long customerId) {
+        CustomerSet customers = get(couponId);
+        return customers == null || (customerId != null && customers.contains(customerId));
+    }
+
+    /* -------- SNAPSHOT -------- */
+
+    public int encodedBytes() {
+        int bytes = 4;
+        for (int slot = 0; slot < size; slot++) {
+            bytes += 8 + 4 + sets[slot].size() * 8;
+        }
+        return bytes;
+    }
+
+    // int count, count x [long couponId, int size, size x long customerId]
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(size);
+        for (int slot = 0; slot < size; slot++) {
+            buffer.putLong(couponIds[slot]).putInt(sets[slot].size());
+            for (long id : sets[slot].ids()) {
+                buffer.putLong(id);
+            }
+        }
+    }
+
+    public void readFrom(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            long couponId = buffer.getLong();
+            long[] ids = new long[buffer.getInt()];
+            buffer.asLongBuffer().get(ids);
+            buffer.position(buffer.position() + ids.length * 8);
+            set(couponId, CustomerSet.of(ids));
+        }
+    }
+}
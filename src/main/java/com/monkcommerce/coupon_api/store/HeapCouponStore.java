@@ -0,0 +1,54 @@
+package com.monkcommerce.coupon_api.store;
+
+import java.util.*;
+import com.monkcommerce.coupon_api.model.Coupon;
+
+// Default store: coupon objects kept on the Java heap
+public class HeapCouponStore implements CouponStore {
+
+    private final Map<Long, Coupon> coupons = new HashMap<>();
+    private long bytes;
+
+    @Override
+    public void put(Coupon coupon) {
+        Coupon previous = coupons.put(coupon.getId(), coupon);
+        if (previous != null) {
+            bytes -= CouponRecordCodec.recordBytes(previous);
+        }
+        bytes += CouponRecordCodec.recordBytes(coupon);
+    }
+
+    @Override
+    public Coupon get(long couponId) {
+        return coupons.get(couponId);
+    }
+
+    @Override
+    public boolean contains(long couponId) {
+        return coupons.containsKey(couponId);
+    }
+
+    @Override
+    public Coupon remove(long couponId) {
+        Coupon removed = coupons.remove(couponId);
+        if (removed != null) {
+            bytes -= CouponRecordCodec.recordBytes(removed);
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return coupons.size();
+    }
+
+    @Override
+    public long bytes() {
+        return bytes;
+    }
+
+    @Override
+    public List<Coupon> values() {
+        return new ArrayList<>(coupons.values());
+    }
+}
@@ -0,0 +1,231 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Coupon store that keeps every coupon as a fixed-layout record in direct ByteBuffer slabs,
+ * outside the Java heap. The heap only holds a primitive couponId -> record address table,
+ * so heap size and GC work stay flat as the catalog grows.
+ *
+ * Records use the {@link CouponRecordCodec} layout and are decoded into a fresh Coupon on
+ * every read; evaluation works from the catalog's heap-side views and does not read the store.
+ * Writes append to the current slab; updates and deletes leave dead bytes behind, which are
+ * reclaimed by compaction once they outweigh the live records.
+ *
+ * Reads may run concurrently with each other and with a writer: writes and compaction hold the
+ * write lock, so a read never sees a slab that compaction is replacing.
+ */
+public class OffHeapCouponStore implements CouponStore {
+
+    private static final long MISSING = -1L;
+
+    private final int slabBytes;
+    private final List<ByteBuffer> slabs = new ArrayList<>();
+
+    // couponId -> (slab index << 32 | offset)
+    private final LongLongHashMap addresses = new LongLongHashMap();
+
+    private long liveBytes;
+    private long deadBytes;
+
+    // Null until the owning catalog shares its pool
+    private ProductSetPool productSets;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public OffHeapCouponStore(int slabBytes) {
+        if (slabBytes < CouponRecordCodec.HEADER_BYTES) {
+            throw new IllegalArgumentException("Slab size must be at least " + CouponRecordCodec.HEADER_BYTES + " bytes");
+        }
+        this.slabBytes = slabBytes;
+    }
+
+    @Override
+    public void put(Coupon coupon) {
+        lock.writeLock().lock();
+        try {
+            long previous = addresses.get(coupon.getId(), MISSING);
+            if (previous != MISSING) {
+                release(previous);
+            }
+            addresses.put(coupon.getId(), write(coupon), MISSING);
+            compactIfWasteful();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Coupon get(long couponId) {
+        lock.readLock().lock();
+        try {
+            long address = addresses.get(couponId, MISSING);
+            return address == MISSING ? null : read(address);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(long couponId) {
+        lock.readLock().lock();
+        try {
+            return addresses.get(couponId, MISSING) != MISSING;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Coupon remove(long couponId) {
+        lock.writeLock().lock();
+        try {
+            long address = addresses.remove(couponId, MISSING);
+            if (address == MISSING) {
+                return null;
+            }
+            Coupon removed = read(address);
+            release(address);
+            compactIfWasteful();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return addresses.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Coupon> values() {
+        lock.readLock().lock();
+        try {
+            List<Coupon> coupons = new ArrayList<>(addresses.size());
+            for (int slot = addresses.nextSlot(0); slot >= 0; slot = addresses.nextSlot(slot + 1)) {
+                coupons.add(read(addresses.valueAt(slot)));
+            }
+            return coupons;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void shareProductSets(ProductSetPool productSets) {
+        this.productSets = productSets;
+    }
+
+    @Override
+    public long bytes() {
+        lock.readLock().lock();
+        try {
+            return liveBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long reservedBytes() {
+        lock.readLock().lock();
+        try {
+            return (long) slabs.size() * slabBytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* -------- SLABS -------- */
+
+    private long write(Coupon coupon) {
+        int length = CouponRecordCodec.recordBytes(coupon);
+        if (length > slabBytes) {
+            throw new CouponException("Coupon is too large for the off-heap store");
+        }
+
+        ByteBuffer slab = slabs.isEmpty() ? null : slabs.get(slabs.size() - 1);
+        if (slab == null || slab.remaining() < length) {
+            slab = ByteBuffer.allocateDirect(slabBytes);
+            slabs.add(slab);
+        }
+        int offset = slab.position();
+        CouponRecordCodec.write(slab, coupon);
+
+        liveBytes += length;
+        return ((long) (slabs.size() - 1) << 32) | offset;
+    }
+
+    private Coupon read(long address) {
+        return CouponRecordCodec.read(slabs.get((int) (address >>> 32)), (int) address, productSets);
+    }
+
+    private int recordBytesAt(long address) {
+        return CouponRecordCodec.recordBytesAt(slabs.get((int) (address >>> 32)), (int) address);
+    }
+
+    private void release(long address) {
+        int length = recordBytesAt(address);
+        liveBytes -= length;
+        deadBytes += length;
+    }
+
+    /* -------- COMPACTION -------- */
+
+    // Rewrite live records into fresh slabs once more than half of the used space is dead;
+    // called with the write lock held
+    private void compactIfWasteful() {
+        if (slabs.size() > 1 && deadBytes > liveBytes) {
+            compactSlabs();
+        }
+    }
+
+    public void compact() {
+        lock.writeLock().lock();
+        try {
+            compactSlabs();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void compactSlabs() {
+        List<ByteBuffer> old = new ArrayList<>(slabs);
+        slabs.clear();
+
+        List<ByteBuffer> fresh = new ArrayList<>();
+        ByteBuffer target = null;
+        for (int slot = addresses.nextSlot(0); slot >= 0; slot = addresses.nextSlot(slot + 1)) {
+            long address = addresses.valueAt(slot);
+            ByteBuffer source = old.get((int) (address >>> 32));
+            int at = (int) address;
+            int length = CouponRecordCodec.recordBytesAt(source, at);
+
+            if (target == null || target.remaining() < length) {
+                target = ByteBuffer.allocateDirect(slabBytes);
+                fresh.add(target);
+            }
+            int offset = target.position();
+            target.put(source.slice(at, length));
+
+            // Same key, only the value changes: no rehash while walking the table
+            addresses.put(addresses.keyAt(slot), ((long) (fresh.size() - 1) << 32) | offset, MISSING);
+        }
+
+        slabs.addAll(fresh);
+        deadBytes = 0;
+    }
+}
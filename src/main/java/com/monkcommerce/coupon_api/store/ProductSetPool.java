@@ -0,0 +1,62 @@
+package com.monkcommerce.coupon_api.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns sorted product id arrays by content so BXGY coupons that share a product list
+ * share one int[]. Each intern is paired with a release; a set is dropped once no
+ * indexed coupon uses it. The interned array is the only copy of an indexed coupon's
+ * products: its rule and its details (through an IntListView) both point at it.
+ */
+public class ProductSetPool {
+
+    private static final class ProductSet {
+        final int[] ids;
+        final int hash;
+        int refs;
+
+        ProductSet(int[] ids) {
+            this.ids = ids;
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ProductSet other && hash == other.hash && Arrays.equals(ids, other.ids);
+        }
+    }
+
+    private final Map<ProductSet, ProductSet> sets = new HashMap<>();
+
+    // Canonical array with the same content
+    public int[] intern(int[] sortedIds) {
+        ProductSet set = sets.computeIfAbsent(new ProductSet(sortedIds), s -> s);
+        set.refs++;
+        return set.ids;
+    }
+
+    // The interned array with the same content, or sortedIds itself when none is held; no reference is taken
+    public int[] canonical(int[] sortedIds) {
+        ProductSet set = sets.isEmpty() ? null : sets.get(new ProductSet(sortedIds));
+        return set == null ? sortedIds : set.ids;
+    }
+
+    public void release(int[] sortedIds) {
+        ProductSet set = sets.get(new ProductSet(sortedIds));
+        if (set != null && --set.refs == 0) {
+            sets.remove(set);
+        }
+    }
+
+    // Distinct product sets held
+    public int size() {
+        return sets.size();
+    }
+}
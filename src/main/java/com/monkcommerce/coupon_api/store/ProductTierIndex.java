@@ -0,0 +1,242 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Active product-wise coupons, several per product.
+ *
+ * Each coupon is an entry in dense parallel arrays: its tier table (sorted minimum quantities
+ * with their discounts in basis points; a flat coupon is a single tier from 1 unit), its
+ * ranking group (exclusive first, then priority), its best discount and its date window.
+ * productId → slot holds the product's entries as an int[] kept sorted by group, then best
+ * discount, so the best coupon for a cart line is found by walking that list from the front
+ * and stopping as soon as no later entry can beat the one already found: usually after the
+ * first eligible entry, however many coupons a popular product has. Lookups are primitive
+ * hash probes with no boxing. Removal moves the last entry or product slot into the hole.
+ */
+public class ProductTierIndex {
+
+    public static final int NOT_FOUND = -1;
+
+    // Shared minimum quantities of every flat coupon
+    public static final int[] FLAT = {1};
+
+    // Date window bounds of a coupon without a start or expiry date (epoch days)
+    public static final int ALWAYS_STARTED = Integer.MIN_VALUE;
+    public static final int NEVER_EXPIRES = Integer.MAX_VALUE;
+
+    // Entries: couponId → entry
+    private final LongLongHashMap entries = new LongLongHashMap();
+    private long[] couponIds = new long[16];
+    private int[] productIds = new int[16];
+    private int[][] minQuantities = new int[16][];
+    private int[][] discountBps = new int[16][];
+    private int[] maxBps = new int[16];
+    private long[] groups = new long[16];
+    private int[] startDays = new int[16];
+    private int[] endDays = new int[16];
+    private int size;
+
+    // Products: productId → slot, with the product's entries in ranking order
+    private final LongLongHashMap products = new LongLongHashMap();
+    private int[] slotProductIds = new int[16];
+    private int[][] ranked = new int[16][];
+    private int[] rankedCounts = new int[16];
+    private int productCount;
+
+    /**
+     * Adds or replaces a coupon's entry. Among a product's eligible coupons, exclusive ones win
+     * over the others, then higher priority, then the larger discount for the line's quantity.
+     */
+    public void put(int productId, long couponId, int[] tierQuantities, int[] tierBps,
+                    int priority, boolean exclusive, int startDay, int endDay) {
+        remove(couponId);
+        if (size == couponIds.length) {
+            int capacity = size << 1;
+            couponIds = Arrays.copyOf(couponIds, capacity);
+            productIds = Arrays.copyOf(productIds, capacity);
+            minQuantities = Arrays.copyOf(minQuantities, capacity);
+            discountBps = Arrays.copyOf(discountBps, capacity);
+            maxBps = Arrays.copyOf(maxBps, capacity);
+            groups = Arrays.copyOf(groups, capacity);
+            startDays = Arrays.copyOf(startDays, capacity);
+            endDays = Arrays.copyOf(endDays, capacity);
+        }
+        int entry = size++;
+        couponIds[entry] = couponId;
+        productIds[entry] = productId;
+        minQuantities[entry] = tierQuantities;
+        discountBps[entry] = tierBps;
+        maxBps[entry] = tierBps[tierBps.length - 1];
+        groups[entry] = ((exclusive ? 1L : 0L) << 32) | (priority & 0xFFFFFFFFL);
+        startDays[entry] = startDay;
+        endDays[entry] = endDay;
+        entries.put(couponId, entry, NOT_FOUND);
+
+        int slot = productSlot(productId);
+        int[] order = ranked[slot];
+        int count = rankedCounts[slot];
+        if (count == order.length) {
+            order = ranked[slot] = Arrays.copyOf(order, count << 1);
+        }
+        int at = count;
+        while (at > 0 && ranksBefore(entry, order[at - 1])) {
+            order[at] = order[at - 1];
+            at--;
+        }
+        order[at] = entry;
+        rankedCounts[slot] = count + 1;
+    }
+
+    private boolean ranksBefore(int a, int b) {
+        if (groups[a] != groups[b]) {
+            return groups[a] > groups[b];
+        }
+        if (maxBps[a] != maxBps[b]) {
+            return maxBps[a] > maxBps[b];
+        }
+        return couponIds[a] < couponIds[b];
+    }
+
+    // Slot of a product, creating it when missing
+    private int productSlot(int productId) {
+        long slot = products.get(productId, NOT_FOUND);
+        if (slot != NOT_FOUND) {
+            return (int) slot;
+        }
+        if (productCount == slotProductIds.length) {
+            int capacity = productCount << 1;
+            slotProductIds = Arrays.copyOf(slotProductIds, capacity);
+            ranked = Arrays.copyOf(ranked, capacity);
+            rankedCounts = Arrays.copyOf(rankedCounts, capacity);
+        }
+        int created = productCount++;
+        slotProductIds[created] = productId;
+        ranked[created] = new int[2];
+        rankedCounts[created] = 0;
+        products.put(productId, created, NOT_FOUND);
+        return created;
+    }
+
+    public void remove(long couponId) {
+        long removed = entries.remove(couponId, NOT_FOUND);
+        if (removed == NOT_FOUND) {
+            return;
+        }
+        int entry = (int) removed;
+        int slot = (int) products.get(productIds[entry], NOT_FOUND);
+        unrank(slot, entry);
+        if (rankedCounts[slot] == 0) {
+            removeProduct(slot);
+        }
+
+        int last = --size;
+        if (entry != last) {
+            couponIds[entry] = couponIds[last];
+            productIds[entry] = productIds[last];
+            minQuantities[entry] = minQuantities[last];
+            discountBps[entry] = discountBps[last];
+            maxBps[entry] = maxBps[last];
+            groups[entry] = groups[last];
+            startDays[entry] = startDays[last];
+            endDays[entry] = endDays[last];
+            entries.put(couponIds[entry], entry, NOT_FOUND);
+
+            // Point the moved entry's product at its new position
+            int movedSlot = (int) products.get(productIds[entry], NOT_FOUND);
+            int[] order = ranked[movedSlot];
+            for (int i = 0; i < rankedCounts[movedSlot]; i++) {
+                if (order[i] == last) {
+                    order[i] = entry;
+                    break;
+                }
+            }
+        }
+        minQuantities[last] = null;
+        discountBps[last] = null;
+    }
+
+    private void unrank(int slot, int entry) {
+        int[] order = ranked[slot];
+        int count = rankedCounts[slot];
+        int at = 0;
+        while (order[at] != entry) {
+            at++;
+        }
+        System.arraycopy(order, at + 1, order, at, count - at - 1);
+        rankedCounts[slot] = count - 1;
+    }
+
+    private void removeProduct(int slot) {
+        products.remove(slotProductIds[slot], NOT_FOUND);
+        int last = --productCount;
+        if (slot != last) {
+            slotProductIds[slot] = slotProductIds[last];
+            ranked[slot] = ranked[last];
+            rankedCounts[slot] = rankedCounts[last];
+            products.put(slotProductIds[slot], slot, NOT_FOUND);
+        }
+        ranked[last] = null;
+    }
+
+    public boolean contains(long couponId) {
+        return entries.containsKey(couponId);
+    }
+
+    /**
+     * Best entry for a cart line of this many units on the given epoch day, among the coupons
+     * whose id passes usable, or NOT_FOUND. Entries below their first tier or outside their
+     * date window are skipped.
+     */
+    public int best(int productId, int quantity, int today, LongPredicate usable) {
+        long slot = products.get(productId, NOT_FOUND);
+        if (slot == NOT_FOUND) {
+            return NOT_FOUND;
+        }
+        int[] order = ranked[(int) slot];
+        int best = NOT_FOUND, bestBps = 0;
+        for (int i = 0, n = rankedCounts[(int) slot]; i < n; i++) {
+            int entry = order[i];
+            // Later entries are in a lower group or cannot give more than the best so far
+            if (best != NOT_FOUND && (groups[entry] != groups[best] || maxBps[entry] <= bestBps)) {
+                break;
+            }
+            if (today < startDays[entry] || today > endDays[entry]) {
+                continue;
+            }
+            int bps = discountBps(entry, quantity);
+            if (bps > bestBps && usable.test(couponIds[entry])) {
+                best = entry;
+                bestBps = bps;
+            }
+        }
+        return best;
+    }
+
+    public long couponIdAt(int entry) {
+        return couponIds[entry];
+    }
+
+    // Discount of the entry's coupon for a line of this many units, 0 below its first tier
+    public int discountBps(int entry, int quantity) {
+        int[] quantities = minQuantities[entry];
+        int tier = Arrays.binarySearch(quantities, quantity);
+        if (tier < 0) {
+            tier = -tier - 2;
+        }
+        return tier < 0 ? 0 : discountBps[entry][tier];
+    }
+
+    // Indexed coupons
+    public int size() {
+        return size;
+    }
+
+    // Products with at least one indexed coupon
+    public int products() {
+        return productCount;
+    }
+}
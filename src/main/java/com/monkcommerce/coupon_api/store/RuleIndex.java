@@ -0,0 +1,67 @@
+package com.monkcommerce.coupon_api.store;
+
+import com.monkcommerce.coupon_api.model.rule.ExpressionRule;
+import com.monkcommerce.coupon_api.util.LongLongHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Compiled rules of the active RULE coupons: couponId → slot in dense parallel arrays, so
+ * evaluation walks the arrays and lookups by id neither box nor allocate. Removal moves the
+ * last slot into the hole. An update replaces the entry, so a changed condition is never
+ * evaluated with its old compiled form.
+ */
+public class RuleIndex {
+
+    private final LongLongHashMap slots = new LongLongHashMap();
+    private long[] couponIds = new long[16];
+    private ExpressionRule[] rules = new ExpressionRule[16];
+    private int size;
+
+    public void put(long couponId, ExpressionRule rule) {
+        long slot = slots.get(couponId, -1);
+        if (slot >= 0) {
+            rules[(int) slot] = rule;
+            return;
+        }
+        if (size == rules.length) {
+            couponIds = Arrays.copyOf(couponIds, size << 1);
+            rules = Arrays.copyOf(rules, size << 1);
+        }
+        couponIds[size] = couponId;
+        rules[size] = rule;
+        slots.put(couponId, size++, -1);
+    }
+
+    public void remove(long couponId) {
+        long slot = slots.remove(couponId, -1);
+        if (slot < 0) {
+            return;
+        }
+        int last = --size;
+        if (slot != last) {
+            couponIds[(int) slot] = couponIds[last];
+            rules[(int) slot] = rules[last];
+            slots.put(couponIds[last], slot, -1);
+        }
+        rules[last] = null;
+    }
+
+    // Compiled rule of an active coupon, or null
+    public ExpressionRule get(long couponId) {
+        long slot = slots.get(couponId, -1);
+        return slot < 0 ? null : rules[(int) slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long couponIdAt(int slot) {
+        return couponIds[slot];
+    }
+
+    public ExpressionRule ruleAt(int slot) {
+        return rules[slot];
+    }
+}
@@ -0,0 +1,307 @@
+package com.monkcommerce.coupon_api.taxonomy;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.util.ProductBitmap;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, hierarchical product → category taxonomy.
+ *
+ * Categories are '/'-separated paths ("Electronics/Phones"); a category contains its own
+ * products and those of every category below it. Each category's members are precomputed
+ * into a {@link ProductBitmap}, so checking a product against a category is a bitmap probe.
+ * A taxonomy is never changed after it is built; a new file is loaded into a new instance
+ * and swapped in (see {@link Taxonomy}).
+ *
+ * File format, one category per line ('#' starts a comment):
+ * <pre>
+ *   Electronics/Phones: 1001-1999, 2500
+ *   Electronics/Laptops: 3000-3499
+ *   Grocery: 42, 43
+ * </pre>
+ * A line may list a category again to add more products. Parent categories are created from
+ * the paths and may also have their own lines.
+ */
+public final class CategoryTaxonomy {
+
+    public static final int NOT_FOUND = -1;
+    public static final int MAX_PATH_LENGTH = 256;
+    // Product assignments (ids listed or covered by ranges) in one file
+    public static final int MAX_ASSIGNMENTS = 20_000_000;
+
+    public static final CategoryTaxonomy EMPTY =
+            new CategoryTaxonomy(Map.of(), new String[0], new int[0], new ProductBitmap[0], 0, "none", 0);
+
+    private final Map<String, Integer> ids;
+    private final String[] paths;
+    private final int[] parents;
+    private final ProductBitmap[] members;
+    private final int products;
+    private final String source;
+    private final long loadNanos;
+
+    private CategoryTaxonomy(Map<String, Integer> ids, String[] paths, int[] parents, ProductBitmap[] members,
+                             int products, String source, long loadNanos) {
+        this.ids = ids;
+        this.paths = paths;
+        this.parents = parents;
+        this.members = members;
+        this.products = products;
+        this.source = source;
+        this.loadNanos = loadNanos;
+    }
+
+    // Paths are non-empty '/'-separated names without ':', ',' or surrounding spaces
+    public static boolean isValidPath(String path) {
+        if (path == null || path.isEmpty() || path.length() > MAX_PATH_LENGTH) {
+            return false;
+        }
+        for (String name : path.split("/", -1)) {
+            if (name.isEmpty() || !name.equals(name.strip()) || name.indexOf(':') >= 0 || name.indexOf(',') >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static CategoryTaxonomy read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return parse(reader, file.toString());
+        }
+    }
+
+    public static CategoryTaxonomy parse(BufferedReader reader, String source) throws IOException {
+        long start = System.nanoTime();
+        Builder builder = new Builder();
+        String line;
+        for (int number = 1; (line = reader.readLine()) != null; number++) {
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                throw invalid(number, "expected 'category: product ids'");
+            }
+            String path = normalize(line.substring(0, colon));
+            if (!isValidPath(path)) {
+                throw invalid(number, "invalid category '" + line.substring(0, colon).strip() + "'");
+            }
+            builder.assign(builder.category(path), line, colon + 1, number);
+        }
+        return builder.build(source, System.nanoTime() - start);
+    }
+
+    // Trims every name of a path, so "Electronics / Phones" and "Electronics/Phones" are one category
+    private static String normalize(String path) {
+        String[] names = path.split("/", -1);
+        for (int i = 0; i < names.length; i++) {
+            names[i] = names[i].strip();
+        }
+        return String.join("/", names);
+    }
+
+    private static CouponException invalid(int line, String message) {
+        return new CouponException("Invalid taxonomy at line " + line + ": " + message);
+    }
+
+    // Category id of a path, or NOT_FOUND
+    public int categoryOf(String path) {
+        Integer id = ids.get(path);
+        return id == null ? NOT_FOUND : id;
+    }
+
+    public boolean contains(int category, int productId) {
+        return members[category].contains(productId);
+    }
+
+    public ProductBitmap members(int category) {
+        return members[category];
+    }
+
+    public String pathOf(int category) {
+        return paths[category];
+    }
+
+    // Parent category id, or NOT_FOUND for a top-level category
+    public int parentOf(int category) {
+        return parents[category];
+    }
+
+    public int categories() {
+        return paths.length;
+    }
+
+    // Distinct products with at least one category
+    public int products() {
+        return products;
+    }
+
+    // Where the taxonomy was loaded from
+    public String source() {
+        return source;
+    }
+
+    // Time taken to parse the file and build the bitmaps
+    public long loadNanos() {
+        return loadNanos;
+    }
+
+    // Approximate heap footprint of the category bitmaps
+    public long memoryBytes() {
+        long bytes = 0;
+        for (ProductBitmap bitmap : members) {
+            bytes += bitmap.memoryBytes();
+        }
+        return bytes;
+    }
+
+    /* -------- LOADING -------- */
+
+    private static final class Builder {
+
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> paths = new ArrayList<>();
+        private final List<Integer> parents = new ArrayList<>();
+
+        // Products listed directly under each category
+        private int[][] direct = new int[16][];
+        private int[] directSizes = new int[16];
+        private long assignments;
+
+        // Id of a category, creating it and its missing parents
+        int category(String path) {
+            Integer id = ids.get(path);
+            if (id != null) {
+                return id;
+            }
+            int slash = path.lastIndexOf('/');
+            int parent = slash < 0 ? NOT_FOUND : category(path.substring(0, slash));
+            int created = paths.size();
+            ids.put(path, created);
+            paths.add(path);
+            parents.add(parent);
+            if (created == direct.length) {
+                direct = Arrays.copyOf(direct, created << 1);
+                directSizes = Arrays.copyOf(directSizes, created << 1);
+            }
+            direct[created] = new int[4];
+            return created;
+        }
+
+        // Adds the comma-separated ids and ranges of line[from..] to a category
+        void assign(int category, String line, int from, int number) {
+            int length = line.length();
+            while (from < length) {
+                int comma = line.indexOf(',', from);
+                int to = comma < 0 ? length : comma;
+                String entry = line.substring(from, to).strip();
+                from = to + 1;
+                if (entry.isEmpty()) {
+                    if (comma < 0) {
+                        break;
+                    }
+                    throw invalid(number, "empty product id");
+                }
+                int dash = entry.indexOf('-');
+                int first = parseId(dash < 0 ? entry : entry.substring(0, dash), number);
+                int last = dash < 0 ? first : parseId(entry.substring(dash + 1), number);
+                if (last < first) {
+                    throw invalid(number, "range " + entry + " is empty");
+                }
+                assignments += (long) last - first + 1;
+                if (assignments > MAX_ASSIGNMENTS) {
+                    throw invalid(number, "more than " + MAX_ASSIGNMENTS + " product assignments");
+                }
+                for (long id = first; id <= last; id++) {
+                    add(category, (int) id);
+                }
+            }
+        }
+
+        private static int parseId(String text, int number) {
+            try {
+                int id = Integer.parseInt(text.strip());
+                if (id < 0) {
+                    throw invalid(number, "product id " + id + " is negative");
+                }
+                return id;
+            } catch (NumberFormatException ex) {
+                throw invalid(number, "invalid product id '" + text.strip() + "'");
+            }
+        }
+
+        private void add(int category, int productId) {
+            int size = directSizes[category];
+            if (size == direct[category].length) {
+                direct[category] = Arrays.copyOf(direct[category], size << 1);
+            }
+            direct[category][size] = productId;
+            directSizes[category] = size + 1;
+        }
+
+        // Members of each category: its own products plus those of all its descendants
+        CategoryTaxonomy build(String source, long loadNanos) {
+            int count = paths.size();
+            int[] parentIds = new int[count];
+            for (int c = 0; c < count; c++) {
+                parentIds[c] = parents.get(c);
+            }
+
+            int[] memberSizes = new int[count];
+            for (int c = 0; c < count; c++) {
+                for (int a = c; a != NOT_FOUND; a = parentIds[a]) {
+                    memberSizes[a] += directSizes[c];
+                }
+            }
+            int[][] memberIds = new int[count][];
+            int[] filled = new int[count];
+            for (int c = 0; c < count; c++) {
+                memberIds[c] = new int[memberSizes[c]];
+            }
+            int total = 0;
+            for (int c = 0; c < count; c++) {
+                for (int a = c; a != NOT_FOUND; a = parentIds[a]) {
+                    System.arraycopy(direct[c], 0, memberIds[a], filled[a], directSizes[c]);
+                    filled[a] += directSizes[c];
+                }
+                if (parentIds[c] == NOT_FOUND) {
+                    total += memberSizes[c];
+                }
+            }
+
+            ProductBitmap[] members = new ProductBitmap[count];
+            for (int c = 0; c < count; c++) {
+                members[c] = ProductBitmap.of(memberIds[c], memberSizes[c]);
+                direct[c] = null;
+            }
+
+            // Distinct products across the top-level categories
+            int[] all = new int[total];
+            int at = 0;
+            for (int c = 0; c < count; c++) {
+                if (parentIds[c] == NOT_FOUND) {
+                    System.arraycopy(memberIds[c], 0, all, at, memberSizes[c]);
+                    at += memberSizes[c];
+                }
+            }
+            int products = ProductBitmap.of(all, total).cardinality();
+
+            return new CategoryTaxonomy(Map.copyOf(ids), paths.toArray(new String[0]), parentIds, members,
+                    products, source, loadNanos);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.monkcommerce.coupon_api.taxonomy;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * The current product taxonomy, shared by every tenant's category coupons.
+ *
+ * Loaded from coupon.taxonomy.file at startup (none when unset) and replaced by reload().
+ * A new taxonomy is built completely before one volatile write swaps it in, so an
+ * evaluation running during a reload sees either the old taxonomy or the new one.
+ */
+@Component
+public class Taxonomy implements Supplier<CategoryTaxonomy> {
+
+    private static final Logger log = LoggerFactory.getLogger(Taxonomy.class);
+
+    // Null when no file is configured
+    private final Path file;
+    private volatile CategoryTaxonomy current = CategoryTaxonomy.EMPTY;
+
+    public Taxonomy(@Value("${coupon.taxonomy.file:}") String file) {
+        this.file = file == null || file.isBlank() ? null : Path.of(file);
+        if (this.file != null) {
+            reload();
+        }
+    }
+
+    @Override
+    public CategoryTaxonomy get() {
+        return current;
+    }
+
+    // Reads the configured file again and swaps it in; the old taxonomy stays on failure
+    public CategoryTaxonomy reload() {
+        if (file == null) {
+            throw new CouponException("No taxonomy file configured (coupon.taxonomy.file)");
+        }
+        CategoryTaxonomy loaded;
+        try {
+            loaded = CategoryTaxonomy.read(file);
+        } catch (IOException ex) {
+            throw new CouponException("Could not read taxonomy file " + file + ": " + ex.getMessage());
+        }
+        swap(loaded);
+        log.info("Loaded taxonomy {}: {} categories, {} products in {} ms",
+                file, loaded.categories(), loaded.products(), loaded.loadNanos() / 1_000_000);
+        return loaded;
+    }
+
+    public void swap(CategoryTaxonomy taxonomy) {
+        current = taxonomy;
+    }
+}
@@ -0,0 +1,107 @@
+package com.monkcommerce.coupon_api.tenant;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stages catalogs dropped into coupon.catalog.staging-dir. A file named {tenant}.json holding a
+ * JSON array of coupons is staged for that tenant when it appears or changes; swapping it in
+ * stays an explicit call (see TenantCatalogs#swap). Write the file under another name and move
+ * it into place, so a half-written file is never read.
+ */
+@Component
+public class CatalogStagingWatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogStagingWatcher.class);
+    private static final String SUFFIX = ".json";
+
+    private final TenantCatalogs catalogs;
+    private final JsonMapper mapper;
+    // Null when no directory is watched
+    private final Path dir;
+    // Modification time of each file when it was last staged; only used by the watcher thread
+    private final Map<Path, FileTime> staged = new HashMap<>();
+    private final ScheduledExecutorService watcher;
+
+    public CatalogStagingWatcher(TenantCatalogs catalogs, JsonMapper mapper,
+                                 @Value("${coupon.catalog.staging-dir:}") String dir,
+                                 @Value("${coupon.catalog.staging-poll:5s}") Duration poll) {
+        this.catalogs = catalogs;
+        this.mapper = mapper;
+        if (dir == null || dir.isBlank()) {
+            this.dir = null;
+            this.watcher = null;
+            return;
+        }
+        this.dir = Path.of(dir);
+        this.watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "catalog-watcher");
+            t.setDaemon(true);
+            return t;
+        });
+        long periodMillis = Math.max(100, poll.toMillis());
+        watcher.scheduleWithFixedDelay(this::poll, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    void poll() {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*" + SUFFIX)) {
+            for (Path file : files) {
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (modified.equals(staged.get(file))) {
+                    continue;
+                }
+                staged.put(file, modified);
+                String name = file.getFileName().toString();
+                String tenant = name.substring(0, name.length() - SUFFIX.length());
+                if (tenant.isEmpty()) {
+                    continue;
+                }
+                try {
+                    catalogs.stage(tenant, file.toString(), () -> read(file));
+                    log.info("Staging catalog for tenant {} from {}", tenant, file);
+                } catch (RuntimeException ex) {
+                    log.warn("Could not stage {}", file, ex);
+                }
+            }
+        } catch (IOException ex) {
+            log.warn("Could not list staging directory {}", dir, ex);
+        }
+    }
+
+    // Runs on a staging thread, so a large file is parsed off the watcher thread too
+    private List<Coupon> read(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return Arrays.asList(mapper.readValue(in, Coupon[].class));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (watcher != null) {
+            watcher.shutdownNow();
+        }
+    }
+}
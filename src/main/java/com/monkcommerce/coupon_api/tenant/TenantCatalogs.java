@@ -0,0 +1,566 @@
+package com.monkcommerce.coupon_api.tenant;
+
+import com.monkcommerce.coupon_api.audit.AuditLog;
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.response.CatalogStagingResponse;
+import com.monkcommerce.coupon_api.redemption.RedemptionLedger;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.CouponStore;
+import com.monkcommerce.coupon_api.store.HeapCouponStore;
+import com.monkcommerce.coupon_api.store.OffHeapCouponStore;
+import com.monkcommerce.coupon_api.taxonomy.Taxonomy;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * One isolated catalog per tenant: its own CouponService, indexes, id sequence, quotas and
+ * tenant-tagged metrics, so evaluation cost depends only on the tenant's own coupons.
+ *
+ * The tenant comes from the X-Tenant-Id header; requests without it use the "default" tenant.
+ * Catalogs idle for longer than coupon.tenant.idle-eviction are written to a snapshot file
+ * and dropped from memory, then reloaded on the tenant's next request. Snapshots live in a
+ * per-process directory that is removed on shutdown, so the service stays in-memory only.
+ * A catalog holding open redemption reservations is not evicted; the sweeper releases
+ * expired reservations every second.
+ *
+ * A whole replacement catalog can be staged: it is validated and indexed into a separate
+ * CouponService on a background thread while requests keep using the live one, then swapped
+ * in by a single reference write while requests are briefly held at the tenant's gate. Coupons are matched across catalogs by id: every catalog of
+ * a tenant shares one RedemptionLedger, so redemption counts, the global limit and open
+ * reservations carry over, and the swap copies customer lists and generated codes (with
+ * their used flags) into the incoming catalog under the tenant's lock. A coupon's counters
+ * are dropped only once no catalog of the tenant holds it. The replaced catalog,
+ * with its analytics, is kept so a rollback is another swap. Whichever catalog comes in skips
+ * past every id the tenant has handed out, so no new coupon inherits another's redemptions.
+ * A tenant with a catalog building or ready to swap is not evicted; eviction snapshots the
+ * rollback catalog along with the live one.
+ */
+@Component
+public class TenantCatalogs {
+
+    public static final String HEADER = "X-Tenant-Id";
+
+    private static final Logger log = LoggerFactory.getLogger(TenantCatalogs.class);
+    private static final Pattern TENANT_ID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // Staged catalogs are built on their own low-priority threads, away from request threads
+    private static final int STAGING_THREADS = 2;
+
+    private enum StagingState { NONE, BUILDING, READY, FAILED }
+
+    private static final class Tenant {
+        // Shared by every catalog of the tenant, so series continue across swaps
+        final CouponMetrics metrics;
+
+        // Live catalog; replaced by swap and rollback, which hold the tenant's lock and the gate
+        volatile CouponService service;
+        volatile CouponService previous;
+        volatile Staged staged;
+
+        // Requests using the catalog; -1 once it is being evicted
+        final AtomicInteger inFlight = new AtomicInteger();
+        // Requests hold it shared; a swap or rollback holds it exclusively, so the live catalog
+        // is quiet while its codes and customer lists are copied and the new one is published
+        final ReadWriteLock gate = new ReentrantReadWriteLock();
+        volatile long lastAccessNanos = System.nanoTime();
+
+        Tenant(CouponMetrics metrics, CouponService service) {
+            this.metrics = metrics;
+            this.service = service;
+        }
+
+        boolean tryAcquire() {
+            for (;;) {
+                int n = inFlight.get();
+                if (n < 0) {
+                    return false;
+                }
+                if (inFlight.compareAndSet(n, n + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        boolean tryRetire() {
+            return inFlight.compareAndSet(0, -1);
+        }
+    }
+
+    // A replacement catalog being built, or built and waiting to be swapped in
+    private static final class Staged {
+        final String source;
+        final long startNanos = System.nanoTime();
+
+        volatile StagingState state = StagingState.BUILDING;
+        volatile CouponService service;
+        volatile int coupons;
+        volatile long buildNanos;
+        volatile String error;
+        // First id given to a staged coupon that came without one; MAX_VALUE when none did
+        volatile long freshIdsFrom = Long.MAX_VALUE;
+        // Set when a newer catalog is staged or this one is discarded
+        volatile boolean cancelled;
+
+        Staged(String source) {
+            this.source = source;
+        }
+
+        boolean pending() {
+            return !cancelled && state != StagingState.FAILED;
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final String storeType;
+    private final int slabBytes;
+    private final int maxCoupons;
+    private final long maxBytes;
+    private final long idleNanos;
+    private final Path snapshotDir;
+    private final long globalRedemptionLimit;
+    private final Duration reservationTtl;
+    // Null when catalogs are not audited
+    private final AuditLog auditLog;
+    // Null when category coupons match nothing
+    private final Taxonomy taxonomy;
+
+    private final Map<String, Tenant> tenants = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService sweeper;
+    private final ExecutorService stager;
+
+    public TenantCatalogs(MeterRegistry registry,
+                          @Value("${coupon.store:heap}") String storeType,
+                          @Value("${coupon.store.slab-bytes:16777216}") int slabBytes,
+                          @Value("${coupon.tenant.max-coupons:0}") int maxCoupons,
+                          @Value("${coupon.tenant.max-bytes:0}") long maxBytes,
+                          @Value("${coupon.tenant.idle-eviction:30m}") Duration idleEviction,
+                          @Value("${coupon.tenant.snapshot-dir:${java.io.tmpdir}}") Path snapshotRoot,
+                          @Value("${coupon.redemption.global-limit:0}") long globalRedemptionLimit,
+                          @Value("${coupon.redemption.reservation-ttl:5m}") Duration reservationTtl,
+                          AuditLog auditLog,
+                          Taxonomy taxonomy) throws IOException {
+        this.registry = registry;
+        this.storeType = storeType;
+        this.slabBytes = slabBytes;
+        this.maxCoupons = maxCoupons > 0 ? maxCoupons : Integer.MAX_VALUE;
+        this.maxBytes = maxBytes > 0 ? maxBytes : Long.MAX_VALUE;
+        this.idleNanos = idleEviction.toNanos();
+        this.globalRedemptionLimit = globalRedemptionLimit;
+        this.reservationTtl = reservationTtl;
+        this.auditLog = auditLog;
+        this.taxonomy = taxonomy;
+
+        // Validates the store type up front rather than on the first request
+        createStore();
+
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "tenant-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(this::expireReservations, 1_000, 1_000, TimeUnit.MILLISECONDS);
+        this.stager = Executors.newFixedThreadPool(STAGING_THREADS, r -> {
+            Thread t = new Thread(r, "catalog-stager");
+            t.setDaemon(true);
+            t.setPriority(Thread.MIN_PRIORITY);
+            return t;
+        });
+        if (idleNanos > 0) {
+            Files.createDirectories(snapshotRoot);
+            this.snapshotDir = Files.createTempDirectory(snapshotRoot, "coupon-tenants-");
+            long periodMillis = Math.max(1_000, Math.min(idleEviction.toMillis() / 4, 60_000));
+            sweeper.scheduleWithFixedDelay(this::evictIdle, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotDir = null;
+        }
+    }
+
+    /**
+     * Run an operation against the tenant's catalog, loading it first if needed.
+     * The catalog cannot be evicted while the operation runs.
+     */
+    public <T> T call(String tenantId, Function<CouponService, T> operation) {
+        return withTenant(tenantId, (id, tenant) -> {
+            Lock gate = tenant.gate.readLock();
+            gate.lock();
+            try {
+                return operation.apply(tenant.service);
+            } finally {
+                gate.unlock();
+            }
+        });
+    }
+
+    private <T> T withTenant(String tenantId, TenantOperation<T> operation) {
+        String id = tenantId == null || tenantId.isBlank() ? CouponMetrics.DEFAULT_TENANT : tenantId;
+        if (!TENANT_ID.matcher(id).matches()) {
+            throw new CouponException("Invalid tenant id: must be 1-64 letters, digits, '-' or '_'");
+        }
+
+        Tenant tenant;
+        for (;;) {
+            tenant = tenants.get(id);
+            if (tenant == null) {
+                tenant = tenants.computeIfAbsent(id, this::load);
+            }
+            if (tenant.tryAcquire()) {
+                break;
+            }
+            // Being evicted: wait until it is gone, then reload from its snapshot
+            Thread.yield();
+        }
+
+        tenant.lastAccessNanos = System.nanoTime();
+        try {
+            return operation.apply(id, tenant);
+        } finally {
+            tenant.inFlight.decrementAndGet();
+        }
+    }
+
+    private interface TenantOperation<T> {
+        T apply(String id, Tenant tenant);
+    }
+
+    /* -------- STAGING -------- */
+
+    /**
+     * Start building a replacement catalog for the tenant. The loader runs on a staging
+     * thread; every coupon it returns is validated and indexed as by createCoupon into a
+     * catalog requests cannot see yet. A coupon keeps the id it carries, and with it the
+     * redemptions, customer list and codes of the coupon with that id; coupons without one
+     * get ids no catalog of the tenant has used. The first invalid coupon fails the whole
+     * catalog. A previously staged catalog that was not swapped in is discarded.
+     */
+    public CatalogStagingResponse stage(String tenantId, String source, Callable<List<Coupon>> loader) {
+        return withTenant(tenantId, (id, tenant) -> {
+            Staged staged = new Staged(source);
+            synchronized (tenant) {
+                if (tenant.staged != null) {
+                    tenant.staged.cancelled = true;
+                }
+                tenant.staged = staged;
+            }
+            stager.execute(() -> build(id, tenant, staged, loader));
+            return staging(tenant);
+        });
+    }
+
+    private void build(String id, Tenant tenant, Staged staged, Callable<List<Coupon>> loader) {
+        List<Coupon> coupons;
+        try {
+            coupons = loader.call();
+        } catch (Exception ex) {
+            fail(staged, "Could not load " + staged.source + ": " + ex.getMessage());
+            return;
+        }
+        if (coupons == null) {
+            fail(staged, "Could not load " + staged.source + ": no coupons");
+            return;
+        }
+
+        CouponService service = shareLedger(tenant, newService(id, tenant.metrics, false, tenant.service.redemptions()));
+        // New coupons are numbered past every id in use, so none inherits another coupon's redemptions
+        long nextId = nextId(tenant);
+        for (Coupon coupon : coupons) {
+            if (coupon != null) {
+                nextId = Math.max(nextId, coupon.getId() + 1);
+            }
+        }
+        service.skipIds(nextId);
+        for (int i = 0; i < coupons.size(); i++) {
+            if (staged.cancelled) {
+                return;
+            }
+            Coupon coupon = coupons.get(i);
+            try {
+                if (coupon == null || coupon.getType() == null || coupon.getDetails() == null) {
+                    throw new CouponException("Coupon type and details are required");
+                }
+                if (coupon.getId() != 0) {
+                    service.importCoupon(coupon);
+                } else {
+                    staged.freshIdsFrom = nextId;
+                    service.createCoupon(coupon);
+                }
+            } catch (RuntimeException ex) {
+                fail(staged, "Coupon " + (i + 1) + " of " + coupons.size() + " is invalid: " + ex.getMessage());
+                return;
+            }
+        }
+
+        staged.service = service;
+        staged.coupons = coupons.size();
+        staged.buildNanos = System.nanoTime() - staged.startNanos;
+        staged.state = StagingState.READY;
+        log.info("Staged catalog for tenant {} from {}: {} coupons in {} ms",
+                id, staged.source, staged.coupons, staged.buildNanos / 1_000_000);
+    }
+
+    // A delete keeps the coupon's redemption counters while another catalog of the tenant holds it
+    private static CouponService shareLedger(Tenant tenant, CouponService service) {
+        service.setHeldElsewhere(couponId -> {
+            CouponService live = tenant.service;
+            CouponService previous = tenant.previous;
+            Staged staged = tenant.staged;
+            CouponService next = staged == null ? null : staged.service;
+            return (live != service && live.holds(couponId))
+                    || (previous != null && previous != service && previous.holds(couponId))
+                    || (next != null && next != service && next.holds(couponId));
+        });
+        return service;
+    }
+
+    // Drop the counters of coupons no catalog of the tenant holds any more, once one is dropped
+    private static void pruneLedger(Tenant tenant) {
+        CouponService live = tenant.service;
+        CouponService previous = tenant.previous;
+        live.redemptions().retain(couponId -> live.holds(couponId) || (previous != null && previous.holds(couponId)));
+    }
+
+    // Id the next coupon created in any of the tenant's catalogs would get
+    private static long nextId(Tenant tenant) {
+        CouponService previous = tenant.previous;
+        return Math.max(tenant.service.nextId(), previous == null ? 0 : previous.nextId());
+    }
+
+    private void fail(Staged staged, String error) {
+        staged.error = error;
+        staged.buildNanos = System.nanoTime() - staged.startNanos;
+        staged.state = StagingState.FAILED;
+    }
+
+    // State of the tenant's staged catalog
+    public CatalogStagingResponse staging(String tenantId) {
+        return withTenant(tenantId, (id, tenant) -> staging(tenant));
+    }
+
+    private CatalogStagingResponse staging(Tenant tenant) {
+        synchronized (tenant) {
+            Staged staged = tenant.staged;
+            int live = tenant.service.size();
+            if (staged == null) {
+                return new CatalogStagingResponse(StagingState.NONE.name(), null, 0, 0, null, live, tenant.previous != null);
+            }
+            StagingState state = staged.state;
+            return new CatalogStagingResponse(state.name(), staged.source, staged.coupons,
+                    (state == StagingState.BUILDING ? System.nanoTime() - staged.startNanos : staged.buildNanos) / 1_000_000,
+                    staged.error, live, tenant.previous != null);
+        }
+    }
+
+    // Drop the staged catalog, stopping its build if it is still running
+    public CatalogStagingResponse discardStaged(String tenantId) {
+        return withTenant(tenantId, (id, tenant) -> {
+            synchronized (tenant) {
+                if (tenant.staged == null) {
+                    throw new CouponException("No staged catalog");
+                }
+                tenant.staged.cancelled = true;
+                tenant.staged = null;
+                pruneLedger(tenant);
+            }
+            return staging(tenant);
+        });
+    }
+
+    /**
+     * Make the staged catalog live. The swap waits for the requests running on the live
+     * catalog and holds new ones until it is done, so nothing lands in the old catalog after
+     * its customer lists and generated codes are carried over (see CouponService#carryOver).
+     * The replaced catalog is kept for rollback.
+     */
+    public CatalogStagingResponse swap(String tenantId) {
+        return withTenant(tenantId, (id, tenant) -> {
+            synchronized (tenant) {
+                Staged staged = tenant.staged;
+                if (staged == null) {
+                    throw new CouponException("No staged catalog to swap in");
+                }
+                if (staged.state == StagingState.BUILDING) {
+                    throw new CouponException("Staged catalog is still building");
+                }
+                if (staged.state == StagingState.FAILED) {
+                    throw new CouponException("Staged catalog is invalid: " + staged.error);
+                }
+                tenant.gate.writeLock().lock();
+                try {
+                    if (nextId(tenant) > staged.freshIdsFrom) {
+                        // Coupons created since staging started may hold ids the staged catalog gave out
+                        throw new CouponException("Coupons were created while the catalog was staged, stage it again");
+                    }
+                    staged.service.skipIds(nextId(tenant));
+                    staged.service.carryOver(tenant.service);
+                    tenant.previous = tenant.service;
+                    tenant.service = staged.service;
+                    tenant.staged = null;
+                    tenant.service.bindMetrics();
+                    // The catalog replaced by the previous swap is gone now
+                    pruneLedger(tenant);
+                } finally {
+                    tenant.gate.writeLock().unlock();
+                }
+            }
+            log.info("Swapped in staged catalog for tenant {}", id);
+            return staging(tenant);
+        });
+    }
+
+    // Swap the catalog replaced by the last swap or rollback back in
+    public CatalogStagingResponse rollback(String tenantId) {
+        return withTenant(tenantId, (id, tenant) -> {
+            synchronized (tenant) {
+                if (tenant.previous == null) {
+                    throw new CouponException("No previous catalog to roll back to");
+                }
+                tenant.gate.writeLock().lock();
+                try {
+                    CouponService live = tenant.service;
+                    tenant.previous.skipIds(nextId(tenant));
+                    tenant.previous.carryOver(live);
+                    tenant.service = tenant.previous;
+                    tenant.previous = live;
+                    tenant.service.bindMetrics();
+                } finally {
+                    tenant.gate.writeLock().unlock();
+                }
+            }
+            log.info("Rolled back catalog for tenant {}", id);
+            return staging(tenant);
+        });
+    }
+
+    // Tenants whose catalog is currently in memory
+    public int loadedTenants() {
+        return tenants.size();
+    }
+
+    private Tenant load(String id) {
+        CouponMetrics metrics = new CouponMetrics(registry, id);
+        CouponService service = newService(id, metrics, true, new RedemptionLedger());
+        Tenant tenant = new Tenant(metrics, service);
+        shareLedger(tenant, service);
+        if (snapshotDir != null) {
+            Path file = snapshotFile(id);
+            if (Files.exists(file)) {
+                try {
+                    tenant.previous = TenantSnapshot.read(file, service,
+                            () -> shareLedger(tenant, newService(id, metrics, false, service.redemptions())));
+                    Files.delete(file);
+                } catch (IOException ex) {
+                    service.close();
+                    throw new UncheckedIOException("Could not reload tenant " + id, ex);
+                }
+            }
+        }
+        return tenant;
+    }
+
+    // An empty catalog with the tenant's quotas, audit sink and taxonomy
+    private CouponService newService(String id, CouponMetrics metrics, boolean bound, RedemptionLedger redemptions) {
+        CouponService service = new CouponService(metrics, createStore(), bound, redemptions);
+        service.setQuota(maxCoupons, maxBytes);
+        service.setGlobalRedemptionLimit(globalRedemptionLimit);
+        service.setReservationTtl(reservationTtl);
+        if (auditLog != null) {
+            service.setAuditSink(auditLog.sinkFor(id));
+        }
+        if (taxonomy != null) {
+            service.setTaxonomy(taxonomy);
+        }
+        return service;
+    }
+
+    private CouponStore createStore() {
+        return switch (storeType) {
+            case "heap" -> new HeapCouponStore();
+            case "offheap" -> new OffHeapCouponStore(slabBytes);
+            default -> throw new IllegalArgumentException("Unknown coupon.store: " + storeType);
+        };
+    }
+
+    private Path snapshotFile(String id) {
+        return snapshotDir.resolve(id + ".snapshot");
+    }
+
+    void expireReservations() {
+        // The rollback catalog shares the live one's ledger, so this covers its reservations too
+        for (Tenant tenant : tenants.values()) {
+            tenant.service.expireReservations();
+        }
+    }
+
+    void evictIdle() {
+        long now = System.nanoTime();
+        for (Map.Entry<String, Tenant> entry : tenants.entrySet()) {
+            Tenant tenant = entry.getValue();
+            if (now - tenant.lastAccessNanos >= idleNanos && tenant.tryRetire()) {
+                Staged staged = tenant.staged;
+                if (tenant.service.redemptions().openReservations() > 0 || (staged != null && staged.pending())) {
+                    // Keep it loaded until its reservations are committed, released or expired,
+                    // and its staged catalog is swapped in or discarded
+                    tenant.inFlight.set(0);
+                    continue;
+                }
+                evict(entry.getKey(), tenant);
+            }
+        }
+    }
+
+    private void evict(String id, Tenant tenant) {
+        try {
+            TenantSnapshot.write(snapshotFile(id), nextId(tenant), tenant.service, tenant.previous);
+        } catch (IOException ex) {
+            // Keep serving from memory rather than lose the catalog
+            log.warn("Could not snapshot idle tenant {}, keeping it loaded", id, ex);
+            tenant.lastAccessNanos = System.nanoTime();
+            tenant.inFlight.set(0);
+            return;
+        }
+        // Closes the tenant's meters, which the rollback catalog shares
+        tenant.service.close();
+        tenants.remove(id, tenant);
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        sweeper.shutdownNow();
+        stager.shutdownNow();
+        if (snapshotDir == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(snapshotDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.monkcommerce.coupon_api.tenant;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.CouponRecordCodec;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * On-disk form of an evicted tenant:
+ *   int  magic, long nextId (the tenant's, over all of its catalogs), then the live catalog,
+ *   byte 1 and the rollback catalog when the tenant has one (0 otherwise),
+ *   then the redemption counts both catalogs share (see RedemptionLedger#writeTo).
+ * A catalog is int count, then count CouponRecordCodec records, the coupon code dictionary
+ * (see CodeDictionary#writeTo) and the customer lists (see CustomerEligibility#writeTo).
+ */
+final class TenantSnapshot {
+
+    private static final int MAGIC = 0x43505332; // "CPS2"
+    private static final int HEADER_BYTES = 12;
+
+    private TenantSnapshot() {
+    }
+
+    // Written to a temp file and moved into place, so a reader never sees a partial snapshot
+    static void write(Path file, long nextId, CouponService live, CouponService rollback) throws IOException {
+        List<Coupon> coupons = live.allCoupons();
+        List<Coupon> rollbackCoupons = rollback == null ? List.of() : rollback.allCoupons();
+        int length = HEADER_BYTES + encodedBytes(live, coupons) + 1 + live.redemptions().encodedBytes();
+        if (rollback != null) {
+            length += encodedBytes(rollback, rollbackCoupons);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putInt(MAGIC);
+        buffer.putLong(nextId);
+        write(buffer, live, coupons);
+        buffer.put((byte) (rollback == null ? 0 : 1));
+        if (rollback != null) {
+            write(buffer, rollback, rollbackCoupons);
+        }
+        live.redemptions().writeTo(buffer);
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(tmp, buffer.array());
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static int encodedBytes(CouponService service, List<Coupon> coupons) {
+        int length = 4;
+        for (Coupon coupon : coupons) {
+            length += CouponRecordCodec.recordBytes(coupon);
+        }
+        return length + service.codes().encodedBytes() + service.customers().encodedBytes();
+    }
+
+    private static void write(ByteBuffer buffer, CouponService service, List<Coupon> coupons) {
+        buffer.putInt(coupons.size());
+        for (Coupon coupon : coupons) {
+            CouponRecordCodec.write(buffer, coupon);
+        }
+        service.codes().writeTo(buffer);
+        service.customers().writeTo(buffer);
+    }
+
+    /**
+     * Restore the live catalog into service, and the rollback catalog, if the snapshot has one,
+     * into a catalog from newRollback, which must share the service's ledger.
+     *
+     * @return the rollback catalog, or null when the tenant had none
+     */
+    static CouponService read(Path file, CouponService service, Supplier<CouponService> newRollback) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+            throw new IOException("Not a tenant snapshot: " + file);
+        }
+        long nextId = buffer.getLong();
+        read(buffer, service, nextId);
+        CouponService rollback = null;
+        if (buffer.get() != 0) {
+            rollback = newRollback.get();
+            read(buffer, rollback, nextId);
+        }
+        service.redemptions().readFrom(buffer);
+        return rollback;
+    }
+
+    private static void read(ByteBuffer buffer, CouponService service, long nextId) {
+        int count = buffer.getInt();
+        List<Coupon> coupons = new ArrayList<>(count);
+        int at = buffer.position();
+        for (int i = 0; i < count; i++) {
+            coupons.add(CouponRecordCodec.read(buffer, at));
+            at += CouponRecordCodec.recordBytesAt(buffer, at);
+        }
+        service.restore(coupons, nextId);
+        buffer.position(at);
+        service.codes().readFrom(buffer);
+        service.customers().readFrom(buffer);
+    }
+}
@@ -0,0 +1,136 @@
+package com.monkcommerce.coupon_api.util;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.DeserializationContext;
+import tools.jackson.databind.ValueDeserializer;
+
+/**
+ * Streaming parser for the cart payload of /applicable-coupons and /apply-coupon/{id}.
+ *
+ * Tokens are read straight into per-thread primitive columns (productId, quantity, price)
+ * and every item is validated as soon as it is closed, so a bad payload is rejected at the
+ * first bad item. CartItem objects are only created once the whole payload is valid.
+ */
+public class CartDeserializer extends ValueDeserializer<Cart> {
+
+    // Reused across requests on the same thread so large carts do not regrow arrays every time
+    private static final ThreadLocal<CartColumns> COLUMNS = ThreadLocal.withInitial(CartColumns::new);
+
+    @Override
+    public Cart deserialize(JsonParser p, DeserializationContext ctxt) {
+        if (p.currentToken() != JsonToken.START_OBJECT) {
+            throw new CouponException("Cart items cannot be empty");
+        }
+
+        CartColumns columns = COLUMNS.get();
+        columns.size = 0;
+        boolean hasItems = false;
+        Long customerId = null;
+
+        while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+            String field = p.currentName();
+            JsonToken token = p.nextToken();
+            if ("items".equals(field) && token == JsonToken.START_ARRAY) {
+                hasItems = true;
+                readItems(p, columns);
+            } else if ("customerId".equals(field) && token != JsonToken.VALUE_NULL) {
+                if (token != JsonToken.VALUE_NUMBER_INT) {
+                    throw new CouponException("Invalid customer id");
+                }
+                customerId = p.getLongValue();
+            } else {
+                p.skipChildren();
+            }
+        }
+
+        Cart cart = new Cart();
+        cart.items = hasItems ? columns.toItems() : null;
+        cart.customerId = customerId;
+        return cart;
+    }
+
+    // Read every item of the "items" array, failing fast on the first invalid one
+    private void readItems(JsonParser p, CartColumns columns) {
+        JsonToken token;
+        while ((token = p.nextToken()) != JsonToken.END_ARRAY) {
+            if (token != JsonToken.START_OBJECT) {
+                throw new CouponException("Invalid cart item data");
+            }
+
+            int productId = 0, quantity = 0;
+            double price = 0.0;
+            while (p.nextToken() == JsonToken.PROPERTY_NAME) {
+                String field = p.currentName();
+                JsonToken value = p.nextToken();
+                switch (field) {
+                    case "productId" -> productId = numeric(value) ? p.getValueAsInt() : 0;
+                    case "quantity" -> quantity = numeric(value) ? p.getValueAsInt() : 0;
+                    case "price" -> price = numeric(value) ? p.getValueAsDouble() : 0.0;
+                    default -> p.skipChildren();
+                }
+            }
+
+            // Same rule the service applies on bound carts
+            if (price <= 0 || quantity <= 0) {
+                throw new CouponException("Invalid cart item data");
+            }
+            columns.add(productId, quantity, price);
+        }
+    }
+
+    // Whether an item field holds a number (null reads as 0); objects, arrays, strings and
+    // booleans are rejected rather than coerced, so their contents are never read as item fields
+    private static boolean numeric(JsonToken value) {
+        if (value == JsonToken.VALUE_NUMBER_INT || value == JsonToken.VALUE_NUMBER_FLOAT) {
+            return true;
+        }
+        if (value == JsonToken.VALUE_NULL) {
+            return false;
+        }
+        throw new CouponException("Invalid cart item data");
+    }
+
+    /**
+     * Growable primitive columns holding the parsed cart lines.
+     */
+    private static final class CartColumns {
+        int[] productIds = new int[16];
+        int[] quantities = new int[16];
+        double[] prices = new double[16];
+        int size;
+
+        void add(int productId, int quantity, double price) {
+            if (size == productIds.length) {
+                int capacity = size << 1;
+                productIds = Arrays.copyOf(productIds, capacity);
+                quantities = Arrays.copyOf(quantities, capacity);
+                prices = Arrays.copyOf(prices, capacity);
+            }
+            productIds[size] = productId;
+            quantities[size] = quantity;
+            prices[size] = price;
+            size++;
+        }
+
+        List<CartItem> toItems() {
+            List<CartItem> items = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                CartItem item = new CartItem();
+                item.productId = productIds[i];
+                item.quantity = quantities[i];
+                item.price = prices[i];
+                items.add(item);
+            }
+            return items;
+        }
+    }
+}
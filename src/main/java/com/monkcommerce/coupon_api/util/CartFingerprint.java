@@ -0,0 +1,47 @@
+package com.monkcommerce.coupon_api.util;
+
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+
+/**
+ * 64-bit content hash of a cart (customer and every line's product, quantity and price),
+ * used to recognise the same cart across retries and in the audit log.
+ */
+public final class CartFingerprint {
+
+    private CartFingerprint() {
+    }
+
+    public static long of(Cart cart) {
+        long h = 0xcbf29ce484222325L;
+        if (cart == null) {
+            return mix(h);
+        }
+        h = step(h, cart.customerId == null ? 0 : cart.customerId);
+        if (cart.items != null) {
+            for (CartItem item : cart.items) {
+                if (item == null) {
+                    continue;
+                }
+                h = step(h, ((long) item.productId << 32) | (item.quantity & 0xffffffffL));
+                h = step(h, Double.doubleToLongBits(item.price));
+            }
+        }
+        return mix(h);
+    }
+
+    // FNV-1a over whole longs
+    private static long step(long h, long value) {
+        return (h ^ value) * 0x100000001b3L;
+    }
+
+    // Murmur3 finalizer
+    public static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
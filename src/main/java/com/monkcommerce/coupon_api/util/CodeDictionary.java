@@ -0,0 +1,364 @@
+package com.monkcommerce.coupon_api.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Case-insensitive coupon code -> couponId dictionary.
+ *
+ * Codes are ASCII letters, digits, '-' and '_', stored upper-cased in one packed byte arena
+ * as [length][bytes]. Per-code state lives in parallel primitive arrays and an open-addressing
+ * int table points at entries, so a code costs its bytes plus about 20 bytes of arrays instead
+ * of a String, a boxed Long and a HashMap node. Lookups take any CharSequence and allocate
+ * nothing. Removed codes are marked dead and dropped by a rebuild once they outnumber live ones.
+ *
+ * Not thread-safe, like the rest of the per-tenant catalog, except for {@link #redeem(CharSequence)}
+ * and {@link #unredeem(CharSequence)}: they take the dictionary's monitor, as every change that
+ * grows, renumbers or removes entries does, so of several concurrent redemptions of a single-use
+ * code exactly one claims it, and a claim is never lost to a concurrent add or rebuild.
+ */
+public class CodeDictionary {
+
+    public static final int MAX_CODE_LENGTH = 64;
+    public static final int NOT_FOUND = -1;
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private static final byte SINGLE_USE = 1;
+    private static final byte REDEEMED = 1 << 1;
+    private static final byte DEAD = 1 << 2;
+
+    private static final VarHandle FLAGS = MethodHandles.arrayElementVarHandle(byte[].class);
+
+    private byte[] arena = new byte[1024];
+    private int arenaSize;
+
+    // Entry i: arena offset, owning coupon, flags
+    private int[] offsets = new int[64];
+    private long[] couponIds = new long[64];
+    private byte[] flags = new byte[64];
+    private int entries;
+    private int live;
+
+    // Slot -> entry index + 1, 0 = empty
+    private int[] table = new int[128];
+
+    public static boolean isValid(CharSequence code) {
+        int length = code.length();
+        if (length == 0 || length > MAX_CODE_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            boolean ok = (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '-' || c == '_';
+            if (!ok) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int upper(int c) {
+        return c >= 'a' && c <= 'z' ? c - 32 : c;
+    }
+
+    private static int finish(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int hash(CharSequence code) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < code.length(); i++) {
+            h = (h ^ upper(code.charAt(i))) * 0x01000193;
+        }
+        return finish(h);
+    }
+
+    private int hashOf(int entry) {
+        int at = offsets[entry];
+        int length = arena[at];
+        int h = 0x811c9dc5;
+        for (int i = 1; i <= length; i++) {
+            h = (h ^ arena[at + i]) * 0x01000193;
+        }
+        return finish(h);
+    }
+
+    private boolean matches(int entry, CharSequence code) {
+        int at = offsets[entry];
+        int length = arena[at];
+        if (length != code.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (arena[at + 1 + i] != upper(code.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Entry holding this code, live or dead, or NOT_FOUND
+    private int entryOf(CharSequence code) {
+        int mask = table.length - 1;
+        int slot = hash(code) & mask;
+        for (int ref; (ref = table[slot]) != 0; slot = (slot + 1) & mask) {
+            if (matches(ref - 1, code)) {
+                return ref - 1;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Live entry for a code, or NOT_FOUND. Use the entry with {@link #couponIdAt(int)},
+     * {@link #isSingleUse(int)} and {@link #isRedeemed(int)}.
+     */
+    public int find(CharSequence code) {
+        if (code.length() == 0 || code.length() > MAX_CODE_LENGTH) {
+            return NOT_FOUND;
+        }
+        int entry = entryOf(code);
+        return entry != NOT_FOUND && (flags[entry] & DEAD) == 0 ? entry : NOT_FOUND;
+    }
+
+    public boolean contains(CharSequence code) {
+        return find(code) != NOT_FOUND;
+    }
+
+    // Entries are numbered 0 .. entryCount() - 1, including removed ones (see isLive)
+    public int entryCount() {
+        return entries;
+    }
+
+    public boolean isLive(int entry) {
+        return (flags[entry] & DEAD) == 0;
+    }
+
+    public String codeAt(int entry) {
+        int at = offsets[entry];
+        return new String(arena, at + 1, arena[at], StandardCharsets.US_ASCII);
+    }
+
+    public long couponIdAt(int entry) {
+        return couponIds[entry];
+    }
+
+    public boolean isSingleUse(int entry) {
+        return (flags[entry] & SINGLE_USE) != 0;
+    }
+
+    public boolean isRedeemed(int entry) {
+        return ((byte) FLAGS.getVolatile(flags, entry) & REDEEMED) != 0;
+    }
+
+    // Atomically marks a code as used; false if it was already used or is no longer live
+    public synchronized boolean redeem(CharSequence code) {
+        int entry = find(code);
+        if (entry == NOT_FOUND || (flags[entry] & REDEEMED) != 0) {
+            return false;
+        }
+        FLAGS.setVolatile(flags, entry, (byte) (flags[entry] | REDEEMED));
+        return true;
+    }
+
+    // Atomically makes a redeemed code usable again
+    public synchronized void unredeem(CharSequence code) {
+        int entry = find(code);
+        if (entry != NOT_FOUND) {
+            FLAGS.setVolatile(flags, entry, (byte) (flags[entry] & ~REDEEMED));
+        }
+    }
+
+    /**
+     * Adds a valid code (see {@link #isValid(CharSequence)}).
+     * Returns false without changes when the code is already in use.
+     */
+    public synchronized boolean add(CharSequence code, long couponId, boolean singleUse) {
+        int entry = entryOf(code);
+        if (entry != NOT_FOUND) {
+            if ((flags[entry] & DEAD) == 0) {
+                return false;
+            }
+            // Reuse the dead entry for the same code
+            couponIds[entry] = couponId;
+            flags[entry] = singleUse ? SINGLE_USE : 0;
+            live++;
+            return true;
+        }
+
+        entry = append(code, couponId, singleUse ? SINGLE_USE : 0);
+        insert(entry);
+        live++;
+        if (entries > table.length * LOAD_FACTOR) {
+            rebuild(table.length << 1);
+        }
+        return true;
+    }
+
+    public synchronized boolean remove(CharSequence code) {
+        int entry = find(code);
+        if (entry == NOT_FOUND) {
+            return false;
+        }
+        kill(entry);
+        compactIfWasteful();
+        return true;
+    }
+
+    // Removes every code of a coupon, returning how many were removed
+    public synchronized int removeCoupon(long couponId) {
+        int removed = 0;
+        for (int entry = 0; entry < entries; entry++) {
+            if (couponIds[entry] == couponId && (flags[entry] & DEAD) == 0) {
+                kill(entry);
+                removed++;
+            }
+        }
+        compactIfWasteful();
+        return removed;
+    }
+
+    // Live codes
+    public int size() {
+        return live;
+    }
+
+    // Approximate heap footprint of the dictionary's arrays
+    public long memoryBytes() {
+        return arena.length + offsets.length * 4L + couponIds.length * 8L + flags.length + table.length * 4L;
+    }
+
+    private void kill(int entry) {
+        flags[entry] |= DEAD;
+        live--;
+    }
+
+    private int append(CharSequence code, long couponId, byte entryFlags) {
+        int length = code.length();
+        if (arenaSize + length + 1 > arena.length) {
+            arena = Arrays.copyOf(arena, Math.max(arena.length << 1, arenaSize + length + 1));
+        }
+        if (entries == offsets.length) {
+            int capacity = offsets.length << 1;
+            offsets = Arrays.copyOf(offsets, capacity);
+            couponIds = Arrays.copyOf(couponIds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+        }
+
+        int at = arenaSize;
+        arena[at] = (byte) length;
+        for (int i = 0; i < length; i++) {
+            arena[at + 1 + i] = (byte) upper(code.charAt(i));
+        }
+        arenaSize += length + 1;
+
+        offsets[entries] = at;
+        couponIds[entries] = couponId;
+        flags[entries] = entryFlags;
+        return entries++;
+    }
+
+    private void insert(int entry) {
+        int mask = table.length - 1;
+        int slot = hashOf(entry) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = entry + 1;
+    }
+
+    private void compactIfWasteful() {
+        if (entries - live > live && entries > 64) {
+            rebuild(table.length);
+        }
+    }
+
+    // Drops dead entries and re-inserts the live ones into a table of the given size
+    private void rebuild(int tableSize) {
+        byte[] oldArena = arena;
+        int[] oldOffsets = offsets;
+        long[] oldCouponIds = couponIds;
+        byte[] oldFlags = flags;
+        int oldEntries = entries;
+
+        int capacity = Math.max(64, Integer.highestOneBit(Math.max(live, 1)) << 1);
+        arena = new byte[Math.max(1024, arenaSize)];
+        arenaSize = 0;
+        offsets = new int[capacity];
+        couponIds = new long[capacity];
+        flags = new byte[capacity];
+        entries = 0;
+        while (live > tableSize * LOAD_FACTOR) {
+            tableSize <<= 1;
+        }
+        table = new int[tableSize];
+
+        for (int old = 0; old < oldEntries; old++) {
+            if ((oldFlags[old] & DEAD) != 0) {
+                continue;
+            }
+            int from = oldOffsets[old];
+            int length = oldArena[from] + 1;
+            System.arraycopy(oldArena, from, arena, arenaSize, length);
+            offsets[entries] = arenaSize;
+            couponIds[entries] = oldCouponIds[old];
+            flags[entries] = oldFlags[old];
+            arenaSize += length;
+            insert(entries++);
+        }
+    }
+
+    /* -------- SNAPSHOT -------- */
+
+    // Bytes needed by writeTo
+    public int encodedBytes() {
+        int bytes = 4;
+        for (int entry = 0; entry < entries; entry++) {
+            if ((flags[entry] & DEAD) == 0) {
+                bytes += 1 + arena[offsets[entry]] + 8 + 1;
+            }
+        }
+        return bytes;
+    }
+
+    // int count, then count x [byte length, bytes, long couponId, byte flags]
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putInt(live);
+        for (int entry = 0; entry < entries; entry++) {
+            if ((flags[entry] & DEAD) == 0) {
+                int at = offsets[entry];
+                buffer.put(arena, at, arena[at] + 1);
+                buffer.putLong(couponIds[entry]);
+                buffer.put(flags[entry]);
+            }
+        }
+    }
+
+    // Adds the codes written by writeTo, advancing the buffer
+    public synchronized void readFrom(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        StringBuilder code = new StringBuilder(MAX_CODE_LENGTH);
+        for (int i = 0; i < count; i++) {
+            code.setLength(0);
+            int length = buffer.get();
+            for (int c = 0; c < length; c++) {
+                code.append((char) buffer.get());
+            }
+            long couponId = buffer.getLong();
+            byte entryFlags = buffer.get();
+            add(code, couponId, (entryFlags & SINGLE_USE) != 0);
+            if ((entryFlags & REDEEMED) != 0) {
+                redeem(code);
+            }
+        }
+    }
+}
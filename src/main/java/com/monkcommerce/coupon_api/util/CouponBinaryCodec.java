@@ -0,0 +1,197 @@
+package com.monkcommerce.coupon_api.util;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.ApiResponse;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary wire format for the cart evaluation endpoints (big-endian, length-prefixed,
+ * fixed-width records).
+ *
+ * Cart:
+ *   int itemCount, then itemCount x [int productId, int quantity, double price],
+ *   then an optional long customerId
+ *
+ * ApiResponse:
+ *   byte success
+ *   success = 0 : int length, UTF-8 error message
+ *   success = 1 : byte payload kind, then the payload
+ *     APPLICABLE_COUPONS : int count, count x [long couponId, byte couponType, double discount]
+ *     APPLY_COUPON       : double totalPrice, double totalDiscount, double finalPrice,
+ *                          int count, count x [int productId, int quantity, double price, double totalDiscount]
+ *     RESERVED_APPLY_COUPON : APPLY_COUPON payload, then long reservationId, long expiresAt (epoch millis)
+ *
+ * The response timestamp is not part of the binary format.
+ */
+public final class CouponBinaryCodec {
+
+    public static final String MEDIA_TYPE = "application/x-coupon-binary";
+
+    public static final byte APPLICABLE_COUPONS = 1;
+    public static final byte APPLY_COUPON = 2;
+    public static final byte RESERVED_APPLY_COUPON = 3;
+
+    private static final int CART_ITEM_BYTES = 4 + 4 + 8;
+    private static final int APPLICABLE_ITEM_BYTES = 8 + 1 + 8;
+    private static final int APPLY_ITEM_BYTES = 4 + 4 + 8 + 8;
+
+    private static final CouponType[] TYPES = CouponType.values();
+
+    private CouponBinaryCodec() {
+    }
+
+    /* -------- CART -------- */
+
+    // Decode a cart straight from the buffer, validating each record as it is read
+    public static Cart readCart(ByteBuffer buf) {
+        if (buf.remaining() < 4) {
+            throw new CouponException("Cart items cannot be empty");
+        }
+        int count = buf.getInt();
+        long itemBytes = (long) count * CART_ITEM_BYTES;
+        if (count < 0 || (itemBytes != buf.remaining() && itemBytes + 8 != buf.remaining())) {
+            throw new CouponException("Invalid cart payload");
+        }
+
+        List<CartItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int productId = buf.getInt();
+            int quantity = buf.getInt();
+            double price = buf.getDouble();
+            if (price <= 0 || quantity <= 0) {
+                throw new CouponException("Invalid cart item data");
+            }
+            CartItem item = new CartItem();
+            item.productId = productId;
+            item.quantity = quantity;
+            item.price = price;
+            items.add(item);
+        }
+
+        Cart cart = new Cart();
+        cart.items = items;
+        if (buf.remaining() == 8) {
+            cart.customerId = buf.getLong();
+        }
+        return cart;
+    }
+
+    public static ByteBuffer writeCart(Cart cart) {
+        List<CartItem> items = cart.items;
+        ByteBuffer buf = ByteBuffer.allocate(4 + items.size() * CART_ITEM_BYTES + (cart.customerId == null ? 0 : 8));
+        buf.putInt(items.size());
+        for (CartItem item : items) {
+            buf.putInt(item.productId).putInt(item.quantity).putDouble(item.price);
+        }
+        if (cart.customerId != null) {
+            buf.putLong(cart.customerId);
+        }
+        return buf.flip();
+    }
+
+    /* -------- RESPONSE -------- */
+
+    public static ByteBuffer writeResponse(ApiResponse<?> response) {
+        if (!response.isSuccess()) {
+            byte[] error = response.getError() == null
+                    ? new byte[0]
+                    : response.getError().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer buf = ByteBuffer.allocate(1 + 4 + error.length);
+            buf.put((byte) 0).putInt(error.length).put(error);
+            return buf.flip();
+        }
+
+        Object data = response.getData();
+        if (data instanceof ApplicableCouponsResponse applicable) {
+            List<ApplicableCouponItem> coupons = applicable.applicable_coupons;
+            ByteBuffer buf = ByteBuffer.allocate(1 + 1 + 4 + coupons.size() * APPLICABLE_ITEM_BYTES);
+            buf.put((byte) 1).put(APPLICABLE_COUPONS).putInt(coupons.size());
+            for (ApplicableCouponItem coupon : coupons) {
+                buf.putLong(coupon.coupon_id)
+                        .put((byte) CouponType.valueOf(coupon.type).ordinal())
+                        .putDouble(coupon.discount);
+            }
+            return buf.flip();
+        }
+
+        if (data instanceof ApplyCouponResponse applied) {
+            List<CartItem> items = applied.getItems();
+            boolean reserved = applied.getReservationId() != null;
+            ByteBuffer buf = ByteBuffer.allocate(1 + 1 + 3 * 8 + 4 + items.size() * APPLY_ITEM_BYTES
+                    + (reserved ? 2 * 8 : 0));
+            buf.put((byte) 1).put(reserved ? RESERVED_APPLY_COUPON : APPLY_COUPON)
+                    .putDouble(applied.getTotalPrice())
+                    .putDouble(applied.getTotalDiscount())
+                    .putDouble(applied.getFinalPrice())
+                    .putInt(items.size());
+            for (CartItem item : items) {
+                buf.putInt(item.productId)
+                        .putInt(item.quantity)
+                        .putDouble(item.price)
+                        .putDouble(item.totalDiscount);
+            }
+            if (reserved) {
+                buf.putLong(applied.getReservationId())
+                        .putLong(applied.getReservationExpiresAt().toEpochMilli());
+            }
+            return buf.flip();
+        }
+
+        throw new IllegalArgumentException("Unsupported binary payload: "
+                + (data == null ? "null" : data.getClass().getSimpleName()));
+    }
+
+    public static ApiResponse<?> readResponse(ByteBuffer buf) {
+        if (buf.get() == 0) {
+            byte[] error = new byte[buf.getInt()];
+            buf.get(error);
+            return new ApiResponse<>(new String(error, StandardCharsets.UTF_8));
+        }
+
+        byte kind = buf.get();
+        if (kind == APPLICABLE_COUPONS) {
+            int count = buf.getInt();
+            List<ApplicableCouponItem> coupons = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long couponId = buf.getLong();
+                String type = TYPES[buf.get()].name();
+                coupons.add(new ApplicableCouponItem(couponId, type, buf.getDouble()));
+            }
+            return new ApiResponse<>(new ApplicableCouponsResponse(coupons));
+        }
+
+        if (kind == APPLY_COUPON || kind == RESERVED_APPLY_COUPON) {
+            double totalPrice = buf.getDouble();
+            double totalDiscount = buf.getDouble();
+            double finalPrice = buf.getDouble();
+            int count = buf.getInt();
+            List<CartItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                CartItem item = new CartItem();
+                item.productId = buf.getInt();
+                item.quantity = buf.getInt();
+                item.price = buf.getDouble();
+                item.totalDiscount = buf.getDouble();
+                items.add(item);
+            }
+            ApplyCouponResponse applied = new ApplyCouponResponse(items, totalPrice, totalDiscount, finalPrice);
+            if (kind == RESERVED_APPLY_COUPON) {
+                applied.setReservation(buf.getLong(), Instant.ofEpochMilli(buf.getLong()));
+            }
+            return new ApiResponse<>(applied);
+        }
+
+        throw new IllegalArgumentException("Unknown binary payload kind: " + kind);
+    }
+}
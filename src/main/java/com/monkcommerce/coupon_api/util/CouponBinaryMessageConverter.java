@@ -0,0 +1,86 @@
+package com.monkcommerce.coupon_api.util;
+
+import com.monkcommerce.coupon_api.model.ApiResponse;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.core.ResolvableType;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractSmartHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * Reads carts and writes evaluation responses in the {@link CouponBinaryCodec} format
+ * when a request negotiates application/x-coupon-binary via Content-Type / Accept.
+ * Only ApiResponse&lt;ApplicableCouponsResponse&gt;, ApiResponse&lt;ApplyCouponResponse&gt; and error
+ * responses are written, so other endpoints asked for binary get 406 Not Acceptable from content
+ * negotiation.
+ */
+public class CouponBinaryMessageConverter extends AbstractSmartHttpMessageConverter<Object> {
+
+    public CouponBinaryMessageConverter() {
+        super(MediaType.parseMediaType(CouponBinaryCodec.MEDIA_TYPE));
+    }
+
+    // Class-only checks cannot see the response payload type, so they only accept carts
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return Cart.class == clazz;
+    }
+
+    // Advertised for every ApiResponse so negotiation considers binary; canWrite then checks the payload
+    @Override
+    public List<MediaType> getSupportedMediaTypes(Class<?> clazz) {
+        return Cart.class == clazz || ApiResponse.class == clazz ? getSupportedMediaTypes() : List.of();
+    }
+
+    @Override
+    public boolean canRead(ResolvableType type, MediaType mediaType) {
+        return Cart.class == type.toClass() && canRead(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(ResolvableType type, Class<?> valueClass, MediaType mediaType) {
+        if (ApiResponse.class != valueClass || !canWrite(mediaType)) {
+            return false;
+        }
+        // ApiResponse<Object> comes from the controller's exception handler and only carries an error
+        Class<?> data = type.as(ApiResponse.class).getGeneric(0).toClass();
+        return ApplicableCouponsResponse.class == data || ApplyCouponResponse.class == data || Object.class == data;
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        // Only an explicit binary Content-Type selects this converter
+        return mediaType != null && super.canRead(mediaType);
+    }
+
+    @Override
+    public Object read(ResolvableType type, HttpInputMessage inputMessage, Map<String, Object> hints) throws IOException {
+        // Body is read once into a heap buffer and decoded in place
+        return CouponBinaryCodec.readCart(ByteBuffer.wrap(inputMessage.getBody().readAllBytes()));
+    }
+
+    @Override
+    protected void writeInternal(Object body, ResolvableType type, HttpOutputMessage outputMessage,
+                                 Map<String, Object> hints) throws IOException {
+        if (!(body instanceof ApiResponse<?> response)) {
+            throw new HttpMessageNotWritableException("Unsupported binary payload");
+        }
+        ByteBuffer buf;
+        try {
+            buf = CouponBinaryCodec.writeResponse(response);
+        } catch (IllegalArgumentException ex) {
+            throw new HttpMessageNotWritableException(ex.getMessage(), ex);
+        }
+        outputMessage.getBody().write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+    }
+}
@@ -2,10 +2,11 @@ package com.monkcommerce.coupon_api.util;
 
 import com.monkcommerce.coupon_api.model.CouponDetails;
 
+// Fills the fields missing from an update payload with the existing coupon's values
 public class CouponDetailsMerger {
 
-    public static void merge(CouponDetails target, CouponDetails source) {
-        if (source == null) return;
+    public static CouponDetails merge(CouponDetails target, CouponDetails source) {
+        if (source == null) return target;
 
         /* -------- COMMON -------- */
         if (source.isActive != null && target.isActive == null) {
@@ -20,12 +21,20 @@ public class CouponDetailsMerger {
             target.expiryDate = source.expiryDate;
         }
 
+        if (source.redemptionLimit != null && target.redemptionLimit == null) {
+            target.redemptionLimit = source.redemptionLimit;
+        }
+
+        if (source.usesPerCustomer != null && target.usesPerCustomer == null) {
+            target.usesPerCustomer = source.usesPerCustomer;
+        }
+
         /* -------- CART-WISE -------- */
         if (source.threshold != null && target.threshold == null) {
             target.threshold = source.threshold;
         }
 
-        if (source.discount != null && target.discount == null) {
+        if (source.discount != null && target.discount == null && target.tiers == null) {
             target.discount = source.discount;
         }
 
@@ -34,6 +43,19 @@ public class CouponDetailsMerger {
             target.productId = source.productId;
         }
 
+        // A flat discount in the update replaces the tiers, and tiers replace a flat discount
+        if (source.tiers != null && target.tiers == null && target.discount == null) {
+            target.tiers = source.tiers;
+        }
+
+        if (source.priority != null && target.priority == null) {
+            target.priority = source.priority;
+        }
+
+        if (source.exclusive != null && target.exclusive == null) {
+            target.exclusive = source.exclusive;
+        }
+
         /* -------- BXGY -------- */
         if (source.buyProducts != null && target.buyProducts == null) {
             target.buyProducts = source.buyProducts;
@@ -54,5 +76,17 @@ public class CouponDetailsMerger {
         if (source.repetitionLimit != null && target.repetitionLimit == null) {
             target.repetitionLimit = source.repetitionLimit;
         }
+
+        /* -------- RULE -------- */
+        if (source.condition != null && target.condition == null) {
+            target.condition = source.condition;
+        }
+
+        /* -------- CATEGORY -------- */
+        if (source.category != null && target.category == null) {
+            target.category = source.category;
+        }
+
+        return target;
     }
 }
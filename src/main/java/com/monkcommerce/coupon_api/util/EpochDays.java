@@ -0,0 +1,39 @@
+package com.monkcommerce.coupon_api.util;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+
+/**
+ * Today's date as an epoch day in the system time zone (the zone LocalDate.now() uses).
+ * The day and its bounds are cached, so the hot path costs one clock read and allocates
+ * nothing; the cache is rebuilt when the clock leaves the cached day.
+ */
+public final class EpochDays {
+
+    private record Day(int epochDay, long startMillis, long endMillis) {
+    }
+
+    private static volatile Day current = new Day(0, 0, 0);
+
+    private EpochDays() {
+    }
+
+    public static int today() {
+        Day day = current;
+        long now = System.currentTimeMillis();
+        if (now < day.startMillis || now >= day.endMillis) {
+            ZoneId zone = ZoneId.systemDefault();
+            LocalDate date = LocalDate.now(zone);
+            day = new Day((int) date.toEpochDay(),
+                    date.atStartOfDay(zone).toInstant().toEpochMilli(),
+                    date.plusDays(1).atStartOfDay(zone).toInstant().toEpochMilli());
+            current = day;
+        }
+        return day.epochDay;
+    }
+
+    // Epoch day of a date, or the fallback when it is null
+    public static int of(LocalDate date, int fallback) {
+        return date == null ? fallback : (int) date.toEpochDay();
+    }
+}
@@ -0,0 +1,33 @@
+package com.monkcommerce.coupon_api.util;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Read-only List&lt;Integer&gt; over an int[]. Lets CouponDetails keep its List shape for JSON
+ * while the ids themselves live only in a primitive (for BXGY, interned) array; elements are
+ * boxed only when read, e.g. while a response is serialized.
+ */
+public final class IntListView extends AbstractList<Integer> implements RandomAccess {
+
+    private final int[] values;
+
+    // The array is shared, not copied, and must not be modified afterwards
+    public IntListView(int[] values) {
+        this.values = values;
+    }
+
+    public int[] array() {
+        return values;
+    }
+
+    @Override
+    public Integer get(int index) {
+        return values[index];
+    }
+
+    @Override
+    public int size() {
+        return values.length;
+    }
+}
@@ -0,0 +1,164 @@
+package com.monkcommerce.coupon_api.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing long -> long map with linear probing and backward-shift deletion.
+ *
+ * No boxing and no per-entry objects: an entry is two array slots and a used flag.
+ * Slots can be walked without allocation through {@link #nextSlot(int)},
+ * {@link #keyAt(int)} and {@link #valueAt(int)}. Not thread-safe.
+ */
+public class LongLongHashMap {
+
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    public LongLongHashMap() {
+        this(16);
+    }
+
+    public LongLongHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        resizeAt = (int) (capacity * LOAD_FACTOR);
+    }
+
+    // Murmur3 finalizer, spreads sequential ids across the table
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private int slotOf(long key) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+
+    public long get(long key, long missing) {
+        int slot = slotOf(key);
+        return slot >= 0 ? values[slot] : missing;
+    }
+
+    // Returns the previous value, or missing when the key was absent
+    public long put(long key, long value, long missing) {
+        int slot = hash(key) & mask;
+        while (used[slot]) {
+            if (keys[slot] == key) {
+                long previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeAt) {
+            rehash(keys.length << 1);
+        }
+        return missing;
+    }
+
+    // Returns the removed value, or missing when the key was absent
+    public long remove(long key, long missing) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return missing;
+        }
+        long removed = values[slot];
+
+        // Shift later entries of the probe chain back so lookups never hit a gap
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (used[next]) {
+            int home = hash(keys[next]) & mask;
+            boolean movable = gap <= next
+                    ? home <= gap || home > next
+                    : home <= gap && home > next;
+            if (movable) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        used[gap] = false;
+        size--;
+        return removed;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * First used slot at or after {@code from}, or -1. Iterate with
+     * {@code for (int s = map.nextSlot(0); s >= 0; s = map.nextSlot(s + 1))}.
+     */
+    public int nextSlot(int from) {
+        for (int slot = from; slot < used.length; slot++) {
+            if (used[slot]) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    public long valueAt(int slot) {
+        return values[slot];
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                put(oldKeys[i], oldValues[i], 0L);
+            }
+        }
+    }
+}
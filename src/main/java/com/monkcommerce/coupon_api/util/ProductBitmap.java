@@ -0,0 +1,117 @@
+package com.monkcommerce.coupon_api.util;
+
+import java.util.Arrays;
+
+/**
+ * Immutable compressed set of non-negative product ids, laid out like a Roaring bitmap.
+ *
+ * Ids are split by their high 16 bits into containers. A container holding up to 4096 ids is a
+ * sorted char[] of the low 16 bits (2 bytes per id); a fuller one is a 1024-word long[] bitmap
+ * (8 KB however many ids it holds). Dense id ranges therefore cost about one bit per product and
+ * sparse ones two bytes. contains() is a binary search over the container keys plus one binary
+ * search or bit test, and allocates nothing.
+ */
+public final class ProductBitmap {
+
+    public static final ProductBitmap EMPTY = new ProductBitmap(new char[0], new char[0][], new long[0][], 0);
+
+    private static final int ARRAY_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    // Container i holds the ids whose high 16 bits are keys[i], in arrays[i] or bitmaps[i]
+    private final char[] keys;
+    private final char[][] arrays;
+    private final long[][] bitmaps;
+    private final int cardinality;
+
+    private ProductBitmap(char[] keys, char[][] arrays, long[][] bitmaps, int cardinality) {
+        this.keys = keys;
+        this.arrays = arrays;
+        this.bitmaps = bitmaps;
+        this.cardinality = cardinality;
+    }
+
+    /**
+     * Bitmap of the first length ids, which must be non-negative. The array is sorted in
+     * place; duplicates are allowed.
+     */
+    public static ProductBitmap of(int[] ids, int length) {
+        Arrays.sort(ids, 0, length);
+        int containers = 0;
+        for (int i = 0; i < length; i++) {
+            if (ids[i] < 0) {
+                throw new IllegalArgumentException("Product ids must not be negative: " + ids[i]);
+            }
+            if (i == 0 || ids[i] >>> 16 != ids[i - 1] >>> 16) {
+                containers++;
+            }
+        }
+
+        char[] keys = new char[containers];
+        char[][] arrays = new char[containers][];
+        long[][] bitmaps = new long[containers][];
+        int cardinality = 0;
+        int c = 0;
+        for (int from = 0; from < length; c++) {
+            int key = ids[from] >>> 16;
+            int to = from;
+            int distinct = 0;
+            while (to < length && ids[to] >>> 16 == key) {
+                if (to == from || ids[to] != ids[to - 1]) {
+                    distinct++;
+                }
+                to++;
+            }
+            keys[c] = (char) key;
+            if (distinct <= ARRAY_MAX) {
+                char[] low = new char[distinct];
+                for (int i = from, n = 0; i < to; i++) {
+                    if (i == from || ids[i] != ids[i - 1]) {
+                        low[n++] = (char) ids[i];
+                    }
+                }
+                arrays[c] = low;
+            } else {
+                long[] words = new long[BITMAP_WORDS];
+                for (int i = from; i < to; i++) {
+                    int low = ids[i] & 0xFFFF;
+                    words[low >>> 6] |= 1L << low;
+                }
+                bitmaps[c] = words;
+            }
+            cardinality += distinct;
+            from = to;
+        }
+        return new ProductBitmap(keys, arrays, bitmaps, cardinality);
+    }
+
+    public boolean contains(int productId) {
+        if (productId < 0) {
+            return false;
+        }
+        int c = Arrays.binarySearch(keys, (char) (productId >>> 16));
+        if (c < 0) {
+            return false;
+        }
+        char low = (char) productId;
+        char[] array = arrays[c];
+        if (array != null) {
+            return Arrays.binarySearch(array, low) >= 0;
+        }
+        return (bitmaps[c][low >>> 6] & (1L << low)) != 0;
+    }
+
+    // Distinct ids in the set
+    public int cardinality() {
+        return cardinality;
+    }
+
+    // Approximate heap footprint of the containers
+    public long memoryBytes() {
+        long bytes = keys.length * 2L + 16L * keys.length;
+        for (int c = 0; c < keys.length; c++) {
+            bytes += arrays[c] != null ? arrays[c].length * 2L : BITMAP_WORDS * 8L;
+        }
+        return bytes;
+    }
+}
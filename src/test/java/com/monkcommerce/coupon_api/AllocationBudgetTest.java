@@ -0,0 +1,238 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.coupon.BxGyCoupon;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.rule.BxGyRule;
+import com.monkcommerce.coupon_api.model.rule.ExpressionRule;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.CouponStore;
+import com.monkcommerce.coupon_api.store.HeapCouponStore;
+import com.monkcommerce.coupon_api.store.OffHeapCouponStore;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Bytes allocated per call on the evaluation hot path, measured with the per-thread
+ * allocation counter after warm-up. A budget failure means a change added garbage to
+ * the hot path; lower the budget when a change removes some.
+ */
+public class AllocationBudgetTest {
+
+    private static final int WARMUP_CALLS = 20_000;
+    private static final int MEASURED_CALLS = 5_000;
+
+    // Per-call budgets in bytes, roughly 25% above the measured cost
+    private static final long APPLICABLE_COUPONS_BUDGET = 2_752;
+    private static final long APPLY_CART_WISE_BUDGET = 256;
+    private static final long APPLY_PRODUCT_WISE_BUDGET = 256;
+    private static final long APPLY_BXGY_BUDGET = 256;
+    private static final long APPLY_RULE_BUDGET = 256;
+    private static final long APPLY_CATEGORY_BUDGET = 256;
+    private static final long RULE_EVALUATION_BUDGET = 0;
+    private static final long BXGY_DISCOUNT_BUDGET = 0;
+    private static final long CODE_LOOKUP_BUDGET = 0;
+    private static final long CUSTOMER_CHECK_BUDGET = 0;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private CouponService service;
+    private long cartWiseId, productWiseId, bxgyId, ruleId, categoryId;
+
+    @BeforeAll
+    static void allocationCounter() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean, "Per-thread allocation counter not available");
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported(), "Per-thread allocation counter not available");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private Coupon coupon(CouponType type, CouponDetails details) {
+        Coupon coupon = new Coupon();
+        coupon.setType(type);
+        coupon.setDetails(details);
+        return service.createCoupon(coupon);
+    }
+
+    // Representative catalog: a threshold ladder, product coupons, overlapping BXGY offers,
+    // a rule coupon and category coupons
+    private void catalog() {
+        catalog(new HeapCouponStore());
+    }
+
+    private void catalog(CouponStore store) {
+        service = new CouponService(CouponMetrics.noop(), store);
+        CategoryTaxonomy taxonomy;
+        try {
+            taxonomy = CategoryTaxonomy.parse(new BufferedReader(new StringReader(
+                    "Catalog/Low: 1-10\nCatalog/High: 11-20, 1000-1999\n")), "test");
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+        service.setTaxonomy(() -> taxonomy);
+        for (int i = 1; i <= 10; i++) {
+            CouponDetails details = new CouponDetails();
+            details.threshold = i * 100;
+            details.discount = i * 2.0;
+            cartWiseId = coupon(CouponType.CART_WISE, details).getId();
+        }
+        for (int p = 1; p <= 40; p += 2) {
+            CouponDetails details = new CouponDetails();
+            details.productId = p;
+            details.discount = 5.0 + p % 20;
+            productWiseId = coupon(CouponType.PRODUCT_WISE, details).getId();
+        }
+        for (int b = 0; b < 20; b++) {
+            CouponDetails details = new CouponDetails();
+            details.buyProducts = Arrays.asList(b + 1, b + 2, b + 3);
+            details.buyQuantity = 2;
+            details.getProducts = Arrays.asList(b + 4, b + 5);
+            details.getQuantity = 1;
+            details.repetitionLimit = 2;
+            bxgyId = coupon(CouponType.BXGY, details).getId();
+        }
+        CouponDetails rule = new CouponDetails();
+        rule.condition = "containsAny({7, 8}) && total >= 500 && any(price > 50 && quantity >= 2)";
+        rule.productId = 7;
+        rule.discount = 10.0;
+        ruleId = coupon(CouponType.RULE, rule).getId();
+        for (String path : new String[] {"Catalog", "Catalog/Low", "Catalog/High", "Missing"}) {
+            CouponDetails category = new CouponDetails();
+            category.category = path;
+            category.discount = 3.0;
+            categoryId = coupon(CouponType.CATEGORY, category).getId();
+        }
+    }
+
+    private Cart cart() {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        for (int p = 1; p <= 20; p++) {
+            CartItem item = new CartItem();
+            item.productId = p;
+            item.quantity = 1 + p % 4;
+            item.price = 10.0 + (p * 37) % 90;
+            cart.items.add(item);
+        }
+        return cart;
+    }
+
+    private long bytesPerCall(Runnable call) {
+        for (int i = 0; i < WARMUP_CALLS; i++) {
+            call.run();
+        }
+        long threadId = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_CALLS; i++) {
+            call.run();
+        }
+        return (threads.getThreadAllocatedBytes(threadId) - before) / MEASURED_CALLS;
+    }
+
+    private void assertBudget(String name, long budget, Runnable call) {
+        long bytes = bytesPerCall(call);
+        assertTrue(bytes <= budget,
+                String.format("%s allocates %d bytes/call, budget is %d", name, bytes, budget));
+    }
+
+    @Test
+    void applicableCouponsBudget() {
+        catalog();
+        Cart cart = cart();
+        assertBudget("getApplicableCoupons", APPLICABLE_COUPONS_BUDGET,
+                () -> service.getApplicableCoupons(cart));
+    }
+
+    @Test
+    void applyCouponBudget() {
+        catalog();
+        applyEachType();
+    }
+
+    // Evaluation reads heap-side views, so an off-heap catalog costs the same as a heap one
+    @Test
+    void offHeapApplicableCouponsBudget() {
+        catalog(new OffHeapCouponStore(1 << 20));
+        Cart cart = cart();
+        assertBudget("off-heap getApplicableCoupons", APPLICABLE_COUPONS_BUDGET,
+                () -> service.getApplicableCoupons(cart));
+    }
+
+    @Test
+    void offHeapApplyCouponBudget() {
+        catalog(new OffHeapCouponStore(1 << 20));
+        applyEachType();
+    }
+
+    private void applyEachType() {
+        Cart cart = cart();
+        assertBudget("applyCouponToCart CART_WISE", APPLY_CART_WISE_BUDGET,
+                () -> service.applyCouponToCart(cartWiseId, cart));
+        assertBudget("applyCouponToCart PRODUCT_WISE", APPLY_PRODUCT_WISE_BUDGET,
+                () -> service.applyCouponToCart(productWiseId, cart));
+        assertBudget("applyCouponToCart BXGY", APPLY_BXGY_BUDGET,
+                () -> service.applyCouponToCart(bxgyId, cart));
+        assertBudget("applyCouponToCart RULE", APPLY_RULE_BUDGET,
+                () -> service.applyCouponToCart(ruleId, cart));
+        assertBudget("applyCouponToCart CATEGORY", APPLY_CATEGORY_BUDGET,
+                () -> service.applyCouponToCart(categoryId, cart));
+    }
+
+    @Test
+    void ruleEvaluationBudget() {
+        catalog();
+        Cart cart = cart();
+        ExpressionRule rule = (ExpressionRule) service.getCouponById(ruleId).getRule();
+        assertTrue(rule.matches(cart));
+        assertBudget("compiled rule condition", RULE_EVALUATION_BUDGET, () -> rule.matches(cart));
+    }
+
+    @Test
+    void bxgyDiscountOnlyBudget() {
+        catalog();
+        Cart cart = cart();
+        BxGyRule rule = (BxGyRule) service.getCouponById(bxgyId).getRule();
+        int[] byPrice = BxGyCoupon.priceOrder(cart.items);
+        assertBudget("BXGY discount-only evaluation", BXGY_DISCOUNT_BUDGET,
+                () -> BxGyCoupon.discountOf(bxgyId, rule, cart.items, byPrice));
+    }
+
+    @Test
+    void codeLookupBudget() {
+        catalog();
+        List<String> codes = service.generateCodes(productWiseId, 10_000, "LOOKUP");
+        String[] lowerCase = codes.stream().map(String::toLowerCase).toArray(String[]::new);
+        int[] next = {0};
+        assertBudget("code lookup", CODE_LOOKUP_BUDGET,
+                () -> service.codes().find(lowerCase[next[0]++ % lowerCase.length]));
+    }
+
+    @Test
+    void customerCheckBudget() {
+        catalog();
+        service.setEligibleCustomers(productWiseId, new long[] {11, 12});
+        Long member = 12L;
+        assertTrue(service.customers().allows(productWiseId, member));
+        assertBudget("customer list check", CUSTOMER_CHECK_BUDGET,
+                () -> service.customers().allows(cartWiseId, member));
+        assertBudget("customer list check", CUSTOMER_CHECK_BUDGET,
+                () -> service.customers().allows(productWiseId, member));
+    }
+}
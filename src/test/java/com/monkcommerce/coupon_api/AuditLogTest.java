@@ -0,0 +1,157 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.audit.AuditLog;
+import com.monkcommerce.coupon_api.audit.AuditRecord;
+import com.monkcommerce.coupon_api.audit.AuditRing;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.util.CartFingerprint;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuditLogTest {
+
+    @TempDir
+    Path dir;
+
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    private AuditLog auditLog(int capacity, String overflow, long maxFileBytes) throws IOException {
+        return new AuditLog(new SimpleMeterRegistry(), true, dir, capacity, overflow, maxFileBytes, Duration.ofMillis(10));
+    }
+
+    private Cart cart() {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = 2;
+        item.price = 50;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        return cart;
+    }
+
+    private List<String> lines(String prefix) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().startsWith(prefix)).sorted().toList()) {
+                lines.addAll(Files.readAllLines(file));
+            }
+        }
+        return lines;
+    }
+
+    private long fileCount(String prefix) throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(f -> f.getFileName().toString().startsWith(prefix)).count();
+        }
+    }
+
+    // Publishes from several threads at once
+    private void publishConcurrently(AuditLog log, int threads, int perThread) throws InterruptedException {
+        ApplyCouponResponse response = new ApplyCouponResponse(new ArrayList<>(), 100, 10, 90);
+        Cart cart = cart();
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    log.publish("default", i, cart, response);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    @Test
+    void ringRejectsWhenFullAndKeepsOrder() {
+        AuditRing ring = new AuditRing(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer("t", i, 0, 0, 0, 0));
+        }
+        assertFalse(ring.offer("t", 4, 0, 0, 0, 0));
+
+        AuditRecord record = new AuditRecord();
+        assertTrue(ring.poll(record));
+        assertEquals(0, record.couponId);
+        assertTrue(ring.offer("t", 4, 0, 0, 0, 0));
+        for (int i = 1; i <= 4; i++) {
+            assertTrue(ring.poll(record));
+            assertEquals(i, record.couponId);
+        }
+        assertFalse(ring.poll(record));
+    }
+
+    @Test
+    void appliedCouponsAreWrittenAsNdjson() throws Exception {
+        AuditLog log = auditLog(1024, "block", 1 << 20);
+        CouponService service = new CouponService();
+        service.setAuditSink(log.sinkFor("shop"));
+        CouponDetails details = new CouponDetails();
+        details.productId = 1;
+        details.discount = 10.0;
+        Coupon coupon = new Coupon();
+        coupon.setType(CouponType.PRODUCT_WISE);
+        coupon.setDetails(details);
+        long id = service.createCoupon(coupon).getId();
+
+        service.applyCouponToCart(id, cart());
+        log.close();
+
+        List<String> lines = lines("audit-");
+        assertEquals(1, lines.size());
+        JsonNode record = mapper.readTree(lines.get(0));
+        assertEquals("shop", record.get("tenant").asString());
+        assertEquals(id, record.get("coupon_id").asLong());
+        assertEquals(String.format("%016x", CartFingerprint.of(cart())), record.get("cart").asString());
+        assertEquals(10.0, record.get("discount").asDouble(), 1e-9);
+        assertEquals(90.0, record.get("final_price").asDouble(), 1e-9);
+        assertTrue(record.get("ts").asLong() > 0);
+    }
+
+    @Test
+    void blockingLosesNothingAndRotates() throws Exception {
+        AuditLog log = auditLog(64, "block", 64 * 1024);
+        publishConcurrently(log, 8, 5_000);
+        log.close();
+
+        assertEquals(40_000, log.written());
+        assertEquals(40_000, lines("audit-").size());
+        assertTrue(fileCount("audit-") > 1);
+    }
+
+    @Test
+    void dropAndSpillAccountForEveryRecord() throws Exception {
+        AuditLog dropping = auditLog(8, "drop", 1 << 30);
+        publishConcurrently(dropping, 8, 5_000);
+        dropping.close();
+        assertEquals(40_000, dropping.written() + dropping.dropped());
+
+        AuditLog spilling = auditLog(8, "spill", 1 << 30);
+        publishConcurrently(spilling, 8, 5_000);
+        spilling.close();
+        assertEquals(40_000, spilling.written() + spilling.spilled());
+        assertEquals(spilling.spilled(), lines("audit-spill").size());
+    }
+}
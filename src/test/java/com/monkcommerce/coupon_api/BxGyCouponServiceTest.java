@@ -8,7 +8,9 @@ import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
 import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.rule.BxGyRule;
 import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.util.IntListView;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -251,4 +253,75 @@ public class BxGyCouponServiceTest {
         response = service.applyCouponToCart(2, cart);
         assertTrue(response.getTotalDiscount() > 0.00);
     }
+
+    @Test
+    void bxGyUniquenessAndSharedProductSets() {
+        Coupon first = service.createCoupon(buildBxGyCoupon(Arrays.asList(2, 1), 2, Arrays.asList(3), 1, 2, true));
+        Coupon second = service.createCoupon(buildBxGyCoupon(Arrays.asList(1, 2), 2, Arrays.asList(4), 1, 2, true));
+
+        // Same buy set in a different order is stored once
+        assertSame(((BxGyRule) first.getRule()).buyProducts(), ((BxGyRule) second.getRule()).buyProducts());
+        // and the details view that array instead of keeping their own lists
+        assertSame(((BxGyRule) first.getRule()).buyProducts(), ((IntListView) first.getDetails().buyProducts).array());
+        assertEquals(List.of(1, 2), first.getDetails().buyProducts);
+
+        // Product order does not make an offer distinct
+        CouponException ex = assertThrows(CouponException.class, () ->
+                service.createCoupon(buildBxGyCoupon(Arrays.asList(1, 2), 2, Arrays.asList(3), 1, 5, true)));
+        assertEquals("BXGY coupon already exists with the same buy/get products and quantities", ex.getMessage());
+
+        // An update keeping the same offer is not its own duplicate
+        Coupon update = new Coupon();
+        update.setDetails(new CouponDetails());
+        update.getDetails().repetitionLimit = 4;
+        assertEquals(4, service.updateCouponById(first.getId(), update).getDetails().repetitionLimit);
+
+        // Deleting frees the offer
+        service.deleteCoupon(first.getId());
+        Coupon again = service.createCoupon(buildBxGyCoupon(Arrays.asList(1, 2), 2, Arrays.asList(3), 1, 2, true));
+        assertTrue(again.getId() > second.getId());
+    }
+
+    @Test
+    void rankingLeavesCartUntouchedAndMatchesApply() {
+        long first = service.createCoupon(buildBxGyCoupon(Arrays.asList(1, 2), 2, Arrays.asList(3, 4), 1, 3, true)).getId();
+        long second = service.createCoupon(buildBxGyCoupon(Arrays.asList(3), 1, Arrays.asList(1, 5), 1, 2, true)).getId();
+
+        // {productId, quantity, price}, deliberately not in price order
+        int[][] lines = {{3, 2, 40}, {1, 3, 100}, {5, 1, 60}, {2, 2, 100}, {4, 1, 80}};
+        List<CartItem> items = new ArrayList<>();
+        for (int[] line : lines) {
+            CartItem item = new CartItem();
+            item.productId = line[0];
+            item.quantity = line[1];
+            item.price = line[2];
+            items.add(item);
+        }
+        Cart cart = new Cart();
+        cart.items = items;
+
+        ApplicableCouponsResponse ranked = service.getApplicableCoupons(cart);
+        for (int i = 0; i < lines.length; i++) {
+            assertEquals(lines[i][0], cart.items.get(i).productId);
+            assertEquals(0.0, cart.items.get(i).totalDiscount);
+        }
+
+        // The discount ranked for each coupon is the one applying it gives
+        for (long id : new long[] {first, second}) {
+            double offered = ranked.applicable_coupons.stream()
+                    .filter(c -> c.coupon_id == id).findFirst().orElseThrow().discount;
+            Cart copy = new Cart();
+            copy.items = new ArrayList<>();
+            for (CartItem item : items) {
+                CartItem line = new CartItem();
+                line.productId = item.productId;
+                line.quantity = item.quantity;
+                line.price = item.price;
+                copy.items.add(line);
+            }
+            ApplyCouponResponse applied = service.applyCouponToCart(id, copy);
+            assertTrue(applied.getTotalDiscount() > 0);
+            assertEquals(applied.getTotalDiscount(), offered, 1e-9);
+        }
+    }
 }
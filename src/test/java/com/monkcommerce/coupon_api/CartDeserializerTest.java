@@ -0,0 +1,76 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CartDeserializerTest {
+
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    @Test
+    void parsesValidCart() {
+        String json = "{\"items\":["
+                + "{\"productId\":1,\"quantity\":3,\"price\":50},"
+                + "{\"price\":25.5,\"quantity\":2,\"productId\":7,\"totalDiscount\":0}"
+                + "],\"extra\":{\"nested\":[1,2]}}";
+
+        Cart cart = mapper.readValue(json, Cart.class);
+        assertEquals(2, cart.items.size());
+        assertEquals(1, cart.items.get(0).productId);
+        assertEquals(3, cart.items.get(0).quantity);
+        assertEquals(50.0, cart.items.get(0).price);
+        assertEquals(7, cart.items.get(1).productId);
+        assertEquals(2, cart.items.get(1).quantity);
+        assertEquals(25.5, cart.items.get(1).price);
+        assertNull(cart.customerId);
+
+        cart = mapper.readValue("{\"customerId\":9000000001,\"items\":[{\"productId\":1,\"quantity\":1,\"price\":5}]}", Cart.class);
+        assertEquals(9_000_000_001L, cart.customerId);
+        CouponException ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"customerId\":\"abc\",\"items\":[]}", Cart.class));
+        assertEquals("Invalid customer id", ex.getMessage());
+    }
+
+    @Test
+    void missingItemsLeavesCartEmpty() {
+        Cart cart = mapper.readValue("{}", Cart.class);
+        assertNull(cart.items);
+
+        cart = mapper.readValue("{\"items\":[]}", Cart.class);
+        assertTrue(cart.items.isEmpty());
+    }
+
+    @Test
+    void rejectsInvalidItemWhileParsing() {
+        // Null item
+        CouponException ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"items\":[null]}", Cart.class));
+        assertEquals("Invalid cart item data", ex.getMessage());
+
+        // Zero quantity
+        ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"items\":[{\"productId\":1,\"quantity\":0,\"price\":10}]}", Cart.class));
+        assertEquals("Invalid cart item data", ex.getMessage());
+
+        // Nested values are not coerced to 0 and their fields are not read as the item's own
+        ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"items\":[{\"productId\":{\"quantity\":1,\"price\":10},\"quantity\":1,\"price\":10}]}", Cart.class));
+        assertEquals("Invalid cart item data", ex.getMessage());
+        ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"items\":[{\"productId\":1,\"quantity\":[2],\"price\":10}]}", Cart.class));
+        assertEquals("Invalid cart item data", ex.getMessage());
+        ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"items\":[{\"productId\":1,\"quantity\":1,\"price\":\"10\"}]}", Cart.class));
+        assertEquals("Invalid cart item data", ex.getMessage());
+
+        // Bad item is reported before the rest of the payload is read
+        ex = assertThrows(CouponException.class,
+                () -> mapper.readValue("{\"items\":[{\"productId\":1,\"quantity\":1,\"price\":-1}, {\"broken\"", Cart.class));
+        assertEquals("Invalid cart item data", ex.getMessage());
+    }
+}
@@ -0,0 +1,174 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.OffHeapCouponStore;
+import com.monkcommerce.coupon_api.taxonomy.CategoryTaxonomy;
+import com.monkcommerce.coupon_api.taxonomy.Taxonomy;
+import com.monkcommerce.coupon_api.util.ProductBitmap;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CategoryCouponServiceTest {
+
+    private static final String TAXONOMY = """
+            # category: product ids and ranges
+            Electronics/Phones: 100-199, 250
+            Electronics/Laptops: 300-399
+            Electronics: 90
+            Grocery/Fruit: 1, 2, 3
+            """;
+
+    private Taxonomy taxonomy;
+    private CouponService service;
+
+    @BeforeEach
+    void setup() throws IOException {
+        taxonomy = new Taxonomy("");
+        taxonomy.swap(parse(TAXONOMY));
+        service = new CouponService();
+        service.setTaxonomy(taxonomy);
+    }
+
+    private static CategoryTaxonomy parse(String text) throws IOException {
+        return CategoryTaxonomy.parse(new BufferedReader(new StringReader(text)), "test");
+    }
+
+    private Coupon category(String category, Double discount) {
+        CouponDetails d = new CouponDetails();
+        d.category = category;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.CATEGORY);
+        c.setDetails(d);
+        return c;
+    }
+
+    // Cart of {productId, quantity, price} lines
+    private Cart cart(double[]... lines) {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        for (double[] line : lines) {
+            CartItem item = new CartItem();
+            item.productId = (int) line[0];
+            item.quantity = (int) line[1];
+            item.price = line[2];
+            cart.items.add(item);
+        }
+        return cart;
+    }
+
+    @Test
+    void discountCoversCategoryAndSubcategories() {
+        long id = service.createCoupon(category("Electronics", 15.0)).getId();
+
+        // Phone, laptop and a product listed on Electronics itself are discounted; fruit is not
+        Cart cart = cart(new double[] {150, 1, 100}, new double[] {320, 2, 50},
+                new double[] {90, 1, 20}, new double[] {2, 5, 10});
+        ApplyCouponResponse response = service.applyCouponToCart(id, cart);
+        assertEquals(270.0, response.getTotalPrice(), 1e-9);
+        assertEquals(33.0, response.getTotalDiscount(), 1e-9);
+        assertEquals(0.0, response.getItems().get(3).totalDiscount, 1e-9);
+
+        ApplicableCouponItem item = service.getApplicableCoupons(cart).applicable_coupons.get(0);
+        assertEquals(id, item.coupon_id);
+        assertEquals("CATEGORY", item.type);
+        assertEquals(33.0, item.discount, 1e-9);
+
+        // A subcategory coupon covers only its own products
+        long phones = service.createCoupon(category("Electronics/Phones", 10.0)).getId();
+        assertEquals(10.0, service.applyCouponToCart(phones, cart).getTotalDiscount(), 1e-9);
+    }
+
+    @Test
+    void categoryCouponNeedsPathAndDiscount() {
+        assertThrows(CouponException.class, () -> service.createCoupon(category(null, 10.0)));
+        assertThrows(CouponException.class, () -> service.createCoupon(category("Electronics//Phones", 10.0)));
+        assertThrows(CouponException.class, () -> service.createCoupon(category(" Electronics", 10.0)));
+        assertThrows(CouponException.class, () -> service.createCoupon(category("Electronics", 0.0)));
+        assertThrows(CouponException.class, () -> service.createCoupon(category("Electronics", null)));
+    }
+
+    @Test
+    void swappedTaxonomyAppliesWithoutReindexing() throws IOException {
+        // Unknown until the next taxonomy defines it
+        long id = service.createCoupon(category("Toys", 20.0)).getId();
+        Cart cart = cart(new double[] {500, 1, 100});
+        assertTrue(service.getApplicableCoupons(cart).applicable_coupons.isEmpty());
+        assertEquals(0.0, service.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+
+        taxonomy.swap(parse(TAXONOMY + "Toys/Lego: 500\n"));
+        assertEquals(20.0, service.getApplicableCoupons(cart).applicable_coupons.get(0).discount, 1e-9);
+        assertEquals(20.0, service.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+
+        // Deactivated coupons are no longer evaluated
+        Coupon update = category(null, null);
+        update.getDetails().isActive = false;
+        service.updateCouponById(id, update);
+        assertTrue(service.getApplicableCoupons(cart).applicable_coupons.isEmpty());
+    }
+
+    @Test
+    void invalidTaxonomyReportsLine() {
+        String error = assertThrows(CouponException.class,
+                () -> parse("Electronics: 1, 2\nPhones 3\n")).getMessage();
+        assertEquals("Invalid taxonomy at line 2: expected 'category: product ids'", error);
+        assertThrows(CouponException.class, () -> parse("Electronics: 5-1\n"));
+        assertThrows(CouponException.class, () -> parse("Electronics: x\n"));
+        assertThrows(CouponException.class, () -> new Taxonomy("").reload());
+    }
+
+    @Test
+    void bitmapMatchesSparseAndDenseIds() throws IOException {
+        // Sparse ids land in array containers, a dense range in a bitmap container
+        Random random = new Random(46);
+        int[] ids = new int[20_000];
+        for (int i = 0; i < 10_000; i++) {
+            ids[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+        for (int i = 10_000; i < ids.length; i++) {
+            ids[i] = 1_000_000 + (i - 10_000) * 3;
+        }
+        int[] expected = ids.clone();
+        ProductBitmap bitmap = ProductBitmap.of(ids, ids.length);
+        for (int id : expected) {
+            assertTrue(bitmap.contains(id));
+        }
+        assertFalse(bitmap.contains(1_000_001));
+        assertFalse(bitmap.contains(-1));
+
+        // A million-product catalog is one line per category range
+        CategoryTaxonomy large = parse("Catalog/A: 0-499999\nCatalog/B: 500000-999999, 7\n");
+        assertEquals(1_000_000, large.products());
+        int catalog = large.categoryOf("Catalog");
+        assertTrue(large.contains(catalog, 999_999));
+        assertTrue(large.contains(large.categoryOf("Catalog/B"), 7));
+        assertFalse(large.contains(large.categoryOf("Catalog/A"), 500_000));
+        assertTrue(large.memoryBytes() < 1_000_000);
+    }
+
+    @Test
+    void categorySurvivesOffHeapStorage() {
+        CouponService offHeap = new CouponService(CouponMetrics.noop(), new OffHeapCouponStore(1 << 16));
+        offHeap.setTaxonomy(taxonomy);
+        long id = offHeap.createCoupon(category("Electronics/Laptops", 10.0)).getId();
+        assertEquals("Electronics/Laptops", offHeap.getCouponById(id).getDetails().category);
+        assertEquals(10.0, offHeap.applyCouponToCart(id, cart(new double[] {300, 2, 50})).getTotalDiscount(), 1e-9);
+    }
+}
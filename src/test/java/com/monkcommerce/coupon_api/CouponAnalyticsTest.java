@@ -0,0 +1,192 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.metrics.CouponAnalytics;
+import com.monkcommerce.coupon_api.metrics.RollingWindow;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.CouponStatsResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CouponAnalyticsTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+    }
+
+    private long cartWise(int threshold, double discount) {
+        CouponDetails d = new CouponDetails();
+        d.threshold = threshold;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.CART_WISE);
+        c.setDetails(d);
+        return service.createCoupon(c).getId();
+    }
+
+    private long productWise(int productId, double discount) {
+        CouponDetails d = new CouponDetails();
+        d.productId = productId;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.PRODUCT_WISE);
+        c.setDetails(d);
+        return service.createCoupon(c).getId();
+    }
+
+    private Cart cart() {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = 2;
+        item.price = 500;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        return cart;
+    }
+
+    @Test
+    void rollingWindowForgetsOldBuckets() {
+        // Three 10s buckets: the window spans 20-30s
+        RollingWindow window = new RollingWindow(10 * SECOND, 3, 2);
+        window.add(0, 0, 5);
+        window.add(0, 15 * SECOND, 2);
+        window.add(1, 15 * SECOND, 7);
+        assertEquals(7, window.sum(0, 25 * SECOND));
+        assertEquals(7, window.sum(1, 25 * SECOND));
+
+        // At 30s the first bucket falls out, and writing into it clears the old count
+        assertEquals(2, window.sum(0, 30 * SECOND));
+        window.add(0, 31 * SECOND, 1);
+        assertEquals(3, window.sum(0, 31 * SECOND));
+        assertEquals(0, window.sum(0, 60 * SECOND));
+    }
+
+    @Test
+    void stripedWindowCountsEveryConcurrentAdd() throws Exception {
+        RollingWindow window = new RollingWindow(60 * SECOND, 2, 2);
+        assertEquals(1, window.stripes());
+        window.add(0, 1, 1, 10, SECOND);
+        assertEquals(1, window.stripes());
+
+        int threads = 8;
+        int adds = 200_000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> done = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            done.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < adds; i++) {
+                    window.add(0, 1, 1, 10, 2 * SECOND);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> f : done) {
+            f.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // Striping spreads the adds over rows without losing any
+        assertEquals(1 + (long) threads * adds, window.sum(0, 3 * SECOND));
+        assertEquals(10 + 10L * threads * adds, window.sum(1, 3 * SECOND));
+        assertTrue(window.stripes() <= Math.max(1, Integer.highestOneBit(Runtime.getRuntime().availableProcessors())));
+    }
+
+    @Test
+    void countsEvaluationsWinsAndApplies() {
+        long cart = cartWise(100, 10);
+        long product = productWise(1, 10);
+
+        for (int i = 0; i < 3; i++) {
+            service.getApplicableCoupons(cart());
+        }
+        service.applyCouponToCart(cart, cart());
+        service.applyCouponToCart(product, cart());
+        service.applyCouponToCart(product, cart());
+
+        // Product-wise gives 100 off (10% of 1000), cart-wise 10, so product-wise ranks first
+        CouponStatsResponse productStats = service.getCouponStats(product).get(0);
+        assertEquals("minute", productStats.window);
+        assertEquals(3, productStats.evaluations);
+        assertEquals(3, productStats.wins);
+        assertEquals(2, productStats.applies);
+        assertEquals(200.0, productStats.discount, 1e-9);
+
+        List<CouponStatsResponse> cartStats = service.getCouponStats(cart);
+        assertEquals(4, cartStats.size());
+        for (CouponStatsResponse window : cartStats) {
+            assertEquals(3, window.evaluations);
+            assertEquals(0, window.wins);
+            assertEquals(1, window.applies);
+        }
+    }
+
+    @Test
+    void topCouponsByMetric() {
+        long a = productWise(1, 10);
+        long b = productWise(2, 10);
+        long c = productWise(3, 10);
+        long idle = productWise(4, 10);
+        for (int i = 0; i < 3; i++) {
+            service.applyCouponToCart(b, cart());
+        }
+        service.applyCouponToCart(c, cart());
+        service.applyCouponToCart(c, cart());
+        service.applyCouponToCart(a, cart());
+
+        List<CouponStatsResponse> top = service.topCoupons("applies", "hour", 2);
+        assertEquals(List.of(b, c), top.stream().map(s -> s.coupon_id).toList());
+        assertEquals(3, service.topCoupons("APPLIES", "all", 10).size());
+        assertFalse(service.topCoupons("applies", "day", 10).stream().anyMatch(s -> s.coupon_id == idle));
+
+        assertThrows(CouponException.class, () -> service.topCoupons("views", "hour", 10));
+        assertThrows(CouponException.class, () -> service.topCoupons("wins", "week", 10));
+        assertThrows(CouponException.class, () -> service.topCoupons("wins", "hour", 0));
+    }
+
+    @Test
+    void deletedCouponsFreeTheirStats() {
+        CouponAnalytics analytics = service.analytics();
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 2_000; i++) {
+            long id = productWise(i + 1, 10);
+            analytics.recordApply(id, 1.5, 0);
+            ids.add(id);
+        }
+        assertEquals(2_000, analytics.tracked());
+
+        for (long id : ids) {
+            service.deleteCoupon(id);
+        }
+        assertEquals(0, analytics.tracked());
+        assertNull(analytics.get(ids.get(0)));
+        assertTrue(analytics.top(CouponAnalytics.APPLIES, CouponAnalytics.Window.ALL, 10, 0).isEmpty());
+
+        // Ids outside the tracked range are ignored rather than growing the table
+        analytics.recordApply(-1, 1, 0);
+        analytics.recordApply(Long.MAX_VALUE, 1, 0);
+        assertEquals(0, analytics.tracked());
+    }
+}
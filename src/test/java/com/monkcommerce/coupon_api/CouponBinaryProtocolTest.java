@@ -0,0 +1,184 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.model.ApiResponse;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.util.CouponBinaryCodec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.databind.node.ObjectNode;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+public class CouponBinaryProtocolTest {
+
+    private static final MediaType BINARY = MediaType.parseMediaType(CouponBinaryCodec.MEDIA_TYPE);
+
+    private final ObjectMapper mapper = JsonMapper.builder().build();
+
+    @Autowired
+    private MockMvc mvc;
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+        service.createCoupon(coupon(CouponType.CART_WISE, d -> { d.threshold = 100; d.discount = 10.0; }));
+        service.createCoupon(coupon(CouponType.PRODUCT_WISE, d -> { d.productId = 2; d.discount = 20.0; }));
+        service.createCoupon(coupon(CouponType.BXGY, d -> {
+            d.buyProducts = Arrays.asList(1, 2);
+            d.buyQuantity = 2;
+            d.getProducts = Arrays.asList(3);
+            d.getQuantity = 1;
+            d.repetitionLimit = 2;
+        }));
+    }
+
+    private Coupon coupon(CouponType type, java.util.function.Consumer<CouponDetails> init) {
+        CouponDetails details = new CouponDetails();
+        init.accept(details);
+        Coupon coupon = new Coupon();
+        coupon.setType(type);
+        coupon.setDetails(details);
+        return coupon;
+    }
+
+    private Cart cart() {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        int[][] lines = {{1, 3}, {2, 4}, {3, 2}};
+        double[] prices = {50.0, 25.5, 19.99};
+        for (int i = 0; i < lines.length; i++) {
+            CartItem item = new CartItem();
+            item.productId = lines[i][0];
+            item.quantity = lines[i][1];
+            item.price = prices[i];
+            cart.items.add(item);
+        }
+        return cart;
+    }
+
+    // JSON view of a response without the timestamp, which the binary format does not carry
+    private JsonNode json(ApiResponse<?> response) {
+        ObjectNode node = (ObjectNode) mapper.valueToTree(response);
+        node.remove("timestamp");
+        return node;
+    }
+
+    @Test
+    void cartRoundTrip() {
+        Cart original = cart();
+        Cart decoded = CouponBinaryCodec.readCart(CouponBinaryCodec.writeCart(original));
+        assertEquals(mapper.valueToTree(original), mapper.valueToTree(decoded));
+
+        original.customerId = 42L;
+        decoded = CouponBinaryCodec.readCart(CouponBinaryCodec.writeCart(original));
+        assertEquals(42L, decoded.customerId);
+    }
+
+    @Test
+    void applicableCouponsMatchJson() {
+        ApiResponse<?> response = new ApiResponse<>(service.getApplicableCoupons(cart()));
+        ApiResponse<?> decoded = CouponBinaryCodec.readResponse(CouponBinaryCodec.writeResponse(response));
+        assertEquals(json(response), json(decoded));
+    }
+
+    @Test
+    void applyCouponMatchesJson() {
+        for (long id = 1; id <= 3; id++) {
+            ApiResponse<?> response = new ApiResponse<>(service.applyCouponToCart(id, cart()));
+            ApiResponse<?> decoded = CouponBinaryCodec.readResponse(CouponBinaryCodec.writeResponse(response));
+            assertEquals(json(response), json(decoded));
+        }
+        ApiResponse<?> reserved = new ApiResponse<>(service.reserveCoupon(1, cart()));
+        assertEquals(json(reserved), json(CouponBinaryCodec.readResponse(CouponBinaryCodec.writeResponse(reserved))));
+    }
+
+    @Test
+    void errorMatchesJson() {
+        ApiResponse<?> response = new ApiResponse<>("Coupon not found or inactive");
+        ApiResponse<?> decoded = CouponBinaryCodec.readResponse(CouponBinaryCodec.writeResponse(response));
+        assertEquals(json(response), json(decoded));
+    }
+
+    @Test
+    void endpointsNegotiateBinary() throws Exception {
+        mvc.perform(post("/coupons")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"type\":\"CART_WISE\",\"details\":{\"threshold\":100,\"discount\":10}}"))
+                .andExpect(status().isOk());
+
+        byte[] body = CouponBinaryCodec.writeCart(cart()).array();
+
+        // Binary in, JSON out
+        String jsonBody = mvc.perform(post("/applicable-coupons").contentType(BINARY).content(body)
+                        .accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        // JSON stays the default when the client accepts anything
+        mvc.perform(post("/applicable-coupons").contentType(BINARY).content(body))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+        mvc.perform(post("/applicable-coupons").contentType(BINARY).content(body).accept(MediaType.ALL))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+
+        // Binary in, binary out
+        byte[] binaryBody = mvc.perform(post("/applicable-coupons").contentType(BINARY).content(body).accept(BINARY))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BINARY))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        ObjectNode fromJson = (ObjectNode) mapper.readTree(jsonBody);
+        fromJson.remove("timestamp");
+        assertEquals(fromJson.toString(), json(CouponBinaryCodec.readResponse(ByteBuffer.wrap(binaryBody))).toString());
+
+        // Apply coupon with binary payloads
+        byte[] applied = mvc.perform(post("/apply-coupon/1").contentType(BINARY).content(body).accept(BINARY))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsByteArray();
+        ApiResponse<?> decoded = CouponBinaryCodec.readResponse(ByteBuffer.wrap(applied));
+        assertTrue(decoded.isSuccess());
+
+        // Invalid item is reported in the negotiated format
+        Cart bad = cart();
+        bad.items.get(1).quantity = 0;
+        byte[] error = mvc.perform(post("/applicable-coupons").contentType(BINARY)
+                        .content(CouponBinaryCodec.writeCart(bad).array()).accept(BINARY))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals("Invalid cart item data", CouponBinaryCodec.readResponse(ByteBuffer.wrap(error)).getError());
+    }
+
+    @Test
+    void endpointsWithoutBinaryFormAreNotAcceptable() throws Exception {
+        mvc.perform(get("/coupons").accept(BINARY))
+                .andExpect(status().isNotAcceptable());
+        mvc.perform(get("/coupons").accept(BINARY, MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+}
@@ -0,0 +1,148 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.util.CodeDictionary;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CouponCodeServiceTest {
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+    }
+
+    private Coupon productWise(int productId, double discount, String code) {
+        CouponDetails d = new CouponDetails();
+        d.productId = productId;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.PRODUCT_WISE);
+        c.setDetails(d);
+        c.setCode(code);
+        return c;
+    }
+
+    private Cart cart() {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = 2;
+        item.price = 50;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        return cart;
+    }
+
+    @Test
+    void codesAreCaseInsensitiveAndUnique() {
+        Coupon coupon = service.createCoupon(productWise(1, 10, "Summer-10"));
+        assertEquals("SUMMER-10", coupon.getCode());
+        assertEquals(coupon.getId(), service.getCouponByCode("summer-10").getId());
+        assertEquals(10.0, service.applyCouponByCode("SUMMER-10", cart()).getTotalDiscount(), 1e-9);
+
+        CouponException ex = assertThrows(CouponException.class,
+                () -> service.createCoupon(productWise(2, 10, "SUMMER-10")));
+        assertEquals("Coupon code already exists: SUMMER-10", ex.getMessage());
+        ex = assertThrows(CouponException.class, () -> service.createCoupon(productWise(2, 10, "no spaces")));
+        assertTrue(ex.getMessage().startsWith("Invalid coupon code"));
+
+        // Renaming frees the old code
+        Coupon rename = new Coupon();
+        rename.setDetails(new CouponDetails());
+        rename.setCode("autumn");
+        service.updateCouponById(coupon.getId(), rename);
+        assertThrows(CouponException.class, () -> service.getCouponByCode("summer-10"));
+        assertEquals(coupon.getId(), service.getCouponByCode("AUTUMN").getId());
+        assertEquals("AUTUMN", service.getCouponById(coupon.getId()).getCode());
+    }
+
+    @Test
+    void generatedCodesAreSingleUse() {
+        Coupon coupon = service.createCoupon(productWise(1, 10, null));
+        List<String> codes = service.generateCodes(coupon.getId(), 1_000, "bf");
+        assertEquals(1_000, new HashSet<>(codes).size());
+        assertTrue(codes.get(0).matches("BF-[0-9A-HJKMNP-TV-Z]{10}"));
+
+        String code = codes.get(0).toLowerCase();
+        assertEquals(10.0, service.applyCouponByCode(code, cart()).getTotalDiscount(), 1e-9);
+        assertEquals(coupon.getId(), service.redeemCode(code).getId());
+
+        CouponException ex = assertThrows(CouponException.class, () -> service.redeemCode(code));
+        assertEquals("Coupon code already used: " + code, ex.getMessage());
+        assertThrows(CouponException.class, () -> service.applyCouponByCode(code, cart()));
+
+        // Deleting the coupon drops all of its codes
+        service.deleteCoupon(coupon.getId());
+        assertEquals(0, service.codes().size());
+        assertThrows(CouponException.class, () -> service.getCouponByCode(codes.get(1)));
+    }
+
+    @Test
+    void dictionaryLookupsAndSnapshot() {
+        CodeDictionary dictionary = new CodeDictionary();
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(dictionary.add("CODE-" + i, i % 7, i % 2 == 0));
+        }
+        assertFalse(dictionary.add("code-5", 99, false));
+        assertEquals(5 % 7, dictionary.couponIdAt(dictionary.find(new StringBuilder("cOdE-5"))));
+        assertEquals(CodeDictionary.NOT_FOUND, dictionary.find("CODE-10000"));
+
+        dictionary.redeem("CODE-4");
+        assertEquals(1429, dictionary.removeCoupon(3));
+        assertEquals(10_000 - 1429, dictionary.size());
+        assertFalse(dictionary.contains("CODE-3"));
+        assertTrue(dictionary.add("CODE-3", 42, false));
+
+        ByteBuffer buffer = ByteBuffer.allocate(dictionary.encodedBytes());
+        dictionary.writeTo(buffer);
+        buffer.flip();
+        CodeDictionary copy = new CodeDictionary();
+        copy.readFrom(buffer);
+        assertEquals(dictionary.size(), copy.size());
+        assertEquals(42, copy.couponIdAt(copy.find("code-3")));
+        assertTrue(copy.isRedeemed(copy.find("CODE-4")));
+        assertTrue(copy.isSingleUse(copy.find("CODE-4")));
+        assertFalse(copy.isSingleUse(copy.find("CODE-5")));
+    }
+
+    @Test
+    void claimsAreNotLostWhileCodesAreAdded() throws Exception {
+        CodeDictionary dictionary = new CodeDictionary();
+        for (int i = 0; i < 2_000; i++) {
+            dictionary.add("CLAIM-" + i, 1, true);
+        }
+
+        // Growth copies the flags into new arrays while the codes are claimed
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                dictionary.add("GROW-" + i, 2, true);
+            }
+            dictionary.removeCoupon(2);
+        });
+        writer.start();
+        for (int i = 0; i < 2_000; i++) {
+            assertTrue(dictionary.redeem("CLAIM-" + i));
+        }
+        writer.join();
+
+        for (int i = 0; i < 2_000; i++) {
+            assertTrue(dictionary.isRedeemed(dictionary.find("CLAIM-" + i)), "CLAIM-" + i);
+            assertFalse(dictionary.redeem("CLAIM-" + i));
+        }
+    }
+}
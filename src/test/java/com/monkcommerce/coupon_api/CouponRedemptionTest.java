@@ -0,0 +1,226 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.model.response.RedemptionsResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CouponRedemptionTest {
+
+    private static final int THREADS = 16;
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+    }
+
+    private Coupon cartWise(int threshold, Integer redemptionLimit) {
+        CouponDetails d = new CouponDetails();
+        d.threshold = threshold;
+        d.discount = threshold / 10.0;
+        d.redemptionLimit = redemptionLimit;
+        Coupon c = new Coupon();
+        c.setType(CouponType.CART_WISE);
+        c.setDetails(d);
+        return c;
+    }
+
+    private Cart cart() {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = 2;
+        item.price = 500;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        return cart;
+    }
+
+    // Runs the task on THREADS threads released at the same moment
+    private void race(Runnable task) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                task.run();
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    void limitIsExactUnderContention() throws Exception {
+        long id = service.createCoupon(cartWise(100, 100)).getId();
+        AtomicInteger committed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+
+        race(() -> {
+            for (int i = 0; i < 200; i++) {
+                try {
+                    ApplyCouponResponse response = service.reserveCoupon(id, cart());
+                    service.commitReservation(response.getReservationId());
+                    committed.incrementAndGet();
+                } catch (CouponException ex) {
+                    assertEquals("Coupon redemption limit reached", ex.getMessage());
+                    rejected.incrementAndGet();
+                }
+            }
+        });
+
+        assertEquals(100, committed.get());
+        assertEquals(THREADS * 200 - 100, rejected.get());
+        RedemptionsResponse redemptions = service.getRedemptions(id);
+        assertEquals(100, redemptions.committed);
+        assertEquals(0, redemptions.reserved);
+    }
+
+    @Test
+    void releasesReturnRedemptionsWithoutOvershoot() throws Exception {
+        long id = service.createCoupon(cartWise(100, 50)).getId();
+        AtomicInteger committed = new AtomicInteger();
+
+        race(() -> {
+            for (int i = 0; i < 500; i++) {
+                try {
+                    long reservation = service.reserveCoupon(id, cart()).getReservationId();
+                    if (ThreadLocalRandom.current().nextBoolean()) {
+                        service.releaseReservation(reservation);
+                    } else {
+                        service.commitReservation(reservation);
+                        committed.incrementAndGet();
+                    }
+                } catch (CouponException ex) {
+                    assertEquals("Coupon redemption limit reached", ex.getMessage());
+                }
+            }
+        });
+
+        assertTrue(committed.get() <= 50);
+        assertEquals(committed.get(), service.getRedemptions(id).committed);
+        assertEquals(0, service.getRedemptions(id).reserved);
+    }
+
+    @Test
+    void globalLimitSpansCoupons() {
+        service.setGlobalRedemptionLimit(3);
+        long first = service.createCoupon(cartWise(100, null)).getId();
+        long second = service.createCoupon(cartWise(200, null)).getId();
+
+        service.commitReservation(service.reserveCoupon(first, cart()).getReservationId());
+        service.commitReservation(service.reserveCoupon(second, cart()).getReservationId());
+        long held = service.reserveCoupon(first, cart()).getReservationId();
+        CouponException ex = assertThrows(CouponException.class, () -> service.reserveCoupon(second, cart()));
+        assertEquals("Global redemption limit reached", ex.getMessage());
+
+        service.releaseReservation(held);
+        service.reserveCoupon(second, cart());
+    }
+
+    @Test
+    void rejectedReservationsAreNotAudited() {
+        AtomicInteger audited = new AtomicInteger();
+        service.setAuditSink((couponId, cart, response) -> audited.incrementAndGet());
+        long id = service.createCoupon(cartWise(100, 1)).getId();
+
+        service.reserveCoupon(id, cart());
+        assertThrows(CouponException.class, () -> service.reserveCoupon(id, cart()));
+        assertEquals(1, audited.get());
+        assertEquals(1, service.getCouponStats(id).get(3).applies);
+    }
+
+    @Test
+    void abandonedReservationsExpire() throws Exception {
+        service.setReservationTtl(Duration.ofMillis(1));
+        long id = service.createCoupon(cartWise(100, 1)).getId();
+
+        ApplyCouponResponse response = service.reserveCoupon(id, cart());
+        assertNotNull(response.getReservationExpiresAt());
+        assertThrows(CouponException.class, () -> service.reserveCoupon(id, cart()));
+        Thread.sleep(5);
+
+        assertEquals(1, service.expireReservations());
+        CouponException ex = assertThrows(CouponException.class,
+                () -> service.commitReservation(response.getReservationId()));
+        assertTrue(ex.getMessage().startsWith("Reservation not found or expired"));
+
+        // An expired reservation cannot be committed even before the sweeper sees it
+        long late = service.reserveCoupon(id, cart()).getReservationId();
+        Thread.sleep(5);
+        assertThrows(CouponException.class, () -> service.commitReservation(late));
+        assertEquals(0, service.getRedemptions(id).reserved);
+        assertEquals(0, service.getRedemptions(id).committed);
+    }
+
+    @Test
+    void codeRedemptionsCountAgainstTheLimit() {
+        Coupon coupon = cartWise(100, 2);
+        coupon.setCode("LIMITED");
+        long id = service.createCoupon(coupon).getId();
+
+        service.redeemCode("LIMITED");
+        service.redeemCode("limited");
+        assertThrows(CouponException.class, () -> service.redeemCode("LIMITED"));
+        assertEquals(2, service.getRedemptions(id).committed);
+
+        assertThrows(CouponException.class, () -> service.createCoupon(cartWise(200, 0)));
+    }
+
+    @Test
+    void singleUseCodeIsRedeemedExactlyOnce() throws Exception {
+        long id = service.createCoupon(cartWise(100, null)).getId();
+        String code = service.generateCodes(id, 1, null).get(0);
+        AtomicInteger redeemed = new AtomicInteger();
+
+        race(() -> {
+            try {
+                service.redeemCode(code);
+                redeemed.incrementAndGet();
+            } catch (CouponException ex) {
+                assertEquals("Coupon code already used: " + code, ex.getMessage());
+            }
+        });
+
+        assertEquals(1, redeemed.get());
+        assertEquals(1, service.getRedemptions(id).committed);
+    }
+
+    @Test
+    void codeRejectedByTheLedgerStaysUnused() {
+        Coupon coupon = cartWise(100, 1);
+        coupon.setCode("LIMITED");
+        long id = service.createCoupon(coupon).getId();
+        String code = service.generateCodes(id, 1, null).get(0);
+
+        service.redeemCode("LIMITED");
+        assertThrows(CouponException.class, () -> service.redeemCode(code));
+        assertFalse(service.codes().isRedeemed(service.codes().find(code)));
+    }
+}
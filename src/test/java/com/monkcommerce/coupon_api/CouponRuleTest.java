@@ -0,0 +1,114 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.QuantityTier;
+import com.monkcommerce.coupon_api.model.rule.BxGyRule;
+import com.monkcommerce.coupon_api.model.rule.CartWiseRule;
+import com.monkcommerce.coupon_api.model.rule.CouponRule;
+import com.monkcommerce.coupon_api.model.rule.ProductWiseRule;
+import com.monkcommerce.coupon_api.service.CouponService;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CouponRuleTest {
+
+    @Test
+    void mapsDetailsToTypedRules() {
+        CouponDetails d = new CouponDetails();
+        d.threshold = 100;
+        d.discount = 12.5;
+        assertEquals(new CartWiseRule(100, 1250), CouponRule.of(CouponType.CART_WISE, d));
+
+        d = new CouponDetails();
+        d.productId = 7;
+        d.discount = 33.333;
+        assertEquals(new ProductWiseRule(7, 3333), CouponRule.of(CouponType.PRODUCT_WISE, d));
+
+        d = new CouponDetails();
+        d.buyProducts = List.of(5, 1, 3);
+        d.getProducts = List.of(9, 2);
+        d.buyQuantity = 2;
+        d.getQuantity = 1;
+        d.repetitionLimit = 4;
+        BxGyRule rule = (BxGyRule) CouponRule.of(CouponType.BXGY, d);
+        assertArrayEquals(new int[] {1, 3, 5}, rule.buyProducts());
+        assertArrayEquals(new int[] {2, 9}, rule.getProducts());
+        assertTrue(rule.isBuyProduct(3));
+        assertFalse(rule.isBuyProduct(2));
+        assertTrue(rule.isGetProduct(9));
+        assertEquals(4, rule.repetitionLimit());
+    }
+
+    @Test
+    void ruleFollowsReplacedDetails() {
+        CouponDetails d = new CouponDetails();
+        d.threshold = 100;
+        d.discount = 10.0;
+        Coupon coupon = new Coupon();
+        coupon.setType(CouponType.CART_WISE);
+        coupon.setDetails(d);
+        assertSame(coupon.getRule(), coupon.getRule());
+
+        CouponDetails replaced = new CouponDetails();
+        replaced.threshold = 200;
+        replaced.discount = 20.0;
+        coupon.setDetails(replaced);
+        assertEquals(new CartWiseRule(200, 2000), coupon.getRule());
+    }
+
+    @Test
+    void storedCouponsKeepOnlyTheRule() {
+        CouponService service = new CouponService();
+
+        CouponDetails tiered = new CouponDetails();
+        tiered.productId = 7;
+        tiered.tiers = List.of(new QuantityTier(10, 15), new QuantityTier(2, 5));
+        tiered.priority = 3;
+        tiered.expiryDate = LocalDate.of(2030, 1, 31);
+        tiered.redemptionLimit = 50;
+        Coupon product = new Coupon();
+        product.setType(CouponType.PRODUCT_WISE);
+        product.setDetails(tiered);
+        product = service.createCoupon(product);
+
+        // The details are rebuilt from the rule on every read, not kept
+        CouponDetails read = product.getDetails();
+        assertNotSame(read, product.getDetails());
+        assertEquals(7, read.productId);
+        assertEquals(2, read.tiers.get(0).minQuantity);
+        assertEquals(15.0, read.tiers.get(1).discount);
+        assertEquals(3, read.priority);
+        assertEquals(LocalDate.of(2030, 1, 31), read.expiryDate);
+        assertEquals(50, read.redemptionLimit);
+        assertNull(read.isActive);
+        assertNull(read.exclusive);
+        assertNull(read.startDate);
+        assertNull(read.usesPerCustomer);
+        assertNull(read.discount);
+
+        CouponDetails rule = new CouponDetails();
+        rule.condition = "total >= 100";
+        rule.discount = 12.5;
+        rule.isActive = false;
+        Coupon expression = new Coupon();
+        expression.setType(CouponType.RULE);
+        expression.setDetails(rule);
+        read = service.createCoupon(expression).getDetails();
+        assertEquals("total >= 100", read.condition);
+        assertEquals(12.5, read.discount);
+        assertEquals(Boolean.FALSE, read.isActive);
+        assertNull(read.productId);
+    }
+
+    @Test
+    void basisPointDiscount() {
+        assertEquals(25.0, CouponRule.discountOf(250.0, 1000));
+        assertEquals(0.0, CouponRule.discountOf(250.0, 0));
+    }
+}
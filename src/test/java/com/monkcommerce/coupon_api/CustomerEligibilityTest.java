@@ -0,0 +1,184 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponItem;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.util.CustomerSet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerEligibilityTest {
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+    }
+
+    private Coupon cartWise(int threshold, double discount, Integer usesPerCustomer) {
+        CouponDetails d = new CouponDetails();
+        d.threshold = threshold;
+        d.discount = discount;
+        d.usesPerCustomer = usesPerCustomer;
+        Coupon c = new Coupon();
+        c.setType(CouponType.CART_WISE);
+        c.setDetails(d);
+        return c;
+    }
+
+    private Cart cart(Long customerId) {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = 2;
+        item.price = 500;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        cart.customerId = customerId;
+        return cart;
+    }
+
+    private List<Long> applicableIds(Long customerId) {
+        List<Long> ids = new ArrayList<>();
+        for (ApplicableCouponItem item : service.getApplicableCoupons(cart(customerId)).applicable_coupons) {
+            ids.add(item.coupon_id);
+        }
+        return ids;
+    }
+
+    @Test
+    void customerSetMembership() {
+        CustomerSet small = CustomerSet.of(new long[] {9, 3, 3, -4, 9});
+        assertEquals(3, small.size());
+        assertTrue(small.contains(-4));
+        assertFalse(small.contains(4));
+
+        // Large enough for the Bloom filter: no false negatives, and about 9 bytes per member
+        long[] ids = new long[1_000_000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i * 7L + 1_000_000_000L;
+        }
+        CustomerSet large = CustomerSet.of(ids);
+        for (int i = 0; i < 1_000_000; i += 997) {
+            assertTrue(large.contains(i * 7L + 1_000_000_000L));
+            assertFalse(large.contains(i * 7L + 1_000_000_001L));
+        }
+        assertTrue(large.memoryBytes() <= 10L * large.size());
+    }
+
+    @Test
+    void customerListsRestrictCoupons() {
+        long open = service.createCoupon(cartWise(100, 5, null)).getId();
+        long members = service.createCoupon(cartWise(500, 20, null)).getId();
+        assertEquals(2, service.setEligibleCustomers(members, new long[] {11, 12, 12}).customers);
+
+        assertEquals(200.0, service.applyCouponToCart(members, cart(11L)).getTotalDiscount(), 1e-9);
+        CouponException ex = assertThrows(CouponException.class,
+                () -> service.applyCouponToCart(members, cart(13L)));
+        assertEquals("Coupon not available for this customer", ex.getMessage());
+        ex = assertThrows(CouponException.class, () -> service.applyCouponToCart(members, cart(null)));
+        assertEquals("Customer id required for this coupon", ex.getMessage());
+
+        // The best cart-wise coupon falls back to a lower threshold for non-members
+        assertEquals(List.of(members), applicableIds(11L));
+        assertEquals(List.of(open), applicableIds(13L));
+        assertEquals(List.of(open), applicableIds(null));
+
+        service.clearEligibleCustomers(members);
+        assertEquals(List.of(members), applicableIds(13L));
+    }
+
+    @Test
+    void restrictedBxgyCouponsAreNotCountedAsEvaluated() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        service = new CouponService(new CouponMetrics(registry));
+        CouponDetails d = new CouponDetails();
+        d.buyProducts = List.of(1);
+        d.buyQuantity = 1;
+        d.getProducts = List.of(2);
+        d.getQuantity = 1;
+        d.repetitionLimit = 1;
+        Coupon bxgy = new Coupon();
+        bxgy.setType(CouponType.BXGY);
+        bxgy.setDetails(d);
+        long members = service.createCoupon(bxgy).getId();
+        service.setEligibleCustomers(members, new long[] {11});
+
+        Counter evaluated = registry.get("coupon.candidates.evaluated").tag("type", "BXGY").counter();
+        service.getApplicableCoupons(cart(13L));
+        assertEquals(0.0, evaluated.count());
+        service.getApplicableCoupons(cart(11L));
+        assertEquals(1.0, evaluated.count());
+    }
+
+    @Test
+    void usesPerCustomerAreLimited() {
+        long id = service.createCoupon(cartWise(100, 5, 1)).getId();
+
+        long reservation = service.reserveCoupon(id, cart(7L)).getReservationId();
+        CouponException ex = assertThrows(CouponException.class, () -> service.reserveCoupon(id, cart(7L)));
+        assertEquals("Coupon usage limit reached for this customer", ex.getMessage());
+        ex = assertThrows(CouponException.class, () -> service.reserveCoupon(id, cart(null)));
+        assertEquals("Customer id required for this coupon", ex.getMessage());
+
+        // Released uses can be taken again; committed ones cannot
+        service.releaseReservation(reservation);
+        service.commitReservation(service.reserveCoupon(id, cart(7L)).getReservationId());
+        assertTrue(applicableIds(7L).isEmpty());
+        assertEquals(List.of(id), applicableIds(8L));
+        assertThrows(CouponException.class, () -> service.applyCouponToCart(id, cart(7L)));
+        service.reserveCoupon(id, cart(8L));
+    }
+
+    @Test
+    void oneUsePerCustomerUnderContention() throws Exception {
+        long id = service.createCoupon(cartWise(100, 5, 1)).getId();
+        AtomicInteger reserved = new AtomicInteger();
+
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (long customer = 0; customer < 100; customer++) {
+                    try {
+                        service.reserveCoupon(id, cart(customer));
+                        reserved.incrementAndGet();
+                    } catch (CouponException ex) {
+                        assertEquals("Coupon usage limit reached for this customer", ex.getMessage());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+
+        // Exactly one reservation per customer
+        assertEquals(100, reserved.get());
+        assertEquals(100, service.getRedemptions(id).reserved);
+    }
+}
@@ -0,0 +1,112 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.idempotency.IdempotencyCache;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyCacheTest {
+
+    private final AtomicInteger evaluations = new AtomicInteger();
+
+    private ApplyCouponResponse evaluate() {
+        evaluations.incrementAndGet();
+        return new ApplyCouponResponse(new ArrayList<>(), 100, 10, 90);
+    }
+
+    private Cart cart(int quantity) {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = quantity;
+        item.price = 50;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        return cart;
+    }
+
+    @Test
+    void duplicatesReturnTheStoredResponse() {
+        IdempotencyCache cache = new IdempotencyCache(1000, Duration.ofMinutes(1));
+        long fingerprint = IdempotencyCache.fingerprint(1, false, cart(2));
+
+        ApplyCouponResponse first = cache.execute("default", "k1", fingerprint, this::evaluate);
+        assertSame(first, cache.execute("default", "k1", fingerprint, this::evaluate));
+        assertEquals(1, evaluations.get());
+
+        // Same key in another tenant is a different request
+        cache.execute("other", "k1", IdempotencyCache.fingerprint(9, true, cart(1)), this::evaluate);
+        assertEquals(2, evaluations.get());
+
+        CouponException ex = assertThrows(CouponException.class, () -> cache.execute("default", "k1",
+                IdempotencyCache.fingerprint(1, false, cart(3)), this::evaluate));
+        assertEquals("Idempotency-Key already used for a different request", ex.getMessage());
+        assertThrows(CouponException.class, () -> cache.execute("default", "", fingerprint, this::evaluate));
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        IdempotencyCache cache = new IdempotencyCache(1000, Duration.ofMinutes(1));
+        assertThrows(CouponException.class, () -> cache.execute("default", "k", 1, () -> {
+            throw new CouponException("Coupon not found or inactive");
+        }));
+        cache.execute("default", "k", 1, this::evaluate);
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void concurrentDuplicatesWaitForTheFirstEvaluation() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(1000, Duration.ofMinutes(1));
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<ApplyCouponResponse>> futures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                return cache.execute("default", "retry", 7, () -> {
+                    try {
+                        Thread.sleep(50);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return evaluate();
+                });
+            }));
+        }
+        start.countDown();
+        ApplyCouponResponse first = futures.get(0).get(30, TimeUnit.SECONDS);
+        for (Future<ApplyCouponResponse> future : futures) {
+            assertSame(first, future.get(30, TimeUnit.SECONDS));
+        }
+        pool.shutdown();
+        assertEquals(1, evaluations.get());
+    }
+
+    @Test
+    void entriesAreBoundedAndExpire() throws Exception {
+        IdempotencyCache cache = new IdempotencyCache(160, Duration.ofMinutes(1));
+        for (int i = 0; i < 10_000; i++) {
+            cache.execute("default", "key-" + i, i, this::evaluate);
+        }
+        assertTrue(cache.size() <= 160);
+
+        IdempotencyCache shortLived = new IdempotencyCache(1000, Duration.ofMillis(1));
+        shortLived.execute("default", "k", 1, this::evaluate);
+        Thread.sleep(5);
+        shortLived.execute("default", "k", 1, this::evaluate);
+        assertEquals(10_002, evaluations.get());
+    }
+}
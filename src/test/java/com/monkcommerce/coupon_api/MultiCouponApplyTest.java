@@ -0,0 +1,132 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MultiCouponApplyTest {
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+    }
+
+    private long cartCoupon(int threshold, double discount) {
+        CouponDetails details = new CouponDetails();
+        details.threshold = threshold;
+        details.discount = discount;
+        Coupon coupon = new Coupon();
+        coupon.setType(CouponType.CART_WISE);
+        coupon.setDetails(details);
+        return service.createCoupon(coupon).getId();
+    }
+
+    private long productCoupon(int productId, double discount, Boolean exclusive) {
+        CouponDetails details = new CouponDetails();
+        details.productId = productId;
+        details.discount = discount;
+        details.exclusive = exclusive;
+        Coupon coupon = new Coupon();
+        coupon.setType(CouponType.PRODUCT_WISE);
+        coupon.setDetails(details);
+        return service.createCoupon(coupon).getId();
+    }
+
+    // Cart of {productId, quantity, price} lines
+    private Cart cart(double[]... lines) {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        for (double[] line : lines) {
+            CartItem item = new CartItem();
+            item.productId = (int) line[0];
+            item.quantity = (int) line[1];
+            item.price = line[2];
+            cart.items.add(item);
+        }
+        return cart;
+    }
+
+    private static double lineSum(ApplyCouponResponse response) {
+        return response.getItems().stream().mapToDouble(i -> i.totalDiscount).sum();
+    }
+
+    @Test
+    void laterCouponsSeeTheDiscountedCart() {
+        long product = productCoupon(1, 20, null);
+        long cartWide = cartCoupon(50, 10);
+
+        // 20% off the first line (100 → 80), then 10% of the remaining 180, split pro rata
+        ApplyCouponResponse response = service.applyCouponsToCart(List.of(product, cartWide),
+                cart(new double[] {1, 2, 50}, new double[] {2, 1, 100}));
+        assertEquals(200.0, response.getTotalPrice(), 1e-9);
+        assertEquals(38.0, response.getTotalDiscount(), 1e-9);
+        assertEquals(162.0, response.getFinalPrice(), 1e-9);
+        assertEquals(28.0, response.getItems().get(0).totalDiscount, 1e-9);
+        assertEquals(10.0, response.getItems().get(1).totalDiscount, 1e-9);
+        assertEquals(response.getTotalDiscount(), lineSum(response), 1e-9);
+
+        // The same coupon twice on one product compounds on what is left of the line
+        long second = productCoupon(1, 60, null);
+        long third = productCoupon(1, 60, null);
+        response = service.applyCouponsToCart(List.of(second, third), cart(new double[] {1, 1, 100}));
+        assertEquals(84.0, response.getTotalDiscount(), 1e-9);
+        assertEquals(84.0, response.getItems().get(0).totalDiscount, 1e-9);
+
+        // A single id gives the same result as the single-coupon endpoint
+        assertEquals(service.applyCouponToCart(product, cart(new double[] {1, 3, 10})).getTotalDiscount(),
+                service.applyCouponsToCart(List.of(product), cart(new double[] {1, 3, 10})).getTotalDiscount(), 1e-9);
+    }
+
+    @Test
+    void cartWiseThresholdIsCheckedAgainstTheDiscountedTotal() {
+        long product = productCoupon(1, 50, null);
+        long cartWide = cartCoupon(80, 10);
+
+        // 100 → 50 after the product coupon, below the cart-wise threshold of 80
+        ApplyCouponResponse response = service.applyCouponsToCart(List.of(product, cartWide),
+                cart(new double[] {1, 1, 100}));
+        assertEquals(50.0, response.getTotalDiscount(), 1e-9);
+        assertEquals(50.0, response.getFinalPrice(), 1e-9);
+        assertEquals(response.getTotalDiscount(), lineSum(response), 1e-9);
+
+        // The other way round the full total meets the threshold: 10 off, then half of the 90 left
+        response = service.applyCouponsToCart(List.of(cartWide, product), cart(new double[] {1, 1, 100}));
+        assertEquals(55.0, response.getTotalDiscount(), 1e-9);
+    }
+
+    @Test
+    void invalidCombinationsAreRejectedBeforeAnyCouponApplies() {
+        long cartWide = cartCoupon(10, 10);
+        long exclusive = productCoupon(1, 20, true);
+        Cart cart = cart(new double[] {1, 1, 100});
+
+        assertThrows(CouponException.class, () -> service.applyCouponsToCart(List.of(cartWide, cartWide), cart));
+        assertThrows(CouponException.class, () -> service.applyCouponsToCart(List.of(cartWide, 999L), cart));
+        assertThrows(CouponException.class, () -> service.applyCouponsToCart(List.of(), cart));
+        assertThrows(CouponException.class,
+                () -> service.applyCouponsToCart(Collections.nCopies(CouponService.MAX_COMBINED_COUPONS + 1, cartWide), cart));
+        assertThrows(CouponException.class, () -> service.applyCouponsToCart(List.of(cartWide), cart()));
+
+        String error = assertThrows(CouponException.class,
+                () -> service.applyCouponsToCart(List.of(cartWide, exclusive), cart)).getMessage();
+        assertEquals("Coupon " + exclusive + " is exclusive and cannot be combined with other coupons", error);
+
+        // On its own an exclusive coupon applies as usual
+        assertEquals(20.0, service.applyCouponsToCart(List.of(exclusive), cart).getTotalDiscount(), 1e-9);
+    }
+}
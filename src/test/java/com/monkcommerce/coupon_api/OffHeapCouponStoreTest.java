@@ -0,0 +1,223 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
+import com.monkcommerce.coupon_api.model.rule.BxGyRule;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.OffHeapCouponStore;
+import com.monkcommerce.coupon_api.util.IntListView;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapCouponStoreTest {
+
+    private Coupon bxgy(long id, List<Integer> buy, List<Integer> get) {
+        CouponDetails d = new CouponDetails();
+        d.buyProducts = buy;
+        d.getProducts = get;
+        d.buyQuantity = 2;
+        d.getQuantity = 1;
+        d.repetitionLimit = 3;
+        d.expiryDate = LocalDate.of(2030, 1, 31);
+        Coupon c = new Coupon();
+        c.setId(id);
+        c.setType(CouponType.BXGY);
+        c.setDetails(d);
+        return c;
+    }
+
+    private Coupon cartWise(int threshold, double discount) {
+        CouponDetails d = new CouponDetails();
+        d.threshold = threshold;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.CART_WISE);
+        c.setDetails(d);
+        return c;
+    }
+
+    private Coupon productWise(int productId, double discount) {
+        CouponDetails d = new CouponDetails();
+        d.productId = productId;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.PRODUCT_WISE);
+        c.setDetails(d);
+        return c;
+    }
+
+    /**
+     * Heap retained per stored coupon, measured after full GCs. Either way a coupon keeps its
+     * CouponView and rule on the heap (evaluation reads them) plus its index entries. The heap
+     * store adds only the bound Coupon, which shares that rule and keeps no CouponDetails, so
+     * off-heap storage saves little more than that object and its map entry.
+     */
+    @Test
+    void heapCostPerCoupon() {
+        long heap = heapPerCoupon(new CouponService());
+        long offHeap = heapPerCoupon(new CouponService(CouponMetrics.noop(), new OffHeapCouponStore(1 << 20)));
+        assertTrue(heap <= HEAP_STORE_BYTES_PER_COUPON,
+                String.format("heap store retains %d bytes/coupon, budget is %d", heap, HEAP_STORE_BYTES_PER_COUPON));
+        assertTrue(offHeap <= OFF_HEAP_STORE_BYTES_PER_COUPON,
+                String.format("off-heap store retains %d bytes/coupon, budget is %d", offHeap, OFF_HEAP_STORE_BYTES_PER_COUPON));
+    }
+
+    // Per-coupon budgets for BXGY coupons of two buy and one get product, roughly 25% above the measured cost
+    private static final long HEAP_STORE_BYTES_PER_COUPON = 640;
+    private static final long OFF_HEAP_STORE_BYTES_PER_COUPON = 560;
+    private static final int MEASURED_COUPONS = 20_000;
+
+    private long heapPerCoupon(CouponService service) {
+        long before = usedHeap();
+        for (int i = 1; i <= MEASURED_COUPONS; i++) {
+            Coupon coupon = bxgy(0, new ArrayList<>(List.of(i, i + 1)), new ArrayList<>(List.of(i + 2)));
+            coupon.getDetails().expiryDate = null;
+            service.createCoupon(coupon);
+        }
+        long after = usedHeap();
+        assertEquals(MEASURED_COUPONS, service.allCoupons().size());
+        return (after - before) / MEASURED_COUPONS;
+    }
+
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    @Test
+    void recordsRoundTrip() {
+        OffHeapCouponStore store = new OffHeapCouponStore(4096);
+        Coupon original = bxgy(7, List.of(1, 2), List.of(3));
+        original.getDetails().isActive = false;
+        store.put(original);
+
+        Coupon read = store.get(7);
+        assertEquals(7, read.getId());
+        assertEquals(CouponType.BXGY, read.getType());
+        assertEquals(List.of(1, 2), read.getDetails().buyProducts);
+        assertEquals(List.of(3), read.getDetails().getProducts);
+        assertEquals(2, read.getDetails().buyQuantity);
+        assertEquals(1, read.getDetails().getQuantity);
+        assertEquals(3, read.getDetails().repetitionLimit);
+        assertEquals(Boolean.FALSE, read.getDetails().isActive);
+        assertEquals(LocalDate.of(2030, 1, 31), read.getDetails().expiryDate);
+
+        // Unset fields stay unset
+        assertNull(read.getDetails().startDate);
+        assertNull(read.getDetails().threshold);
+        assertNull(read.getDetails().discount);
+        assertNull(read.getDetails().productId);
+
+        assertNull(store.get(8));
+    }
+
+    @Test
+    void updatesAndDeletesAreCompacted() {
+        // Small slabs so churn spans several of them
+        OffHeapCouponStore store = new OffHeapCouponStore(256);
+        for (long id = 1; id <= 20; id++) {
+            store.put(bxgy(id, List.of((int) id), List.of((int) id + 100)));
+        }
+        for (int round = 0; round < 10; round++) {
+            for (long id = 1; id <= 20; id++) {
+                store.put(bxgy(id, List.of((int) id, round), List.of((int) id + 100)));
+            }
+        }
+        for (long id = 1; id <= 10; id++) {
+            assertEquals(id, store.remove(id).getId());
+        }
+        assertNull(store.remove(1));
+
+        assertEquals(10, store.size());
+        assertEquals(10, store.values().size());
+        for (long id = 11; id <= 20; id++) {
+            assertEquals(List.of((int) id, 9), store.get(id).getDetails().buyProducts);
+        }
+        // Dead records never outweigh live ones for long
+        assertTrue(store.reservedBytes() <= 4 * store.bytes() + 2 * 256);
+    }
+
+    @Test
+    void decodedCouponsShareTheInternedProductSets() {
+        CouponService service = new CouponService(CouponMetrics.noop(), new OffHeapCouponStore(1 << 16));
+        Coupon created = service.createCoupon(bxgy(0, List.of(2, 1), List.of(3)));
+
+        // The index keeps one sorted array per product set, and every decode resolves to it
+        Coupon read = service.getCouponById(created.getId());
+        assertNotSame(created, read);
+        assertEquals(List.of(1, 2), read.getDetails().buyProducts);
+        int[] buy = ((BxGyRule) created.getRule()).buyProducts();
+        assertSame(buy, ((IntListView) created.getDetails().buyProducts).array());
+        assertSame(buy, ((IntListView) read.getDetails().buyProducts).array());
+        assertSame(buy, ((BxGyRule) read.getRule()).buyProducts());
+    }
+
+    @Test
+    void offHeapServiceMatchesHeapService() {
+        CouponService heap = new CouponService();
+        CouponService offHeap = new CouponService(CouponMetrics.noop(), new OffHeapCouponStore(1024));
+        for (CouponService service : List.of(heap, offHeap)) {
+            service.createCoupon(cartWise(100, 10));
+            service.createCoupon(productWise(1, 20));
+            service.createCoupon(bxgy(0, List.of(1, 2), List.of(3)));
+        }
+
+        // Update through the off-heap store keeps the type when the payload omits it
+        Coupon update = new Coupon();
+        update.setDetails(new CouponDetails());
+        update.getDetails().discount = 15.0;
+        assertEquals(CouponType.CART_WISE, offHeap.updateCouponById(1, update).getType());
+        update = new Coupon();
+        update.setDetails(new CouponDetails());
+        update.getDetails().discount = 15.0;
+        heap.updateCouponById(1, update);
+
+        ApplicableCouponsResponse expected = heap.getApplicableCoupons(cart());
+        ApplicableCouponsResponse actual = offHeap.getApplicableCoupons(cart());
+        assertEquals(expected.applicable_coupons.size(), actual.applicable_coupons.size());
+        for (int i = 0; i < expected.applicable_coupons.size(); i++) {
+            assertEquals(expected.applicable_coupons.get(i).coupon_id, actual.applicable_coupons.get(i).coupon_id);
+            assertEquals(expected.applicable_coupons.get(i).discount, actual.applicable_coupons.get(i).discount, 1e-9);
+        }
+
+        assertEquals(heap.applyCouponToCart(3, cart()).getTotalDiscount(),
+                offHeap.applyCouponToCart(3, cart()).getTotalDiscount(), 1e-9);
+
+        offHeap.deleteCoupon(3);
+        assertEquals(2, offHeap.getCoupon(true).size());
+    }
+
+    private Cart cart() {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        cart.items.add(item(1, 4, 50));
+        cart.items.add(item(2, 2, 30));
+        cart.items.add(item(3, 2, 25));
+        return cart;
+    }
+
+    private CartItem item(int productId, int quantity, double price) {
+        CartItem item = new CartItem();
+        item.productId = productId;
+        item.quantity = quantity;
+        item.price = price;
+        return item;
+    }
+}
@@ -4,14 +4,19 @@ import com.monkcommerce.coupon_api.exception.CouponException;
 import com.monkcommerce.coupon_api.model.Coupon;
 import com.monkcommerce.coupon_api.model.CouponDetails;
 import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.QuantityTier;
 import com.monkcommerce.coupon_api.model.cart.Cart;
 import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponItem;
 import com.monkcommerce.coupon_api.model.response.ApplicableCouponsResponse;
 import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
 import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.OffHeapCouponStore;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -53,11 +58,10 @@ public class ProductWiseCouponServiceTest {
         assertEquals(101, c2.getDetails().productId);
         assertTrue(c2.getDetails().isActive());
 
-        // Step 3: duplicate active → exception
-        Coupon duplicate = buildProductCoupon(101, 25, true);
-        CouponException ex = assertThrows(CouponException.class,
-                () -> service.createCoupon(duplicate));
-        assertTrue(ex.getMessage().contains("Active product-wise coupon already exists for productId"));
+        // Step 3: second active coupon on the same product → allowed, ranked with the first
+        Coupon overlapping = buildProductCoupon(101, 25, true);
+        Coupon c3 = service.createCoupon(overlapping);
+        assertTrue(c3.getDetails().isActive());
 
         // Step 4: another inactive coupon → allowed
         Coupon inactive2 = buildProductCoupon(102, 15, false);
@@ -67,7 +71,7 @@ public class ProductWiseCouponServiceTest {
 
         // Step 5: Create coupon with productId null
         Coupon inactive3 = buildProductCoupon(103, 0, false);
-        ex = assertThrows(CouponException.class,
+        CouponException ex = assertThrows(CouponException.class,
                 () -> service.createCoupon(inactive3));
         assertTrue(ex.getMessage().contains("Product-wise coupon must have a valid discount"));
     }
@@ -232,4 +236,239 @@ public class ProductWiseCouponServiceTest {
             assertTrue(ex.getMessage().equals("Cart items cannot be empty"));
         }
     }
+
+    private Coupon buildTieredCoupon(int productId, QuantityTier... tiers) {
+        CouponDetails details = new CouponDetails();
+        details.productId = productId;
+        details.tiers = new ArrayList<>(List.of(tiers));
+
+        Coupon coupon = new Coupon();
+        coupon.setType(CouponType.PRODUCT_WISE);
+        coupon.setDetails(details);
+        return coupon;
+    }
+
+    private CartItem line(int productId, int quantity, double price) {
+        CartItem item = new CartItem();
+        item.productId = productId;
+        item.quantity = quantity;
+        item.price = price;
+        return item;
+    }
+
+    @Test
+    void tieredDiscountFollowsLineQuantity() {
+        // Buy 5+ get 10%, 20+ get 15%, 100+ get 25%; tiers may be given in any order
+        long id = service.createCoupon(buildTieredCoupon(9,
+                new QuantityTier(100, 25), new QuantityTier(5, 10), new QuantityTier(20, 15))).getId();
+
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(line(9, 4, 10.0)));
+        assertEquals(0.0, service.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+        assertTrue(service.getApplicableCoupons(cart).applicable_coupons.isEmpty());
+
+        double[][] expected = {{5, 5.0}, {19, 19.0}, {20, 30.0}, {99, 148.5}, {100, 250.0}, {1000, 2500.0}};
+        for (double[] quantityAndDiscount : expected) {
+            cart.items = new ArrayList<>(List.of(line(9, (int) quantityAndDiscount[0], 10.0)));
+            assertEquals(quantityAndDiscount[1], service.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+            ApplicableCouponItem item = service.getApplicableCoupons(cart).applicable_coupons.get(0);
+            assertEquals(id, item.coupon_id);
+            assertEquals(quantityAndDiscount[1], item.discount, 1e-9);
+        }
+    }
+
+    @Test
+    void tiersMustIncreaseWithQuantity() {
+        CouponException ex = assertThrows(CouponException.class, () -> service.createCoupon(
+                buildTieredCoupon(9, new QuantityTier(5, 10), new QuantityTier(20, 10))));
+        assertEquals("Invalid product-wise tiers: quantity 20 has lower or equal discount 10.00% than quantity 5 discount 10.00%",
+                ex.getMessage());
+
+        ex = assertThrows(CouponException.class, () -> service.createCoupon(
+                buildTieredCoupon(9, new QuantityTier(5, 10), new QuantityTier(5, 15))));
+        assertEquals("Product-wise tier already exists for quantity 5", ex.getMessage());
+
+        assertThrows(CouponException.class, () -> service.createCoupon(buildTieredCoupon(9, new QuantityTier(0, 10))));
+        assertThrows(CouponException.class, () -> service.createCoupon(buildTieredCoupon(9)));
+
+        Coupon both = buildTieredCoupon(9, new QuantityTier(5, 10));
+        both.getDetails().discount = 5.0;
+        ex = assertThrows(CouponException.class, () -> service.createCoupon(both));
+        assertEquals("Product-wise coupon must have either a discount or tiers, not both", ex.getMessage());
+
+        // Tiered and flat coupons on one product coexist; each line gets the better of them
+        long tiered = service.createCoupon(buildTieredCoupon(9, new QuantityTier(5, 10), new QuantityTier(20, 30))).getId();
+        long flat = service.createCoupon(buildProductCoupon(9, 20, true)).getId();
+        assertEquals(flat, bestFor(9, 10).coupon_id);
+        assertEquals(tiered, bestFor(9, 25).coupon_id);
+    }
+
+    // The product-wise coupon offered for a single-line cart
+    private ApplicableCouponItem bestFor(int productId, int quantity) {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(line(productId, quantity, 10.0)));
+        List<ApplicableCouponItem> offered = service.getApplicableCoupons(cart).applicable_coupons.stream()
+                .filter(c -> c.type.equals("PRODUCT_WISE")).toList();
+        assertEquals(1, offered.size());
+        return offered.get(0);
+    }
+
+    private Coupon rankedCoupon(int productId, double discount, Integer priority, Boolean exclusive) {
+        Coupon coupon = buildProductCoupon(productId, discount, true);
+        coupon.getDetails().priority = priority;
+        coupon.getDetails().exclusive = exclusive;
+        return coupon;
+    }
+
+    @Test
+    void bestCouponFollowsExclusivityPriorityThenDiscount() {
+        long everyday = service.createCoupon(rankedCoupon(5, 10, null, null)).getId();
+        long bigger = service.createCoupon(rankedCoupon(5, 25, null, null)).getId();
+        assertEquals(bigger, bestFor(5, 1).coupon_id);
+        assertEquals(25.0, bestFor(5, 10).discount, 1e-9);
+
+        // A higher-priority campaign wins over a larger discount
+        long campaign = service.createCoupon(rankedCoupon(5, 15, 10, null)).getId();
+        assertEquals(campaign, bestFor(5, 1).coupon_id);
+
+        // An exclusive coupon wins over every non-exclusive one
+        long exclusive = service.createCoupon(rankedCoupon(5, 5, 0, true)).getId();
+        assertEquals(exclusive, bestFor(5, 1).coupon_id);
+
+        // Removing winners falls back down the ranking
+        service.deleteCoupon(exclusive);
+        assertEquals(campaign, bestFor(5, 1).coupon_id);
+        service.deleteCoupon(campaign);
+        assertEquals(bigger, bestFor(5, 1).coupon_id);
+        service.deleteCoupon(bigger);
+        assertEquals(everyday, bestFor(5, 1).coupon_id);
+
+        assertThrows(CouponException.class, () -> service.createCoupon(rankedCoupon(5, 10, -1, null)));
+        assertThrows(CouponException.class, () -> service.createCoupon(rankedCoupon(5, 10, 1001, null)));
+    }
+
+    @Test
+    void couponsOutsideTheirDateWindowAreSkipped() {
+        LocalDate today = LocalDate.now();
+        long current = service.createCoupon(buildProductCoupon(6, 10, true)).getId();
+
+        Coupon future = buildProductCoupon(6, 40, true);
+        future.getDetails().startDate = today.plusDays(3);
+        long futureId = service.createCoupon(future).getId();
+
+        Coupon expired = rankedCoupon(6, 50, 100, true);
+        expired.getDetails().expiryDate = today.minusDays(1);
+        long expiredId = service.createCoupon(expired).getId();
+
+        assertEquals(current, bestFor(6, 1).coupon_id);
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(line(6, 1, 10.0)));
+        assertThrows(CouponException.class, () -> service.applyCouponToCart(futureId, cart));
+        assertThrows(CouponException.class, () -> service.applyCouponToCart(expiredId, cart));
+
+        Coupon empty = buildProductCoupon(6, 10, true);
+        empty.getDetails().startDate = today;
+        empty.getDetails().expiryDate = today.minusDays(1);
+        assertThrows(CouponException.class, () -> service.createCoupon(empty));
+    }
+
+    @Test
+    void ineligibleWinnersFallBackToTheNextCoupon() {
+        // The top coupon is restricted to other customers; the line gets the next one
+        long open = service.createCoupon(buildProductCoupon(8, 10, true)).getId();
+        long restricted = service.createCoupon(rankedCoupon(8, 30, 5, null)).getId();
+        service.setEligibleCustomers(restricted, new long[] {42L});
+        assertEquals(open, bestFor(8, 1).coupon_id);
+
+        // A tiered coupon below its first tier does not hide a flat one
+        service.deleteCoupon(restricted);
+        long tiered = service.createCoupon(buildTieredCoupon(8, new QuantityTier(10, 50))).getId();
+        assertEquals(open, bestFor(8, 2).coupon_id);
+        assertEquals(tiered, bestFor(8, 10).coupon_id);
+
+        // Many coupons on one popular product, updated and deleted in any order
+        List<Long> ids = new ArrayList<>();
+        for (int i = 1; i <= 200; i++) {
+            ids.add(service.createCoupon(rankedCoupon(77, 1 + i % 90, i % 3, null)).getId());
+        }
+        for (int i = 0; i < ids.size(); i += 2) {
+            service.deleteCoupon(ids.get(i));
+        }
+        // Best remaining: priority 2, largest percentage (of a 10.0 line)
+        double expected = 0;
+        for (int i = 1; i <= 200; i++) {
+            if ((i - 1) % 2 == 1 && i % 3 == 2) {
+                expected = Math.max(expected, 1 + i % 90);
+            }
+        }
+        assertEquals(expected / 10, bestFor(77, 1).discount, 1e-9);
+    }
+
+    @Test
+    void updateSwitchesBetweenFlatAndTiers() {
+        long id = service.createCoupon(buildProductCoupon(3, 20, true)).getId();
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(line(3, 10, 10.0)));
+        assertEquals(20.0, service.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+
+        CouponDetails tiered = new CouponDetails();
+        tiered.tiers = List.of(new QuantityTier(10, 30), new QuantityTier(50, 40));
+        Coupon update = new Coupon();
+        update.setDetails(tiered);
+        service.updateCouponById(id, update);
+        assertNull(service.getCouponById(id).getDetails().discount);
+        assertEquals(30.0, service.getApplicableCoupons(cart).applicable_coupons.get(0).discount, 1e-9);
+
+        CouponDetails flat = new CouponDetails();
+        flat.discount = 5.0;
+        update = new Coupon();
+        update.setDetails(flat);
+        service.updateCouponById(id, update);
+        assertNull(service.getCouponById(id).getDetails().tiers);
+        assertEquals(5.0, service.getApplicableCoupons(cart).applicable_coupons.get(0).discount, 1e-9);
+    }
+
+    @Test
+    void largeCartsResolveEveryLine() {
+        for (int p = 0; p < 2_000; p += 2) {
+            service.createCoupon(buildTieredCoupon(p, new QuantityTier(1, 5), new QuantityTier(10, 10)));
+        }
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        for (int p = 0; p < 4_000; p++) {
+            cart.items.add(line(p, 1 + p % 20, 2.0));
+        }
+
+        // Products 0..1998 step 2 have coupons; each line gets the tier for its own quantity
+        double expected = 0.0;
+        for (int p = 0; p < 2_000; p += 2) {
+            int quantity = 1 + p % 20;
+            expected += quantity * 2.0 * (quantity >= 10 ? 0.10 : 0.05);
+        }
+        List<ApplicableCouponItem> items = service.getApplicableCoupons(cart).applicable_coupons;
+        assertEquals(1_000, items.size());
+        assertEquals(expected, items.stream().mapToDouble(i -> i.discount).sum(), 1e-6);
+    }
+
+    @Test
+    void tiersSurviveOffHeapStorage() {
+        CouponService offHeap = new CouponService(CouponMetrics.noop(), new OffHeapCouponStore(4096));
+        long id = offHeap.createCoupon(buildTieredCoupon(5, new QuantityTier(2, 10), new QuantityTier(4, 12.5))).getId();
+
+        List<QuantityTier> tiers = offHeap.getCouponById(id).getDetails().tiers;
+        assertEquals(2, tiers.size());
+        assertEquals(4, tiers.get(1).minQuantity);
+        assertEquals(12.5, tiers.get(1).discount, 1e-9);
+
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(line(5, 4, 10.0)));
+        assertEquals(5.0, offHeap.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+
+        long ranked = offHeap.createCoupon(rankedCoupon(5, 20, 7, true)).getId();
+        CouponDetails stored = offHeap.getCouponById(ranked).getDetails();
+        assertEquals(7, stored.priority);
+        assertTrue(stored.exclusive);
+        assertNull(offHeap.getCouponById(id).getDetails().exclusive);
+        offHeap.close();
+    }
 }
@@ -0,0 +1,129 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.ratelimit.RateLimitInterceptor;
+import com.monkcommerce.coupon_api.ratelimit.RateLimiter;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimiterTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void burstThenSteadyRate() {
+        RateLimiter limiter = new RateLimiter(10, 5, 1024);
+        long now = -7 * SECOND;
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("a", now));
+        }
+        long wait = limiter.tryAcquire("a", now);
+        assertEquals(SECOND / 10, wait);
+
+        // Other clients have their own buckets
+        assertEquals(0, limiter.tryAcquire("b", now));
+
+        // One token refills every 100ms
+        assertEquals(0, limiter.tryAcquire("a", now + wait));
+        assertTrue(limiter.tryAcquire("a", now + wait) > 0);
+        // After a full second the whole burst is back
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("a", now + 2 * SECOND));
+        }
+    }
+
+    @Test
+    void boundedTableEvictsIdleClients() {
+        RateLimiter limiter = new RateLimiter(1, 2, 16);
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(0, limiter.tryAcquire("client-" + i, i * SECOND));
+        }
+        // A client that is still active keeps its bucket
+        RateLimiter busy = new RateLimiter(1, 1, 16);
+        assertEquals(0, busy.tryAcquire("hot", 0));
+        for (int i = 0; i < 100; i++) {
+            busy.tryAcquire("client-" + i, 0);
+        }
+        assertTrue(busy.tryAcquire("hot", 0) > 0);
+    }
+
+    @Test
+    void concurrentRequestsNeverExceedTheBurst() throws Exception {
+        RateLimiter limiter = new RateLimiter(1, 100, 1024);
+        AtomicInteger allowed = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < 16; t++) {
+            futures.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("scraper", 0) == 0) {
+                        allowed.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        pool.shutdown();
+        assertEquals(100, allowed.get());
+    }
+
+    @Test
+    void interceptorRejectsWith429() throws Exception {
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(new RateLimiter(1, 1, 1024), "X-Api-Key", Set.of("key-1"));
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/applicable-coupons");
+        request.addHeader("X-Api-Key", "key-1");
+        assertTrue(interceptor.preHandle(request, new MockHttpServletResponse(), null));
+
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+        assertFalse(interceptor.preHandle(request, rejected, null));
+        assertEquals(429, rejected.getStatus());
+        assertEquals("1", rejected.getHeader("Retry-After"));
+        assertEquals("{\"success\":false,\"error\":\"Rate limit exceeded\"}", rejected.getContentAsString());
+
+        // Without a key the client is its remote address
+        MockHttpServletRequest anonymous = new MockHttpServletRequest("POST", "/applicable-coupons");
+        assertTrue(interceptor.preHandle(anonymous, new MockHttpServletResponse(), null));
+    }
+
+    @Test
+    void rotatingUnknownKeysDoesNotBypassTheLimit() throws Exception {
+        RateLimitInterceptor interceptor = new RateLimitInterceptor(new RateLimiter(1, 2, 1024), "X-Api-Key", Set.of("key-1"));
+
+        // Unknown keys fall back to the remote address, so they share one bucket
+        int allowed = 0;
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("POST", "/applicable-coupons");
+            request.setRemoteAddr("10.0.0.7");
+            request.addHeader("X-Api-Key", "made-up-" + i);
+            if (interceptor.preHandle(request, new MockHttpServletResponse(), null)) {
+                allowed++;
+            }
+        }
+        assertEquals(2, allowed);
+
+        // A configured key from the same address has a bucket of its own
+        MockHttpServletRequest known = new MockHttpServletRequest("POST", "/applicable-coupons");
+        known.setRemoteAddr("10.0.0.7");
+        known.addHeader("X-Api-Key", "key-1");
+        assertTrue(interceptor.preHandle(known, new MockHttpServletResponse(), null));
+    }
+}
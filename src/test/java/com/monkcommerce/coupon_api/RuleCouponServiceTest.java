@@ -0,0 +1,167 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.expression.RuleCompiler;
+import com.monkcommerce.coupon_api.metrics.CouponMetrics;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.ApplicableCouponItem;
+import com.monkcommerce.coupon_api.model.response.ApplyCouponResponse;
+import com.monkcommerce.coupon_api.service.CouponService;
+import com.monkcommerce.coupon_api.store.OffHeapCouponStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.invoke.MethodHandle;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RuleCouponServiceTest {
+
+    private CouponService service;
+
+    @BeforeEach
+    void setup() {
+        service = new CouponService();
+    }
+
+    private Coupon rule(String condition, Integer productId, double discount) {
+        CouponDetails d = new CouponDetails();
+        d.condition = condition;
+        d.productId = productId;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.RULE);
+        c.setDetails(d);
+        return c;
+    }
+
+    // Cart of {productId, quantity, price} lines
+    private Cart cart(double[]... lines) {
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>();
+        for (double[] line : lines) {
+            CartItem item = new CartItem();
+            item.productId = (int) line[0];
+            item.quantity = (int) line[1];
+            item.price = line[2];
+            cart.items.add(item);
+        }
+        return cart;
+    }
+
+    private boolean matches(String condition, Cart cart) throws Throwable {
+        MethodHandle compiled = RuleCompiler.compile(condition);
+        return (boolean) compiled.invokeExact(cart);
+    }
+
+    private String compileError(String condition) {
+        return assertThrows(CouponException.class, () -> RuleCompiler.compile(condition)).getMessage();
+    }
+
+    @Test
+    void productDiscountWhenCartMeetsCondition() {
+        // 10% off product 42 if the cart contains any of {7, 8} and the total is at least 500
+        long id = service.createCoupon(rule("containsAny({7, 8}) && total >= 500", 42, 10)).getId();
+
+        Cart eligible = cart(new double[] {7, 1, 100}, new double[] {42, 2, 200});
+        ApplyCouponResponse response = service.applyCouponToCart(id, eligible);
+        assertEquals(500.0, response.getTotalPrice(), 1e-9);
+        assertEquals(40.0, response.getTotalDiscount(), 1e-9);
+        assertEquals(40.0, response.getItems().get(1).totalDiscount, 1e-9);
+
+        ApplicableCouponItem item = service.getApplicableCoupons(eligible).applicable_coupons.get(0);
+        assertEquals(id, item.coupon_id);
+        assertEquals("RULE", item.type);
+        assertEquals(40.0, item.discount, 1e-9);
+
+        // No product 7 or 8, and too small a total
+        Cart missingProduct = cart(new double[] {9, 1, 100}, new double[] {42, 2, 200});
+        Cart tooSmall = cart(new double[] {8, 1, 100}, new double[] {42, 1, 200});
+        for (Cart cart : new Cart[] {missingProduct, tooSmall}) {
+            CouponException ex = assertThrows(CouponException.class, () -> service.applyCouponToCart(id, cart));
+            assertEquals("Cart does not meet the coupon's condition", ex.getMessage());
+            assertTrue(service.getApplicableCoupons(cart).applicable_coupons.isEmpty());
+        }
+    }
+
+    @Test
+    void languageCoversAggregatesLinesAndSets() throws Throwable {
+        Cart cart = cart(new double[] {1, 3, 50}, new double[] {2, 1, 120}, new double[] {5, 4, 10});
+
+        assertTrue(matches("total == 310 and quantity == 8 and lines == 3", cart));
+        assertTrue(matches("any(price > 100 && quantity >= 1)", cart));
+        assertFalse(matches("all(amount >= 50)", cart));
+        assertTrue(matches("count(in({1, 2, 3})) >= 2", cart));
+        assertTrue(matches("containsAll(1, 5) && !containsAny(7) && not containsAll({1, 9})", cart));
+        assertTrue(matches("quantityOf(1, 5) * 2 - amountOf(5) / 10 == 10", cart));
+        assertTrue(matches("-(total - 300) < 0 || false", cart));
+        assertTrue(matches("total ≥ 310 && lines ≠ 2", cart));
+    }
+
+    @Test
+    void invalidConditionsAreRejectedWithPosition() {
+        assertEquals("Rule coupon must have a condition", compileError(" "));
+        assertEquals("Invalid rule condition at position 10: unexpected end", compileError("total >= "));
+        assertEquals("Invalid rule condition at position 1: expected a condition, found a number",
+                compileError("total && true"));
+        assertEquals("Invalid rule condition at position 10: expected a number, found a condition",
+                compileError("total >= containsAny(1)"));
+        assertEquals("Invalid rule condition at position 1: 'price' is only available inside any(), all() or count()",
+                compileError("price > 5"));
+        assertEquals("Invalid rule condition at position 5: 'any' cannot be nested", compileError("any(any(true))"));
+        assertEquals("Invalid rule condition at position 1: unknown name 'subtotal'", compileError("subtotal > 1"));
+        assertEquals("Invalid rule condition at position 13: expected a product id",
+                compileError("containsAny(1.5)"));
+        assertEquals("Invalid rule condition at position 11: unexpected ')'", compileError("total > 1 ) "));
+        assertTrue(compileError("(".repeat(100) + "true" + ")".repeat(100)).endsWith("nested too deeply"));
+
+        // Validated on create, so no invalid rule is stored
+        CouponException ex = assertThrows(CouponException.class,
+                () -> service.createCoupon(rule("total >", null, 5)));
+        assertTrue(ex.getMessage().startsWith("Invalid rule condition"));
+        assertThrows(CouponException.class, () -> service.createCoupon(rule("total > 1", null, 0)));
+        assertTrue(service.getCoupon(true).isEmpty());
+    }
+
+    @Test
+    void updateReplacesTheCompiledRule() {
+        long id = service.createCoupon(rule("total >= 100", null, 10)).getId();
+        Cart cart = cart(new double[] {1, 2, 100});
+        assertEquals(20.0, service.applyCouponToCart(id, cart).getTotalDiscount(), 1e-9);
+
+        CouponDetails stricter = new CouponDetails();
+        stricter.condition = "total >= 1000";
+        Coupon update = new Coupon();
+        update.setDetails(stricter);
+        service.updateCouponById(id, update);
+        assertThrows(CouponException.class, () -> service.applyCouponToCart(id, cart));
+
+        // A rejected update leaves the previous rule in force
+        CouponDetails broken = new CouponDetails();
+        broken.condition = "total >=";
+        Coupon rejected = new Coupon();
+        rejected.setDetails(broken);
+        assertThrows(CouponException.class, () -> service.updateCouponById(id, rejected));
+        assertEquals("total >= 1000", service.getCouponById(id).getDetails().condition);
+        assertTrue(service.getApplicableCoupons(cart(new double[] {1, 10, 100})).applicable_coupons
+                .stream().anyMatch(c -> c.coupon_id == id));
+
+        service.deleteCoupon(id);
+        assertTrue(service.getApplicableCoupons(cart(new double[] {1, 10, 100})).applicable_coupons.isEmpty());
+    }
+
+    @Test
+    void conditionSurvivesOffHeapStorage() {
+        CouponService offHeap = new CouponService(CouponMetrics.noop(), new OffHeapCouponStore(4096));
+        long id = offHeap.createCoupon(rule("amountOf({3}) ≥ 50", 3, 20)).getId();
+
+        assertEquals("amountOf({3}) ≥ 50", offHeap.getCouponById(id).getDetails().condition);
+        assertEquals(10.0, offHeap.applyCouponToCart(id, cart(new double[] {3, 1, 50})).getTotalDiscount(), 1e-9);
+        offHeap.close();
+    }
+}
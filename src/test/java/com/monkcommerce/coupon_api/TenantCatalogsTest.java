@@ -0,0 +1,408 @@
+package com.monkcommerce.coupon_api;
+
+import com.monkcommerce.coupon_api.exception.CouponException;
+import com.monkcommerce.coupon_api.model.Coupon;
+import com.monkcommerce.coupon_api.model.CouponDetails;
+import com.monkcommerce.coupon_api.model.CouponType;
+import com.monkcommerce.coupon_api.model.cart.Cart;
+import com.monkcommerce.coupon_api.model.cart.CartItem;
+import com.monkcommerce.coupon_api.model.response.CatalogStagingResponse;
+import com.monkcommerce.coupon_api.store.CouponRecordCodec;
+import com.monkcommerce.coupon_api.tenant.CatalogStagingWatcher;
+import com.monkcommerce.coupon_api.tenant.TenantCatalogs;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TenantCatalogsTest {
+
+    @TempDir
+    Path snapshots;
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private TenantCatalogs catalogs;
+
+    @AfterEach
+    void shutdown() throws Exception {
+        if (catalogs != null) {
+            catalogs.shutdown();
+        }
+    }
+
+    private TenantCatalogs catalogs(int maxCoupons, long maxBytes, Duration idle) throws Exception {
+        catalogs = new TenantCatalogs(registry, "heap", 1 << 20, maxCoupons, maxBytes, idle, snapshots, 0, Duration.ofMinutes(5), null, null);
+        return catalogs;
+    }
+
+    private Coupon cartWise(int threshold, double discount) {
+        CouponDetails d = new CouponDetails();
+        d.threshold = threshold;
+        d.discount = discount;
+        Coupon c = new Coupon();
+        c.setType(CouponType.CART_WISE);
+        c.setDetails(d);
+        return c;
+    }
+
+    private Cart cart(Long customerId) {
+        CartItem item = new CartItem();
+        item.productId = 1;
+        item.quantity = 1;
+        item.price = 1_000;
+        Cart cart = new Cart();
+        cart.items = new ArrayList<>(List.of(item));
+        cart.customerId = customerId;
+        return cart;
+    }
+
+    private Coupon bxgy(List<Integer> buy, List<Integer> get) {
+        CouponDetails d = new CouponDetails();
+        d.buyProducts = buy;
+        d.getProducts = get;
+        d.buyQuantity = 1;
+        d.getQuantity = 1;
+        d.repetitionLimit = 1;
+        d.isActive = false;
+        Coupon c = new Coupon();
+        c.setType(CouponType.BXGY);
+        c.setDetails(d);
+        return c;
+    }
+
+    @Test
+    void tenantsHaveIsolatedCatalogsAndIds() throws Exception {
+        catalogs(0, 0, Duration.ZERO);
+
+        assertEquals(1, catalogs.call("a", s -> s.createCoupon(cartWise(100, 10))).getId());
+        // Same threshold is free in another tenant, which has its own id sequence
+        assertEquals(1, catalogs.call("b", s -> s.createCoupon(cartWise(100, 10))).getId());
+        assertEquals(2, catalogs.call("b", s -> s.createCoupon(cartWise(200, 20))).getId());
+
+        assertEquals(1, catalogs.call("a", s -> s.getCoupon(true)).size());
+        assertEquals(2, catalogs.call("b", s -> s.getCoupon(true)).size());
+        // No header: the default tenant
+        assertTrue(catalogs.call(null, s -> s.getCoupon(true)).isEmpty());
+
+        assertThrows(CouponException.class, () -> catalogs.call("../etc", s -> s.getCoupon(true)));
+
+        // Meters are tagged per tenant
+        assertNotNull(registry.find("coupon.catalog.size").tag("tenant", "b").gauge());
+        assertEquals(2.0, registry.find("coupon.catalog.size").tag("tenant", "b").gauge().value());
+    }
+
+    @Test
+    void quotasRejectCreates() throws Exception {
+        catalogs(2, 0, Duration.ZERO);
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+        catalogs.call("a", s -> s.createCoupon(cartWise(200, 20)));
+        CouponException ex = assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.createCoupon(cartWise(300, 30))));
+        assertEquals("Coupon quota exceeded: at most 2 coupons allowed", ex.getMessage());
+
+        // Two bare records fit, a third with product arrays does not
+        catalogs.shutdown();
+        catalogs(0, CouponRecordCodec.HEADER_BYTES * 2 + 8, Duration.ZERO);
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+        catalogs.call("a", s -> s.createCoupon(bxgy(Arrays.asList(1), Arrays.asList(2))));
+        ex = assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.createCoupon(bxgy(Arrays.asList(3), Arrays.asList(4)))));
+        assertTrue(ex.getMessage().startsWith("Coupon quota exceeded"));
+    }
+
+    @Test
+    void idleTenantIsEvictedAndReloaded() throws Exception {
+        catalogs(0, 0, Duration.ofMillis(1));
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+        catalogs.call("a", s -> s.createCoupon(bxgy(Arrays.asList(1, 2), Arrays.asList(3))));
+        catalogs.call("a", s -> s.deleteCoupon(1));
+        catalogs.call("a", s -> s.createCoupon(cartWise(300, 30)));
+        catalogs.call("a", s -> s.setEligibleCustomers(3, new long[] {5, 7}));
+        String code = catalogs.call("a", s -> s.generateCodes(3, 1, null)).get(0);
+        catalogs.call("a", s -> s.redeemCode(code, 7L));
+        Thread.sleep(5);
+
+        Method evictIdle = TenantCatalogs.class.getDeclaredMethod("evictIdle");
+        evictIdle.setAccessible(true);
+        evictIdle.invoke(catalogs);
+        assertEquals(0, catalogs.loadedTenants());
+        assertNull(registry.find("coupon.catalog.size").tag("tenant", "a").gauge());
+
+        // Reloaded with the same coupons and id sequence
+        List<Coupon> coupons = catalogs.call("a", s -> s.getCoupon(false));
+        assertEquals(1, coupons.size());
+        assertEquals(1, catalogs.call("a", s -> s.getCoupon(true)).size());
+        assertEquals(2, coupons.get(0).getId());
+        assertEquals(Arrays.asList(1, 2), coupons.get(0).getDetails().buyProducts);
+        assertEquals(4, catalogs.call("a", s -> s.createCoupon(cartWise(100, 10))).getId());
+        // Codes come back with their redemption state
+        assertEquals(3, catalogs.call("a", s -> s.getCouponByCode(code)).getId());
+        assertThrows(CouponException.class, () -> catalogs.call("a", s -> s.applyCouponByCode(code, null)));
+        // and the coupon keeps its redemption count
+        assertEquals(1, catalogs.call("a", s -> s.getRedemptions(3)).committed);
+        assertEquals(2, catalogs.call("a", s -> s.getEligibleCustomers(3)).customers);
+    }
+
+    // Wait for the tenant's staged catalog to appear and finish building
+    private CatalogStagingResponse awaitStaged(String tenant) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        CatalogStagingResponse staging = catalogs.staging(tenant);
+        while ((staging.state.equals("NONE") || staging.state.equals("BUILDING")) && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+            staging = catalogs.staging(tenant);
+        }
+        return staging;
+    }
+
+    @Test
+    void stagedCatalogSwapsInAndRollsBack() throws Exception {
+        catalogs(0, 0, Duration.ZERO);
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+        assertThrows(CouponException.class, () -> catalogs.swap("a"));
+        assertThrows(CouponException.class, () -> catalogs.rollback("a"));
+
+        List<Coupon> next = new ArrayList<>();
+        for (int i = 1; i <= 1_000; i++) {
+            next.add(cartWise(i * 10, Math.min(100, 1 + i / 20.0)));
+        }
+        catalogs.stage("a", "test", () -> next);
+
+        // Requests keep seeing the live catalog until the swap
+        assertEquals(1, catalogs.call("a", s -> s.getCoupon(true)).size());
+        CatalogStagingResponse staged = awaitStaged("a");
+        assertEquals("READY", staged.state);
+        assertEquals(1_000, staged.staged_coupons);
+        assertEquals(1, staged.live_coupons);
+        assertEquals(1, catalogs.call("a", s -> s.getCoupon(true)).size());
+
+        CatalogStagingResponse swapped = catalogs.swap("a");
+        assertEquals("NONE", swapped.state);
+        assertEquals(1_000, swapped.live_coupons);
+        assertTrue(swapped.rollback_available);
+        assertEquals(1_000, catalogs.call("a", s -> s.getCoupon(true)).size());
+        assertEquals(1_000.0, registry.get("coupon.catalog.size").tag("tenant", "a").gauge().value());
+        assertThrows(CouponException.class, () -> catalogs.swap("a"));
+
+        // Rolling back restores the old catalog; rolling back again restores the new one
+        assertEquals(1, catalogs.rollback("a").live_coupons);
+        assertEquals(10.0, catalogs.call("a", s -> s.getCouponById(1)).getDetails().discount);
+        assertEquals(1.0, registry.get("coupon.catalog.size").tag("tenant", "a").gauge().value());
+        assertEquals(1_000, catalogs.rollback("a").live_coupons);
+    }
+
+    @Test
+    void redemptionsAndRestrictionsSurviveASwap() throws Exception {
+        catalogs = new TenantCatalogs(registry, "heap", 1 << 20, 0, 0, Duration.ZERO, snapshots, 3, Duration.ofMinutes(5), null, null);
+        Coupon limited = cartWise(100, 10);
+        limited.getDetails().redemptionLimit = 2;
+        catalogs.call("a", s -> s.createCoupon(limited));
+        catalogs.call("a", s -> s.setEligibleCustomers(1, new long[] {7}));
+        String code = catalogs.call("a", s -> s.generateCodes(1, 1, null)).get(0);
+        catalogs.call("a", s -> s.redeemCode(code, 7L));
+        long reservation = catalogs.call("a", s -> s.reserveCoupon(1, cart(7L))).getReservationId();
+
+        // The staged catalog changes coupon 1 and adds a coupon without an id
+        Coupon changed = cartWise(100, 15);
+        changed.setId(1);
+        changed.getDetails().redemptionLimit = 2;
+        catalogs.stage("a", "test", () -> List.of(changed, cartWise(500, 20)));
+        assertEquals("READY", awaitStaged("a").state);
+        catalogs.swap("a");
+        assertEquals(15.0, catalogs.call("a", s -> s.getCouponById(1)).getDetails().discount);
+        assertEquals(2, catalogs.call("a", s -> s.getCouponById(2)).getId());
+
+        // Coupon 1 keeps its count, reservation, customer list and used code
+        assertEquals(1, catalogs.call("a", s -> s.getRedemptions(1)).committed);
+        assertEquals(1, catalogs.call("a", s -> s.getRedemptions(1)).reserved);
+        assertEquals("Coupon code already used: " + code, assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.redeemCode(code, 7L))).getMessage());
+        assertEquals("Coupon not available for this customer", assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.reserveCoupon(1, cart(8L)))).getMessage());
+        assertEquals(2, catalogs.call("a", s -> s.commitReservation(reservation)).committed);
+        assertEquals("Coupon redemption limit reached", assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.reserveCoupon(1, cart(7L)))).getMessage());
+
+        // The global limit counts redemptions made before the swap
+        catalogs.call("a", s -> s.reserveCoupon(2, cart(7L)));
+        assertEquals("Global redemption limit reached", assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.reserveCoupon(2, cart(7L)))).getMessage());
+
+        // and so does the rolled back catalog
+        catalogs.rollback("a");
+        assertEquals(2, catalogs.call("a", s -> s.getRedemptions(1)).committed);
+        assertThrows(CouponException.class, () -> catalogs.call("a", s -> s.redeemCode(code, 7L)));
+    }
+
+    @Test
+    void idsAreNeverReusedAcrossSwapsRollbacksAndEviction() throws Exception {
+        catalogs(0, 0, Duration.ofMillis(1));
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+        catalogs.stage("a", "test", () -> List.of(cartWise(200, 20)));
+        assertEquals("READY", awaitStaged("a").state);
+        catalogs.swap("a");
+        assertEquals(3, catalogs.call("a", s -> s.createCoupon(cartWise(300, 30))).getId());
+        long reservation = catalogs.call("a", s -> s.reserveCoupon(2, cart(7L))).getReservationId();
+
+        // The rolled back catalog numbers past the ids the swapped-in one gave out, so its new
+        // coupon does not take over coupon 2's reservation
+        catalogs.rollback("a");
+        assertEquals(4, catalogs.call("a", s -> s.createCoupon(cartWise(400, 40))).getId());
+        assertEquals(0, catalogs.call("a", s -> s.getRedemptions(4)).reserved);
+
+        // and so does a staged catalog of imported ids only, when the live one creates meanwhile
+        Coupon imported = cartWise(100, 15);
+        imported.setId(1);
+        catalogs.stage("a", "test", () -> List.of(imported));
+        assertEquals("READY", awaitStaged("a").state);
+        assertEquals(5, catalogs.call("a", s -> s.createCoupon(cartWise(500, 50))).getId());
+        catalogs.swap("a");
+        assertEquals(6, catalogs.call("a", s -> s.createCoupon(cartWise(600, 60))).getId());
+
+        // Eviction keeps the rollback catalog and the tenant's id sequence
+        catalogs.call("a", s -> s.releaseReservation(reservation));
+        Thread.sleep(5);
+        Method evictIdle = TenantCatalogs.class.getDeclaredMethod("evictIdle");
+        evictIdle.setAccessible(true);
+        evictIdle.invoke(catalogs);
+        assertEquals(0, catalogs.loadedTenants());
+        assertTrue(catalogs.staging("a").rollback_available);
+        assertEquals(7, catalogs.call("a", s -> s.createCoupon(cartWise(700, 70))).getId());
+        assertEquals(3, catalogs.rollback("a").live_coupons);
+        assertEquals(10.0, catalogs.call("a", s -> s.getCouponById(1)).getDetails().discount);
+        assertEquals(8, catalogs.call("a", s -> s.createCoupon(cartWise(800, 80))).getId());
+    }
+
+    @Test
+    void deletedCouponKeepsItsRedemptionsWhileACatalogHoldsIt() throws Exception {
+        catalogs(0, 0, Duration.ZERO);
+        Coupon limited = cartWise(100, 10);
+        limited.getDetails().redemptionLimit = 1;
+        catalogs.call("a", s -> s.createCoupon(limited));
+        long reservation = catalogs.call("a", s -> s.reserveCoupon(1, cart(7L))).getReservationId();
+        catalogs.call("a", s -> s.commitReservation(reservation));
+
+        // Swap in a catalog with the same coupon and delete it there
+        Coupon same = cartWise(100, 10);
+        same.setId(1);
+        same.getDetails().redemptionLimit = 1;
+        catalogs.stage("a", "test", () -> List.of(same));
+        assertEquals("READY", awaitStaged("a").state);
+        catalogs.swap("a");
+        catalogs.call("a", s -> s.deleteCoupon(1));
+
+        // The rolled back catalog still holds coupon 1, with its redemption
+        catalogs.rollback("a");
+        assertEquals(1, catalogs.call("a", s -> s.getRedemptions(1)).committed);
+        assertEquals("Coupon redemption limit reached", assertThrows(CouponException.class,
+                () -> catalogs.call("a", s -> s.reserveCoupon(1, cart(7L)))).getMessage());
+
+        // Once no catalog holds it, its counter goes
+        catalogs.rollback("a");
+        catalogs.stage("a", "test", () -> List.of(cartWise(200, 20)));
+        assertEquals("READY", awaitStaged("a").state);
+        catalogs.swap("a");
+        assertEquals(0, catalogs.call("a", s -> s.getRedemptions(1)).committed);
+    }
+
+    @Test
+    void codesRedeemedDuringASwapStayRedeemed() throws Exception {
+        catalogs(0, 0, Duration.ZERO);
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+        List<String> codes = catalogs.call("a", s -> s.generateCodes(1, 2_000, null));
+        Coupon same = cartWise(100, 10);
+        same.setId(1);
+        catalogs.stage("a", "test", () -> List.of(same));
+        assertEquals("READY", awaitStaged("a").state);
+
+        // Redeem every code from two threads while the catalog is swapped and rolled back
+        AtomicInteger next = new AtomicInteger();
+        Set<String> redeemed = ConcurrentHashMap.newKeySet();
+        Runnable redeemer = () -> {
+            for (int i = next.getAndIncrement(); i < codes.size(); i = next.getAndIncrement()) {
+                String code = codes.get(i);
+                catalogs.call("a", s -> s.redeemCode(code));
+                redeemed.add(code);
+            }
+        };
+        Thread first = new Thread(redeemer);
+        Thread second = new Thread(redeemer);
+        first.start();
+        second.start();
+        while (next.get() < codes.size() / 4) {
+            Thread.onSpinWait();
+        }
+        catalogs.swap("a");
+        catalogs.rollback("a");
+        catalogs.rollback("a");
+        first.join();
+        second.join();
+
+        assertEquals(codes.size(), redeemed.size());
+        for (String code : codes) {
+            assertEquals("Coupon code already used: " + code, assertThrows(CouponException.class,
+                    () -> catalogs.call("a", s -> s.redeemCode(code))).getMessage());
+        }
+        assertEquals(codes.size(), catalogs.call("a", s -> s.getRedemptions(1)).committed);
+    }
+
+    @Test
+    void invalidStagedCatalogIsNeverSwappedIn() throws Exception {
+        catalogs(0, 0, Duration.ZERO);
+        catalogs.call("a", s -> s.createCoupon(cartWise(100, 10)));
+
+        // A lower threshold with a higher discount is invalid, as on create
+        catalogs.stage("a", "test", () -> List.of(cartWise(200, 20), cartWise(150, 30)));
+        CatalogStagingResponse failed = awaitStaged("a");
+        assertEquals("FAILED", failed.state);
+        assertTrue(failed.error.startsWith("Coupon 2 of 2 is invalid: "));
+        assertThrows(CouponException.class, () -> catalogs.swap("a"));
+
+        catalogs.stage("a", "test", () -> {
+            throw new IllegalStateException("unreadable");
+        });
+        assertEquals("Could not load test: unreadable", awaitStaged("a").error);
+
+        // Staging again replaces the failed catalog; discarding leaves the live one as it was
+        catalogs.stage("a", "test", () -> List.of(cartWise(500, 50)));
+        assertEquals("READY", awaitStaged("a").state);
+        assertEquals("NONE", catalogs.discardStaged("a").state);
+        assertEquals(100, catalogs.call("a", s -> s.getCouponById(1)).getDetails().threshold);
+    }
+
+    @Test
+    void catalogFilesInTheStagingDirectoryAreStaged() throws Exception {
+        catalogs(0, 0, Duration.ZERO);
+        Path dir = Files.createDirectory(snapshots.resolve("staging"));
+        Files.writeString(dir.resolve("shop.json"), """
+                [{ "type": "CART_WISE", "details": { "threshold": 100, "discount": 10 } },
+                 { "type": "PRODUCT_WISE", "details": { "productId": 7, "discount": 25 } }]
+                """);
+
+        CatalogStagingWatcher watcher = new CatalogStagingWatcher(catalogs, JsonMapper.builder().build(),
+                dir.toString(), Duration.ofHours(1));
+        try {
+            CatalogStagingResponse staged = awaitStaged("shop");
+            assertEquals("READY", staged.state);
+            assertEquals(2, staged.staged_coupons);
+            assertEquals(dir.resolve("shop.json").toString(), staged.source);
+            catalogs.swap("shop");
+            assertEquals(2, catalogs.call("shop", s -> s.getCoupon(true)).size());
+        } finally {
+            watcher.shutdown();
+        }
+    }
+}